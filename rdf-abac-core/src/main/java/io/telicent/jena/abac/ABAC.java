@@ -25,6 +25,7 @@ import org.apache.jena.riot.RDFParser;
 import org.apache.jena.shacl.ShaclValidator;
 import org.apache.jena.shacl.Shapes;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.graph.GraphFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,7 +33,10 @@ import org.slf4j.LoggerFactory;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 /**
  * Programmatic API to the Attribute-Based Access Control functionality.
@@ -74,6 +78,45 @@ public final class ABAC {
      */
     public static final int hierarchyCacheSize = 100;
 
+    /**
+     * Number of label lookups within a single request after which the request is treated as a scan. Lookups made by a
+     * scan use, but don't populate, the shared label store cache, so large analytic queries don't evict the working set
+     * of interactive users. Zero or less disables scan detection.
+     *
+     * @see CxtABAC#isScan()
+     */
+    public static long labelScanThreshold = 10_000;
+
+    /**
+     * Maximum number of distinct labels a labels store may use for a request to check, when it starts, whether every
+     * label leads to the same decision.  If so the request skips per-quad label lookups entirely.  Zero or less
+     * disables the check.
+     *
+     * @see Labels#constantDecision(LabelsStore, Label, CxtABAC)
+     */
+    public static int constantDecisionLabelLimit = 100;
+
+    /**
+     * Maximum number of threads used by the default dataset filter provider to scan and filter quads for a single
+     * {@link #forEachQuad} call.  One or less scans in the calling thread.
+     */
+    public static int parallelScanThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum number of distinct request attributes, per dataset, whose label decisions are materialised and shared
+     * between requests, favouring the most frequently seen.  Zero or less, the default, decides labels per request.
+     *
+     * @see DatasetGraphABAC#attributeProfiles()
+     */
+    public static int attributeProfiles = 0;
+
+    /**
+     * How long the shared label decisions for some request attributes are kept, see {@link #attributeProfiles}, after
+     * which they are decided again.  Decisions are shared only between requests whose attributes have the same
+     * hierarchies, so changes to attribute hierarchies are seen immediately.
+     */
+    public static Duration attributeProfileExpiry = Duration.ofMinutes(5);
+
     /**
      * Test whether a dataset supports ABAC data labelling.
      */
@@ -126,11 +169,34 @@ public final class ABAC {
      * @see #requestDataset
      */
     public static DatasetGraph filterDataset(DatasetGraphABAC dsgAuthz, CxtABAC cxt) {
+        return filterProvider(dsgAuthz).filterDataset(dsgAuthz, cxt);
+    }
+
+    /**
+     * Apply an action to every quad matching a pattern that is visible for a context, possibly from several threads at
+     * once.
+     *
+     * @see DatasetFilterProvider#forEachQuad(DatasetGraphABAC, CxtABAC, Quad, Consumer)
+     */
+    public static void forEachQuad(DatasetGraphABAC dsgAuthz, CxtABAC cxt, Quad pattern, Consumer<Quad> action) {
+        filterProvider(dsgAuthz).forEachQuad(dsgAuthz, cxt, pattern, action);
+    }
+
+    /**
+     * Count the quads matching a pattern that are visible for a context, scanning in parallel where the filter
+     * provider supports it.
+     *
+     * @see #forEachQuad(DatasetGraphABAC, CxtABAC, Quad, Consumer)
+     */
+    public static long countQuads(DatasetGraphABAC dsgAuthz, CxtABAC cxt, Quad pattern) {
+        LongAdder count = new LongAdder();
+        forEachQuad(dsgAuthz, cxt, pattern, quad -> count.increment());
+        return count.sum();
+    }
+
+    private static DatasetFilterProvider filterProvider(DatasetGraphABAC dsgAuthz) {
         DatasetFilterProvider provider = dsgAuthz.getFilterProvider();
-        if (provider == null) {
-            provider = getDatasetFilterProvider();
-        }
-        return provider.filterDataset(dsgAuthz, cxt);
+        return provider != null ? provider : getDatasetFilterProvider();
     }
 
     /**
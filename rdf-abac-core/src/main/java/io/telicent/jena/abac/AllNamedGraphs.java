@@ -7,6 +7,8 @@ import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.system.Txn;
 
 import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * A wrapper to allow exposing all named graphs in the underlying dataset by default to a
@@ -22,6 +24,8 @@ import java.util.*;
 class AllNamedGraphs implements Collection<Node> {
 
     private final DatasetGraph dsg;
+    private final Supplier<Set<Node>> source;
+    private final Predicate<Node> graphFilter;
     private Set<Node> namedGraphs = null;
 
     /**
@@ -30,7 +34,32 @@ class AllNamedGraphs implements Collection<Node> {
      * @param dsg Underlying dataset whose named graphs we wish to make visible
      */
     public AllNamedGraphs(DatasetGraph dsg) {
+        this(dsg, null);
+    }
+
+    /**
+     * Creates a new wrapper that only exposes some of the named graphs
+     *
+     * @param dsg         Underlying dataset whose named graphs we wish to make visible
+     * @param graphFilter Filter selecting the named graphs to expose, {@code null} to expose all of them
+     */
+    public AllNamedGraphs(DatasetGraph dsg, Predicate<Node> graphFilter) {
         this.dsg = Objects.requireNonNull(dsg, "Dataset Graph cannot be null");
+        this.source = null;
+        this.graphFilter = graphFilter;
+    }
+
+    /**
+     * Creates a new wrapper over named graphs obtained from a source shared across requests, which will not be
+     * modified
+     *
+     * @param source      Source of the named graphs
+     * @param graphFilter Filter selecting the named graphs to expose, {@code null} to expose all of them
+     */
+    public AllNamedGraphs(Supplier<Set<Node>> source, Predicate<Node> graphFilter) {
+        this.dsg = null;
+        this.source = Objects.requireNonNull(source, "Named graphs source cannot be null");
+        this.graphFilter = graphFilter;
     }
 
     /**
@@ -41,21 +70,30 @@ class AllNamedGraphs implements Collection<Node> {
      */
     private void ensureNamedGraphs() {
         if (this.namedGraphs == null) {
-            this.namedGraphs = new HashSet<>();
-            Txn.executeRead(this.dsg, () -> {
-                Iterator<Node> it = this.dsg.listGraphNodes();
-                if (it != null) {
-                    while (it.hasNext()) {
-                        Node g = it.next();
-                        // Ignore null/default graph
-                        // DatasetGraphFilteredView will try to "fix" us if we report these as named graphs
-                        if (g == null || Quad.isDefaultGraph(g)) {
-                            continue;
+            if (this.source != null) {
+                // Shared with other requests, and unmodifiable, so only copied if it needs filtering
+                Set<Node> shared = this.source.get();
+                this.namedGraphs = this.graphFilter == null ? shared : new HashSet<>(shared);
+            } else {
+                this.namedGraphs = new HashSet<>();
+                Txn.executeRead(this.dsg, () -> {
+                    Iterator<Node> it = this.dsg.listGraphNodes();
+                    if (it != null) {
+                        while (it.hasNext()) {
+                            Node g = it.next();
+                            // Ignore null/default graph
+                            // DatasetGraphFilteredView will try to "fix" us if we report these as named graphs
+                            if (g == null || Quad.isDefaultGraph(g)) {
+                                continue;
+                            }
+                            this.namedGraphs.add(g);
                         }
-                        this.namedGraphs.add(g);
                     }
-                }
-            });
+                });
+            }
+            if (this.graphFilter != null) {
+                this.namedGraphs.removeIf(this.graphFilter.negate());
+            }
         }
     }
 
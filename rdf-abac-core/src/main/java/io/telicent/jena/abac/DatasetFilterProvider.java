@@ -21,6 +21,9 @@ import io.telicent.jena.abac.core.DatasetGraphABAC;
 import io.telicent.jena.abac.labels.Label;
 import io.telicent.jena.abac.labels.LabelsStore;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+
+import java.util.function.Consumer;
 
 /**
  * Extension point for deciding how an ABAC-protected request dataset is constructed.
@@ -46,4 +49,22 @@ public interface DatasetFilterProvider {
      * @return A Dataset Graph that represents what the request is allowed to see.
      */
     DatasetGraph filterDataset(DatasetGraph dsgBase, LabelsStore labels, Label defaultLabel, CxtABAC cxt);
-}
\ No newline at end of file
+
+    /**
+     * Apply an action to every quad matching a pattern that the request is allowed to see, for consumers that don't
+     * need the quads in any particular order, e.g. counting or exporting.  Implementations may scan the dataset, and
+     * call the action, from several threads at once.
+     * <p>
+     * The default implementation iterates over the {@link #filterDataset(DatasetGraphABAC, CxtABAC) filtered dataset}
+     * in the calling thread.
+     * </p>
+     *
+     * @param dsgAuth The ABAC dataset wrapper containing the data, labels store, and default label.
+     * @param cxt     The ABAC evaluation context.
+     * @param pattern Quad pattern, which may use {@link org.apache.jena.graph.Node#ANY} as a wildcard.
+     * @param action  Action to apply to each visible quad, which must be thread-safe.
+     */
+    default void forEachQuad(DatasetGraphABAC dsgAuth, CxtABAC cxt, Quad pattern, Consumer<Quad> action) {
+        filterDataset(dsgAuth, cxt).find(pattern).forEachRemaining(action);
+    }
+}
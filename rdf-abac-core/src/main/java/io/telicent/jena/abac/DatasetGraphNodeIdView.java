@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.QuadFilter;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsGetter;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
+import org.apache.jena.tdb2.store.nodetable.NodeTable;
+import org.apache.jena.tdb2.store.nodetupletable.NodeTupleTable;
+
+/**
+ * A {@link DatasetGraphPrunedView} over TDB2 storage that filters rows by their {@link NodeId}s as they are scanned,
+ * before their nodes are decoded.
+ * <p>
+ * Rows of fully hidden named graphs, and rows whose labels, held in {@link NodeIdLabels}, are hidden from the request,
+ * are skipped without touching the node table.  Other rows are decoded and, if their label isn't already known, it's
+ * looked up in the labels store and recorded for later requests.  Access to the union graph goes via the normal
+ * per-quad filtering of {@link DatasetGraphPrunedView}.
+ * </p>
+ */
+class DatasetGraphNodeIdView extends DatasetGraphPrunedView {
+
+    private final DatasetGraphTDB storage;
+    private final NodeIdLabels nodeIdLabels;
+    private final DatasetGraphABAC dsgAuthz;
+    private final LabelsGetter labels;
+    private final Predicate<Label> labelFilter;
+    // Graph nodes decoded for this request, there are typically far fewer graphs than rows
+    private final Map<NodeId, Node> graphNodes = new ConcurrentHashMap<>();
+
+    DatasetGraphNodeIdView(DatasetGraphPrunedView view, NodeIdLabels nodeIdLabels, DatasetGraphABAC dsgAuthz,
+                           LabelsGetter labels, Predicate<Label> labelFilter) {
+        super(view.getWrapped(), view.visibility(), view.filter(), view.visibleGraphs(), view.statistics());
+        this.storage = nodeIdLabels.storage();
+        this.nodeIdLabels = nodeIdLabels;
+        this.dsgAuthz = dsgAuthz;
+        this.labels = labels;
+        this.labelFilter = labelFilter;
+    }
+
+    @Override
+    Iterator<Quad> scanGraph(Node g, Node s, Node p, Node o) {
+        // Rows are already filtered by NodeId as they're scanned
+        return find(g, s, p, o);
+    }
+
+    @Override
+    QuadFilter scanFilter() {
+        return quad -> true;
+    }
+
+    @Override
+    public Iterator<Quad> find() {
+        return find(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+    }
+
+    @Override
+    public Iterator<Quad> find(Quad quad) {
+        return find(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+    }
+
+    @Override
+    public Iterator<Quad> find(Node g, Node s, Node p, Node o) {
+        if (g == null || Node.ANY.equals(g)) {
+            return Iter.concat(findDefaultGraph(s, p, o), findNamedGraphs(Node.ANY, s, p, o));
+        }
+        if (Quad.isDefaultGraph(g)) {
+            return findDefaultGraph(s, p, o);
+        }
+        if (!g.isConcrete() || Quad.isUnionGraph(g)) {
+            return super.find(g, s, p, o);
+        }
+        return findNamedGraphs(g, s, p, o);
+    }
+
+    @Override
+    public Iterator<Quad> findNG(Node g, Node s, Node p, Node o) {
+        if (g == null || Node.ANY.equals(g)) {
+            return findNamedGraphs(Node.ANY, s, p, o);
+        }
+        if (!g.isConcrete() || Quad.isUnionGraph(g) || Quad.isDefaultGraph(g)) {
+            return super.findNG(g, s, p, o);
+        }
+        return findNamedGraphs(g, s, p, o);
+    }
+
+    @Override
+    public boolean contains(Node g, Node s, Node p, Node o) {
+        Iterator<Quad> iter = find(g, s, p, o);
+        try {
+            return iter.hasNext();
+        } finally {
+            Iter.close(iter);
+        }
+    }
+
+    @Override
+    public boolean contains(Quad quad) {
+        return contains(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+    }
+
+    private Iterator<Quad> findDefaultGraph(Node s, Node p, Node o) {
+        NodeTupleTable table = storage.getTripleTable().getNodeTupleTable();
+        Iterator<Tuple<NodeId>> rows = table.findAsNodeIds(any(s), any(p), any(o));
+        if (rows == null) {
+            return Iter.nullIterator();
+        }
+        NodeTable nodes = table.getNodeTable();
+        return Iter.removeNulls(Iter.map(rows, row -> filterRow(row, Quad.defaultGraphIRI, 0, nodes)));
+    }
+
+    private Iterator<Quad> findNamedGraphs(Node g, Node s, Node p, Node o) {
+        if (visibility().isHidden(g)) {
+            return Iter.nullIterator();
+        }
+        NodeTupleTable table = storage.getQuadTable().getNodeTupleTable();
+        Iterator<Tuple<NodeId>> rows = table.findAsNodeIds(any(g), any(s), any(p), any(o));
+        if (rows == null) {
+            return Iter.nullIterator();
+        }
+        NodeTable nodes = table.getNodeTable();
+        return Iter.removeNulls(Iter.map(rows, row -> {
+            Node graph = graphNodes.computeIfAbsent(row.get(0), nodes::getNodeForNodeId);
+            return switch (visibility().visibility(graph)) {
+                case HIDDEN -> null;
+                case VISIBLE -> decode(graph, row, 1, nodes);
+                case MIXED -> filterRow(row, graph, 1, nodes);
+            };
+        }));
+    }
+
+    /**
+     * Filters a row by its label, only decoding it if it's visible or its label isn't yet known
+     */
+    private Quad filterRow(Tuple<NodeId> row, Node graph, int subjectIndex, NodeTable nodes) {
+        Label label = nodeIdLabels.get(row);
+        if (label != null && !labelFilter.test(label == Label.EMPTY ? null : label)) {
+            return null;
+        }
+        Quad quad = decode(graph, row, subjectIndex, nodes);
+        if (label == null) {
+            label = labels.apply(quad);
+            nodeIdLabels.put(row, label, dsgAuthz.dataVersion(), dsgAuthz.labelsVersion());
+            return labelFilter.test(label) ? quad : null;
+        }
+        return quad;
+    }
+
+    private static Quad decode(Node graph, Tuple<NodeId> row, int subjectIndex, NodeTable nodes) {
+        return Quad.create(graph, nodes.getNodeForNodeId(row.get(subjectIndex)),
+                           nodes.getNodeForNodeId(row.get(subjectIndex + 1)),
+                           nodes.getNodeForNodeId(row.get(subjectIndex + 2)));
+    }
+
+    private static Node any(Node node) {
+        return node == null || !node.isConcrete() ? Node.ANY : node;
+    }
+}
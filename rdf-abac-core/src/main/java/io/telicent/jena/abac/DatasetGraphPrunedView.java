@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.QuadFilter;
+import io.telicent.jena.abac.engine.LabelSelectivity;
+import io.telicent.jena.abac.engine.ParallelScans;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFilteredView;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * A {@link DatasetGraphFilteredView} that doesn't scan the underlying dataset at all for access to named graphs that
+ * are fully hidden from the request, as classified by a {@link NamedGraphVisibility}.  Estimates of how much of the
+ * data is visible to the request are provided for query planning from the request's {@link LabelStatistics}.
+ * <p>
+ * Threads scanning the view on behalf of a request, see {@link ParallelScans}, read the ABAC dataset the view is of, if
+ * known, in their own read transactions.  They only scan if that transaction sees the same
+ * {@link DatasetGraphABAC#transactionDataVersion() data version} as the request's, so if a write commits in the
+ * meantime the scans are left to the request's own thread.
+ * </p>
+ */
+class DatasetGraphPrunedView extends DatasetGraphFilteredView implements LabelSelectivity, ParallelScans {
+
+    private final NamedGraphVisibility visibility;
+    private final QuadFilter filter;
+    private final Collection<Node> visibleGraphs;
+    private final LabelStatistics statistics;
+    private final DatasetGraphABAC source;
+    // Data version of the request's read transaction, captured when preparing for parallel scans
+    private volatile long scanVersion = NO_SCANS;
+
+    // Scanning threads may use any transaction, as the request itself isn't in one
+    private static final long ANY_VERSION = -2;
+    // Scanning threads can't be given a transaction seeing the same data as the request's
+    private static final long NO_SCANS = -1;
+
+    DatasetGraphPrunedView(DatasetGraph base, NamedGraphVisibility visibility, QuadFilter filter,
+                           Collection<Node> visibleGraphs, LabelStatistics statistics) {
+        this(base, visibility, filter, visibleGraphs, statistics, null);
+    }
+
+    private DatasetGraphPrunedView(DatasetGraph base, NamedGraphVisibility visibility, QuadFilter filter,
+                                   Collection<Node> visibleGraphs, LabelStatistics statistics,
+                                   DatasetGraphABAC source) {
+        super(base, filter, visibleGraphs);
+        this.visibility = visibility;
+        this.filter = filter;
+        this.visibleGraphs = visibleGraphs;
+        this.statistics = statistics;
+        this.source = source;
+    }
+
+    /**
+     * This view, known to be of the given ABAC dataset, so that threads scanning it can read the dataset as of the
+     * request's transaction
+     */
+    DatasetGraphPrunedView of(DatasetGraphABAC dsgAuthz) {
+        return new DatasetGraphPrunedView(getWrapped(), visibility, filter, visibleGraphs, statistics, dsgAuthz);
+    }
+
+    NamedGraphVisibility visibility() {
+        return visibility;
+    }
+
+    QuadFilter filter() {
+        return filter;
+    }
+
+    Collection<Node> visibleGraphs() {
+        return visibleGraphs;
+    }
+
+    LabelStatistics statistics() {
+        return statistics;
+    }
+
+    @Override
+    public double selectivity(Node predicate) {
+        return statistics.selectivity(predicate);
+    }
+
+    @Override
+    public void prepareParallelScans() {
+        // Label decisions are made, and cached, by several threads at once
+        visibility.cxt().concurrent();
+        DatasetGraph dsg = scanned();
+        if (!dsg.supportsTransactions() || !dsg.isInTransaction()) {
+            scanVersion = ANY_VERSION;
+        } else if (source != null) {
+            long version = source.transactionDataVersion();
+            scanVersion = version >= 0 && (version & 1) == 0 ? version : NO_SCANS;
+        } else {
+            scanVersion = NO_SCANS;
+        }
+    }
+
+    @Override
+    public boolean runScan(Runnable scan) {
+        DatasetGraph dsg = scanned();
+        if (!dsg.supportsTransactions() || dsg.isInTransaction()) {
+            // Either there are no transactions, or this is the request's own thread
+            scan.run();
+            return true;
+        }
+        long version = scanVersion;
+        if (version == NO_SCANS) {
+            return false;
+        }
+        dsg.begin(TxnType.READ);
+        try {
+            if (version != ANY_VERSION && source.transactionDataVersion() != version) {
+                return false;
+            }
+            scan.run();
+            return true;
+        } finally {
+            dsg.end();
+        }
+    }
+
+    /**
+     * The dataset whose transactions threads scanning the view use, the ABAC dataset if known so that they also read
+     * the labels store in a transaction
+     */
+    private DatasetGraph scanned() {
+        return source != null ? source : getWrapped();
+    }
+
+    /**
+     * Scans the quads of a single graph for a {@link ParallelFilteredScan}, which applies {@link #scanFilter()} to them
+     * separately
+     */
+    Iterator<Quad> scanGraph(Node g, Node s, Node p, Node o) {
+        return getWrapped().find(g, s, p, o);
+    }
+
+    /**
+     * The filter a {@link ParallelFilteredScan} applies to the quads from {@link #scanGraph(Node, Node, Node, Node)}
+     */
+    QuadFilter scanFilter() {
+        return filter;
+    }
+
+    @Override
+    public Iterator<Quad> find(Node g, Node s, Node p, Node o) {
+        return visibility.isHidden(g) ? Iter.nullIterator() : super.find(g, s, p, o);
+    }
+
+    @Override
+    public Iterator<Quad> find(Quad quad) {
+        return visibility.isHidden(quad.getGraph()) ? Iter.nullIterator() : super.find(quad);
+    }
+
+    @Override
+    public Iterator<Quad> findNG(Node g, Node s, Node p, Node o) {
+        return visibility.isHidden(g) ? Iter.nullIterator() : super.findNG(g, s, p, o);
+    }
+
+    @Override
+    public boolean contains(Node g, Node s, Node p, Node o) {
+        return !visibility.isHidden(g) && super.contains(g, s, p, o);
+    }
+
+    @Override
+    public boolean contains(Quad quad) {
+        return !visibility.isHidden(quad.getGraph()) && super.contains(quad);
+    }
+}
@@ -16,6 +16,8 @@
 
 package io.telicent.jena.abac;
 
+import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.core.AttributeProfiles;
 import io.telicent.jena.abac.core.CxtABAC;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
 import io.telicent.jena.abac.core.QuadFilter;
@@ -23,27 +25,96 @@ import io.telicent.jena.abac.labels.Label;
 import io.telicent.jena.abac.labels.LabelsGetter;
 import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.lib.Cache;
+import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphFilteredView;
+import org.apache.jena.sparql.core.Quad;
+
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * A Dataset Filter Provider that preserves the existing historical RDF-ABAC behaviour
- * exposing all named graphs of the underlying dataset, to be applied by default.
+ * exposing all named graphs of the underlying dataset, to be applied by default.  Named graphs
+ * whose labels are known to all be hidden from the request are not exposed.
  */
 public class DefaultDatasetFilterProvider implements DatasetFilterProvider {
 
+    // Filters for requests where every quad has the same visibility.  These are still applied via a filtered view,
+    // rather than returning the base dataset, so the result is read-only and union graph routing still applies.
+    private static final QuadFilter ALLOW_ALL = quad -> true;
+    private static final QuadFilter DENY_ALL = quad -> false;
+
     @Override
     public DatasetGraph filterDataset(DatasetGraphABAC dsgAuthz, CxtABAC cxt) {
-        return filterDataset(dsgAuthz.getData(), dsgAuthz.labelsStore(), dsgAuthz.getDefaultLabel(), cxt);
+        // Named graphs are listed once and shared between requests, until the dataset is next written to
+        cxt.namedGraphs(dsgAuthz::namedGraphs);
+        // Requests with frequently seen attributes share their label decisions, rather than evaluating labels afresh
+        AttributeProfiles profiles = dsgAuthz.attributeProfiles();
+        if (profiles != null && !cxt.hasSharedDecisions()) {
+            Cache<Label, ValueTerm> decisions = profiles.decisions(cxt);
+            if (decisions != null) {
+                cxt.labelDecisions(decisions);
+            }
+        }
+        DatasetGraph view = filterDataset(dsgAuthz.getData(), dsgAuthz.labelsStore(), dsgAuthz.getDefaultLabel(), cxt);
+        return view instanceof DatasetGraphPrunedView pruned ? pruned.of(dsgAuthz) : view;
     }
 
     @Override
     public DatasetGraph filterDataset(DatasetGraph dsgBase, LabelsStore labels, Label defaultLabel, CxtABAC cxt) {
         QuadFilter filter = null;
         if (labels != null) {
-            LabelsGetter getter = labels::labelForQuad;
+            // If every label leads to the same decision for this request there is no need to look up labels per quad
+            Boolean decision = Labels.constantDecision(labels, defaultLabel, cxt);
+            if (Boolean.TRUE.equals(decision)) {
+                return new DatasetGraphFilteredView(dsgBase, ALLOW_ALL, allNamedGraphs(dsgBase, cxt, null));
+            }
+            if (Boolean.FALSE.equals(decision)) {
+                return new DatasetGraphFilteredView(dsgBase, DENY_ALL, List.of());
+            }
+            LabelsGetter getter = Labels.labelsGetter(labels, cxt);
             filter = Labels.securityFilterByLabel(getter, defaultLabel, cxt);
+
+            // Otherwise named graphs that are entirely visible, or entirely hidden, still need no per-quad lookups
+            NamedGraphVisibility visibility = new NamedGraphVisibility(labels, defaultLabel, cxt);
+            return new DatasetGraphPrunedView(dsgBase, visibility, visibility.filter(filter),
+                                              allNamedGraphs(dsgBase, cxt, g -> !visibility.isHidden(g)),
+                                              new LabelStatistics(labels, defaultLabel, cxt));
         }
-        return new DatasetGraphFilteredView(dsgBase, filter, new AllNamedGraphs(dsgBase));
+        return new DatasetGraphFilteredView(dsgBase, filter, allNamedGraphs(dsgBase, cxt, null));
+    }
+
+    /**
+     * Scans in parallel, with up to {@link ABAC#parallelScanThreads} threads, where the filtered view requires per-quad
+     * label filtering, see {@link ParallelFilteredScan}.
+     */
+    @Override
+    public void forEachQuad(DatasetGraphABAC dsgAuthz, CxtABAC cxt, Quad pattern, Consumer<Quad> action) {
+        int threads = ABAC.parallelScanThreads;
+        if (threads <= 1 || Quad.isUnionGraph(pattern.getGraph())) {
+            DatasetFilterProvider.super.forEachQuad(dsgAuthz, cxt, pattern, action);
+            return;
+        }
+        // Label decisions are made, and cached, by several threads at once
+        cxt.concurrent();
+        DatasetGraph dsg = filterDataset(dsgAuthz, cxt);
+        if (dsg instanceof DatasetGraphPrunedView pruned) {
+            ParallelFilteredScan.forEach(pruned, pattern, action, threads);
+        } else {
+            // Every quad has the same visibility so there's no filtering worth parallelising
+            dsg.find(pattern).forEachRemaining(action);
+        }
+    }
+
+    private static AllNamedGraphs allNamedGraphs(DatasetGraph dsgBase, CxtABAC cxt, Predicate<Node> graphFilter) {
+        Supplier<Set<Node>> shared = cxt != null ? cxt.namedGraphs() : null;
+        return shared != null
+               ? new AllNamedGraphs(shared, graphFilter)
+               : new AllNamedGraphs(dsgBase, graphFilter);
     }
 }
@@ -0,0 +1,75 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.engine.LabelSelectivity;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Node;
+
+/**
+ * Estimates, for a single request, the fraction of the quads with each predicate that are visible to the request from
+ * the per-label counts of a labels store, see {@link LabelsStore#labelCounts(Node, int)}.  Each predicate is estimated
+ * at most once per request.
+ * <p>
+ * Only labelled quads are counted by the labels store, so the estimate is the visible fraction of the labelled quads
+ * with the predicate, and is {@code 1.0} where the store has no counts, or holds more distinct labels than
+ * {@link ABAC#constantDecisionLabelLimit}.
+ * </p>
+ */
+class LabelStatistics implements LabelSelectivity {
+
+    private final LabelsStore labels;
+    private final Predicate<Label> labelFilter;
+    private final Map<Node, Double> predicates = new ConcurrentHashMap<>();
+
+    LabelStatistics(LabelsStore labels, Label defaultLabel, CxtABAC cxt) {
+        this.labels = labels;
+        this.labelFilter = Labels.labelFilter(defaultLabel, cxt);
+    }
+
+    @Override
+    public double selectivity(Node predicate) {
+        if (predicate == null || !predicate.isConcrete()) {
+            predicate = Node.ANY;
+        }
+        return predicates.computeIfAbsent(predicate, this::estimate);
+    }
+
+    private double estimate(Node predicate) {
+        Map<Label, Long> counts = labels.labelCounts(predicate, ABAC.constantDecisionLabelLimit);
+        if (counts == null) {
+            return 1.0;
+        }
+        long total = 0;
+        long visible = 0;
+        for (Map.Entry<Label, Long> entry : counts.entrySet()) {
+            total += entry.getValue();
+            if (labelFilter.test(entry.getKey())) {
+                visible += entry.getValue();
+            }
+        }
+        return total == 0 ? 1.0 : (double) visible / total;
+    }
+}
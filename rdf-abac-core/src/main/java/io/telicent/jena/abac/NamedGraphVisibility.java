@@ -0,0 +1,87 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.QuadFilter;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Classifies the named graphs of a dataset, for a single request, as fully visible, fully hidden or mixed based upon
+ * the per-graph label summaries of a labels store, see {@link LabelsStore#distinctLabels(Node, int)}.  Each graph is
+ * classified at most once per request.
+ * <p>
+ * Quads in fully visible or fully hidden graphs need no per-quad label lookups, and fully hidden graphs can be pruned
+ * from the request's view of the dataset entirely.  The default graph is always treated as mixed.
+ * </p>
+ */
+class NamedGraphVisibility {
+
+    enum Visibility {VISIBLE, HIDDEN, MIXED}
+
+    private final LabelsStore labels;
+    private final Label defaultLabel;
+    private final CxtABAC cxt;
+    private final Map<Node, Visibility> graphs = new ConcurrentHashMap<>();
+
+    NamedGraphVisibility(LabelsStore labels, Label defaultLabel, CxtABAC cxt) {
+        this.labels = labels;
+        this.defaultLabel = defaultLabel;
+        this.cxt = cxt;
+    }
+
+    CxtABAC cxt() {
+        return cxt;
+    }
+
+    Visibility visibility(Node graph) {
+        if (graph == null || !graph.isConcrete() || Quad.isDefaultGraph(graph) || Quad.isUnionGraph(graph)) {
+            return Visibility.MIXED;
+        }
+        return graphs.computeIfAbsent(graph, this::classify);
+    }
+
+    private Visibility classify(Node graph) {
+        Boolean decision = Labels.constantDecision(labels, graph, defaultLabel, cxt);
+        if (decision == null) {
+            return Visibility.MIXED;
+        }
+        return decision ? Visibility.VISIBLE : Visibility.HIDDEN;
+    }
+
+    boolean isHidden(Node graph) {
+        return visibility(graph) == Visibility.HIDDEN;
+    }
+
+    /**
+     * Wraps a per-quad label filter so that it's only consulted for quads in mixed graphs
+     */
+    QuadFilter filter(QuadFilter labelFilter) {
+        return quad -> switch (visibility(quad.getGraph())) {
+            case VISIBLE -> true;
+            case HIDDEN -> false;
+            case MIXED -> labelFilter.test(quad);
+        };
+    }
+}
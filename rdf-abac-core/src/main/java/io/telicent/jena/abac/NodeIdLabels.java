@@ -0,0 +1,101 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.telicent.jena.abac.labels.Label;
+import org.apache.jena.atlas.lib.tuple.Tuple;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.store.NodeId;
+
+/**
+ * Labels of the rows of a TDB2 database, keyed by the rows' {@link NodeId}s, so that labels can be found without
+ * decoding the rows' nodes.  Triples of the default graph are keyed by their 3 {@link NodeId}s, and quads by their 4.
+ * <p>
+ * NodeIds are only meaningful within a single TDB2 storage, which changes on compaction, and the labels are those as of
+ * a single {@link io.telicent.jena.abac.core.DatasetGraphABAC#dataVersion()} and
+ * {@link io.telicent.jena.abac.core.DatasetGraphABAC#labelsVersion()}.  Labels are only added while the data and labels
+ * are still at those versions, so the labels held are always those of those versions.
+ * </p>
+ */
+class NodeIdLabels {
+
+    private final DatasetGraphTDB storage;
+    private final long version;
+    private final long labelsVersion;
+    private final Cache<Tuple<NodeId>, Label> labels;
+
+    /**
+     * Creates new empty labels
+     *
+     * @param storage TDB2 storage the NodeIds belong to
+     * @param version       Data version the labels are for
+     * @param labelsVersion Labels version the labels are for
+     * @param maxSize       Maximum number of rows to hold labels for
+     */
+    NodeIdLabels(DatasetGraphTDB storage, long version, long labelsVersion, long maxSize) {
+        this.storage = storage;
+        this.version = version;
+        this.labelsVersion = labelsVersion;
+        this.labels = Caffeine.newBuilder().maximumSize(maxSize).build();
+    }
+
+    DatasetGraphTDB storage() {
+        return storage;
+    }
+
+    long version() {
+        return version;
+    }
+
+    long labelsVersion() {
+        return labelsVersion;
+    }
+
+    /**
+     * The label of a row
+     *
+     * @param row Row NodeIds
+     * @return Label, {@link Label#EMPTY} if the row is known to have no label, or {@code null} if not known
+     */
+    Label get(Tuple<NodeId> row) {
+        return labels.getIfPresent(row);
+    }
+
+    /**
+     * Records the label of a row, provided the data and labels are still at the versions these labels are for.  The
+     * current versions must be taken after the label was looked up.
+     *
+     * @param row                  Row NodeIds
+     * @param label                Label, {@code null} if the row has no label
+     * @param currentVersion       Current data version
+     * @param currentLabelsVersion Current labels version
+     */
+    void put(Tuple<NodeId> row, Label label, long currentVersion, long currentLabelsVersion) {
+        if (currentVersion == version && currentLabelsVersion == labelsVersion) {
+            labels.put(row, label == null ? Label.EMPTY : label);
+        }
+    }
+
+    /**
+     * Number of rows whose labels are held
+     */
+    long size() {
+        return labels.estimatedSize();
+    }
+}
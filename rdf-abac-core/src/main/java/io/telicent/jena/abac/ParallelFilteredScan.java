@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import io.telicent.jena.abac.core.QuadFilter;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Applies an action to the quads of a {@link DatasetGraphPrunedView} matching a pattern using a fork-join pool.
+ * <p>
+ * The scan is split by graph, the default graph plus each named graph not fully hidden from the request, and each
+ * graph is scanned by its own task.  Scanned quads are handed off in batches to further tasks that look up their
+ * labels, decide their visibility and apply the action to those that are visible, so a scan of a single graph still
+ * spreads the label filtering across threads.
+ * </p>
+ * <p>
+ * Tasks run via {@link DatasetGraphPrunedView#runScan(Runnable)} so they read the dataset as of the calling thread's
+ * transaction.  If a write commits during the scan, so that a task can no longer do that, its graph or batch is left to
+ * the calling thread, which finishes the scan itself once the pool is done.
+ * </p>
+ */
+class ParallelFilteredScan {
+
+    // Number of quads scanned before they're handed off to be filtered
+    private static final int BATCH_SIZE = 1024;
+
+    private final DatasetGraphPrunedView view;
+    private final QuadFilter filter;
+    private final Quad pattern;
+    private final Consumer<Quad> action;
+    // Maximum batches awaiting filtering, bounding the quads held in memory when filtering falls behind the scan
+    private final int maxPending;
+    // Graphs and batches left for the calling thread as the tasks couldn't read the dataset as of its transaction
+    private final Queue<Node> leftGraphs = new ConcurrentLinkedQueue<>();
+    private final Queue<List<Quad>> leftBatches = new ConcurrentLinkedQueue<>();
+    // Set once a batch has been left, after which scanning tasks filter their own batches rather than handing them off
+    private volatile boolean filterInline = false;
+
+    private ParallelFilteredScan(DatasetGraphPrunedView view, Quad pattern, Consumer<Quad> action, int threads) {
+        this.view = view;
+        this.filter = view.scanFilter();
+        this.pattern = pattern;
+        this.action = action;
+        this.maxPending = 4 * threads;
+    }
+
+    /**
+     * Applies an action to each visible quad matching the pattern, the union graph is not supported
+     *
+     * @param view    Request view of the dataset
+     * @param pattern Quad pattern
+     * @param action  Action, called from several threads at once
+     * @param threads Maximum number of threads to use
+     */
+    static void forEach(DatasetGraphPrunedView view, Quad pattern, Consumer<Quad> action, int threads) {
+        List<Node> graphs = graphs(view, pattern.getGraph());
+        if (graphs.isEmpty()) {
+            return;
+        }
+        view.prepareParallelScans();
+        ParallelFilteredScan scan = new ParallelFilteredScan(view, pattern, action, threads);
+        try (ForkJoinPool pool = new ForkJoinPool(threads)) {
+            pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(
+                    graphs.stream().map(g -> scan.new ScanGraph(g)).toList())));
+        }
+        scan.finish();
+    }
+
+    private static List<Node> graphs(DatasetGraphPrunedView view, Node graph) {
+        if (graph != null && graph.isConcrete()) {
+            return view.visibility().isHidden(graph) ? List.of() : List.of(graph);
+        }
+        // Hidden named graphs have already been removed from the visible graphs
+        List<Node> graphs = new ArrayList<>();
+        graphs.add(Quad.defaultGraphIRI);
+        graphs.addAll(view.visibleGraphs());
+        return graphs;
+    }
+
+    /**
+     * Scans, and filters, whatever the tasks left, in the calling thread
+     */
+    private void finish() {
+        List<Quad> batch;
+        while ((batch = leftBatches.poll()) != null) {
+            filter(batch);
+        }
+        Node graph;
+        while ((graph = leftGraphs.poll()) != null) {
+            Iterator<Quad> quads = view.scanGraph(graph, pattern.getSubject(), pattern.getPredicate(),
+                                                  pattern.getObject());
+            try {
+                quads.forEachRemaining(this::filter);
+            } finally {
+                Iter.close(quads);
+            }
+        }
+    }
+
+    private void filter(List<Quad> batch) {
+        batch.forEach(this::filter);
+    }
+
+    private void filter(Quad quad) {
+        if (filter.test(quad)) {
+            action.accept(quad);
+        }
+    }
+
+    private class ScanGraph extends RecursiveAction {
+        private final Node graph;
+
+        ScanGraph(Node graph) {
+            this.graph = graph;
+        }
+
+        @Override
+        protected void compute() {
+            if (!view.runScan(this::scan)) {
+                leftGraphs.add(graph);
+            }
+        }
+
+        private void scan() {
+            Deque<FilterBatch> pending = new ArrayDeque<>();
+            Iterator<Quad> quads = view.scanGraph(graph, pattern.getSubject(), pattern.getPredicate(),
+                                                  pattern.getObject());
+            List<Quad> batch = new ArrayList<>(BATCH_SIZE);
+            try {
+                while (quads.hasNext()) {
+                    batch.add(quads.next());
+                    if (batch.size() == BATCH_SIZE) {
+                        if (filterInline) {
+                            filter(batch);
+                            batch.clear();
+                            continue;
+                        }
+                        FilterBatch task = new FilterBatch(batch);
+                        task.fork();
+                        pending.add(task);
+                        batch = new ArrayList<>(BATCH_SIZE);
+                        while (pending.size() > maxPending) {
+                            pending.remove().join();
+                        }
+                    }
+                }
+            } finally {
+                Iter.close(quads);
+            }
+            filter(batch);
+            for (FilterBatch task : pending) {
+                task.join();
+            }
+        }
+    }
+
+    private class FilterBatch extends RecursiveAction {
+        private final List<Quad> batch;
+
+        FilterBatch(List<Quad> batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        protected void compute() {
+            if (!view.runScan(() -> filter(batch))) {
+                leftBatches.add(batch);
+                filterInline = true;
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import io.telicent.jena.abac.assembler.SecuredDatasetAssembler;
 import io.telicent.jena.abac.attributes.syntax.AEX;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
 import io.telicent.jena.abac.core.VocabAuthzDataset;
+import io.telicent.jena.abac.engine.ABACQueryEngine;
 import io.telicent.jena.abac.engine.UnionGraphQueryEngine;
 import io.telicent.jena.abac.labels.Label;
 import io.telicent.jena.abac.labels.LabelsGetter;
@@ -35,6 +36,52 @@ public class SysABAC {
      */
     public static final String hSecurityLabel = "Security-Label";
 
+    /**
+     * Upload-Commit-Interval : The header requesting that an upload is committed every so many triples or quads.
+     */
+    public static final String hUploadCommitInterval = "Upload-Commit-Interval";
+
+    /**
+     * Upload-Resume-From : The header giving the number of triples or quads at the start of an upload to skip, as
+     * already loaded by an earlier attempt.
+     */
+    public static final String hUploadResumeFrom = "Upload-Resume-From";
+
+    /**
+     * Upload-Checkpoint : The response header giving the number of triples or quads of an upload that have been
+     * committed, from which a failed upload can be resumed.
+     */
+    public static final String hUploadCheckpoint = "Upload-Checkpoint";
+
+    /**
+     * Upload-Skip-Unchanged : The header requesting that the quads of an upload already in the dataset with the same
+     * label are not written again.
+     */
+    public static final String hUploadSkipUnchanged = "Upload-Skip-Unchanged";
+
+    /**
+     * Upload-Added : The response header giving the number of quads of an upload that were not already in the dataset.
+     */
+    public static final String hUploadAdded = "Upload-Added";
+
+    /**
+     * Upload-Unchanged : The response header giving the number of quads of an upload that were already in the dataset
+     * with the same label.
+     */
+    public static final String hUploadUnchanged = "Upload-Unchanged";
+
+    /**
+     * Upload-Relabelled : The response header giving the number of quads of an upload that were already in the dataset
+     * with a different label.
+     */
+    public static final String hUploadRelabelled = "Upload-Relabelled";
+
+    /**
+     * Labels-Continuation : The response header giving the continuation token for the next page of a labels listing,
+     * absent on the last page.
+     */
+    public static final String hLabelsContinuation = "Labels-Continuation";
+
     /** Constant for "deny all" */
     public static final Label denyLabel = Label.fromText(AEX.strDENY);
 
@@ -68,6 +115,7 @@ public class SysABAC {
 
     public static void init() {
         VocabAuthzDataset.init();
+        ABACQueryEngine.register();
         UnionGraphQueryEngine.register();
     }
 }
@@ -0,0 +1,121 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.tdb2.store.DatasetGraphTDB;
+import org.apache.jena.tdb2.sys.TDBInternal;
+
+/**
+ * A Dataset Filter Provider for datasets stored in TDB2 that filters quads by their TDB2 NodeIds as they're scanned,
+ * so that rows hidden from a request are skipped without decoding their nodes from the node table.
+ * <p>
+ * The labels of scanned rows are recorded against their NodeIds, up to a maximum number of rows, and shared between
+ * requests until the next write transaction on the {@link DatasetGraphABAC} commits, or the
+ * {@link LabelsStore#labelsVersion()} changes.  A row's nodes are only decoded if its label is visible to the request or
+ * isn't yet known.  Changes to labels must therefore be made within write transactions on the
+ * {@link DatasetGraphABAC}, as the RDF-ABAC data loaders do, unless made by a store that versions them itself, such as a
+ * secondary or follower labels store.
+ * </p>
+ * <p>
+ * Requests on datasets that aren't stored in TDB2, write transactions, read transactions that began while a write was
+ * committing, and requests for which every label gives the same decision, are handled exactly as by
+ * {@link DefaultDatasetFilterProvider}, as are calls to the lower-level
+ * {@link #filterDataset(DatasetGraph, LabelsStore, io.telicent.jena.abac.labels.Label, CxtABAC)}.
+ * </p>
+ */
+public class TDB2DatasetFilterProvider extends DefaultDatasetFilterProvider {
+
+    /**
+     * Default maximum number of rows, per dataset, whose labels are recorded by NodeId
+     */
+    public static final long DEFAULT_MAX_ROWS = 1_000_000;
+
+    private final long maxRows;
+    private final Map<DatasetGraphABAC, NodeIdLabels> nodeIdLabels = new WeakHashMap<>();
+
+    /**
+     * Creates a provider recording the labels of up to {@value #DEFAULT_MAX_ROWS} rows per dataset
+     */
+    public TDB2DatasetFilterProvider() {
+        this(DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * Creates a provider
+     *
+     * @param maxRows Maximum number of rows, per dataset, whose labels are recorded by NodeId
+     */
+    public TDB2DatasetFilterProvider(long maxRows) {
+        if (maxRows <= 0) {
+            throw new IllegalArgumentException("Maximum rows must be positive");
+        }
+        this.maxRows = maxRows;
+    }
+
+    @Override
+    public DatasetGraph filterDataset(DatasetGraphABAC dsgAuthz, CxtABAC cxt) {
+        DatasetGraph view = super.filterDataset(dsgAuthz, cxt);
+        // Only requests needing per-quad label lookups benefit
+        if (!(view instanceof DatasetGraphPrunedView pruned) || cxt.debug()) {
+            return view;
+        }
+        NodeIdLabels labels = nodeIdLabels(dsgAuthz);
+        if (labels == null) {
+            return view;
+        }
+        return new DatasetGraphNodeIdView(pruned, labels, dsgAuthz,
+                                          Labels.labelsGetter(dsgAuthz.labelsStore(), cxt),
+                                          Labels.labelFilter(dsgAuthz.getDefaultLabel(), cxt));
+    }
+
+    /**
+     * The NodeId labels for the current transaction's view of the dataset, if they can be shared
+     */
+    private NodeIdLabels nodeIdLabels(DatasetGraphABAC dsgAuthz) {
+        DatasetGraph base = dsgAuthz.getData();
+        if (!TDBInternal.isTDB2(base) || dsgAuthz.transactionType() != TxnType.READ) {
+            return null;
+        }
+        long version = dsgAuthz.transactionDataVersion();
+        if (version < 0 || (version & 1) != 0) {
+            return null;
+        }
+        // Labels of replica and follower stores change outside of write transactions on the dataset
+        long labelsVersion = dsgAuthz.labelsVersion();
+        DatasetGraphTDB storage = TDBInternal.getDatasetGraphTDB(base);
+        synchronized (nodeIdLabels) {
+            NodeIdLabels labels = nodeIdLabels.get(dsgAuthz);
+            // Storage changes on compaction, and NodeIds along with it
+            if (labels == null || labels.storage() != storage || labels.version() < version
+                    || labels.labelsVersion() < labelsVersion) {
+                labels = new NodeIdLabels(storage, version, labelsVersion, maxRows);
+                nodeIdLabels.put(dsgAuthz, labels);
+            }
+            // Older transactions can't use labels of later versions
+            return labels.version() == version && labels.labelsVersion() == labelsVersion ? labels : null;
+        }
+    }
+}
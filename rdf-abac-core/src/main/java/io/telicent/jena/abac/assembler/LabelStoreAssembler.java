@@ -17,12 +17,18 @@
 package io.telicent.jena.abac.assembler;
 
 import io.telicent.jena.abac.labels.*;
+import io.telicent.jena.abac.labels.changes.LabelsChangeFollower;
+import io.telicent.jena.abac.labels.changes.LabelsChangeLog;
+import io.telicent.jena.abac.labels.changes.LabelsStoreFollower;
+import io.telicent.jena.abac.labels.changes.LabelsStoreWithChangeLog;
 import io.telicent.jena.abac.labels.hashing.Hasher;
 import io.telicent.jena.abac.labels.hashing.HasherUtil;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDBSecondary;
 import org.apache.jena.assembler.exceptions.AssemblerException;
 import org.apache.jena.atlas.lib.IRILib;
 import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.rdf.model.Property;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.StmtIterator;
@@ -39,6 +45,7 @@ import org.rocksdb.RocksDBException;
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 
 import static io.telicent.jena.abac.core.VocabAuthzDataset.*;
 
@@ -48,6 +55,9 @@ import static io.telicent.jena.abac.core.VocabAuthzDataset.*;
  */
 public class LabelStoreAssembler {
 
+    /** Default interval between a follower label store checking its change log */
+    static final Duration DEFAULT_FOLLOW_INTERVAL = Duration.ofSeconds(1);
+
     /*
      *  []
      *      authz:labels         :databaseLabels ;
@@ -74,7 +84,7 @@ public class LabelStoreAssembler {
                     //   "authz:labelslStorePath <file:directory>"
                     // on the DatasetAuthz
                 }
-                return createLabelStoreRocksDB(labelsStoreRoot);
+                return withReplication(labelsStoreRoot, createLabelStoreRocksDB(labelsStoreRoot));
             }
 
             // Not Rocks.
@@ -171,6 +181,13 @@ public class LabelStoreAssembler {
      * <pre>
      *      authz:labelsStorePath <file:directory> ;
      * </pre>
+     *
+     * A read-only secondary instance of a store written by another process:
+     * <pre>
+     *      authz:labelsStore [  authz:labelsStorePath <file:primary> ;
+     *                           authz:labelsStoreSecondaryPath <file:secondary> ;
+     *                           authz:labelsStoreCatchUpInterval 5000 ] ;
+     * </pre>
 
      */
     private static LabelsStore createLabelStoreRocksDB(Resource rootLabelStore) {
@@ -183,6 +200,9 @@ public class LabelStoreAssembler {
         Path dbLocation = Path.of(labelsLocationStr);
         File dbDirectory = dbLocation.toFile();
 
+        if ( rootLabelStore.hasProperty(pLabelsStoreSecondaryPath) )
+            return createLabelStoreRocksDBSecondary(rootLabelStore, dbLocation);
+
         if ( ! Files.exists(dbLocation) ) {
             // Create directory.
             FmtLog.info(Secured.BUILD_LOG, "Create label store directory %s", dbDirectory.getAbsolutePath());
@@ -207,6 +227,95 @@ public class LabelStoreAssembler {
         }
     }
 
+    /**
+     * Wrap a labels store according to its replication settings, either logging its changes
+     * <pre>
+     *      authz:labelsStore [  authz:labelsStorePath <file:directory> ;
+     *                           authz:labelsStoreChangeLog <file:changes.log> ] ;
+     * </pre>
+     * or following the change log of another node
+     * <pre>
+     *      authz:labelsStore [  authz:labelsStorePath <file:directory> ;
+     *                           authz:labelsStoreFollowChangeLog <file:/shared/changes.log> ;
+     *                           authz:labelsStoreFollowInterval 1000 ] ;
+     * </pre>
+     */
+    static LabelsStore withReplication(Resource rootLabelStore, LabelsStore labelsStore) {
+        boolean leader = rootLabelStore.hasProperty(pLabelsStoreChangeLog);
+        boolean follower = rootLabelStore.hasProperty(pLabelsStoreFollowChangeLog);
+        if ( leader && follower )
+            throw new AssemblerException(rootLabelStore, "A labels store can't both write and follow a change log");
+        if ( leader ) {
+            Path changeLog = filePath(rootLabelStore, pLabelsStoreChangeLog);
+            FmtLog.info(Secured.BUILD_LOG, "Logging label store changes to %s", changeLog.toAbsolutePath());
+            return new LabelsStoreWithChangeLog(labelsStore, new LabelsChangeLog(changeLog));
+        }
+        if ( follower ) {
+            Path changeLog = filePath(rootLabelStore, pLabelsStoreFollowChangeLog);
+            FmtLog.info(Secured.BUILD_LOG, "Following label store changes from %s", changeLog.toAbsolutePath());
+            // The position in the log is kept with the local store
+            Path position = filePath(rootLabelStore, pLabelsStorePath).resolve(LabelsChangeFollower.POSITION_FILE);
+            return new LabelsStoreFollower(labelsStore, changeLog, position, getFollowInterval(rootLabelStore));
+        }
+        return labelsStore;
+    }
+
+    private static Path filePath(Resource resource, Property property) {
+        String location = GraphUtils.getAsStringValue(resource, property);
+        if ( location.startsWith("file:") )
+            location = IRILib.IRIToFilename(location);
+        return Path.of(location);
+    }
+
+    /**
+     * Check configuration to see how often a follower label store should check its change log.
+     * @param resource RDF Node representing the given apps configuration
+     * @return follow interval
+     */
+    static Duration getFollowInterval(Resource resource) {
+        if ( ! resource.hasProperty(pLabelsStoreFollowInterval) )
+            return DEFAULT_FOLLOW_INTERVAL;
+        try {
+            return Duration.ofMillis(resource.getProperty(pLabelsStoreFollowInterval).getLong());
+        } catch (IllegalArgumentException ex) {
+            throw new AssemblerException(resource, "The labels store follow interval is in wrong format.");
+        }
+    }
+
+    /**
+     * Open a read-only secondary instance of a RocksDB label store.
+     */
+    private static LabelsStore createLabelStoreRocksDBSecondary(Resource rootLabelStore, Path primaryLocation) {
+        if ( ! Files.isDirectory(primaryLocation) )
+            throw new AssemblerException(rootLabelStore, "Primary labels store '"+primaryLocation+"' does not exist");
+        String secondaryLocationStr = GraphUtils.getAsStringValue(rootLabelStore, pLabelsStoreSecondaryPath);
+        if ( secondaryLocationStr.startsWith("file:") )
+            secondaryLocationStr = IRILib.IRIToFilename(secondaryLocationStr);
+        File secondaryDirectory = new File(secondaryLocationStr);
+        if ( ! secondaryDirectory.exists() ) {
+            FmtLog.info(Secured.BUILD_LOG, "Create secondary label store directory %s", secondaryDirectory.getAbsolutePath());
+            secondaryDirectory.mkdirs();
+        }
+        return Labels.createLabelsStoreRocksDBSecondary(primaryLocation.toFile(), secondaryDirectory, rootLabelStore,
+                                                        getStorageFormat(rootLabelStore),
+                                                        getCatchUpInterval(rootLabelStore));
+    }
+
+    /**
+     * Check configuration to see how often a secondary label store should catch up with its primary.
+     * @param resource RDF Node representing the given apps configuration
+     * @return catch up interval
+     */
+    static Duration getCatchUpInterval(Resource resource) {
+        if ( ! resource.hasProperty(pLabelsStoreCatchUpInterval) )
+            return DictionaryLabelStoreRocksDBSecondary.DEFAULT_CATCH_UP_INTERVAL;
+        try {
+            return Duration.ofMillis(resource.getProperty(pLabelsStoreCatchUpInterval).getLong());
+        } catch (IllegalArgumentException ex) {
+            throw new AssemblerException(resource, "The labels store catch up interval is in wrong format.");
+        }
+    }
+
     /**
      * Create a RocksDB-based label store which stores representations of nodes.
      *
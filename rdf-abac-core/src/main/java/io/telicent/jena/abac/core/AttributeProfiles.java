@@ -0,0 +1,307 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.telicent.jena.abac.AttributeValueSet;
+import io.telicent.jena.abac.Hierarchy;
+import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.labels.Label;
+import org.apache.jena.atlas.lib.Cache;
+
+/**
+ * Label decisions materialised for the most frequently seen request attributes ("attribute profiles") of a dataset,
+ * shared between requests.
+ * <p>
+ * Each distinct label seen is given an integer id, shared by all profiles, and each profile records which labels it
+ * has decided, and which of those are visible, as bitmaps over the label ids.  A label's decision depends only upon the
+ * request attributes, and attribute hierarchies, so profiles are keyed by both and decisions remain valid as the data
+ * changes.  A request made after the hierarchy of one of its attributes has changed has a different profile, so never
+ * sees decisions made against the old hierarchy.  Labels introduced by
+ * later writes are decided the first time a request with the profile meets them, and added to its bitmaps.
+ * </p>
+ * <p>
+ * At most {@code maxProfiles} profiles are kept, favouring the most frequently seen, and each is discarded
+ * {@code expiry} after it was created so that profiles for hierarchies no longer in use don't linger.  Once
+ * {@code maxLabels} labels have been given ids, the ids are discarded along with every profile and both start afresh,
+ * so the label ids held are bounded.  Requests already holding decisions keep them, but decide any further labels for
+ * themselves.
+ * </p>
+ */
+public class AttributeProfiles {
+
+    private final int maxProfiles;
+    private final int maxLabels;
+    private final Duration expiry;
+    private volatile Generation generation;
+
+    /**
+     * Creates new attribute profiles
+     *
+     * @param maxProfiles Maximum number of profiles to keep
+     * @param maxLabels   Maximum number of distinct labels to give ids to
+     * @param expiry      How long a profile is kept for after it was created
+     */
+    public AttributeProfiles(int maxProfiles, int maxLabels, Duration expiry) {
+        if (maxProfiles <= 0) {
+            throw new IllegalArgumentException("Maximum profiles must be positive: " + maxProfiles);
+        }
+        this.maxProfiles = maxProfiles;
+        this.maxLabels = maxLabels;
+        this.expiry = expiry;
+        this.generation = new Generation();
+    }
+
+    /**
+     * The materialised label decisions for a request, keyed by its attributes and the current hierarchies of those
+     * attributes, for use as its label evaluation cache, see {@link CxtABAC#labelDecisions(Cache)}.  The cache is
+     * thread-safe and shared by every request with equal attributes and hierarchies.
+     *
+     * @param cxt Request context
+     * @return Label decisions, or {@code null} if no labels can be given ids
+     */
+    public Cache<Label, ValueTerm> decisions(CxtABAC cxt) {
+        AttributeValueSet attributes = cxt.requestAttributes();
+        List<Hierarchy> hierarchies = new ArrayList<>();
+        attributes.attributes().forEach(attribute -> {
+            Hierarchy hierarchy = cxt.getHierarchy(attribute);
+            if (hierarchy != null) {
+                hierarchies.add(hierarchy);
+            }
+        });
+        return decisions(attributes, hierarchies);
+    }
+
+    /**
+     * The materialised label decisions for the given request attributes, for requests whose attributes have no
+     * hierarchies
+     *
+     * @param attributes Request attributes
+     * @return Label decisions, or {@code null} if no labels can be given ids
+     */
+    public Cache<Label, ValueTerm> decisions(AttributeValueSet attributes) {
+        return decisions(attributes, List.of());
+    }
+
+    /**
+     * The materialised label decisions for the given request attributes and attribute hierarchies
+     *
+     * @param attributes  Request attributes
+     * @param hierarchies Hierarchies of the request attributes
+     * @return Label decisions, or {@code null} if no labels can be given ids
+     */
+    public Cache<Label, ValueTerm> decisions(AttributeValueSet attributes, List<Hierarchy> hierarchies) {
+        if (maxLabels <= 0) {
+            return null;
+        }
+        Generation current = generation;
+        if (current.isFull()) {
+            current = renew(current);
+        }
+        final Generation gen = current;
+        return gen.profiles.get(new Profile(attributes, List.copyOf(hierarchies)), p -> gen.new LabelDecisions());
+    }
+
+    /**
+     * The number of attribute profiles currently kept
+     */
+    public long size() {
+        Generation current = generation;
+        current.profiles.cleanUp();
+        return current.profiles.estimatedSize();
+    }
+
+    /**
+     * The number of distinct labels currently given ids
+     */
+    public int labels() {
+        return generation.labelIds.size();
+    }
+
+    /**
+     * Discards all profiles, and the label ids
+     */
+    public synchronized void clear() {
+        generation = new Generation();
+    }
+
+    /**
+     * Starts afresh once the label ids are used up, unless another thread already has
+     */
+    private synchronized Generation renew(Generation full) {
+        if (generation == full) {
+            generation = new Generation();
+        }
+        return generation;
+    }
+
+    /**
+     * Key for a profile, the request attributes and the hierarchies of those attributes
+     */
+    private record Profile(AttributeValueSet attributes, List<Hierarchy> hierarchies) {}
+
+    /**
+     * The label ids, and the profiles whose decisions are recorded against them, which are discarded together
+     */
+    private class Generation {
+        private final Map<Label, Integer> labelIds = new ConcurrentHashMap<>();
+        private final AtomicInteger nextLabelId = new AtomicInteger();
+        // Caffeine's admission policy keeps the most frequently used profiles once the cache is full
+        private final com.github.benmanes.caffeine.cache.Cache<Profile, LabelDecisions> profiles =
+                Caffeine.newBuilder().maximumSize(maxProfiles).expireAfterWrite(expiry).build();
+
+        boolean isFull() {
+            return nextLabelId.get() >= maxLabels;
+        }
+
+        private int labelId(Label label) {
+            Integer id = labelIds.get(label);
+            if (id != null) {
+                return id;
+            }
+            if (isFull()) {
+                return -1;
+            }
+            return labelIds.computeIfAbsent(label, l -> nextLabelId.getAndIncrement());
+        }
+
+        /**
+         * The decisions for one profile, as bitmaps over the label ids
+         */
+        private class LabelDecisions implements Cache<Label, ValueTerm> {
+            private final ReadWriteLock lock = new ReentrantReadWriteLock();
+            private final BitSet decided = new BitSet();
+            private final BitSet visible = new BitSet();
+
+            private ValueTerm lookup(int id) {
+                lock.readLock().lock();
+                try {
+                    if (!decided.get(id)) {
+                        return null;
+                    }
+                    return visible.get(id) ? ValueTerm.TRUE : ValueTerm.FALSE;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            private void record(int id, boolean decision) {
+                lock.writeLock().lock();
+                try {
+                    decided.set(id);
+                    visible.set(id, decision);
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            @Override
+            public boolean containsKey(Label label) {
+                return getIfPresent(label) != null;
+            }
+
+            @Override
+            public ValueTerm getIfPresent(Label label) {
+                Integer id = labelIds.get(label);
+                return id == null ? null : lookup(id);
+            }
+
+            @Override
+            public ValueTerm get(Label label, Function<Label, ValueTerm> callback) {
+                int id = labelId(label);
+                if (id < 0) {
+                    // Out of label ids, so this label is decided every time
+                    return callback.apply(label);
+                }
+                ValueTerm value = lookup(id);
+                if (value == null) {
+                    value = callback.apply(label);
+                    if (value != null && value.isBoolean()) {
+                        record(id, value.getBoolean());
+                    }
+                }
+                return value;
+            }
+
+            @Override
+            public void put(Label label, ValueTerm value) {
+                int id = labelId(label);
+                if (id >= 0 && value.isBoolean()) {
+                    record(id, value.getBoolean());
+                }
+            }
+
+            @Override
+            public void remove(Label label) {
+                Integer id = labelIds.get(label);
+                if (id != null) {
+                    lock.writeLock().lock();
+                    try {
+                        decided.clear(id);
+                        visible.clear(id);
+                    } finally {
+                        lock.writeLock().unlock();
+                    }
+                }
+            }
+
+            @Override
+            public Iterator<Label> keys() {
+                return labelIds.keySet().stream().filter(this::containsKey).iterator();
+            }
+
+            @Override
+            public boolean isEmpty() {
+                return size() == 0;
+            }
+
+            @Override
+            public void clear() {
+                lock.writeLock().lock();
+                try {
+                    decided.clear();
+                    visible.clear();
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+            @Override
+            public long size() {
+                lock.readLock().lock();
+                try {
+                    return decided.cardinality();
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@ package io.telicent.jena.abac.core;
 
 import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
 
@@ -30,6 +32,7 @@ import io.telicent.jena.abac.labels.Label;
 import org.apache.jena.atlas.lib.Cache;
 import org.apache.jena.atlas.lib.CacheFactory;
 import org.apache.jena.atlas.lib.cache.CacheCaffeine;
+import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.core.DatasetGraph;
 
 /**
@@ -54,10 +57,16 @@ public class CxtABAC {
     // --- Per request caches
 
     /** Cache of evaluations within this request context. */
-    private final Cache<Label, ValueTerm> evalCache;
+    private volatile Cache<Label, ValueTerm> evalCache;
 
     /** Hierarchy lookup cache. Cache can't hold nulls. */
-    private final Cache<Attribute, Optional<Hierarchy>> hierarchyCache;
+    private volatile Cache<Attribute, Optional<Hierarchy>> hierarchyCache;
+
+    /** Whether the caches are safe for use by several threads at once. */
+    private volatile boolean concurrent = false;
+
+    /** Whether the evaluation cache is shared with other requests, see {@link #labelDecisions(Cache)}. */
+    private volatile boolean sharedDecisions = false;
 
     /** The data being protected. */
     private final DatasetGraph baseData;
@@ -66,6 +75,15 @@ public class CxtABAC {
 
     private Track trace;
 
+    /** Explicit scan hint, {@code null} for automatic detection. */
+    private Boolean scanHint = null;
+    /** Named graphs of the data shared across requests, {@code null} if they're listed per request. */
+    private Supplier<Set<Node>> namedGraphs = null;
+    /** Number of label lookups made by this request, possibly by several threads at once. */
+    private final LongAdder labelLookups = new LongAdder();
+    /** Whether the label lookups have exceeded the scan threshold, after which they needn't be summed again. */
+    private volatile boolean scanDetected = false;
+
     public static CxtABAC context(AttributeValueSet requestAttributes,
                                   HierarchyGetter attrHierarchy,
                                   DatasetGraph dsgBase) {
@@ -118,6 +136,15 @@ public class CxtABAC {
         return CacheFactory.createSimpleCache(size);
     }
 
+    static <X,Y> Cache<X,Y> createConcurrentCache(int size) {
+        if ( size <= 0 ) {
+            return CacheFactory.createNullCache();
+        }
+        // For requests evaluated by several threads at once, e.g. parallel scans.
+        // Higher overheads than the simple cache but thread-safe.
+        return CacheFactory.createCache(size);
+    }
+
     static <X,Y> Cache<X,Y> createHierarchyCache(int size) {
         if ( size <= 0 ) {
             return CacheFactory.createNullCache();
@@ -160,6 +187,72 @@ public class CxtABAC {
 
     public Object requestId() { return id; }
 
+    /**
+     * Hint whether this request is a large scan (e.g. a batch export) whose label lookups should not populate shared
+     * label caches. Overrides automatic detection, see {@link ABAC#labelScanThreshold}.
+     */
+    public void scan(boolean isScan) { this.scanHint = isScan; }
+
+    /**
+     * Whether this request is considered to be a scan, either because it was hinted as such, or because it has made
+     * more than {@link ABAC#labelScanThreshold} label lookups.
+     */
+    public boolean isScan() {
+        if ( scanHint != null )
+            return scanHint;
+        if ( scanDetected )
+            return true;
+        if ( ABAC.labelScanThreshold > 0 && labelLookups.sum() > ABAC.labelScanThreshold ) {
+            scanDetected = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Make this context safe for use by several threads at once, e.g. for parallel scans, by switching to thread-safe
+     * caches.  Must be called before the context is shared between threads.  Evaluations cached so far are discarded.
+     */
+    public synchronized void concurrent() {
+        if ( concurrent )
+            return;
+        // Shared label decisions are already thread-safe
+        if ( ! sharedDecisions )
+            evalCache = createConcurrentCache(ABAC.labelEvalCacheSize);
+        hierarchyCache = createConcurrentCache(ABAC.hierarchyCacheSize);
+        concurrent = true;
+    }
+
+    /** Whether this context is safe for use by several threads at once, see {@link #concurrent()}. */
+    public boolean isConcurrent() { return concurrent; }
+
+    /**
+     * Use label decisions shared with other requests with the same attributes, e.g. from
+     * {@link AttributeProfiles#decisions}, in place of this request's own evaluation cache.  The cache must be
+     * thread-safe.  Must be called before the context is used to evaluate labels.
+     */
+    public synchronized void labelDecisions(Cache<Label, ValueTerm> decisions) {
+        evalCache = Objects.requireNonNull(decisions);
+        sharedDecisions = true;
+    }
+
+    /** Whether this request's label decisions are shared with other requests, see {@link #labelDecisions(Cache)}. */
+    public boolean hasSharedDecisions() { return sharedDecisions; }
+
+    /**
+     * Supply the named graphs of the data from a source shared across requests, e.g.
+     * {@link DatasetGraphABAC#namedGraphs()}, rather than listing them for this request.
+     */
+    public void namedGraphs(Supplier<Set<Node>> namedGraphs) { this.namedGraphs = namedGraphs; }
+
+    /** Shared source of the named graphs of the data, or {@code null} if none. */
+    public Supplier<Set<Node>> namedGraphs() { return namedGraphs; }
+
+    /** Record a label lookup made by this request. */
+    public void recordLabelLookup() { labelLookups.increment(); }
+
+    public long labelLookups() { return labelLookups.sum(); }
+
     public void tracking(Track trace) { this.trace = trace; }
     public Track tracking() { return trace; }
 
@@ -22,11 +22,19 @@ import io.telicent.jena.abac.DatasetFilterProvider;
 import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.labels.Label;
 import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Node;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.TxnType;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphWrapper;
+import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.system.Txn;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class DatasetGraphABAC extends DatasetGraphWrapper {
     // Attribute expression used to determine whether access is allowed.
@@ -42,6 +50,17 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
     // Optional dataset  override of the global DatasetFilterProvider.
     private DatasetFilterProvider filterProvider = null;
 
+    // Named graphs of the data, shared by requests until a write transaction commits.  The data version is incremented
+    // both before and after each write commit, so it's odd while a commit is in progress.
+    private final AtomicLong dataVersion = new AtomicLong(0);
+    private final ThreadLocal<Long> txnDataVersion = new ThreadLocal<>();
+    private volatile NamedGraphs namedGraphs = null;
+
+    private record NamedGraphs(long version, Set<Node> graphs) {}
+
+    // Label decisions shared by requests with the same attributes, created when first needed.
+    private volatile AttributeProfiles attributeProfiles = null;
+
     /**
      * API: use {@link ABAC#authzDataset}
      */
@@ -95,6 +114,113 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
         return labelsStore;
     }
 
+    /**
+     * The current version of the protected data.  The version changes whenever a write transaction on this dataset
+     * commits, and is odd while one is committing, so state derived from the data may be shared between requests for
+     * as long as the version is unchanged.  Writes made directly to the underlying dataset are not detected.
+     *
+     * @return Data version
+     */
+    public long dataVersion() {
+        return dataVersion.get();
+    }
+
+    /**
+     * The version of the labels, see {@link LabelsStore#labelsVersion()}.  Labels changed by write transactions on this
+     * dataset change the {@link #dataVersion()} instead.
+     *
+     * @return Labels version
+     */
+    public long labelsVersion() {
+        return labelsStore.labelsVersion();
+    }
+
+    /**
+     * The version of the protected data, see {@link #dataVersion()}, seen by the current read transaction.  If a write
+     * transaction was committing when the transaction began the version is odd, and the transaction may see the data
+     * either before or after that commit.
+     *
+     * @return Data version, or {@code -1} if not in a transaction, in a write transaction, or a write transaction
+     *         committed while the transaction began, so it isn't known which version it sees
+     */
+    public long transactionDataVersion() {
+        if (!super.isInTransaction() || super.transactionMode() == ReadWrite.WRITE) {
+            return -1;
+        }
+        Long txnVersion = txnDataVersion.get();
+        return txnVersion != null ? txnVersion : -1;
+    }
+
+    /**
+     * The named graphs of the protected data, excluding the default graph.
+     * <p>
+     * Listing the named graphs may require a scan of the data, so the result is shared between requests and only
+     * listed again once a write transaction on this dataset has committed.  Within a read transaction the named graphs
+     * are those of the transaction's snapshot.  Writes made directly to the underlying dataset, rather than via this
+     * dataset, are not detected.
+     * </p>
+     *
+     * @return Unmodifiable set of named graphs
+     */
+    public Set<Node> namedGraphs() {
+        boolean inTransaction = super.isInTransaction();
+        if (inTransaction && super.transactionMode() == ReadWrite.WRITE) {
+            // Must see the transaction's own changes
+            return listNamedGraphs();
+        }
+        Long txnVersion = inTransaction ? txnDataVersion.get() : null;
+        long version = txnVersion != null ? txnVersion : dataVersion.get();
+        NamedGraphs cached = this.namedGraphs;
+        if (cached != null && cached.version() == version) {
+            return cached.graphs();
+        }
+        Set<Node> graphs = inTransaction ? listNamedGraphs() : Txn.calculateRead(get(), this::listNamedGraphs);
+        // Only share if no write committed since the version was taken, and none was in progress when it was
+        if ((version & 1) == 0 && dataVersion.get() == version) {
+            this.namedGraphs = new NamedGraphs(version, graphs);
+        }
+        return graphs;
+    }
+
+    /**
+     * The label decisions shared between requests to this dataset with the same attributes, and the same hierarchies of
+     * those attributes, if enabled by {@link ABAC#attributeProfiles}.  Decisions don't depend upon the data, so they are
+     * kept across writes, and labels introduced by writes are decided as requests first meet them.
+     *
+     * @return Attribute profiles, or {@code null} if disabled
+     */
+    public AttributeProfiles attributeProfiles() {
+        if (ABAC.attributeProfiles <= 0) {
+            return null;
+        }
+        AttributeProfiles profiles = this.attributeProfiles;
+        if (profiles == null) {
+            synchronized (this) {
+                profiles = this.attributeProfiles;
+                if (profiles == null) {
+                    profiles = new AttributeProfiles(ABAC.attributeProfiles, ABAC.labelEvalCacheSize,
+                                                     ABAC.attributeProfileExpiry);
+                    this.attributeProfiles = profiles;
+                }
+            }
+        }
+        return profiles;
+    }
+
+    private Set<Node> listNamedGraphs() {
+        Set<Node> graphs = new HashSet<>();
+        Iterator<Node> it = get().listGraphNodes();
+        if (it != null) {
+            while (it.hasNext()) {
+                Node g = it.next();
+                if (g != null && !Quad.isDefaultGraph(g)) {
+                    graphs.add(g);
+                }
+            }
+        }
+        return Set.copyOf(graphs);
+    }
+
     @Override
     public void close() {
         super.close();
@@ -125,10 +251,20 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
         return labelsStore.getTransactional();
     }
 
+    /**
+     * The data version for a transaction that began between two reads of the version, or {@code -1} if a write
+     * transaction committed in between, as the transaction may then see the data either before or after that commit
+     */
+    private long beganDataVersion(long before) {
+        return dataVersion.get() == before ? before : -1;
+    }
+
     @Override
     public void begin() {
+        long version = dataVersion.get();
         getOther().begin();
         super.begin();
+        txnDataVersion.set(beganDataVersion(version));
     }
 
     @Override
@@ -146,14 +282,19 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
     @Override
     public void begin(TxnType type) {
         // Do begin, then call the other so that "other" is inside the transaction.
+        // Take the data version either side so the snapshot is known to be of that version.
+        long version = dataVersion.get();
         super.begin(type);
         getOther().begin(type);
+        txnDataVersion.set(beganDataVersion(version));
     }
 
     @Override
     public void begin(ReadWrite readWrite) {
+        long version = dataVersion.get();
         super.begin(readWrite);
         getOther().begin(readWrite);
+        txnDataVersion.set(beganDataVersion(version));
     }
 
     @Override
@@ -174,8 +315,18 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
 
     @Override
     public void commit() {
-        getOther().commit();
-        super.commit();
+        boolean write = super.transactionMode() == ReadWrite.WRITE;
+        if (write) {
+            dataVersion.incrementAndGet();
+        }
+        try {
+            getOther().commit();
+            super.commit();
+        } finally {
+            if (write) {
+                dataVersion.incrementAndGet();
+            }
+        }
     }
 
     @Override
@@ -186,6 +337,7 @@ public class DatasetGraphABAC extends DatasetGraphWrapper {
 
     @Override
     public void end() {
+        txnDataVersion.remove();
         getOther().end();
         super.end();
     }
@@ -17,6 +17,7 @@
 package io.telicent.jena.abac.core;
 
 import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsSpillBuffer;
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
@@ -30,6 +31,8 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static org.apache.jena.riot.out.NodeFmtLib.strNT;
@@ -39,33 +42,92 @@ import static org.apache.jena.riot.out.NodeFmtLib.strNT;
  * StreamRDF.
  * <p>
  * Discard such data if the collecting graph is null.
+ * <p>
+ * Data quads given the default label for the data are either recorded as patterns in the labels graph, or, if a
+ * labels handler is given, passed straight to the handler as they are parsed, so that only the explicit labels graph
+ * needs to be held in memory.
+ * <p>
+ * The labels graph may instead be collected in a {@link LabelsSpillBuffer}, which holds a bounded number of its triples
+ * in memory and spills the rest to disk.
  */
 public class StreamSplitter extends StreamRDFWrapper {
 
     protected final Graph labelsGraph;
+    private final Consumer<Triple> labelsDest;
+    private final BiConsumer<String, String> labelsPrefixes;
     private final Set<String> warningsIssued = new HashSet<>();
     private final Label dataDftLabels;
     private final boolean useDftLabels;
+    private final BiConsumer<Quad, Label> dftLabelsHandler;
 
     public StreamSplitter(StreamRDF data, Graph labelsGraph, Label dataDftLabels) {
+        this(data, labelsGraph, dataDftLabels, null);
+    }
+
+    /**
+     * Creates a splitter that passes the default label for each data quad straight to a handler, e.g. a labels store,
+     * rather than recording it in the labels graph.  As the labels graph is applied after the data has been parsed,
+     * its explicit labels take precedence over the default label.
+     *
+     * @param data             Destination for the data
+     * @param labelsGraph      Graph collecting the explicit labels
+     * @param dataDftLabels    Label for data quads, {@code null} for none
+     * @param dftLabelsHandler Handler for data quads and their label, {@code null} to record them in the labels graph
+     */
+    public StreamSplitter(StreamRDF data, Graph labelsGraph, Label dataDftLabels,
+                          BiConsumer<Quad, Label> dftLabelsHandler) {
         super(data);
         this.labelsGraph = labelsGraph;
+        this.labelsDest = triple -> labelsGraph.add(triple);
+        this.labelsPrefixes = (prefix, uri) -> labelsGraph.getPrefixMapping().setNsPrefix(prefix, uri);
+        this.dataDftLabels = dataDftLabels;
+        this.useDftLabels = (dataDftLabels != null);
+        this.dftLabelsHandler = dftLabelsHandler;
+    }
+
+    /**
+     * Creates a splitter that collects the explicit labels in a buffer that spills to disk, rather than in a graph.
+     *
+     * @param data             Destination for the data
+     * @param labelsBuffer     Buffer collecting the explicit labels
+     * @param dataDftLabels    Label for data quads, {@code null} for none
+     * @param dftLabelsHandler Handler for data quads and their label, {@code null} to record them in the labels buffer
+     */
+    public StreamSplitter(StreamRDF data, LabelsSpillBuffer labelsBuffer, Label dataDftLabels,
+                          BiConsumer<Quad, Label> dftLabelsHandler) {
+        super(data);
+        this.labelsGraph = null;
+        this.labelsDest = labelsBuffer::add;
+        this.labelsPrefixes = labelsBuffer::prefix;
         this.dataDftLabels = dataDftLabels;
         this.useDftLabels = (dataDftLabels != null);
+        this.dftLabelsHandler = dftLabelsHandler;
     }
 
     @Override
     public void prefix(String prefix, String uri) {
         super.prefix(prefix, uri);
-        labelsGraph.getPrefixMapping().setNsPrefix(prefix, uri);
+        labelsPrefixes.accept(prefix, uri);
     }
 
     private void defaultLabels(Triple triple) {
+        if (dftLabelsHandler != null) {
+            dftLabelsHandler.accept(Quad.create(Quad.defaultGraphIRI, triple), dataDftLabels);
+            return;
+        }
         // Add  [ authz:pattern '...triple...' ;  authz:label "..label.." ] .
         defaultLabels(pattern(triple));
     }
 
     private void defaultLabels(Quad quad) {
+        if (dftLabelsHandler != null) {
+            // Labels for the default graph are always recorded against the default graph IRI
+            if (Quad.isDefaultGraph(quad.getGraph()) && !Quad.defaultGraphIRI.equals(quad.getGraph())) {
+                quad = Quad.create(Quad.defaultGraphIRI, quad.asTriple());
+            }
+            dftLabelsHandler.accept(quad, dataDftLabels);
+            return;
+        }
         // Add [ authz:pattern '...quad...' ; authz:label "..label.." ]
         defaultLabels(pattern(quad));
     }
@@ -74,8 +136,8 @@ public class StreamSplitter extends StreamRDFWrapper {
         Node x = NodeFactory.createBlankNode();
         Triple pattern = Triple.create(x, VocabAuthzLabels.pPattern, patternNode);
         Triple label = Triple.create(x, VocabAuthzLabels.pLabel, NodeFactory.createLiteralString(dataDftLabels.getText()));
-        labelsGraph.add(pattern);
-        labelsGraph.add(label);
+        labelsDest.accept(pattern);
+        labelsDest.accept(label);
     }
 
     private static Node pattern(Triple triple) {
@@ -123,7 +185,7 @@ public class StreamSplitter extends StreamRDFWrapper {
         if (VocabAuthz.graphForLabels.equals(gn)) {
             // Triple in the labels graph.
             // Add to accumulator graph
-            labelsGraph.add(quad.asTriple());
+            labelsDest.accept(quad.asTriple());
             return;
         }
 
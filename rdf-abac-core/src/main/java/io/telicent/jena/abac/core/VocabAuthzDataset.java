@@ -121,6 +121,48 @@ public class VocabAuthzDataset {
     public static Property pLabelsStoreUpdateModeMerge = ResourceFactory.createProperty(NS+"labelsStoreUpdateModeMerge");
     public static Property pLabelsStoreByteBufferSize = ResourceFactory.createProperty(NS+"labelsStoreByteBufferSize");
     public static Property pLabelsStoreByHashFunction = ResourceFactory.createProperty(NS+"labelsStoreByHashFunction");
+    /**
+     * Maximum estimated size, in bytes, of the in-memory label lookup cache of a RocksDB labels store.
+     * Takes precedence over {@link #pLabelsStoreCacheHeapFraction} and gives the store a cache of its own.
+     */
+    public static Property pLabelsStoreCacheSize = ResourceFactory.createProperty(NS+"labelsStoreCacheSize");
+    /**
+     * Fraction, in (0,1], of the maximum heap to use for the in-memory label lookup cache shared by all RocksDB labels
+     * stores without an explicit {@link #pLabelsStoreCacheSize}.  The first store opened fixes the shared budget.
+     */
+    public static Property pLabelsStoreCacheHeapFraction = ResourceFactory.createProperty(NS+"labelsStoreCacheHeapFraction");
+    /**
+     * Total memory budget, in bytes, for RocksDB block cache and write buffers shared by all RocksDB labels stores in
+     * the server.  The first store opened determines the budget.
+     */
+    public static Property pLabelsStoreMemoryBudget = ResourceFactory.createProperty(NS+"labelsStoreMemoryBudget");
+    /**
+     * Whether a new (modern) RocksDB labels store keeps an index from each of its keys back to the original quad, so
+     * that its labels can be exported.  Defaults to false.
+     */
+    public static Property pLabelsStoreQuadIndex = ResourceFactory.createProperty(NS+"labelsStoreQuadIndex");
+    /**
+     * Directory for a read-only secondary instance of a (modern) RocksDB labels store whose primary, written by another
+     * process, is at {@link #pLabelsStorePath}.
+     */
+    public static Property pLabelsStoreSecondaryPath = ResourceFactory.createProperty(NS+"labelsStoreSecondaryPath");
+    /**
+     * Interval, in milliseconds, between a secondary labels store catching up with its primary.
+     */
+    public static Property pLabelsStoreCatchUpInterval = ResourceFactory.createProperty(NS+"labelsStoreCatchUpInterval");
+    /**
+     * File to which every change made to the labels store is logged, for replication to follower nodes.
+     */
+    public static Property pLabelsStoreChangeLog = ResourceFactory.createProperty(NS+"labelsStoreChangeLog");
+    /**
+     * Change log file, written by another node's {@link #pLabelsStoreChangeLog}, that this labels store follows.  The
+     * labels store is then read-only.
+     */
+    public static Property pLabelsStoreFollowChangeLog = ResourceFactory.createProperty(NS+"labelsStoreFollowChangeLog");
+    /**
+     * Interval, in milliseconds, between a follower labels store checking its change log for new changes.
+     */
+    public static Property pLabelsStoreFollowInterval = ResourceFactory.createProperty(NS+"labelsStoreFollowInterval");
 
     // -- Dataset attribute settings.
 
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac.engine;
+
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFilteredView;
+import org.apache.jena.sparql.engine.Plan;
+import org.apache.jena.sparql.engine.QueryEngineFactory;
+import org.apache.jena.sparql.engine.QueryEngineRegistry;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.engine.main.QueryEngineMain;
+import org.apache.jena.sparql.mgt.Explain;
+import org.apache.jena.sparql.util.Context;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * A query engine for {@link DatasetGraphABAC} datasets that takes the request's visibility of the data into account
+ * when ordering triple patterns.
+ * <p>
+ * Activated by the {@value #ENV_QUERY_STATISTICS} environment variable.  When {@code true}, and the filtered view of
+ * the dataset implements {@link LabelSelectivity}, the query is wrapped in an {@link OpABAC} operator whose basic graph
+ * patterns are reordered using Jena's fixed weightings scaled by the fraction of quads with each pattern's predicate
+ * that are visible to the request.  When the variable is absent or {@code false} the factory will not accept queries
+ * and Jena's standard {@code QueryEngineMain} handles them instead.
+ * </p>
+ * <p>
+ * The {@link UnionGraphQueryEngine} extends this engine, so also applies the statistics when enabled.
+ * </p>
+ */
+public class ABACQueryEngine extends QueryEngineMain {
+
+    /**
+     * Environment variable that enables label statistics for query planning.
+     */
+    static final String ENV_QUERY_STATISTICS = "ABAC_QUERY_STATISTICS";
+
+    /**
+     * Reads {@value #ENV_QUERY_STATISTICS} from the environment. Can be overridden in tests.
+     */
+    static BooleanSupplier statisticsCheck = () -> Boolean.parseBoolean(System.getenv(ENV_QUERY_STATISTICS));
+
+    public ABACQueryEngine(Query query, DatasetGraph dsg, Binding input, Context context) {
+        super(query, dsg, input, context);
+    }
+
+    public ABACQueryEngine(Op op, DatasetGraph dsg, Binding input, Context context) {
+        super(op, dsg, input, context);
+    }
+
+    /**
+     * Wraps the query in an {@link OpABAC} operator when label statistics are enabled and available for the dataset.
+     */
+    @Override
+    public QueryIterator eval(Op op, DatasetGraph dsg, Binding input, Context context) {
+        if (statisticsCheck.getAsBoolean() && dsg instanceof LabelSelectivity selectivity) {
+            op = new OpABAC(op, selectivity);
+            Explain.explain("ABAC", op, context);
+        }
+        return super.eval(op, dsg, input, context);
+    }
+
+    // ---- Factory
+
+    private static final QueryEngineFactory factory = new ABACQueryEngineFactory();
+
+    public static QueryEngineFactory getFactory() {
+        return factory;
+    }
+
+    /**
+     * Register with the global {@link QueryEngineRegistry}.
+     */
+    public static void register() {
+        if (!QueryEngineRegistry.containsFactory(factory))
+            QueryEngineRegistry.addFactory(factory);
+    }
+
+    /**
+     * Remove from the global {@link QueryEngineRegistry}.
+     */
+    public static void unregister() {
+        QueryEngineRegistry.removeFactory(factory);
+    }
+
+    private static class ABACQueryEngineFactory implements QueryEngineFactory {
+
+        private static boolean accept(DatasetGraph dsg) {
+            // Union graph routing takes precedence, that engine applies the statistics itself
+            return statisticsCheck.getAsBoolean() && !UnionGraphQueryEngine.routingCheck.getAsBoolean() &&
+                    dsg instanceof DatasetGraphFilteredView;
+        }
+
+        @Override
+        public boolean accept(Query query, DatasetGraph dsg, Context context) {
+            return accept(dsg);
+        }
+
+        @Override
+        public Plan create(Query query, DatasetGraph dsg, Binding input, Context context) {
+            return new ABACQueryEngine(query, dsg, input, context).getPlan();
+        }
+
+        @Override
+        public boolean accept(Op op, DatasetGraph dsg, Context context) {
+            return accept(dsg);
+        }
+
+        @Override
+        public Plan create(Op op, DatasetGraph dsg, Binding input, Context context) {
+            return new ABACQueryEngine(op, dsg, input, context).getPlan();
+        }
+    }
+}
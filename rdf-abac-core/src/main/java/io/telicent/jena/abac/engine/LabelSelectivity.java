@@ -0,0 +1,36 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac.engine;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * Implemented by per-request views of a dataset that can estimate what fraction of the quads with a given predicate
+ * are visible to the request, based upon label statistics held by the labels store.  Used by the
+ * {@link ABACQueryEngine} to adjust the optimiser's cardinality estimates for triple patterns.
+ */
+public interface LabelSelectivity {
+
+    /**
+     * Estimates the fraction of the quads with a given predicate that are visible to the request
+     *
+     * @param predicate Predicate, or {@link Node#ANY} for all quads
+     * @return Fraction, between {@code 0.0} and {@code 1.0}, which is {@code 1.0} if unknown
+     */
+    double selectivity(Node predicate);
+}
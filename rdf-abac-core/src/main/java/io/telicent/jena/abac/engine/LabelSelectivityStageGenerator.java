@@ -0,0 +1,66 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac.engine;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.main.StageGeneratorGeneric;
+import org.apache.jena.sparql.engine.optimizer.reorder.PatternTriple;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderFixed;
+import org.apache.jena.sparql.engine.optimizer.reorder.ReorderTransformation;
+
+/**
+ * A stage generator that reorders basic graph patterns using Jena's fixed weightings, scaled by the fraction of the
+ * quads with each pattern's predicate that are visible to the request.  Patterns whose matches are mostly hidden from
+ * the request are therefore evaluated earlier.
+ */
+class LabelSelectivityStageGenerator extends StageGeneratorGeneric {
+
+    private final ReorderTransformation reorder;
+
+    LabelSelectivityStageGenerator(LabelSelectivity selectivity) {
+        this.reorder = new LabelSelectivityReorder(selectivity);
+    }
+
+    @Override
+    public QueryIterator execute(BasicPattern pattern, QueryIterator input, ExecutionContext execCxt) {
+        return execute(pattern, reorder, input, execCxt);
+    }
+
+    static class LabelSelectivityReorder extends ReorderFixed {
+
+        private final LabelSelectivity selectivity;
+
+        LabelSelectivityReorder(LabelSelectivity selectivity) {
+            this.selectivity = selectivity;
+        }
+
+        @Override
+        public double weight(PatternTriple pt) {
+            double weight = super.weight(pt);
+            if (weight <= 0) {
+                return weight;
+            }
+            // Predicates that are variables, or bound by an earlier pattern, are estimated across all quads
+            Node predicate = pt.predicate.isNode() ? pt.predicate.getNode() : Node.ANY;
+            return weight * selectivity.selectivity(predicate);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac.engine;
+
+import java.util.Objects;
+
+import org.apache.jena.atlas.io.IndentedWriter;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.OpExt;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sparql.engine.main.StageBuilder;
+import org.apache.jena.sparql.serializer.SerializationContext;
+import org.apache.jena.sparql.util.NodeIsomorphismMap;
+
+/**
+ * An algebra operator marking the part of a query evaluated against an ABAC filtered dataset, whose basic graph
+ * patterns are reordered using the request's {@link LabelSelectivity}.  Its effective operator is the operator it
+ * wraps, so engines that don't recognise it evaluate the query as normal.
+ */
+class OpABAC extends OpExt {
+
+    private static final String TAG = "abac";
+
+    private final Op subOp;
+    private final LabelSelectivity selectivity;
+
+    OpABAC(Op subOp, LabelSelectivity selectivity) {
+        super(TAG);
+        this.subOp = Objects.requireNonNull(subOp);
+        this.selectivity = Objects.requireNonNull(selectivity);
+    }
+
+    @Override
+    public Op effectiveOp() {
+        return subOp;
+    }
+
+    @Override
+    public QueryIterator eval(QueryIterator input, ExecutionContext execCxt) {
+        StageBuilder.setGenerator(execCxt.getContext(), new LabelSelectivityStageGenerator(selectivity));
+        return QC.execute(subOp, input, execCxt);
+    }
+
+    @Override
+    public void outputArgs(IndentedWriter out, SerializationContext sCxt) {
+        out.println();
+        subOp.output(out, sCxt);
+    }
+
+    @Override
+    public int hashCode() {
+        return subOp.hashCode() ^ TAG.hashCode();
+    }
+
+    @Override
+    public boolean equalTo(Op other, NodeIsomorphismMap labelMap) {
+        return other instanceof OpABAC opABAC && subOp.equalTo(opABAC.subOp, labelMap);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac.engine;
+
+/**
+ * Implemented by per-request views of a dataset that may be scanned by several threads at once, e.g. by a
+ * {@link ParallelUnionGraph}.  Views that don't implement this are only ever scanned by one thread at a time.
+ * <p>
+ * The request's own thread calls {@link #prepareParallelScans()}, within its transaction if it has one, before it
+ * shares the view with the scanning threads, each of which then scans the view via {@link #runScan(Runnable)}.
+ * </p>
+ */
+public interface ParallelScans {
+
+    /**
+     * Prepare this view for scans by several threads at once, must be called by the request's own thread before the
+     * view is shared between threads
+     */
+    void prepareParallelScans();
+
+    /**
+     * Runs a scan of this view on a scanning thread, in a read transaction that sees the same data as the transaction
+     * of the thread that prepared the scans.
+     *
+     * @param scan Scan
+     * @return Whether the scan was run, it is not if the thread can't be given a transaction that sees the same data,
+     *         e.g. because a write has committed since the request's transaction began, in which case the scan must be
+     *         left to the request's own thread
+     */
+    boolean runScan(Runnable scan);
+}
@@ -0,0 +1,343 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.engine;
+
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.graph.impl.GraphBase;
+import org.apache.jena.query.QueryCancelledException;
+import org.apache.jena.query.QueryExecException;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A read-only view of the union of the named graphs of a dataset that scans the named graphs in parallel.
+ * <p>
+ * A {@link #find(Triple)} whose subject and object are both unbound scans the named graphs of the dataset, through the
+ * dataset so that any filtering it applies, e.g. label filtering, is applied, using up to {@code parallelism} virtual
+ * threads.  The scanned triples are merged as they are found and, as for any union graph, a triple found in several
+ * named graphs is only returned once.  Only datasets that implement {@link ParallelScans}, and so can be made safe for
+ * scans by several threads at once, are scanned in parallel.  Any other dataset, and any narrower find, which would
+ * gain little from parallel scans and may be repeated for every solution of a join, is answered by the dataset's own
+ * union graph in the calling thread.
+ * </p>
+ * <p>
+ * The scanning threads only scan via {@link ParallelScans#runScan(Runnable)}, so see the same data as the calling
+ * thread's transaction.  Any graphs they can't scan, e.g. because a write has committed since that transaction began,
+ * are scanned by the calling thread itself.
+ * </p>
+ * <p>
+ * Triples are de-duplicated using a set of those already returned, up to {@code maxSeen} of them.  After that a triple
+ * not in the set is only returned when found in the first of the named graphs that holds it, which costs a lookup of
+ * the triple across the named graphs but no more memory.
+ * </p>
+ */
+class ParallelUnionGraph extends GraphBase {
+
+    /** Default maximum number of returned triples remembered in order to de-duplicate them. */
+    static final int DEFAULT_MAX_SEEN = 100_000;
+
+    private static final int BATCH_SIZE = 256;
+    private static final Batch END = new Batch(-1, List.of());
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final DatasetGraph dsg;
+    private final int parallelism;
+    private final int maxSeen;
+    private List<Node> graphs = null;
+
+    /**
+     * Creates a new parallel union graph
+     *
+     * @param dsg         Dataset whose named graphs are unioned
+     * @param parallelism Maximum number of named graphs scanned concurrently by a single find
+     */
+    ParallelUnionGraph(DatasetGraph dsg, int parallelism) {
+        this(dsg, parallelism, DEFAULT_MAX_SEEN);
+    }
+
+    /**
+     * Creates a new parallel union graph
+     *
+     * @param dsg         Dataset whose named graphs are unioned
+     * @param parallelism Maximum number of named graphs scanned concurrently by a single find
+     * @param maxSeen     Maximum number of returned triples remembered, by each find, in order to de-duplicate them
+     */
+    ParallelUnionGraph(DatasetGraph dsg, int parallelism, int maxSeen) {
+        this.dsg = Objects.requireNonNull(dsg, "Dataset Graph cannot be null");
+        this.parallelism = parallelism;
+        this.maxSeen = maxSeen;
+    }
+
+    private List<Node> graphs() {
+        if (graphs == null) {
+            graphs = Iter.toList(Iter.filter(dsg.listGraphNodes(), g -> g != null && !Quad.isDefaultGraph(g)));
+        }
+        return graphs;
+    }
+
+    @Override
+    protected ExtendedIterator<Triple> graphBaseFind(Triple triple) {
+        // Only wide finds, on views prepared for scans by several threads at once, are scanned in parallel
+        if (parallelism <= 1 || !isWide(triple) || !(dsg instanceof ParallelScans scans)) {
+            return dsg.getUnionGraph().find(triple);
+        }
+        List<Node> graphNodes = graphs();
+        if (graphNodes.size() <= 1) {
+            return dsg.getUnionGraph().find(triple);
+        }
+        scans.prepareParallelScans();
+        ParallelFind find = new ParallelFind(scans, graphNodes, triple);
+        find.start();
+        return find;
+    }
+
+    private static boolean isWide(Triple triple) {
+        return !triple.getSubject().isConcrete() && !triple.getObject().isConcrete();
+    }
+
+    /**
+     * A batch of triples scanned from the named graph with the given index
+     */
+    private record Batch(int graph, List<Triple> triples) {}
+
+    /**
+     * Iterator over the merged results of scanning each named graph.  Scanning threads pass batches of triples to the
+     * consuming thread through a bounded queue, so a slow consumer holds the scans back rather than them being
+     * buffered in memory.
+     */
+    private class ParallelFind extends NiceIterator<Triple> {
+        private final ParallelScans scans;
+        private final List<Node> graphNodes;
+        private final Triple pattern;
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(parallelism * 4);
+        private final AtomicInteger nextGraph = new AtomicInteger();
+        private final AtomicInteger running = new AtomicInteger();
+        private final Set<Triple> seen = new HashSet<>();
+        private Map<Node, Integer> graphIndexes = null;
+        private volatile boolean stopped = false;
+        private volatile boolean closed = false;
+        private volatile Throwable error = null;
+        private Iterator<Triple> current = Collections.emptyIterator();
+        private int currentGraph = -1;
+        // Quads of a graph being scanned by the consuming thread itself
+        private Iterator<Quad> localQuads = null;
+        private Triple slot = null;
+        private boolean finished = false;
+
+        ParallelFind(ParallelScans scans, List<Node> graphNodes, Triple pattern) {
+            this.scans = scans;
+            this.graphNodes = graphNodes;
+            this.pattern = pattern;
+        }
+
+        void start() {
+            int workers = Math.min(parallelism, graphNodes.size());
+            running.set(workers);
+            for (int i = 0; i < workers; i++) {
+                EXECUTOR.execute(this::scan);
+            }
+        }
+
+        private void scan() {
+            try {
+                // If the scan can't be run the graphs are left for the consuming thread
+                scans.runScan(this::scanGraphs);
+            } catch (Throwable e) {
+                error = e;
+                stopped = true;
+            } finally {
+                if (running.decrementAndGet() == 0) {
+                    offer(END);
+                }
+            }
+        }
+
+        private void scanGraphs() {
+            int i;
+            while (!stopped && !closed && (i = nextGraph.getAndIncrement()) < graphNodes.size()) {
+                Node g = graphNodes.get(i);
+                Iterator<Quad> quads = dsg.find(g, pattern.getSubject(), pattern.getPredicate(), pattern.getObject());
+                try {
+                    List<Triple> batch = new ArrayList<>(BATCH_SIZE);
+                    while (!closed && quads.hasNext()) {
+                        batch.add(quads.next().asTriple());
+                        if (batch.size() == BATCH_SIZE) {
+                            offer(new Batch(i, batch));
+                            batch = new ArrayList<>(BATCH_SIZE);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        offer(new Batch(i, batch));
+                    }
+                } finally {
+                    Iter.close(quads);
+                }
+            }
+        }
+
+        private void offer(Batch batch) {
+            try {
+                while (!closed) {
+                    if (queue.offer(batch, 50, TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                closed = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (slot == null) {
+                if (current.hasNext()) {
+                    Triple t = current.next();
+                    if (firstSeen(currentGraph, t)) {
+                        slot = t;
+                    }
+                    continue;
+                }
+                if (!advance()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Moves on to the next batch of triples from the scanning threads or, once they have all finished, to the next
+         * graph they left unscanned
+         */
+        private boolean advance() {
+            closeLocal();
+            if (closed) {
+                return false;
+            }
+            if (!finished) {
+                Batch batch = take();
+                if (batch != END) {
+                    current = batch.triples().iterator();
+                    currentGraph = batch.graph();
+                    return true;
+                }
+                finished = true;
+                if (error != null) {
+                    throw rethrow(error);
+                }
+            }
+            int i = nextGraph.getAndIncrement();
+            if (i >= graphNodes.size()) {
+                return false;
+            }
+            localQuads = dsg.find(graphNodes.get(i), pattern.getSubject(), pattern.getPredicate(), pattern.getObject());
+            current = Iter.map(localQuads, Quad::asTriple);
+            currentGraph = i;
+            return true;
+        }
+
+        /**
+         * Whether a triple found in the given graph is returned, i.e. hasn't already been
+         */
+        private boolean firstSeen(int graph, Triple t) {
+            if (seen.size() < maxSeen) {
+                return seen.add(t);
+            }
+            // Past the bound a triple is only returned from the first graph holding it, unless already returned
+            return !seen.contains(t) && firstGraph(t) == graph;
+        }
+
+        /**
+         * The index of the first of the named graphs that holds a triple, as seen by the consuming thread
+         */
+        private int firstGraph(Triple t) {
+            if (graphIndexes == null) {
+                graphIndexes = new HashMap<>();
+                for (int i = 0; i < graphNodes.size(); i++) {
+                    graphIndexes.putIfAbsent(graphNodes.get(i), i);
+                }
+            }
+            int first = Integer.MAX_VALUE;
+            Iterator<Quad> quads = dsg.findNG(Node.ANY, t.getSubject(), t.getPredicate(), t.getObject());
+            try {
+                while (quads.hasNext()) {
+                    Integer i = graphIndexes.get(quads.next().getGraph());
+                    if (i != null && i < first) {
+                        first = i;
+                    }
+                }
+            } finally {
+                Iter.close(quads);
+            }
+            return first;
+        }
+
+        private Batch take() {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                close();
+                throw new QueryCancelledException();
+            }
+        }
+
+        @Override
+        public Triple next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Triple t = slot;
+            slot = null;
+            return t;
+        }
+
+        private void closeLocal() {
+            if (localQuads != null) {
+                Iter.close(localQuads);
+                localQuads = null;
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            finished = true;
+            queue.clear();
+            closeLocal();
+            current = Collections.emptyIterator();
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (e instanceof Error err) {
+            throw err;
+        }
+        return new QueryExecException(e);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.engine;
+
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpQuadPattern;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.main.OpExecutor;
+import org.apache.jena.sparql.engine.main.OpExecutorFactory;
+import org.apache.jena.sparql.engine.main.QC;
+
+/**
+ * An {@link OpExecutor} that evaluates quad patterns over the union graph against a {@link ParallelUnionGraph}, for
+ * datasets that implement {@link ParallelScans}.
+ */
+class ParallelUnionOpExecutor extends OpExecutor {
+
+    /**
+     * Factory for the executor
+     */
+    static final OpExecutorFactory factory = ParallelUnionOpExecutor::new;
+
+    private ParallelUnionOpExecutor(ExecutionContext execCxt) {
+        super(execCxt);
+    }
+
+    @Override
+    protected QueryIterator execute(OpQuadPattern quadPattern, QueryIterator input) {
+        int parallelism = UnionGraphQueryEngine.parallelism(execCxt.getContext());
+        if (parallelism > 1 && Quad.isUnionGraph(quadPattern.getGraphNode())
+                && execCxt.getDataset() instanceof ParallelScans) {
+            ExecutionContext cxt = new ExecutionContext(execCxt,
+                                                        new ParallelUnionGraph(execCxt.getDataset(), parallelism));
+            return QC.execute(new OpBGP(quadPattern.getBasicPattern()), input, cxt);
+        }
+        return super.execute(quadPattern, input);
+    }
+}
@@ -17,6 +17,7 @@
 package io.telicent.jena.abac.engine;
 
 import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.VocabAuthz;
 import org.apache.jena.query.Query;
 import org.apache.jena.sparql.algebra.Algebra;
 import org.apache.jena.sparql.algebra.Op;
@@ -24,14 +25,18 @@ import org.apache.jena.sparql.algebra.OpLib;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.DatasetGraphFilteredView;
 import org.apache.jena.sparql.engine.Plan;
+import org.apache.jena.sparql.engine.QueryIterator;
 import org.apache.jena.sparql.engine.QueryEngineFactory;
 import org.apache.jena.sparql.engine.QueryEngineRegistry;
 import org.apache.jena.sparql.engine.binding.Binding;
-import org.apache.jena.sparql.engine.main.QueryEngineMain;
+import org.apache.jena.sparql.engine.main.QC;
 import org.apache.jena.sparql.mgt.Explain;
 import org.apache.jena.sparql.util.Context;
+import org.apache.jena.sparql.util.Symbol;
 
+import java.util.Optional;
 import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
 
 /**
  * A query engine for {@link DatasetGraphABAC} datasets that routes default graph queries to the union of all named
@@ -40,8 +45,17 @@ import java.util.function.BooleanSupplier;
  * Activated by the {@value #ENV_ROUTE_TO_NAMED_GRAPHS} environment variable. When the variable is absent or
  * {@code false}, the factory will not accept queries and Jena's standard {@code QueryEngineMain} handles them instead.
  * When {@code true}, default-graph queries are resolved against the union of all named graphs.
+ * <p>
+ * By default the named graphs are scanned one after another.  Setting the {@value #ENV_UNION_GRAPH_PARALLELISM}
+ * environment variable to more than {@code 1} scans up to that many named graphs concurrently for each request, see
+ * {@link ParallelUnionGraph}.  Individual requests can override the limit via the {@link #symUnionGraphParallelism}
+ * context symbol.
+ * </p>
+ * <p>
+ * Label statistics are applied to query planning as for the {@link ABACQueryEngine} when enabled.
+ * </p>
  */
-public class UnionGraphQueryEngine extends QueryEngineMain {
+public class UnionGraphQueryEngine extends ABACQueryEngine {
 
     /**
      * Environment variable that enables union-graph routing.
@@ -54,6 +68,35 @@ public class UnionGraphQueryEngine extends QueryEngineMain {
     static BooleanSupplier routingCheck =
             () -> Boolean.parseBoolean(System.getenv(ENV_ROUTE_TO_NAMED_GRAPHS));
 
+    /**
+     * Environment variable that sets the maximum number of named graphs a single request scans concurrently when
+     * evaluating the union graph, {@code 1}, the default, scans them one after another.
+     */
+    static final String ENV_UNION_GRAPH_PARALLELISM = "UNION_GRAPH_PARALLELISM";
+
+    /**
+     * Reads {@value #ENV_UNION_GRAPH_PARALLELISM} from the environment. Can be overridden in tests.
+     */
+    static IntSupplier parallelismCheck =
+            () -> Integer.parseInt(Optional.ofNullable(System.getenv(ENV_UNION_GRAPH_PARALLELISM)).orElse("1"));
+
+    /**
+     * Context symbol that overrides {@value #ENV_UNION_GRAPH_PARALLELISM} for a request.
+     */
+    public static final Symbol symUnionGraphParallelism =
+            Symbol.create(VocabAuthz.getURI() + "unionGraphParallelism");
+
+    /**
+     * The maximum number of named graphs to scan concurrently for a request
+     *
+     * @param context Request context, may be {@code null}
+     * @return Parallelism
+     */
+    static int parallelism(Context context) {
+        int parallelism = parallelismCheck.getAsInt();
+        return context == null ? parallelism : context.getInt(symUnionGraphParallelism, parallelism);
+    }
+
     public UnionGraphQueryEngine(Query query, DatasetGraph dsg, Binding input, Context context) {
         super(query, dsg, input, context);
     }
@@ -74,6 +117,18 @@ public class UnionGraphQueryEngine extends QueryEngineMain {
         return op;
     }
 
+    /**
+     * Evaluates union graph patterns with a {@link ParallelUnionOpExecutor} when the request's parallelism allows,
+     * unless another executor has already been configured.
+     */
+    @Override
+    public QueryIterator eval(Op op, DatasetGraph dsg, Binding input, Context context) {
+        if (parallelism(context) > 1 && QC.getFactory(context) == null) {
+            QC.setFactory(context, ParallelUnionOpExecutor.factory);
+        }
+        return super.eval(op, dsg, input, context);
+    }
+
     // ---- Factory
 
     private static final QueryEngineFactory factory = new UnionGraphQueryEngineFactory();
@@ -130,12 +130,61 @@ public class L {
         }
     }
 
+    /**
+     * Send the labelling of a single label description, its patterns and labels having been collected from a labels
+     * graph, to a handler.
+     *
+     * @param descriptionNode Subject of the description
+     * @param patternNodes    Objects of the description's {@code authz:pattern} triples
+     * @param labelNodes      Objects of the description's {@code authz:label} triples
+     * @param pmap            Prefixes for the patterns
+     * @param destination     Handler for the labelling
+     */
+    static void descriptionToLabels(Node descriptionNode, List<Node> patternNodes, List<Node> labelNodes,
+                                    PrefixMap pmap, BiConsumer<Quad, Label> destination) {
+        if (patternNodes.isEmpty()) {
+            return;
+        }
+        try {
+            Label label = label(descriptionNode, labelNodes);
+            for (Node patternStr : patternNodes) {
+                Quad quad = parsePattern(patternStr, pmap);
+                if (!quad.isConcrete()) {
+                    throw new LabelsException("Encountered pattern with wildcards: " + NodeFmtLib.str(quad));
+                }
+                destination.accept(quad, label);
+            }
+        } catch (AuthzTriplePatternException ex) {
+            String msg = "Pattern: " + ex.getMessage();
+            Log.error(Labels.LOG, msg);
+            throw new LabelsException(msg, ex);
+        } catch (AttributeException ex) {
+            String msg = "Label: " + ex.getMessage();
+            Log.error(Labels.LOG, msg);
+            throw new LabelsException(msg, ex);
+        }
+    }
+
     public static void labelsToGraph(LabelsStore labelsStore, Graph g) {
         StreamRDF stream = StreamRDFLib.graph(g);
         BiConsumer<Quad, Label> action = (quad, labels) -> asRDF(quad, labels, stream);
         labelsStore.forEach(action);
     }
 
+    /**
+     * Whether a node of a labels store entry matches a filter, where {@code null} or {@link Node#ANY} match any node,
+     * and any form of the default graph name matches any other.
+     */
+    public static boolean matchesFilter(Node filter, Node node) {
+        if (filter == null || Node.ANY.equals(filter)) {
+            return true;
+        }
+        if (Quad.isDefaultGraph(filter)) {
+            return node != null && Quad.isDefaultGraph(node);
+        }
+        return filter.equals(node);
+    }
+
     // ---- Pattern parser
 
     /**
@@ -217,7 +266,10 @@ public class L {
      * @return Label
      */
     private static Label label(Graph labelsGraph, Node x) {
-        List<Node> labelNodes = G.listSP(labelsGraph, x, VocabAuthzLabels.pLabel);
+        return label(x, G.listSP(labelsGraph, x, VocabAuthzLabels.pLabel));
+    }
+
+    private static Label label(Node x, List<Node> labelNodes) {
         if (labelNodes.size() > 1) {
             throw new AttributeException(
                     "Multiple labels per-triple is no longer permitted, please consolidate into a single label");
@@ -255,7 +307,10 @@ public class L {
 
     // ---- Labels to graph
 
-    static void asRDF(Quad quad, Label label, StreamRDF stream) {
+    /**
+     * Send the labelling of a quad, as a label description, to a stream of triples
+     */
+    public static void asRDF(Quad quad, Label label, StreamRDF stream) {
         // Add  [ authz:pattern '...quad...' ;  authz:label "..label.." ] .
         asRDF$(quad, label, stream::triple);
     }
@@ -18,17 +18,24 @@ package io.telicent.jena.abac.labels;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
+import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.core.AuthzException;
 import io.telicent.jena.abac.core.CxtABAC;
 import io.telicent.jena.abac.core.QuadFilter;
 import io.telicent.jena.abac.core.VocabAuthzDataset;
+import io.telicent.jena.abac.labels.store.rocksdb.SharedRocksDBMemory;
 import io.telicent.jena.abac.labels.store.rocksdb.legacy.LegacyLabelsStoreRocksDB;
 import io.telicent.jena.abac.labels.store.rocksdb.legacy.RocksDBHelper;
 import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDB;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDBSecondary;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.rdf.model.RDFNode;
 import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
@@ -54,6 +61,69 @@ public class Labels {
         return new SecurityFilterByLabel(labels, defaultLabel, cxt);
     }
 
+    /**
+     * A test of whether quads with a given label are visible to a request, applying the default label to quads without
+     * a label (tested as {@code null}).  This makes the same decisions as {@link #securityFilterByLabel} without needing
+     * the quad itself.
+     */
+    public static Predicate<Label> labelFilter(Label defaultLabel, CxtABAC cxt) {
+        return new SecurityFilterByLabel(null, defaultLabel, cxt)::testLabel;
+    }
+
+    /**
+     * A {@link LabelsGetter} for a request.  Once the request is {@linkplain CxtABAC#isScan() considered a scan},
+     * lookups no longer populate the labels store's shared cache.
+     */
+    public static LabelsGetter labelsGetter(LabelsStore labels, CxtABAC cxt) {
+        return quad -> {
+            cxt.recordLabelLookup();
+            return cxt.isScan() ? labels.labelForQuadScan(quad) : labels.labelForQuad(quad);
+        };
+    }
+
+    /**
+     * Determine whether every label in a labels store, and the default label, leads to the same access decision for a
+     * request, in which case the request needs no per-quad filtering.
+     *
+     * @param labels       Labels store
+     * @param defaultLabel Default label for unlabelled quads, {@code null} for the system default
+     * @param cxt          Request context
+     * @return The decision for every quad, or {@code null} if it varies or can't be determined cheaply
+     * @see ABAC#constantDecisionLabelLimit
+     */
+    public static Boolean constantDecision(LabelsStore labels, Label defaultLabel, CxtABAC cxt) {
+        if (ABAC.constantDecisionLabelLimit <= 0) {
+            return null;
+        }
+        Collection<Label> distinct = labels.distinctLabels(ABAC.constantDecisionLabelLimit);
+        if (distinct == null) {
+            return null;
+        }
+        return SecurityFilterByLabel.constantDecision(distinct, defaultLabel, cxt);
+    }
+
+    /**
+     * Determine whether every label in a named graph, and the default label, leads to the same access decision for a
+     * request, in which case quads in that graph need no per-quad filtering.
+     *
+     * @param labels       Labels store
+     * @param graph        Graph name
+     * @param defaultLabel Default label for unlabelled quads, {@code null} for the system default
+     * @param cxt          Request context
+     * @return The decision for every quad in the graph, or {@code null} if it varies or can't be determined cheaply
+     * @see LabelsStore#distinctLabels(Node, int)
+     */
+    public static Boolean constantDecision(LabelsStore labels, Node graph, Label defaultLabel, CxtABAC cxt) {
+        if (ABAC.constantDecisionLabelLimit <= 0) {
+            return null;
+        }
+        Collection<Label> distinct = labels.distinctLabels(graph, ABAC.constantDecisionLabelLimit);
+        if (distinct == null) {
+            return null;
+        }
+        return SecurityFilterByLabel.constantDecision(distinct, defaultLabel, cxt);
+    }
+
     private static final LabelsStore noLabelsStore = new LabelsStoreZero();
 
     public static LabelsStore emptyStore() {
@@ -116,13 +186,15 @@ public class Labels {
             if (legacyModeValue != null && legacyModeValue.isLiteral()) {
                 legacyMode = legacyModeValue.asLiteral().getBoolean();
             }
+            configureSharedMemory(resource);
             try {
                 if (legacyMode) {
                     // Log a warning suggesting users consider migrating to the new store
                     LOG.warn(LEGACY_STORE_CONFIGURED, VocabAuthzDataset.pLabelsStoreLegacy);
                     return new LegacyLabelsStoreRocksDB(new RocksDBHelper(), dbRoot, storageFormat, resource);
                 } else {
-                    return new DictionaryLabelStoreRocksDB(dbRoot, storageFormat);
+                    return new DictionaryLabelStoreRocksDB(dbRoot, storageFormat, LabelsCache.create(resource),
+                                                           quadIndex(resource));
                 }
             } catch (RocksDBException | IOException e) {
                 throw new RuntimeException("Failed to open RocksDB store", e);
@@ -130,6 +202,55 @@ public class Labels {
         });
     }
 
+    /**
+     * Whether {@link VocabAuthzDataset#pLabelsStoreQuadIndex} is configured
+     */
+    private static boolean quadIndex(Resource resource) {
+        Statement statement = resource != null ? resource.getProperty(VocabAuthzDataset.pLabelsStoreQuadIndex) : null;
+        RDFNode value = statement != null ? statement.getObject() : null;
+        return value != null && value.isLiteral() && value.asLiteral().getBoolean();
+    }
+
+    /**
+     * Opens a read-only secondary instance of a dictionary encoded RocksDB labels store whose primary is written by
+     * another process.
+     *
+     * @param primaryRoot     the root directory of the primary RocksDB database
+     * @param secondaryRoot   the directory for this secondary instance's own files, unique to this instance
+     * @param resource        RDF Node representing the given apps configuration
+     * @param storageFormat   the storage format used by the primary
+     * @param catchUpInterval interval between catching up with the primary
+     * @return a read-only labels store
+     */
+    public static LabelsStore createLabelsStoreRocksDBSecondary(final File primaryRoot, final File secondaryRoot,
+                                                                final Resource resource, final StoreFmt storageFormat,
+                                                                final Duration catchUpInterval) {
+        return rocks.computeIfAbsent(secondaryRoot, f -> {
+            configureSharedMemory(resource);
+            try {
+                return new DictionaryLabelStoreRocksDBSecondary(primaryRoot, secondaryRoot, storageFormat,
+                                                                LabelsCache.create(resource), catchUpInterval);
+            } catch (RocksDBException e) {
+                throw new RuntimeException("Failed to open RocksDB store as a secondary", e);
+            }
+        });
+    }
+
+    /**
+     * Apply any {@link VocabAuthzDataset#pLabelsStoreMemoryBudget} configuration to the {@link SharedRocksDBMemory}.
+     */
+    private static void configureSharedMemory(Resource resource) {
+        if (resource == null || !resource.hasProperty(VocabAuthzDataset.pLabelsStoreMemoryBudget)) {
+            return;
+        }
+        Statement statement = resource.getProperty(VocabAuthzDataset.pLabelsStoreMemoryBudget);
+        try {
+            SharedRocksDBMemory.configure(statement.getLong());
+        } catch (IllegalArgumentException e) {
+            throw new LabelsException("The RocksDB shared memory budget is in wrong format.", e);
+        }
+    }
+
     /**
      * A RocksDB-based labels store must be closed Although they are {@link AutoCloseable} sometimes the close needs to
      * be explicit
@@ -0,0 +1,541 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import static io.telicent.jena.abac.core.VocabAuthzDataset.pLabelsStoreCacheHeapFraction;
+import static io.telicent.jena.abac.core.VocabAuthzDataset.pLabelsStoreCacheSize;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.apache.jena.atlas.lib.Cache;
+import org.apache.jena.atlas.lib.cache.CacheInfo;
+import org.apache.jena.graph.Node;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Cache of {@link Quad} to {@link Label} lookups used by the RocksDB labels stores.
+ * <p>
+ * The cache is bounded by an estimate of the memory consumed by its entries rather than by entry count, so stores
+ * whose quads carry large literals or long labels don't blow through the heap. The budget is either an explicit number
+ * of bytes ({@code authz:labelsStoreCacheSize}) or a fraction of the maximum heap
+ * ({@code authz:labelsStoreCacheHeapFraction}), defaulting to {@link #DEFAULT_HEAP_FRACTION}.
+ * </p>
+ * <p>
+ * A heap fraction is a budget for the whole JVM, not for each store: all caches created via {@link #create(Resource)}
+ * without an explicit size are views onto a single shared cache, so a server hosting many datasets still uses at most
+ * that fraction of its heap for label caching.  As with the shared RocksDB memory the budget is fixed by the first
+ * such cache created.  A cache with an explicit size has that budget to itself.
+ * </p>
+ * <p>
+ * Hit, miss and eviction statistics are recorded for each cache, even when shared, and exposed via {@link #stats()},
+ * {@link #cacheStats()} and {@link #addProperties(Map)}.
+ * </p>
+ * <p>
+ * Each cache keys its entries by an epoch which {@link #clear()} advances, so clearing a cache is constant time
+ * whether or not it is shared: the entries of earlier epochs are never seen again and age out of the storage as it
+ * evicts.  This also means a lookup that races with a clear can only re-insert its result into the old epoch.  The
+ * number of entries in the current epoch is counted so that {@link #size()} doesn't have to scan shared storage.
+ * </p>
+ * <p>
+ * Stores that provide snapshot reads can tag each entry with the commit version from which it is valid, see
+ * {@link #getAsOf(Quad, long, BooleanSupplier, Function)} and {@link #putAsOf(Quad, Label, long)}, so that a reader
+ * only sees cached labels that were valid as of its own snapshot.  Entries added via the plain {@link Cache} API are
+ * valid for every version.  Stores that can't tell which labels a new version changed can instead use
+ * {@link #getAtVersion(Quad, long, boolean, Function)}, where an entry is only used by readers of exactly the version
+ * it was computed as of.
+ * </p>
+ */
+public class LabelsCache implements Cache<Quad, Label> {
+
+    /** Default fraction of the maximum heap given over to a label cache. */
+    public static final double DEFAULT_HEAP_FRACTION = 0.1;
+
+    /** Lower bound on the cache budget, regardless of configuration. */
+    public static final long MIN_CACHE_SIZE = 1024 * 1024;
+
+    // Rough per-object overheads (bytes) used when estimating the weight of an entry.
+    private static final int ENTRY_OVERHEAD = 88;
+    private static final int QUAD_OVERHEAD = 32;
+    private static final int NODE_OVERHEAD = 48;
+    private static final int LABEL_OVERHEAD = 32;
+
+    /** Version of entries that are valid for every snapshot. */
+    private static final long ANY_VERSION = Long.MIN_VALUE;
+
+    /**
+     * A cached label, valid for readers whose snapshot version is at least {@code version}.
+     */
+    private record Entry(Label label, long version) {}
+
+    /**
+     * Key of a cached label, the quad qualified by the cache it belongs to, so that caches sharing storage stay
+     * separate, and by that cache's epoch when the entry was added.  Owners compare by identity.
+     */
+    private record Key(Owner owner, long epoch, Quad quad) {
+        boolean isCurrent() {
+            return epoch == owner.epoch.get();
+        }
+    }
+
+    /** Identity, epoch, entry count and statistics of one cache within the storage it may share with others. */
+    private static final class Owner {
+        private final AtomicLong epoch = new AtomicLong();
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+        private final LongAdder evictionWeight = new LongAdder();
+    }
+
+    /** Storage shared by all caches sized by heap fraction, created by the first of them. */
+    private static com.github.benmanes.caffeine.cache.Cache<Key, Entry> sharedCache = null;
+    private static long sharedMaxWeight = 0;
+
+    private final com.github.benmanes.caffeine.cache.Cache<Key, Entry> cache;
+    private final long maxWeight;
+    private final boolean shared;
+    private final Owner owner = new Owner();
+
+    /**
+     * Creates a label cache sized according to the given configuration resource.  Unless the configuration gives an
+     * explicit size the cache shares the JVM wide budget with the other caches created this way.
+     *
+     * @param config Configuration resource, may be {@code null} in which case defaults are used
+     * @return Label cache
+     * @throws LabelsException Thrown if the configured sizing is invalid
+     */
+    public static LabelsCache create(Resource config) {
+        long size = cacheSize(config);
+        if (config != null && config.hasProperty(pLabelsStoreCacheSize)) {
+            return new LabelsCache(size);
+        }
+        return shared(size);
+    }
+
+    private static synchronized LabelsCache shared(long budget) {
+        long maxWeight = Math.max(budget, MIN_CACHE_SIZE);
+        if (sharedCache == null) {
+            sharedMaxWeight = maxWeight;
+            sharedCache = build(maxWeight);
+            Labels.LOG.info("Labels store caches sharing a budget of {} bytes", maxWeight);
+        } else if (sharedMaxWeight != maxWeight) {
+            Labels.LOG.warn("Labels store caches already sharing a budget of {} bytes, ignoring requested budget {}",
+                            sharedMaxWeight, maxWeight);
+        }
+        return new LabelsCache(sharedCache, sharedMaxWeight, true);
+    }
+
+    /**
+     * Creates a label cache using the default sizing.
+     *
+     * @return Label cache
+     */
+    public static LabelsCache create() {
+        return create(null);
+    }
+
+    /**
+     * Creates a label cache bounded by the given estimated size in bytes.
+     *
+     * @param maxWeight Maximum estimated size, in bytes, of the cached entries
+     */
+    public LabelsCache(long maxWeight) {
+        this(build(Math.max(maxWeight, MIN_CACHE_SIZE)), Math.max(maxWeight, MIN_CACHE_SIZE), false);
+    }
+
+    private LabelsCache(com.github.benmanes.caffeine.cache.Cache<Key, Entry> cache, long maxWeight, boolean shared) {
+        this.cache = cache;
+        this.maxWeight = maxWeight;
+        this.shared = shared;
+    }
+
+    private static com.github.benmanes.caffeine.cache.Cache<Key, Entry> build(long maxWeight) {
+        return Caffeine.newBuilder()
+                       .maximumWeight(maxWeight)
+                       .weigher((Key key, Entry entry) -> weigh(key.quad(), entry.label()))
+                       .evictionListener((Key key, Entry entry, RemovalCause cause) -> {
+                           if (key != null && cause.wasEvicted()) {
+                               if (key.isCurrent()) {
+                                   key.owner().entries.decrement();
+                               }
+                               key.owner().evictions.increment();
+                               if (entry != null) {
+                                   key.owner().evictionWeight.add(weigh(key.quad(), entry.label()));
+                               }
+                           }
+                       })
+                       .build();
+    }
+
+    /**
+     * Determine the cache budget, in bytes, from configuration.  An explicit size takes precedence over a heap
+     * fraction.
+     *
+     * @param config Configuration resource, may be {@code null}
+     * @return Cache budget in bytes
+     */
+    static long cacheSize(Resource config) {
+        long maxHeap = Runtime.getRuntime().maxMemory();
+        if (config != null && config.hasProperty(pLabelsStoreCacheSize)) {
+            Statement statement = config.getProperty(pLabelsStoreCacheSize);
+            try {
+                long size = statement.getLong();
+                if (size > 0) {
+                    return size;
+                }
+                throw new LabelsException("The labels store cache size is an invalid value: " + size);
+            } catch (IllegalArgumentException e) {
+                throw new LabelsException("The labels store cache size is in wrong format.", e);
+            }
+        }
+        if (config != null && config.hasProperty(pLabelsStoreCacheHeapFraction)) {
+            Statement statement = config.getProperty(pLabelsStoreCacheHeapFraction);
+            try {
+                double fraction = statement.getDouble();
+                if (fraction > 0 && fraction <= 1) {
+                    return (long) (maxHeap * fraction);
+                }
+                throw new LabelsException("The labels store cache heap fraction must be in (0,1]: " + fraction);
+            } catch (IllegalArgumentException e) {
+                throw new LabelsException("The labels store cache heap fraction is in wrong format.", e);
+            }
+        }
+        return (long) (maxHeap * DEFAULT_HEAP_FRACTION);
+    }
+
+    /**
+     * Estimate of the memory, in bytes, consumed by caching a label for a quad.
+     */
+    static int weigh(Quad quad, Label label) {
+        long weight = ENTRY_OVERHEAD + QUAD_OVERHEAD + LABEL_OVERHEAD + label.data().length;
+        weight += nodeWeight(quad.getGraph()) + nodeWeight(quad.getSubject()) + nodeWeight(quad.getPredicate())
+                  + nodeWeight(quad.getObject());
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static long nodeWeight(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        if (node.isURI()) {
+            return NODE_OVERHEAD + node.getURI().length();
+        }
+        if (node.isLiteral()) {
+            return NODE_OVERHEAD + node.getLiteralLexicalForm().length() + node.getLiteralLanguage().length();
+        }
+        if (node.isBlank()) {
+            return NODE_OVERHEAD + node.getBlankNodeLabel().length();
+        }
+        return NODE_OVERHEAD;
+    }
+
+    /**
+     * Whether this cache shares its budget with other caches.
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    /**
+     * Maximum estimated size, in bytes, of the cached entries.  For a shared cache this is the shared budget.
+     */
+    public long maxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Current estimated size, in bytes, of the cached entries.  For a shared cache this includes the entries of all the
+     * caches sharing the budget.
+     */
+    public long weightedSize() {
+        return cache.policy().eviction().map(e -> e.weightedSize().orElse(0)).orElse(0L);
+    }
+
+    /**
+     * Whether the cache is currently below its budget, i.e. adding an entry is not expected to cause an eviction.
+     */
+    public boolean hasCapacity() {
+        return weightedSize() < maxWeight;
+    }
+
+    /**
+     * Perform any pending maintenance, such as evictions, now.
+     */
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * Full Caffeine statistics, including evictions, for this cache.
+     */
+    public CacheStats cacheStats() {
+        return CacheStats.of(owner.hits.sum(), owner.misses.sum(), 0, 0, 0, owner.evictions.sum(),
+                             owner.evictionWeight.sum());
+    }
+
+    /**
+     * Adds the cache statistics to a labels store properties map.
+     *
+     * @param properties Properties map to add to
+     * @return The properties map
+     */
+    public Map<String, String> addProperties(Map<String, String> properties) {
+        CacheStats stats = cacheStats();
+        properties.put("cacheShared", Boolean.toString(shared));
+        properties.put("cacheEntries", Long.toString(size()));
+        properties.put("cacheWeight", Long.toString(weightedSize()));
+        properties.put("cacheMaxWeight", Long.toString(maxWeight));
+        properties.put("cacheHitCount", Long.toString(stats.hitCount()));
+        properties.put("cacheMissCount", Long.toString(stats.missCount()));
+        properties.put("cacheEvictionCount", Long.toString(stats.evictionCount()));
+        return properties;
+    }
+
+    private Key key(Quad quad) {
+        return new Key(owner, owner.epoch.get(), quad);
+    }
+
+    /** Add or replace an entry, counting it if it is new. */
+    private void store(Key key, Entry entry) {
+        if (cache.asMap().put(key, entry) == null) {
+            owner.entries.increment();
+        }
+    }
+
+    /** Remove an entry, uncounting it if it was present and is in the current epoch. */
+    private void discard(Key key) {
+        if (cache.asMap().remove(key) != null && key.isCurrent()) {
+            owner.entries.decrement();
+        }
+    }
+
+    /** Look up an entry, recording a hit or miss. */
+    private Entry lookup(Quad quad) {
+        Entry entry = cache.getIfPresent(key(quad));
+        (entry != null ? owner.hits : owner.misses).increment();
+        return entry;
+    }
+
+    @Override
+    public boolean containsKey(Quad key) {
+        return cache.asMap().containsKey(key(key));
+    }
+
+    @Override
+    public Label getIfPresent(Quad key) {
+        return label(lookup(key));
+    }
+
+    @Override
+    public Label get(Quad key, Function<Quad, Label> callable) {
+        boolean[] computed = new boolean[1];
+        Entry entry = cache.get(key(key), k -> {
+            computed[0] = true;
+            Label label = callable.apply(k.quad());
+            return label != null ? new Entry(label, ANY_VERSION) : null;
+        });
+        (computed[0] ? owner.misses : owner.hits).increment();
+        if (computed[0] && entry != null) {
+            owner.entries.increment();
+        }
+        return label(entry);
+    }
+
+    private static Label label(Entry entry) {
+        return entry != null ? entry.label() : null;
+    }
+
+    /**
+     * Get the value for a key if it is cached, otherwise compute it without adding it to the cache.
+     *
+     * @param key      Key
+     * @param function Function to compute the value if not cached
+     * @return Value
+     */
+    public Label getNoAdmit(Quad key, Function<Quad, Label> function) {
+        Label label = label(lookup(key));
+        return label != null ? label : function.apply(key);
+    }
+
+    /**
+     * Get the value for a key as of a snapshot version.
+     * <p>
+     * A cached value is only used if it is valid as of the given version, otherwise the value is computed, which the
+     * caller <strong>MUST</strong> do against the same snapshot.  The computed value is only added to the cache if
+     * there is no entry for the key already and {@code admit} holds both before and after it is added, the caller uses
+     * this to ensure that only values that are valid for the latest version, and which no in-progress write may be
+     * changing, are cached.
+     * </p>
+     *
+     * @param key      Key
+     * @param version  Snapshot version of the reader
+     * @param admit    Whether a value computed as of this version may be added to the cache
+     * @param function Function to compute the value as of the snapshot if not cached
+     * @return Value
+     */
+    public Label getAsOf(Quad key, long version, BooleanSupplier admit, Function<Quad, Label> function) {
+        Key k = key(key);
+        Entry entry = cache.getIfPresent(k);
+        if (entry != null && entry.version() <= version) {
+            owner.hits.increment();
+            return entry.label();
+        }
+        owner.misses.increment();
+        Label label = function.apply(key);
+        if (entry == null && label != null && admit.getAsBoolean()) {
+            Entry computed = new Entry(label, version);
+            if (cache.asMap().putIfAbsent(k, computed) == null) {
+                owner.entries.increment();
+                // A write may have started while we were adding the entry in which case it may already be stale
+                if (!admit.getAsBoolean() && cache.asMap().remove(k, computed) && k.isCurrent()) {
+                    owner.entries.decrement();
+                }
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Get the value for a key as of a version, using a cached value only if it was computed as of exactly that
+     * version.
+     * <p>
+     * This suits stores that learn of new versions without learning which keys changed, a cached value is then
+     * potentially stale as soon as there is a newer version.  Rather than clearing the cache, which would race with
+     * lookups still adding values computed as of the previous version, the stale entries are simply ignored, and
+     * replaced as the keys are looked up again.  The caller <strong>MUST</strong> compute the value as of the given
+     * version or later.
+     * </p>
+     *
+     * @param key      Key
+     * @param version  Version of the reader
+     * @param admit    Whether a computed value may be added to the cache
+     * @param function Function to compute the value if not cached
+     * @return Value
+     */
+    public Label getAtVersion(Quad key, long version, boolean admit, Function<Quad, Label> function) {
+        Key k = key(key);
+        Entry entry = cache.getIfPresent(k);
+        if (entry != null && entry.version() == version) {
+            owner.hits.increment();
+            return entry.label();
+        }
+        owner.misses.increment();
+        Label label = function.apply(key);
+        if (label != null && admit) {
+            Entry computed = new Entry(label, version);
+            boolean[] added = new boolean[1];
+            cache.asMap().compute(k, (x, existing) -> {
+                if (existing == null) {
+                    added[0] = true;
+                    return computed;
+                }
+                // Never replace an entry computed as of a later version
+                return existing.version() < version ? computed : existing;
+            });
+            if (added[0]) {
+                owner.entries.increment();
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Put a value that is valid from the given version onwards, replacing any existing entry.
+     *
+     * @param key     Key
+     * @param thing   Value
+     * @param version Version from which the value is valid
+     */
+    public void putAsOf(Quad key, Label thing, long version) {
+        store(key(key), new Entry(thing, version));
+    }
+
+    @Override
+    public void put(Quad key, Label thing) {
+        if (thing == null) {
+            discard(key(key));
+            return;
+        }
+        store(key(key), new Entry(thing, ANY_VERSION));
+    }
+
+    @Override
+    public void remove(Quad key) {
+        discard(key(key));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * For a shared cache this has to pick this cache's entries out from those of all the caches sharing the budget so
+     * is proportional to the size of the shared cache, it is intended for diagnostics only.
+     * </p>
+     */
+    @Override
+    public Iterator<Quad> keys() {
+        return cache.asMap().keySet().stream().filter(k -> k.owner() == owner && k.isCurrent()).map(Key::quad)
+                    .iterator();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Advances this cache's epoch so its existing entries are no longer visible, they are then evicted in the normal
+     * course of things.  A cache that doesn't share its storage also discards them immediately.
+     * </p>
+     */
+    @Override
+    public void clear() {
+        owner.epoch.incrementAndGet();
+        owner.entries.reset();
+        if (!shared) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is a count maintained as entries are added and removed so may briefly be inaccurate when entries are
+     * added concurrently with a {@link #clear()}.
+     * </p>
+     */
+    @Override
+    public long size() {
+        return Math.max(0, owner.entries.sum());
+    }
+
+    @Override
+    public CacheInfo stats() {
+        return new CacheInfo(cacheStats());
+    }
+}
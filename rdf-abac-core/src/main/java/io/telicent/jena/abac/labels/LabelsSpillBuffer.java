@@ -0,0 +1,174 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import io.telicent.jena.abac.core.VocabAuthzLabels;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.system.PrefixMap;
+import org.apache.jena.riot.system.PrefixMapFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Collects the triples of a labels graph, as an alternative to an in-memory graph, holding at most a given number of
+ * them in memory and spilling the rest to temporary files.
+ * <p>
+ * The triples are collected in a {@link LinesSpillBuffer}, each as a line starting with its subject, so that once all
+ * the labels graph has been collected the sorted lines bring together the pattern and label of each label description
+ * wherever they occur in the upload, and the labels are applied without reading the labels graph back into memory.
+ * Only {@code authz:pattern} and {@code authz:label} triples are kept, as no other triples of a labels graph affect the
+ * labels, and a triple that occurs more than once is only kept once, as it would be in a graph.
+ * </p>
+ * <p>
+ * Patterns are parsed with the prefixes declared by the end of the upload, as they would be for a labels graph.
+ * </p>
+ */
+public class LabelsSpillBuffer implements AutoCloseable {
+
+    /**
+     * Default number of label triples held in memory before spilling them to a temporary file
+     */
+    public static final int DEFAULT_MAX_IN_MEMORY = 1_000_000;
+
+    private static final char PATTERN = 'P';
+    private static final char LABEL = 'L';
+
+    private final Map<String, String> prefixes = new LinkedHashMap<>();
+    private final LinesSpillBuffer lines;
+
+    /**
+     * Creates a new buffer, spilling to the default temporary directory
+     *
+     * @param maxInMemory Maximum number of label triples held in memory
+     */
+    public LabelsSpillBuffer(int maxInMemory) {
+        this(maxInMemory, null);
+    }
+
+    /**
+     * Creates a new buffer
+     *
+     * @param maxInMemory Maximum number of label triples held in memory
+     * @param tempDir     Directory for the temporary files, {@code null} for the default temporary directory
+     */
+    public LabelsSpillBuffer(int maxInMemory, Path tempDir) {
+        if (maxInMemory < 1) {
+            throw new IllegalArgumentException("Maximum labels in memory must be at least 1");
+        }
+        this.lines = new LinesSpillBuffer(maxInMemory, tempDir);
+    }
+
+    /**
+     * Adds a triple of the labels graph
+     */
+    public void add(Triple triple) {
+        char type;
+        if (VocabAuthzLabels.pPattern.equals(triple.getPredicate())) {
+            type = PATTERN;
+        } else if (VocabAuthzLabels.pLabel.equals(triple.getPredicate())) {
+            type = LABEL;
+        } else {
+            return;
+        }
+        // Neither the subject nor the object, in N-Triples syntax, contain tabs or newlines, so the lines of each
+        // subject sort together
+        lines.add(key(triple.getSubject()) + '\t' + type + '\t' + NodeFmtLib.strNT(triple.getObject()));
+    }
+
+    /**
+     * Adds a prefix declared by the upload
+     */
+    public void prefix(String prefix, String uri) {
+        prefixes.put(prefix, uri);
+    }
+
+    /**
+     * Number of temporary files spilled so far
+     */
+    public int spills() {
+        return lines.spills();
+    }
+
+    /**
+     * Whether no label triples have been added
+     */
+    public boolean isEmpty() {
+        return lines.isEmpty();
+    }
+
+    private static String key(Node subject) {
+        if (subject.isBlank()) {
+            return "_:" + subject.getBlankNodeLabel();
+        }
+        return NodeFmtLib.strNT(subject);
+    }
+
+    private static Node subject(String key) {
+        if (key.startsWith("_:")) {
+            return NodeFactory.createBlankNode(key.substring(2));
+        }
+        return NodeFactoryExtra.parseNode(key);
+    }
+
+    /**
+     * Sends the labelling of every label description collected to a handler, merging any spilled runs.  The buffer is
+     * then empty.
+     *
+     * @param destination Handler for the labelling
+     */
+    public void forEachLabel(BiConsumer<Quad, Label> destination) {
+        PrefixMap pmap = PrefixMapFactory.create(prefixes);
+        List<Node> patterns = new ArrayList<>();
+        List<Node> labels = new ArrayList<>();
+        String[] key = { null };
+        lines.forEachDistinct(line -> {
+            int i = line.indexOf('\t');
+            String subject = line.substring(0, i);
+            if (!subject.equals(key[0])) {
+                if (key[0] != null) {
+                    L.descriptionToLabels(subject(key[0]), patterns, labels, pmap, destination);
+                }
+                key[0] = subject;
+                patterns.clear();
+                labels.clear();
+            }
+            Node object = NodeFactoryExtra.parseNode(line.substring(i + 3));
+            (line.charAt(i + 1) == PATTERN ? patterns : labels).add(object);
+        });
+        if (key[0] != null) {
+            L.descriptionToLabels(subject(key[0]), patterns, labels, pmap, destination);
+        }
+    }
+
+    /**
+     * Discards the label triples collected, deleting any temporary files
+     */
+    @Override
+    public void close() {
+        lines.close();
+    }
+}
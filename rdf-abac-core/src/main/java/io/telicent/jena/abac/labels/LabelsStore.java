@@ -19,11 +19,17 @@ package io.telicent.jena.abac.labels;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.out.NodeFmtLib;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Transactional;
 import org.apache.jena.system.Txn;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.function.BiConsumer;
 
 /**
@@ -54,6 +60,21 @@ public interface LabelsStore extends AutoCloseable {
      */
     Label labelForQuad(Quad quad);
 
+    /**
+     * Lookup the quad as part of a large scan and return the label associated with it.
+     * <p>
+     * Stores with a shared lookup cache should use any entry already cached but not add new entries to the cache, so
+     * that one-off lookups made by scans don't evict frequently used entries.  The default implementation is
+     * {@link #labelForQuad(Quad)}.
+     * </p>
+     *
+     * @param quad Quad
+     * @return Label, or {@code null} if no label for quad
+     */
+    default Label labelForQuadScan(Quad quad) {
+        return labelForQuad(quad);
+    }
+
     /**
      * A {@link Transactional} that protects the label store.
      */
@@ -136,11 +157,139 @@ public interface LabelsStore extends AutoCloseable {
      */
     boolean isEmpty();
 
+    /**
+     * The distinct labels applied to quads in this store.  This is used to detect when every label in the store leads
+     * to the same access decision for a request, in which case per-quad label lookups can be skipped.  The result may
+     * include labels no longer applied to any quad.
+     * <p>
+     * The default implementation only knows the distinct labels of an empty store.
+     * </p>
+     *
+     * @param limit Maximum number of distinct labels the caller is interested in
+     * @return Distinct labels, or {@code null} if there are more than {@code limit} of them or the store can't
+     * determine them efficiently
+     */
+    default Collection<Label> distinctLabels(int limit) {
+        return isEmpty() ? List.of() : null;
+    }
+
+    /**
+     * The distinct labels applied to quads in a named graph.  This is used to detect named graphs that are entirely
+     * visible, or entirely hidden, for a request so that their quads need no per-quad label lookups.  The result may
+     * include labels no longer applied to any quad in the graph.
+     * <p>
+     * The default implementation doesn't summarise labels by graph.
+     * </p>
+     *
+     * @param graph Graph name
+     * @param limit Maximum number of distinct labels the caller is interested in
+     * @return Distinct labels, or {@code null} if there are more than {@code limit} of them or the store can't
+     * determine them efficiently
+     */
+    default Collection<Label> distinctLabels(Node graph, int limit) {
+        return null;
+    }
+
+    /**
+     * The number of labelled quads with each distinct label, for use as query planning statistics.  Counts may be
+     * restricted to quads with a given predicate, so that the planner can estimate how selective each triple pattern is
+     * for a request.  Quads without a label are not counted.
+     * <p>
+     * The default implementation doesn't count labels.
+     * </p>
+     *
+     * @param predicate Predicate, or {@link Node#ANY} to count all labelled quads
+     * @param limit     Maximum number of distinct labels the caller is interested in
+     * @return Counts by label, or {@code null} if there are more than {@code limit} distinct labels or the store can't
+     * determine them efficiently
+     */
+    default Map<Label, Long> labelCounts(Node predicate, int limit) {
+        return null;
+    }
+
     /**
      * Apply BiConsumer to each entry in the labels store.
      */
     void forEach(BiConsumer<Quad, Label> action);
 
+    /**
+     * Apply BiConsumer to each entry in the labels store in a graph and/or with a subject.
+     * <p>
+     * The default implementation filters the entries of {@link #forEach(BiConsumer)}.  Stores that can find the
+     * entries of a graph without reading every entry should override it.
+     * </p>
+     *
+     * @param graph   Graph name, or {@code null} or {@link Node#ANY} for entries in any graph
+     * @param subject Subject, or {@code null} or {@link Node#ANY} for entries with any subject
+     * @param action  Action applied to each entry
+     * @throws UnsupportedOperationException Thrown if the store can't iterate over its entries
+     */
+    default void forEach(Node graph, Node subject, BiConsumer<Quad, Label> action) {
+        forEach((quad, label) -> {
+            if (L.matchesFilter(graph, quad.getGraph()) && L.matchesFilter(subject, quad.getSubject())) {
+                action.accept(quad, label);
+            }
+        });
+    }
+
+    /**
+     * Apply BiConsumer to one page of the entries in the labels store, optionally restricted to a graph and/or subject,
+     * so that a large store can be read a page at a time without holding all its entries in memory.  Pages are in an
+     * order that is stable for the store, and each page starts after the entry given by a continuation token returned
+     * for the previous page.  Entries added or removed between pages may or may not be seen.
+     * <p>
+     * The default implementation goes through {@link #forEach(BiConsumer)}, holding a page of entries in memory, and
+     * orders entries by their quad in N-Quads syntax.  As every page goes through all the entries, reading all the pages
+     * of a store with {@code N} entries takes time proportional to {@code N * N / limit}, so stores that can seek to an
+     * entry, or keep their entries in order, should override this.
+     * </p>
+     *
+     * @param graph   Graph name, or {@code null} or {@link Node#ANY} for entries in any graph
+     * @param subject Subject, or {@code null} or {@link Node#ANY} for entries with any subject
+     * @param after   Continuation token returned for the previous page, or {@code null} for the first page
+     * @param limit   Maximum number of entries in the page
+     * @param action  Action applied to each entry of the page
+     * @return Continuation token for the next page, or {@code null} if this is the last page
+     * @throws IllegalArgumentException      Thrown if the limit is less than 1 or the continuation token is invalid
+     * @throws UnsupportedOperationException Thrown if the store can't iterate over its entries
+     */
+    default String forEachPage(Node graph, Node subject, String after, int limit, BiConsumer<Quad, Label> action) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be at least 1");
+        }
+        String from = after != null ? new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8) : null;
+        // The first limit+1 entries after the token, the last of which is only there to tell whether there's a next page
+        TreeMap<String, Map.Entry<Quad, Label>> page = new TreeMap<>();
+        forEach((quad, label) -> {
+            if (!L.matchesFilter(graph, quad.getGraph()) || !L.matchesFilter(subject, quad.getSubject())) {
+                return;
+            }
+            String key = NodeFmtLib.strNodesNT(quad.getGraph(), quad.getSubject(), quad.getPredicate(),
+                                               quad.getObject());
+            if (from != null && key.compareTo(from) <= 0) {
+                return;
+            }
+            if (page.size() > limit && key.compareTo(page.lastKey()) >= 0) {
+                return;
+            }
+            page.put(key, Map.entry(quad, label));
+            if (page.size() - 1 > limit) {
+                page.pollLastEntry();
+            }
+        });
+        String last = null;
+        int count = 0;
+        for (Map.Entry<String, Map.Entry<Quad, Label>> entry : page.entrySet()) {
+            if (count == limit) {
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8));
+            }
+            action.accept(entry.getValue().getKey(), entry.getValue().getValue());
+            last = entry.getKey();
+            count++;
+        }
+        return null;
+    }
+
     /**
      * Get labels as graph. This is a development and deployment helper; it may not be supported by all store
      * implementations The graph may be very large. Returns a copy of the labels graph, so it is not connected to the
@@ -148,6 +297,19 @@ public interface LabelsStore extends AutoCloseable {
      */
     Graph asGraph();
 
+    /**
+     * The version of the labels in this store, for stores whose labels may change other than by write transactions on
+     * the {@link io.telicent.jena.abac.core.DatasetGraphABAC} they protect, e.g. a replica catching up with its
+     * primary.  The version only ever increases, and state derived from the labels may be shared between requests for
+     * as long as both it and {@link io.telicent.jena.abac.core.DatasetGraphABAC#dataVersion()} are unchanged.  The
+     * default implementation is for stores only changed by write transactions on the dataset, and is always zero.
+     *
+     * @return Labels version
+     */
+    default long labelsVersion() {
+        return 0;
+    }
+
     /**
      * A collection of implementation-dependent values which may be used when testing a {@code LabelStore}
      * implementation.
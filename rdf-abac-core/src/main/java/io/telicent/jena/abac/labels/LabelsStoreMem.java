@@ -16,13 +16,21 @@
 
 package io.telicent.jena.abac.labels;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 
 import io.telicent.jena.abac.SysABAC;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.TxnType;
 import org.apache.jena.riot.out.NodeFmtLib;
@@ -55,6 +63,24 @@ public class LabelsStoreMem implements LabelsStore {
 
     private final Map<Quad, Label> accQuadLabels = new ConcurrentHashMap<>();
 
+    // Number of quads in quadLabels with each distinct label, maintained alongside quadLabels.
+    private final Map<Label, Long> labelCounts = new ConcurrentHashMap<>();
+
+    // Number of quads with each distinct label in each graph, maintained alongside quadLabels.
+    private final Map<Node, Map<Label, Long>> graphLabelCounts = new ConcurrentHashMap<>();
+
+    // Number of quads with each distinct label for each predicate, maintained alongside quadLabels.
+    private final Map<Node, Map<Label, Long>> predicateLabelCounts = new ConcurrentHashMap<>();
+
+    // Number of changes made to quadLabels, so that the page index can tell when it's out of date.
+    private final AtomicLong changes = new AtomicLong();
+
+    // The quads of quadLabels in N-Quads order, built when the store is first paged through and kept until it changes,
+    // so that reading a large store a page at a time doesn't go through every entry for every page.
+    private volatile PageIndex pageIndex = null;
+
+    private record PageIndex(long changes, String[] keys, Quad[] quads) {}
+
     // Future: Consider binding LabelsStore to the DatasetGraphABAC transactional so
     // that operations on the labels side are also protected.
     // While all operation go through a DatasetGraphABAC, the dataset is MR+SW (reads can overlap writes).
@@ -164,6 +190,69 @@ public class LabelsStoreMem implements LabelsStore {
         quadLabels.forEach(action);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Pages are read from an index of the entries in N-Quads order, in the same order, and with the same continuation
+     * tokens, as the default implementation.  The index is built by the first page read after the store changes, so
+     * reading every page of an unchanging store sorts the entries once, rather than going through all of them for each
+     * page.
+     * </p>
+     */
+    @Override
+    public String forEachPage(Node graph, Node subject, String after, int limit, BiConsumer<Quad, Label> action) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be at least 1");
+        }
+        String from = after != null ? new String(Base64.getUrlDecoder().decode(after), StandardCharsets.UTF_8) : null;
+        readOperation();
+        PageIndex index = pageIndex();
+        int i = 0;
+        if (from != null) {
+            int idx = Arrays.binarySearch(index.keys(), from);
+            i = idx >= 0 ? idx + 1 : -idx - 1;
+        }
+        String last = null;
+        int count = 0;
+        for (; i < index.keys().length; i++) {
+            Quad quad = index.quads()[i];
+            if (!L.matchesFilter(graph, quad.getGraph()) || !L.matchesFilter(subject, quad.getSubject())) {
+                continue;
+            }
+            // Removed since the index was built
+            Label label = quadLabels.get(quad);
+            if (label == null) {
+                continue;
+            }
+            if (count == limit) {
+                return Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8));
+            }
+            action.accept(quad, label);
+            last = index.keys()[i];
+            count++;
+        }
+        return null;
+    }
+
+    private PageIndex pageIndex() {
+        PageIndex index = pageIndex;
+        long current = changes.get();
+        if (index != null && index.changes() == current) {
+            return index;
+        }
+        List<Map.Entry<String, Quad>> entries = new ArrayList<>(quadLabels.size());
+        quadLabels.keySet().forEach(quad -> entries.add(Map.entry(
+                NodeFmtLib.strNodesNT(quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject()), quad)));
+        entries.sort(Map.Entry.comparingByKey());
+        index = new PageIndex(current, entries.stream().map(Map.Entry::getKey).toArray(String[]::new),
+                              entries.stream().map(Map.Entry::getValue).toArray(Quad[]::new));
+        // Only kept if the store didn't change whilst it was built, otherwise it's used for this page only
+        if (changes.get() == current) {
+            pageIndex = index;
+        }
+        return index;
+    }
+
     @Override
     public Graph asGraph() {
         readOperation();
@@ -191,6 +280,36 @@ public class LabelsStoreMem implements LabelsStore {
         return quadLabels.isEmpty();
     }
 
+    @Override
+    public Collection<Label> distinctLabels(int limit) {
+        readOperation();
+        if (labelCounts.size() > limit) {
+            return null;
+        }
+        return List.copyOf(labelCounts.keySet());
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(Node graph, int limit) {
+        readOperation();
+        Map<Label, Long> graphCounts = graphLabelCounts.getOrDefault(graph, Map.of());
+        if (graphCounts.size() > limit) {
+            return null;
+        }
+        return List.copyOf(graphCounts.keySet());
+    }
+
+    @Override
+    public Map<Label, Long> labelCounts(Node predicate, int limit) {
+        readOperation();
+        Map<Label, Long> counts =
+                Node.ANY.equals(predicate) ? labelCounts : predicateLabelCounts.getOrDefault(predicate, Map.of());
+        if (counts.size() > limit) {
+            return null;
+        }
+        return Map.copyOf(counts);
+    }
+
     private void flushAccumulator() {
         if (!accQuadLabels.isEmpty()) {
             // Ensure only one thread is emptying the accumulator.
@@ -200,12 +319,40 @@ public class LabelsStoreMem implements LabelsStore {
                 // accTripleLabels is not protected but either:
                 //   Transaction in use and only the write transaction will update accTripleLabels.
                 //   Freestanding usage in tests when all work is single threaded.
-                quadLabels.putAll(accQuadLabels);
+                accQuadLabels.forEach((quad, label) -> countLabel(quad, quadLabels.put(quad, label), label));
+                changes.incrementAndGet();
                 clearAccumulator();
             }
         }
     }
 
+    /**
+     * Update the distinct label counts when the label for a quad changes.  Callers synchronize on this store.
+     */
+    private void countLabel(Quad quad, Label oldLabel, Label newLabel) {
+        countLabel(labelCounts, oldLabel, newLabel);
+        countLabel(graphLabelCounts, quad.getGraph(), oldLabel, newLabel);
+        countLabel(predicateLabelCounts, quad.getPredicate(), oldLabel, newLabel);
+    }
+
+    private static void countLabel(Map<Node, Map<Label, Long>> countsByNode, Node node, Label oldLabel,
+                                   Label newLabel) {
+        Map<Label, Long> counts = countsByNode.computeIfAbsent(node, n -> new ConcurrentHashMap<>());
+        countLabel(counts, oldLabel, newLabel);
+        if (counts.isEmpty()) {
+            countsByNode.remove(node);
+        }
+    }
+
+    private static void countLabel(Map<Label, Long> counts, Label oldLabel, Label newLabel) {
+        if (oldLabel != null) {
+            counts.computeIfPresent(oldLabel, (l, count) -> count > 1 ? count - 1 : null);
+        }
+        if (newLabel != null) {
+            counts.merge(newLabel, 1L, Long::sum);
+        }
+    }
+
     private void clearAccumulator() {
         accQuadLabels.clear();
     }
@@ -248,7 +395,10 @@ public class LabelsStoreMem implements LabelsStore {
 
     @Override
     public void remove(Quad quad) {
-        this.quadLabels.remove(quad);
+        synchronized (this) {
+            countLabel(quad, this.quadLabels.remove(quad), null);
+            changes.incrementAndGet();
+        }
         this.accQuadLabels.remove(quad);
     }
 
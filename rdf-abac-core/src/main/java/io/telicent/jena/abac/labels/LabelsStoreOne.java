@@ -16,12 +16,15 @@
 
 package io.telicent.jena.abac.labels;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.riot.out.NodeFmtLib;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Transactional;
@@ -73,6 +76,16 @@ public class LabelsStoreOne implements LabelsStore {
         return true;
     }
 
+    @Override
+    public Collection<Label> distinctLabels(int limit) {
+        return limit >= 1 ? List.of(label) : null;
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(Node graph, int limit) {
+        return distinctLabels(limit);
+    }
+
     @Override
     public Graph asGraph() {
         return null;
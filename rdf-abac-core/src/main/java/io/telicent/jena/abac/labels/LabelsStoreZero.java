@@ -16,12 +16,15 @@
 
 package io.telicent.jena.abac.labels;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 
 import org.apache.jena.atlas.logging.Log;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.riot.out.NodeFmtLib;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Transactional;
@@ -62,6 +65,12 @@ public class LabelsStoreZero implements LabelsStore {
     @Override
     public boolean isEmpty() { return true; }
 
+    @Override
+    public Collection<Label> distinctLabels(Node graph, int limit) { return List.of(); }
+
+    @Override
+    public Map<Label, Long> labelCounts(Node predicate, int limit) { return Map.of(); }
+
     @Override
     public Graph asGraph() { return GraphZero.instance(); }
 
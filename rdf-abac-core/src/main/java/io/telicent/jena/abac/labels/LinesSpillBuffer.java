@@ -0,0 +1,208 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels;
+
+import org.apache.jena.atlas.io.IO;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Collects lines of text, holding at most a given number of them in memory and spilling the rest, sorted, to temporary
+ * files.
+ * <p>
+ * Once all the lines have been collected they are read back in order, merging any spilled runs, so that work over a
+ * large upload that would otherwise need an in-memory set or map, such as matching up records of the same quad, can be
+ * done in bounded memory.  Lines must not contain newlines.
+ * </p>
+ */
+public class LinesSpillBuffer implements AutoCloseable {
+
+    /**
+     * Default number of lines held in memory before spilling them to a temporary file
+     */
+    public static final int DEFAULT_MAX_IN_MEMORY = 1_000_000;
+
+    private final int maxInMemory;
+    private final Path tempDir;
+    private final List<String> memory = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+
+    /**
+     * Creates a new buffer, spilling to the default temporary directory
+     *
+     * @param maxInMemory Maximum number of lines held in memory
+     */
+    public LinesSpillBuffer(int maxInMemory) {
+        this(maxInMemory, null);
+    }
+
+    /**
+     * Creates a new buffer
+     *
+     * @param maxInMemory Maximum number of lines held in memory
+     * @param tempDir     Directory for the temporary files, {@code null} for the default temporary directory
+     */
+    public LinesSpillBuffer(int maxInMemory, Path tempDir) {
+        if (maxInMemory < 1) {
+            throw new IllegalArgumentException("Maximum lines in memory must be at least 1");
+        }
+        this.maxInMemory = maxInMemory;
+        this.tempDir = tempDir;
+    }
+
+    /**
+     * Adds a line
+     */
+    public void add(String line) {
+        memory.add(line);
+        if (memory.size() >= maxInMemory) {
+            spill();
+        }
+    }
+
+    /**
+     * Number of temporary files spilled so far
+     */
+    public int spills() {
+        return runs.size();
+    }
+
+    /**
+     * Whether no lines have been added
+     */
+    public boolean isEmpty() {
+        return memory.isEmpty() && runs.isEmpty();
+    }
+
+    private void spill() {
+        Collections.sort(memory);
+        try {
+            Path run = tempDir == null
+                       ? Files.createTempFile("abac-lines-", ".tmp")
+                       : Files.createTempFile(tempDir, "abac-lines-", ".tmp");
+            runs.add(run);
+            try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+                for (String line : memory) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException ex) {
+            IO.exception(ex);
+        }
+        memory.clear();
+    }
+
+    /**
+     * Sends each distinct line collected, in order, to a handler, merging any spilled runs.  The buffer is then empty.
+     *
+     * @param destination Handler for the lines
+     */
+    public void forEachDistinct(Consumer<String> destination) {
+        Collections.sort(memory);
+        PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparing(c -> c.current));
+        try {
+            Cursor inMemory = new Cursor(memory.iterator(), null);
+            if (inMemory.advance()) {
+                queue.add(inMemory);
+            }
+            for (Path run : runs) {
+                BufferedReader reader = Files.newBufferedReader(run, StandardCharsets.UTF_8);
+                Cursor cursor = new Cursor(reader.lines().iterator(), reader);
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+            String previous = null;
+            while (!queue.isEmpty()) {
+                Cursor cursor = queue.poll();
+                String line = cursor.current;
+                if (!line.equals(previous)) {
+                    destination.accept(line);
+                    previous = line;
+                }
+                if (cursor.advance()) {
+                    queue.add(cursor);
+                } else {
+                    cursor.close();
+                }
+            }
+        } catch (IOException ex) {
+            IO.exception(ex);
+        } finally {
+            queue.forEach(Cursor::close);
+            close();
+        }
+    }
+
+    /**
+     * Discards the lines collected, deleting any temporary files
+     */
+    @Override
+    public void close() {
+        memory.clear();
+        for (Path run : runs) {
+            try {
+                Files.deleteIfExists(run);
+            } catch (IOException ex) {
+                Labels.LOG.warn("Failed to delete temporary file {}", run, ex);
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * Position in a sorted run
+     */
+    private static class Cursor {
+        private final Iterator<String> lines;
+        private final AutoCloseable source;
+        private String current;
+
+        Cursor(Iterator<String> lines, AutoCloseable source) {
+            this.lines = lines;
+            this.source = source;
+        }
+
+        boolean advance() {
+            current = lines.hasNext() ? lines.next() : null;
+            return current != null;
+        }
+
+        void close() {
+            if (source != null) {
+                try {
+                    source.close();
+                } catch (Exception ex) { /* Ignore */ }
+            }
+        }
+    }
+}
@@ -18,6 +18,8 @@ package io.telicent.jena.abac.labels;
 
 import static org.apache.jena.riot.out.NodeFmtLib.str;
 
+import java.util.Collection;
+
 import io.telicent.jena.abac.AE;
 import io.telicent.jena.abac.SysABAC;
 import io.telicent.jena.abac.attributes.AttributeException;
@@ -38,6 +40,8 @@ class SecurityFilterByLabel implements QuadFilter {
     private final Label defaultLabel;
     private final CxtABAC cxt;
     private final boolean debug;
+    // Decision for the default label, evaluated at most once per request.
+    private volatile Boolean defaultDecision = null;
 
     // Test and development help (prefer CxtABAC.systemTrace)
     private static boolean generalDebug = false;
@@ -77,7 +81,7 @@ class SecurityFilterByLabel implements QuadFilter {
             FmtLog.info(logFilter, "(%s) : %s%s", str(quad), x, dataLabel);
         }
 
-        boolean b = determineOutcome(cxt, dataLabel);
+        boolean b = noLabelForQuad ? defaultDecision() : determineOutcome(cxt, dataLabel);
         if (debug) {
             String x = noLabelForQuad ? "Default:" : "";
             FmtLog.info(logFilter, "(%s) : %s%s --> %s", str(quad), x, dataLabel, b);
@@ -85,6 +89,50 @@ class SecurityFilterByLabel implements QuadFilter {
         return b;
     }
 
+    /**
+     * Test whether quads with the given label are visible to the request.
+     *
+     * @param dataLabel Label, {@code null} for quads without a label
+     * @return True if visible
+     */
+    boolean testLabel(Label dataLabel) {
+        return dataLabel == null ? defaultDecision() : determineOutcome(cxt, dataLabel);
+    }
+
+    private boolean defaultDecision() {
+        Boolean decision = defaultDecision;
+        if (decision == null) {
+            decision = determineOutcome(cxt, defaultLabel);
+            defaultDecision = decision;
+        }
+        return decision;
+    }
+
+    /**
+     * Determine whether every one of the given labels, and the default label, leads to the same decision for a request.
+     *
+     * @param labels       Labels
+     * @param defaultLabel Default label for unlabelled quads, {@code null} for the system default
+     * @param cxt          Request context
+     * @return The common decision, or {@code null} if the labels lead to different decisions or any fails to evaluate
+     */
+    static Boolean constantDecision(Collection<Label> labels, Label defaultLabel, CxtABAC cxt) {
+        try {
+            boolean decision = determineOutcome(cxt, defaultLabel == null
+                                                     ? SysABAC.systemDefaultTripleAttributes
+                                                     : defaultLabel);
+            for (Label label : labels) {
+                if (determineOutcome(cxt, label) != decision) {
+                    return null;
+                }
+            }
+            return decision;
+        } catch (RuntimeException ex) {
+            // Leave it to per-quad filtering to report bad labels
+            return null;
+        }
+    }
+
     private static boolean determineOutcome(CxtABAC cxt, Label dataLabel) {
         Cache<Label, ValueTerm> cache = cxt.labelEvalCache();
         ValueTerm value = cache.get(dataLabel, (dLabel) -> eval1(cxt, dLabel));
@@ -0,0 +1,149 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels.changes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsException;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.tokens.Token;
+import org.apache.jena.riot.tokens.TokenType;
+import org.apache.jena.riot.tokens.Tokenizer;
+import org.apache.jena.riot.tokens.TokenizerText;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * An entry in a {@link LabelsChangeLog}.
+ * <p>
+ * Each entry is written as a single line of text:
+ * <pre>
+ *   SEQ A &lt;g&gt; &lt;s&gt; &lt;p&gt; "o" "label" .
+ *   SEQ D &lt;g&gt; &lt;s&gt; &lt;p&gt; "o" .
+ *   SEQ C .
+ *   SEQ X .
+ * </pre>
+ * where {@code A} adds (or replaces) the label for a quad, {@code D} removes the label for a quad, {@code C} marks the
+ * end of a committed transaction and {@code X} the end of an aborted one, whose changes must be discarded.  RDF terms
+ * use N-Triples syntax.
+ * </p>
+ *
+ * @param sequence  Sequence number, monotonically increasing across the whole log
+ * @param operation Operation
+ * @param quad      Quad, {@code null} for {@link Operation#COMMIT} and {@link Operation#ABORT}
+ * @param label     Label, only present for {@link Operation#ADD}
+ */
+public record LabelsChange(long sequence, Operation operation, Quad quad, Label label) {
+
+    /** Change log operations */
+    public enum Operation {
+        ADD("A"), REMOVE("D"), COMMIT("C"), ABORT("X");
+
+        private final String code;
+
+        Operation(String code) {
+            this.code = code;
+        }
+
+        static Operation fromCode(String code) {
+            for (Operation op : values()) {
+                if (op.code.equals(code)) {
+                    return op;
+                }
+            }
+            throw new LabelsException("Unknown labels change log operation: " + code);
+        }
+    }
+
+    static LabelsChange add(Quad quad, Label label) {
+        return new LabelsChange(0, Operation.ADD, quad, label);
+    }
+
+    static LabelsChange remove(Quad quad) {
+        return new LabelsChange(0, Operation.REMOVE, quad, null);
+    }
+
+    LabelsChange withSequence(long sequence) {
+        return new LabelsChange(sequence, operation, quad, label);
+    }
+
+    /**
+     * Formats the change as a single line of text, without a line terminator.
+     */
+    String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(sequence).append(' ').append(operation.code);
+        if (operation == Operation.ADD || operation == Operation.REMOVE) {
+            sb.append(' ').append(NodeFmtLib.strNT(quad.getGraph()))
+              .append(' ').append(NodeFmtLib.strNT(quad.getSubject()))
+              .append(' ').append(NodeFmtLib.strNT(quad.getPredicate()))
+              .append(' ').append(NodeFmtLib.strNT(quad.getObject()));
+        }
+        if (operation == Operation.ADD) {
+            sb.append(' ').append(NodeFmtLib.strNT(NodeFactory.createLiteralString(label.getText())));
+        }
+        sb.append(" .");
+        return sb.toString();
+    }
+
+    /**
+     * Parses a line produced by {@link #format()}.
+     *
+     * @throws LabelsException Thrown if the line is not a valid change log entry
+     */
+    static LabelsChange parse(String line) {
+        try {
+            Tokenizer tokenizer = TokenizerText.fromString(line);
+            List<Token> tokens = new ArrayList<>();
+            while (tokenizer.hasNext()) {
+                tokens.add(tokenizer.next());
+            }
+            if (tokens.size() < 3 || !tokens.getLast().hasType(TokenType.DOT)) {
+                throw new LabelsException("Invalid labels change log entry: " + line);
+            }
+            long sequence = Long.parseLong(tokens.get(0).getImage());
+            Operation operation = Operation.fromCode(tokens.get(1).getImage());
+            return switch (operation) {
+                case COMMIT, ABORT -> new LabelsChange(sequence, operation, null, null);
+                case REMOVE -> new LabelsChange(sequence, operation, quad(tokens, line), null);
+                case ADD -> {
+                    if (tokens.size() != 8) {
+                        throw new LabelsException("Invalid labels change log entry: " + line);
+                    }
+                    Node label = tokens.get(6).asNode();
+                    yield new LabelsChange(sequence, operation, quad(tokens, line),
+                                           Label.fromText(label.getLiteralLexicalForm()));
+                }
+            };
+        } catch (LabelsException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw new LabelsException("Invalid labels change log entry: " + line, e);
+        }
+    }
+
+    private static Quad quad(List<Token> tokens, String line) {
+        if (tokens.size() < 7) {
+            throw new LabelsException("Invalid labels change log entry: " + line);
+        }
+        return Quad.create(tokens.get(2).asNode(), tokens.get(3).asNode(), tokens.get(4).asNode(),
+                           tokens.get(5).asNode());
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels.changes;
+
+import static io.telicent.jena.abac.labels.Labels.LOG;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.telicent.jena.abac.labels.LabelsException;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.system.Txn;
+
+/**
+ * Tails a {@link LabelsChangeLog} and applies the changes to a local {@link LabelsStore}.
+ * <p>
+ * Only committed transactions, i.e. those terminated by a commit entry, are applied and each is applied in a single
+ * write transaction on the target store.  Transactions whose commit sequence number is not greater than the last
+ * applied sequence number are skipped.
+ * </p>
+ * <p>
+ * Given a position file, the follower records the log's epoch, the last applied sequence number and the offset in the
+ * log after it, once the changes have been applied, and resumes from there when restarted.  The position file
+ * <strong>MUST</strong> live alongside the target store so that the two stay in step, a target store that doesn't
+ * survive a restart, e.g. an in-memory one, should be given no position file.  If the log is replaced by a different
+ * one, detected by a change of epoch or the log becoming shorter than the follower's offset, the follower starts
+ * again from the beginning of the new log.
+ * </p>
+ * <p>
+ * Changes are applied either by calling {@link #poll()} directly, or periodically in the background after calling
+ * {@link #start(Duration)}.
+ * </p>
+ */
+public class LabelsChangeFollower implements AutoCloseable {
+
+    /** Conventional name of a follower's position file within the target store's directory. */
+    public static final String POSITION_FILE = "labels-change-log.position";
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final String POSITION_EPOCH = "epoch";
+    private static final String POSITION_SEQUENCE = "lastApplied";
+    private static final String POSITION_OFFSET = "offset";
+
+    private final Path path;
+    private final LabelsStore target;
+    private final Path positionFile;
+    private final List<LabelsChange> pending = new ArrayList<>();
+    private final ByteArrayOutputStream partialLine = new ByteArrayOutputStream();
+    private volatile long lastApplied;
+    private final AtomicLong appliedTransactions = new AtomicLong();
+    // Epoch of the log being followed, null until first read
+    private String epoch = null;
+    // Offset after the last complete line read, and after the last transaction terminated
+    private long offset = 0;
+    private long terminatedOffset = 0;
+    private ScheduledExecutorService executor = null;
+
+    /**
+     * Creates a follower that applies every change in the log
+     *
+     * @param path   Change log file
+     * @param target Store to apply changes to
+     */
+    public LabelsChangeFollower(Path path, LabelsStore target) {
+        this(path, target, 0);
+    }
+
+    /**
+     * Creates a follower that resumes after a previously applied sequence number
+     *
+     * @param path        Change log file
+     * @param target      Store to apply changes to
+     * @param lastApplied Sequence number of the last commit already applied to the target
+     */
+    public LabelsChangeFollower(Path path, LabelsStore target, long lastApplied) {
+        this.path = Objects.requireNonNull(path);
+        this.target = Objects.requireNonNull(target);
+        this.positionFile = null;
+        this.lastApplied = lastApplied;
+    }
+
+    /**
+     * Creates a follower that records its position in, and resumes from, a position file
+     *
+     * @param path         Change log file
+     * @param target       Store to apply changes to
+     * @param positionFile File in which the follower's position is recorded
+     * @throws LabelsException Thrown if an existing position file can't be read
+     */
+    public LabelsChangeFollower(Path path, LabelsStore target, Path positionFile) {
+        this.path = Objects.requireNonNull(path);
+        this.target = Objects.requireNonNull(target);
+        this.positionFile = Objects.requireNonNull(positionFile);
+        this.lastApplied = 0;
+        loadPosition();
+    }
+
+    private void loadPosition() {
+        if (!Files.exists(positionFile)) {
+            return;
+        }
+        Properties position = new Properties();
+        try (InputStream input = Files.newInputStream(positionFile)) {
+            position.load(input);
+            this.epoch = position.getProperty(POSITION_EPOCH);
+            this.lastApplied = Long.parseLong(position.getProperty(POSITION_SEQUENCE, "0"));
+            this.offset = Long.parseLong(position.getProperty(POSITION_OFFSET, "0"));
+            this.terminatedOffset = this.offset;
+        } catch (IOException | NumberFormatException e) {
+            throw new LabelsException("Failed to read labels change log position " + positionFile, e);
+        }
+    }
+
+    private void savePosition() {
+        Properties position = new Properties();
+        position.setProperty(POSITION_EPOCH, epoch);
+        position.setProperty(POSITION_SEQUENCE, Long.toString(lastApplied));
+        position.setProperty(POSITION_OFFSET, Long.toString(terminatedOffset));
+        Path temp = positionFile.resolveSibling(positionFile.getFileName() + ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                position.store(output, null);
+            }
+            Files.move(temp, positionFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new LabelsException("Failed to write labels change log position " + positionFile, e);
+        }
+    }
+
+    /**
+     * The change log file
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * The sequence number of the last commit applied to the target store
+     */
+    public long lastApplied() {
+        return lastApplied;
+    }
+
+    /**
+     * The number of transactions applied to the target store by this follower, which increases whenever the target's
+     * labels are changed by the follower
+     */
+    public long appliedTransactions() {
+        return appliedTransactions.get();
+    }
+
+    /**
+     * Reads any new entries from the log and applies committed transactions to the target store
+     *
+     * @return Number of changes applied
+     * @throws LabelsException Thrown if the log can't be read, or the position can't be recorded
+     */
+    public synchronized int poll() {
+        if (!Files.exists(path)) {
+            return 0;
+        }
+        int applied = 0;
+        long startOffset = terminatedOffset;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() == 0) {
+                // A new log whose header isn't yet written
+                return 0;
+            }
+            String logEpoch = readEpoch(channel);
+            if ((epoch != null && !epoch.equals(logEpoch)) || channel.size() < offset) {
+                LOG.warn("Labels change log {} has been replaced, following the new log from its start", path);
+                offset = 0;
+                terminatedOffset = 0;
+                startOffset = -1;
+                lastApplied = 0;
+                pending.clear();
+            }
+            epoch = logEpoch;
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            long readOffset = offset;
+            int read;
+            while ((read = channel.read(buffer, readOffset)) > 0) {
+                long lineEnd = readOffset;
+                readOffset += read;
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    byte b = buffer.get();
+                    lineEnd++;
+                    if (b != '\n') {
+                        partialLine.write(b);
+                        continue;
+                    }
+                    String line = partialLine.toString(StandardCharsets.UTF_8);
+                    partialLine.reset();
+                    offset = lineEnd;
+                    if (!line.isBlank() && !line.startsWith("#")) {
+                        applied += accept(LabelsChange.parse(line));
+                    }
+                }
+                buffer.clear();
+            }
+        } catch (NoSuchFileException e) {
+            return applied;
+        } catch (IOException e) {
+            throw new LabelsException("Failed to read labels change log " + path, e);
+        } finally {
+            // An incomplete line may yet be truncated by the leader so is read again, from the offset, next time
+            partialLine.reset();
+        }
+        if (positionFile != null && terminatedOffset != startOffset) {
+            savePosition();
+        }
+        return applied;
+    }
+
+    /**
+     * Reads the epoch from the log's header, empty if the log has no header
+     */
+    private static String readEpoch(FileChannel channel) throws IOException {
+        int headerSize = LabelsChangeLog.HEADER_PREFIX.length() + 64;
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(headerSize, channel.size()));
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) > 0) {
+            // Keep reading until the buffer is full
+        }
+        String start = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        if (!start.startsWith(LabelsChangeLog.HEADER_PREFIX)) {
+            return "";
+        }
+        int end = start.indexOf('\n');
+        return start.substring(LabelsChangeLog.HEADER_PREFIX.length(), end >= 0 ? end : start.length()).strip();
+    }
+
+    private int accept(LabelsChange change) {
+        switch (change.operation()) {
+            case ADD, REMOVE -> {
+                pending.add(change);
+                return 0;
+            }
+            case ABORT -> {
+                pending.clear();
+                terminatedOffset = offset;
+                return 0;
+            }
+            default -> { }
+        }
+        int applied = 0;
+        if (change.sequence() > lastApplied) {
+            Txn.executeWrite(target.getTransactional(), () -> {
+                for (LabelsChange c : pending) {
+                    switch (c.operation()) {
+                        case ADD -> target.add(c.quad(), c.label());
+                        case REMOVE -> target.remove(c.quad());
+                        default -> { }
+                    }
+                }
+            });
+            applied = pending.size();
+            lastApplied = change.sequence();
+            appliedTransactions.incrementAndGet();
+        }
+        pending.clear();
+        terminatedOffset = offset;
+        return applied;
+    }
+    /**
+     * Starts polling the log in the background
+     *
+     * @param interval Interval between polls
+     */
+    public synchronized void start(Duration interval) {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LabelsChangeFollower-" + path.getFileName());
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::pollQuietly, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void pollQuietly() {
+        try {
+            int applied = poll();
+            if (applied > 0) {
+                LOG.debug("Applied {} label changes from {} up to sequence number {}", applied, path, lastApplied);
+            }
+        } catch (Throwable e) {
+            LOG.warn("Failed to apply label changes from {}: {}", path, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService toStop;
+        synchronized (this) {
+            toStop = executor;
+            executor = null;
+        }
+        if (toStop != null) {
+            toStop.shutdownNow();
+            try {
+                toStop.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
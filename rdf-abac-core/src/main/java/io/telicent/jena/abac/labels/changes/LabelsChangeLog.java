@@ -0,0 +1,283 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels.changes;
+
+import static io.telicent.jena.abac.labels.Labels.LOG;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import io.telicent.jena.abac.labels.LabelsException;
+
+/**
+ * An append-only, durable log of changes made to a labels store.
+ * <p>
+ * The log is written ahead of the store: a transaction's changes are first {@link #prepare(List) prepared}, i.e.
+ * appended and forced to disk, then the store commits, then the transaction is terminated by a
+ * {@link LabelsChange.Operation#COMMIT} entry, or by an {@link LabelsChange.Operation#ABORT} entry if the store failed
+ * to commit.  Followers only apply transactions terminated by a commit entry.  Every entry is assigned the next
+ * sequence number, so sequence numbers are monotonically increasing across the log and a follower can record the last
+ * sequence number it has applied in order to resume.
+ * </p>
+ * <p>
+ * A new log starts with a header line, {@value #HEADER_PREFIX} followed by a unique epoch, so that a follower can tell
+ * when the log it follows has been replaced by a different one.
+ * </p>
+ * <p>
+ * On opening an existing log the next sequence number is recovered by reading the log.  Any torn trailing entry, e.g.
+ * from a crash part way through a write, is truncated from the log.  A trailing prepared transaction that was neither
+ * committed nor aborted is made available via {@link #uncommitted()}, whoever opens the log must then decide, from the
+ * state of its store, whether to {@link #commit()} or {@link #abort()} it.
+ * </p>
+ *
+ * @see LabelsChangeFollower
+ */
+public class LabelsChangeLog implements AutoCloseable {
+
+    /** Prefix of the header line that starts a log, the remainder of the line is the log's epoch. */
+    public static final String HEADER_PREFIX = "# labels-change-log ";
+
+    private final Path path;
+    private final FileChannel channel;
+    private final String epoch;
+    private final List<LabelsChange> uncommitted = new ArrayList<>();
+    private long nextSequence;
+    private boolean prepared = false;
+
+    /**
+     * Opens a change log, creating it if necessary
+     *
+     * @param path Log file
+     * @throws LabelsException Thrown if the log cannot be opened
+     */
+    public LabelsChangeLog(Path path) {
+        this.path = path;
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            boolean created = !Files.exists(path) || Files.size(path) == 0;
+            this.epoch = created ? UUID.randomUUID().toString() : recover();
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                            StandardOpenOption.APPEND);
+            if (created) {
+                this.nextSequence = 1;
+                write(HEADER_PREFIX + epoch + "\n");
+            }
+        } catch (IOException e) {
+            throw new LabelsException("Failed to open labels change log " + path, e);
+        }
+    }
+
+    /**
+     * Recovers the log, truncating any torn trailing entry and noting any trailing uncommitted transaction, and
+     * returns the log's epoch
+     */
+    private String recover() throws IOException {
+        String header = "";
+        long last = 0;
+        long goodLength = 0;
+        long offset = 0;
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(path))) {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = input.read()) != -1) {
+                offset++;
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                String text = line.toString(StandardCharsets.UTF_8);
+                line.reset();
+                if (goodLength == 0 && text.startsWith(HEADER_PREFIX)) {
+                    header = text.substring(HEADER_PREFIX.length()).strip();
+                    goodLength = offset;
+                    continue;
+                }
+                if (text.isBlank()) {
+                    goodLength = offset;
+                    continue;
+                }
+                LabelsChange change;
+                try {
+                    change = LabelsChange.parse(text);
+                } catch (LabelsException e) {
+                    // A torn write, nothing after this point was written
+                    break;
+                }
+                last = change.sequence();
+                goodLength = offset;
+                switch (change.operation()) {
+                    case COMMIT, ABORT -> uncommitted.clear();
+                    default -> uncommitted.add(change);
+                }
+            }
+        }
+        if (goodLength < Files.size(path)) {
+            LOG.warn("Truncating incomplete entry from the end of labels change log {}", path);
+            try (FileChannel truncate = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                truncate.truncate(goodLength);
+                truncate.force(true);
+            }
+        }
+        this.nextSequence = last + 1;
+        return header;
+    }
+
+    /**
+     * The log file
+     */
+    public Path path() {
+        return path;
+    }
+
+    /**
+     * The epoch of the log, empty for logs written before epochs were introduced
+     */
+    public String epoch() {
+        return epoch;
+    }
+
+    /**
+     * The sequence number of the most recently appended entry, {@code 0} if the log is empty
+     */
+    public synchronized long lastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * The changes of a prepared transaction, found at the end of the log when it was opened, that was neither committed
+     * nor aborted.  Empty once it has been resolved by {@link #commit()} or {@link #abort()}.
+     */
+    public synchronized List<LabelsChange> uncommitted() {
+        return List.copyOf(uncommitted);
+    }
+
+    /**
+     * Appends a transaction's worth of changes to the log, without terminating the transaction, and forces them to
+     * disk.  The transaction <strong>MUST</strong> then be terminated by calling {@link #commit()} or {@link #abort()}.
+     * Callers that need no other entries to be appended in between should synchronize on the log.
+     * <p>
+     * The sequence numbers of the supplied changes are ignored, each is assigned the next sequence number in the log.
+     * An empty list of changes is not logged.
+     * </p>
+     *
+     * @param changes Changes
+     * @throws LabelsException Thrown if the changes can't be written, or a prepared transaction has not been
+     *                         terminated
+     */
+    public synchronized void prepare(List<LabelsChange> changes) {
+        if (prepared) {
+            throw new LabelsException("Labels change log " + path + " already has a prepared transaction");
+        }
+        if (!uncommitted.isEmpty()) {
+            LOG.warn("Aborting unresolved transaction at the end of labels change log {}", path);
+            abort();
+        }
+        if (changes.isEmpty()) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        long sequence = nextSequence;
+        for (LabelsChange change : changes) {
+            sb.append(change.withSequence(sequence++).format()).append('\n');
+        }
+        write(sb.toString());
+        nextSequence = sequence;
+        prepared = true;
+    }
+
+    /**
+     * Terminates the prepared, or recovered uncommitted, transaction with a commit entry and forces it to disk
+     *
+     * @return Sequence number of the commit entry, or of the last entry in the log if there was no transaction
+     * @throws LabelsException Thrown if the entry can't be written
+     */
+    public synchronized long commit() {
+        return terminate(LabelsChange.Operation.COMMIT);
+    }
+
+    /**
+     * Terminates the prepared, or recovered uncommitted, transaction with an abort entry and forces it to disk
+     *
+     * @throws LabelsException Thrown if the entry can't be written
+     */
+    public synchronized void abort() {
+        terminate(LabelsChange.Operation.ABORT);
+    }
+
+    private long terminate(LabelsChange.Operation operation) {
+        if (!prepared && uncommitted.isEmpty()) {
+            return lastSequence();
+        }
+        long sequence = nextSequence;
+        write(new LabelsChange(sequence, operation, null, null).format() + "\n");
+        nextSequence = sequence + 1;
+        prepared = false;
+        uncommitted.clear();
+        return sequence;
+    }
+
+    /**
+     * Appends a transaction's worth of changes to the log, followed by a commit entry, and forces them to disk.
+     * <p>
+     * The sequence numbers of the supplied changes are ignored, each is assigned the next sequence number in the log.
+     * An empty list of changes is not logged.
+     * </p>
+     *
+     * @param changes Changes
+     * @return Sequence number of the commit entry, or of the last entry in the log if there were no changes
+     * @throws LabelsException Thrown if the changes can't be written
+     */
+    public synchronized long append(List<LabelsChange> changes) {
+        prepare(changes);
+        return commit();
+    }
+
+    private void write(String entries) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(entries.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new LabelsException("Failed to append to labels change log " + path, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new LabelsException("Failed to close labels change log " + path, e);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels.changes;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsException;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Transactional;
+
+/**
+ * A read-only {@link LabelsStore} whose contents are replicated from another node's {@link LabelsChangeLog}.
+ * <p>
+ * Changes are applied to the local store in the background by a {@link LabelsChangeFollower}, attempts to
+ * {@link #add(Quad, Label)} or {@link #remove(Quad)} labels directly are rejected.
+ * </p>
+ */
+public class LabelsStoreFollower implements LabelsStore {
+
+    private final LabelsStore local;
+    private final LabelsChangeFollower follower;
+
+    /**
+     * Creates a follower store and starts following the change log
+     *
+     * @param local        Local labels store the changes are applied to
+     * @param changeLog    Change log file to follow
+     * @param pollInterval Interval between checks for new changes
+     */
+    public LabelsStoreFollower(LabelsStore local, Path changeLog, Duration pollInterval) {
+        this(local, new LabelsChangeFollower(changeLog, local), pollInterval);
+    }
+
+    /**
+     * Creates a follower store that records its position in the change log, resuming from it, and starts following
+     * the change log
+     *
+     * @param local        Local labels store the changes are applied to
+     * @param changeLog    Change log file to follow
+     * @param positionFile File, alongside the local store, in which the position in the change log is recorded
+     * @param pollInterval Interval between checks for new changes
+     */
+    public LabelsStoreFollower(LabelsStore local, Path changeLog, Path positionFile, Duration pollInterval) {
+        this(local, new LabelsChangeFollower(changeLog, local, positionFile), pollInterval);
+    }
+
+    private LabelsStoreFollower(LabelsStore local, LabelsChangeFollower follower, Duration pollInterval) {
+        this.local = Objects.requireNonNull(local);
+        this.follower = follower;
+        this.follower.start(pollInterval);
+    }
+
+    /**
+     * The change follower
+     */
+    public LabelsChangeFollower follower() {
+        return follower;
+    }
+
+    @Override
+    public Label labelForQuad(Quad quad) {
+        return local.labelForQuad(quad);
+    }
+
+    @Override
+    public Label labelForQuadScan(Quad quad) {
+        return local.labelForQuadScan(quad);
+    }
+
+    @Override
+    public Transactional getTransactional() {
+        return local.getTransactional();
+    }
+
+    @Override
+    public void add(Quad quad, Label label) {
+        throw new LabelsException("Labels store is a read-only follower of " + follower.path());
+    }
+
+    @Override
+    public void remove(Quad quad) {
+        throw new LabelsException("Labels store is a read-only follower of " + follower.path());
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return local.isEmpty();
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(int limit) {
+        return local.distinctLabels(limit);
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(Node graph, int limit) {
+        return local.distinctLabels(graph, limit);
+    }
+
+    @Override
+    public Map<Label, Long> labelCounts(Node predicate, int limit) {
+        return local.labelCounts(predicate, limit);
+    }
+
+    @Override
+    public void forEach(BiConsumer<Quad, Label> action) {
+        local.forEach(action);
+    }
+
+    @Override
+    public void forEach(Node graph, Node subject, BiConsumer<Quad, Label> action) {
+        local.forEach(graph, subject, action);
+    }
+
+    @Override
+    public String forEachPage(Node graph, Node subject, String after, int limit, BiConsumer<Quad, Label> action) {
+        return local.forEachPage(graph, subject, after, limit, action);
+    }
+
+    @Override
+    public Graph asGraph() {
+        return local.asGraph();
+    }
+
+    @Override
+    public long labelsVersion() {
+        // Changes are applied by the follower, not by write transactions on the dataset
+        return local.labelsVersion() + follower.appliedTransactions();
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        Map<String, String> properties = new HashMap<>(local.getProperties());
+        properties.put("changeLogApplied", Long.toString(follower.lastApplied()));
+        return properties;
+    }
+
+    @Override
+    public void close() throws Exception {
+        follower.close();
+        local.close();
+    }
+}
@@ -0,0 +1,313 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels.changes;
+
+import static io.telicent.jena.abac.labels.Labels.LOG;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.system.Txn;
+
+/**
+ * A {@link LabelsStore} that records every change made to another labels store in a {@link LabelsChangeLog}, so that
+ * the changes can be replicated to follower nodes with a {@link LabelsChangeFollower}.
+ * <p>
+ * The log is written ahead of the store.  Changes made inside a transaction are held until it commits, then prepared in
+ * the log as a single transaction before the underlying store commits them, and finally committed in the log.  If the
+ * underlying store fails to commit the transaction is aborted in the log.  Changes from a transaction that is aborted
+ * before it commits are never logged.  Changes made outside of a transaction are logged the same way, one at a time.
+ * </p>
+ * <p>
+ * If the process stops after a transaction is prepared in the log but before it is committed or aborted there, then
+ * when the store is next opened the transaction is committed in the log if the underlying store has its changes, and
+ * aborted otherwise.
+ * </p>
+ * <p>
+ * Replacing an existing label is logged as an add, since adding a label for a quad replaces any existing label.  Label
+ * dictionary allocations, where the underlying store uses one, are not logged since they are internal to each store and
+ * a follower allocates its own when it applies the changes.
+ * </p>
+ */
+public class LabelsStoreWithChangeLog implements LabelsStore {
+
+    private final LabelsStore delegate;
+    private final LabelsChangeLog changeLog;
+    private final Transactional transactional;
+    private final ThreadLocal<List<LabelsChange>> txnChanges = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * Creates a labels store that logs changes
+     *
+     * @param delegate  Labels store to which changes are actually made
+     * @param changeLog Change log
+     */
+    public LabelsStoreWithChangeLog(LabelsStore delegate, LabelsChangeLog changeLog) {
+        this.delegate = Objects.requireNonNull(delegate);
+        this.changeLog = Objects.requireNonNull(changeLog);
+        this.transactional = new TransactionalChangeLog(delegate.getTransactional());
+        resolveUncommitted();
+    }
+
+    /**
+     * Resolves a transaction left prepared in the log, committing it if the underlying store committed it and
+     * aborting it otherwise.
+     */
+    private void resolveUncommitted() {
+        List<LabelsChange> uncommitted = changeLog.uncommitted();
+        if (uncommitted.isEmpty()) {
+            return;
+        }
+        // Only the last change to each quad determines whether the store has the transaction's changes
+        Map<Quad, LabelsChange> changes = new LinkedHashMap<>();
+        uncommitted.forEach(change -> changes.put(change.quad(), change));
+        boolean applied = Txn.calculateRead(delegate.getTransactional(), () -> changes.values().stream().allMatch(
+                change -> Objects.equals(delegate.labelForQuad(change.quad()), change.label())));
+        if (applied) {
+            LOG.info("Committing transaction left prepared in labels change log {}", changeLog.path());
+            changeLog.commit();
+        } else {
+            LOG.warn("Aborting transaction left prepared in labels change log {}", changeLog.path());
+            changeLog.abort();
+        }
+    }
+
+    /**
+     * The change log
+     */
+    public LabelsChangeLog changeLog() {
+        return changeLog;
+    }
+
+    /**
+     * The underlying labels store
+     */
+    public LabelsStore delegate() {
+        return delegate;
+    }
+
+    private void record(LabelsChange change, Runnable apply) {
+        if (transactional.isInTransaction()) {
+            apply.run();
+            txnChanges.get().add(change);
+        } else {
+            writeAhead(List.of(change), apply);
+        }
+    }
+
+    /**
+     * Prepares changes in the log, applies them to the underlying store, then commits them in the log, aborting them
+     * in the log if they can't be applied.
+     */
+    private void writeAhead(List<LabelsChange> changes, Runnable apply) {
+        if (changes.isEmpty()) {
+            apply.run();
+            return;
+        }
+        synchronized (changeLog) {
+            changeLog.prepare(changes);
+            try {
+                apply.run();
+            } catch (RuntimeException e) {
+                try {
+                    changeLog.abort();
+                } catch (RuntimeException abortFailure) {
+                    e.addSuppressed(abortFailure);
+                }
+                throw e;
+            }
+            changeLog.commit();
+        }
+    }
+
+    @Override
+    public Label labelForQuad(Quad quad) {
+        return delegate.labelForQuad(quad);
+    }
+
+    @Override
+    public Label labelForQuadScan(Quad quad) {
+        return delegate.labelForQuadScan(quad);
+    }
+
+    @Override
+    public Transactional getTransactional() {
+        return transactional;
+    }
+
+    @Override
+    public void add(Quad quad, Label label) {
+        record(LabelsChange.add(quad, label), () -> delegate.add(quad, label));
+    }
+
+    @Override
+    public void remove(Quad quad) {
+        record(LabelsChange.remove(quad), () -> delegate.remove(quad));
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return delegate.isEmpty();
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(int limit) {
+        return delegate.distinctLabels(limit);
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(Node graph, int limit) {
+        return delegate.distinctLabels(graph, limit);
+    }
+
+    @Override
+    public Map<Label, Long> labelCounts(Node predicate, int limit) {
+        return delegate.labelCounts(predicate, limit);
+    }
+
+    @Override
+    public void forEach(BiConsumer<Quad, Label> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public void forEach(Node graph, Node subject, BiConsumer<Quad, Label> action) {
+        delegate.forEach(graph, subject, action);
+    }
+
+    @Override
+    public String forEachPage(Node graph, Node subject, String after, int limit, BiConsumer<Quad, Label> action) {
+        return delegate.forEachPage(graph, subject, after, limit, action);
+    }
+
+    @Override
+    public long labelsVersion() {
+        return delegate.labelsVersion();
+    }
+
+    @Override
+    public Graph asGraph() {
+        return delegate.asGraph();
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        Map<String, String> properties = new HashMap<>(delegate.getProperties());
+        properties.put("changeLogSequence", Long.toString(changeLog.lastSequence()));
+        return properties;
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            delegate.close();
+        } finally {
+            changeLog.close();
+        }
+    }
+
+    /**
+     * Wraps the underlying store's transactional, writing a transaction's changes to the log around the underlying
+     * store committing them.
+     */
+    private class TransactionalChangeLog implements Transactional {
+        private final Transactional other;
+
+        TransactionalChangeLog(Transactional other) {
+            this.other = other;
+        }
+
+        @Override
+        public void begin() {
+            txnChanges.remove();
+            other.begin();
+        }
+
+        @Override
+        public void begin(TxnType type) {
+            txnChanges.remove();
+            other.begin(type);
+        }
+
+        @Override
+        public void begin(ReadWrite readWrite) {
+            txnChanges.remove();
+            other.begin(readWrite);
+        }
+
+        @Override
+        public boolean promote() {
+            return other.promote();
+        }
+
+        @Override
+        public boolean promote(Promote mode) {
+            return other.promote(mode);
+        }
+
+        @Override
+        public void commit() {
+            List<LabelsChange> changes = txnChanges.get();
+            try {
+                writeAhead(changes, other::commit);
+            } finally {
+                txnChanges.remove();
+            }
+        }
+
+        @Override
+        public void abort() {
+            txnChanges.remove();
+            other.abort();
+        }
+
+        @Override
+        public void end() {
+            txnChanges.remove();
+            other.end();
+        }
+
+        @Override
+        public ReadWrite transactionMode() {
+            return other.transactionMode();
+        }
+
+        @Override
+        public TxnType transactionType() {
+            return other.transactionType();
+        }
+
+        @Override
+        public boolean isInTransaction() {
+            return other.isInTransaction();
+        }
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.labels.store.rocksdb;
+
+import static io.telicent.jena.abac.labels.Labels.LOG;
+
+import java.util.Map;
+import java.util.Optional;
+
+import io.telicent.jena.abac.labels.LabelsException;
+import org.rocksdb.*;
+
+/**
+ * Process-wide RocksDB memory shared by all the RocksDB labels stores in a JVM.
+ * <p>
+ * Rather than each store having its own block cache and unbounded write buffers, all stores share a single
+ * {@link LRUCache} block cache and a {@link WriteBufferManager} whose memtable memory is charged against that same
+ * cache. The total memory used for blocks, index/filter blocks and memtables across all stores is therefore bounded by
+ * a single budget, no matter how many datasets a server hosts.
+ * </p>
+ * <p>
+ * The budget, in bytes, is taken from the {@value #ENV_MEMORY_BUDGET} environment variable or system property, or from
+ * {@link #configure(long)} (e.g. via the {@code authz:labelsStoreMemoryBudget} assembler property). It must be set
+ * before the first store is opened, after that the shared memory is fixed for the lifetime of the JVM.
+ * </p>
+ */
+public final class SharedRocksDBMemory {
+
+    /** Environment variable, or system property, giving the shared memory budget in bytes. */
+    public static final String ENV_MEMORY_BUDGET = "ABAC_ROCKSDB_MEMORY_BUDGET";
+
+    /** Default shared memory budget (512MB). */
+    public static final long DEFAULT_MEMORY_BUDGET = 512L * 1024 * 1024;
+
+    /** Fraction of the budget that memtables (write buffers) may use. */
+    public static final double WRITE_BUFFER_FRACTION = 0.25;
+
+    /** Fraction of the block cache reserved for high priority (index and filter) blocks. */
+    private static final double HIGH_PRIORITY_POOL_RATIO = 0.1;
+
+    private static Long configuredBudget = null;
+    private static SharedRocksDBMemory instance = null;
+    private static boolean unavailable = false;
+
+    private final long budget;
+    private final org.rocksdb.Cache blockCache;
+    private final WriteBufferManager writeBufferManager;
+    private final BloomFilter bloomFilter;
+
+    private SharedRocksDBMemory(long budget, org.rocksdb.Cache blockCache, WriteBufferManager writeBufferManager,
+                                BloomFilter bloomFilter) {
+        this.budget = budget;
+        this.blockCache = blockCache;
+        this.writeBufferManager = writeBufferManager;
+        this.bloomFilter = bloomFilter;
+    }
+
+    /**
+     * Set the shared memory budget.  Only takes effect if called before the shared memory is first used, later calls
+     * with a different budget are logged and ignored.
+     *
+     * @param budget Budget in bytes
+     */
+    public static synchronized void configure(long budget) {
+        if (budget <= 0) {
+            throw new LabelsException("The RocksDB shared memory budget is an invalid value: " + budget);
+        }
+        if (instance != null) {
+            if (instance.budget != budget) {
+                LOG.warn("RocksDB shared memory already allocated with budget {}, ignoring requested budget {}",
+                         instance.budget, budget);
+            }
+            return;
+        }
+        configuredBudget = budget;
+    }
+
+    /**
+     * Get the shared memory, allocating it on first use.
+     *
+     * @return Shared memory, or {@code null} if the loaded RocksDB native library doesn't support it in which case
+     * stores should fall back to their own defaults
+     */
+    public static synchronized SharedRocksDBMemory get() {
+        if (instance == null && !unavailable) {
+            long budget = configuredBudget != null ? configuredBudget : budgetFromEnvironment();
+            try {
+                org.rocksdb.Cache cache = new LRUCache(budget, -1, false, HIGH_PRIORITY_POOL_RATIO);
+                WriteBufferManager wbm = new WriteBufferManager((long) (budget * WRITE_BUFFER_FRACTION), cache);
+                instance = new SharedRocksDBMemory(budget, cache, wbm, new BloomFilter(10.0));
+                LOG.info("RocksDB labels stores sharing {} bytes of block cache and write buffer memory", budget);
+            } catch (Throwable t) {
+                // Typically UnsatisfiedLinkError when the native library predates the bindings' expected symbols
+                LOG.warn("Unable to create shared RocksDB memory ({}); stores will use their own block caches",
+                         t.toString());
+                unavailable = true;
+            }
+        }
+        return instance;
+    }
+
+    private static long budgetFromEnvironment() {
+        String value = Optional.ofNullable(System.getenv(ENV_MEMORY_BUDGET))
+                               .orElse(System.getProperty(ENV_MEMORY_BUDGET));
+        if (value == null) {
+            return DEFAULT_MEMORY_BUDGET;
+        }
+        try {
+            long budget = Long.parseLong(value.trim());
+            if (budget > 0) {
+                return budget;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through to warning
+        }
+        LOG.warn("Invalid {} value '{}', using default of {} bytes", ENV_MEMORY_BUDGET, value, DEFAULT_MEMORY_BUDGET);
+        return DEFAULT_MEMORY_BUDGET;
+    }
+
+    /** The total memory budget, in bytes. */
+    public long budget() {
+        return budget;
+    }
+
+    /** The shared block cache. Owned by this class, stores <strong>MUST NOT</strong> close it. */
+    public org.rocksdb.Cache blockCache() {
+        return blockCache;
+    }
+
+    /** The shared write buffer manager. Owned by this class, stores <strong>MUST NOT</strong> close it. */
+    public WriteBufferManager writeBufferManager() {
+        return writeBufferManager;
+    }
+
+    /** A shared bloom filter policy. Owned by this class, stores <strong>MUST NOT</strong> close it. */
+    public BloomFilter bloomFilter() {
+        return bloomFilter;
+    }
+
+    /**
+     * Adds the shared memory usage to a labels store properties map.
+     *
+     * @param properties Properties map to add to
+     * @return The properties map
+     */
+    public Map<String, String> addProperties(Map<String, String> properties) {
+        properties.put("sharedMemoryBudget", Long.toString(budget));
+        properties.put("sharedBlockCacheUsage", Long.toString(blockCache.getUsage()));
+        properties.put("sharedBlockCachePinnedUsage", Long.toString(blockCache.getPinnedUsage()));
+        return properties;
+    }
+
+    /**
+     * Adds the memory usage of a single store, within the shared memory, to a labels store properties map.
+     *
+     * @param db         Database, nothing is added if it is {@code null} or already closed
+     * @param properties Properties map to add to
+     * @return The properties map
+     */
+    public static Map<String, String> addStoreProperties(RocksDB db, Map<String, String> properties) {
+        if (db == null || !db.isOwningHandle()) {
+            return properties;
+        }
+        addLongProperty(db, "rocksdb.cur-size-all-mem-tables", "memTableUsage", properties);
+        addLongProperty(db, "rocksdb.estimate-table-readers-mem", "tableReadersUsage", properties);
+        return properties;
+    }
+
+    private static void addLongProperty(RocksDB db, String rocksProperty, String name, Map<String, String> properties) {
+        try {
+            properties.put(name, Long.toString(db.getAggregatedLongProperty(rocksProperty)));
+        } catch (RocksDBException e) {
+            LOG.debug("Unable to read RocksDB property {}: {}", rocksProperty, e.getMessage());
+        }
+    }
+}
@@ -17,8 +17,6 @@
 package io.telicent.jena.abac.labels.store.rocksdb.legacy;
 
 import io.telicent.jena.abac.labels.*;
-import org.apache.jena.atlas.lib.Cache;
-import org.apache.jena.atlas.lib.CacheFactory;
 import org.apache.jena.atlas.lib.NotImplemented;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
@@ -67,12 +65,11 @@ public class LegacyLabelsStoreRocksDB implements LabelsStore {
     /**
      * Cache of triple lookup in {@link #labelForSPO}
      * <p>
-     * The cache is maintained by {@link #add(Quad, Label)}
+     * The cache is maintained by {@link #add(Quad, Label)} and is sized from the configuration resource,
+     * see {@link LabelsCache#create(Resource)}.
      * </p>
      */
-    private static final int LABEL_LOOKUP_CACHE_SIZE = 1_000_000;
-    // Hit cache of triple to list of strings (labels).
-    private final Cache<Quad, Label> labelCache = CacheFactory.createCache(LABEL_LOOKUP_CACHE_SIZE);
+    private final LabelsCache labelCache;
 
     /**
      * We maintain a buffer per-thread for key encoding and label encoding to avoid continual re-allocation.
@@ -166,6 +163,7 @@ public class LegacyLabelsStoreRocksDB implements LabelsStore {
     public LegacyLabelsStoreRocksDB(final RocksDBHelper helper, final File dbRoot, final StoreFmt storeFmt,
                                     Resource resource) {
         this.bufferCapacity = getByteBufferSize(resource);
+        this.labelCache = LabelsCache.create(resource);
         this.keyBuffer = ThreadLocal.withInitial(this::allocateKVBuffer);
         this.valueBuffer = ThreadLocal.withInitial(this::allocateKVBuffer);
         this.labelsBuffer = ThreadLocal.withInitial(this::allocateKVBuffer);
@@ -231,6 +229,14 @@ public class LegacyLabelsStoreRocksDB implements LabelsStore {
         return label == Label.EMPTY ? null : label;
     }
 
+    @Override
+    public Label labelForQuadScan(Quad quad) {
+        Quad normalized = RocksDBHelper.normalize(quad);
+        Label label = labelCache.getNoAdmit(quad, t -> labelForQuad(normalized.getGraph(), normalized.getSubject(),
+                normalized.getPredicate(), normalized.getObject()));
+        return label == Label.EMPTY ? null : label;
+    }
+
     /**
      * Perform a lookup in the labels store, given a quad return the label associated with that quad (if any)
      * <p>
@@ -385,7 +391,7 @@ public class LegacyLabelsStoreRocksDB implements LabelsStore {
 
         // Add the new rule and update the cache, if a previous entry or cache is under-populated
         addRule(normalized.getSubject(), normalized.getPredicate(), normalized.getObject(), label);
-        if (cachedLabel != null || (labelCache.size() < LABEL_LOOKUP_CACHE_SIZE)) {
+        if (cachedLabel != null || labelCache.hasCapacity()) {
             labelCache.put(normalized, label);
         }
     }
@@ -486,6 +492,9 @@ public class LegacyLabelsStoreRocksDB implements LabelsStore {
         properties.put("size", Long.toString(expensiveCount()));
         properties.put("count", Long.toString(count));
 
+        labelCache.addProperties(properties);
+        helper.addMemoryProperties(properties);
+
         if (LOG.isDebugEnabled()) {
             properties.put("keyTotalSize", "" + keyTotalSize.get());
             properties.put("valueTotalSize", "" + valueTotalSize.get());
@@ -3,6 +3,7 @@ package io.telicent.jena.abac.labels.store.rocksdb.legacy;
 
 import io.telicent.jena.abac.labels.Label;
 import io.telicent.jena.abac.labels.StoreFmt;
+import io.telicent.jena.abac.labels.store.rocksdb.SharedRocksDBMemory;
 import org.apache.jena.atlas.lib.Cache;
 import org.apache.jena.graph.Node;
 import org.apache.jena.sparql.core.Quad;
@@ -12,6 +13,7 @@ import org.rocksdb.*;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
@@ -72,7 +74,8 @@ public class RocksDBHelper {
     static final Function<Node, Node> normalizeFunction = NormalizeTermsTDB2::normalizeTDB2;
 
     /**
-     * Size of the shared block cache (256MB). Index and filter blocks are routed into this cache (see
+     * Size of the per-store block cache (256MB), used only when the {@link SharedRocksDBMemory} is unavailable. Index
+     * and filter blocks are routed into this cache (see
      * {@link #createBlockBasedTableConfig()}) so their memory is bounded rather than held in unbounded table-reader
      * memory.
      */
@@ -100,6 +103,11 @@ public class RocksDBHelper {
      * </p>
      */
     private org.rocksdb.Cache blockCache;
+    /**
+     * Whether {@link #blockCache} is the process-wide {@link SharedRocksDBMemory#blockCache()}, in which case it is not
+     * ours to close.
+     */
+    private boolean sharedBlockCache;
     /**
      * Shared bloom filter used to speed up lookups. Closed in {@link #closeDB()}.
      */
@@ -155,6 +163,11 @@ public class RocksDBHelper {
 
         try (final DBOptions dbOptions = configureRocksDBOptions().setCreateIfMissing(true)
                                                                   .setCreateMissingColumnFamilies(true)) {
+            // Charge memtable memory against the shared budget, if we're using it
+            SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+            if (sharedBlockCache && shared != null) {
+                dbOptions.setWriteBufferManager(shared.writeBufferManager());
+            }
             List<ColumnFamilyDescriptor> columnFamilyDescriptorList =
                     List.of(defaultDescriptor, cfhSPODescriptor, cfhSDescriptor, cfhPDescriptor,
                             cfhWildcardsDescription);
@@ -184,7 +197,7 @@ public class RocksDBHelper {
                 if (bloomFilter != null) {
                     bloomFilter.close();
                 }
-                if (blockCache != null) {
+                if (blockCache != null && !sharedBlockCache) {
                     blockCache.close();
                 }
             }
@@ -192,7 +205,8 @@ public class RocksDBHelper {
     }
 
     /**
-     * Creates the shared sized LRU block cache, if the loaded RocksDB native library supports it.
+     * Obtains the block cache for the store.  Normally this is the process-wide {@link SharedRocksDBMemory} cache,
+     * otherwise a sized LRU block cache for this store alone, if the loaded RocksDB native library supports it.
      * <p>
      * Older native libraries may not export the {@code newLRUCache} symbol that the {@link LRUCache} Java binding
      * uses, which would throw an {@link UnsatisfiedLinkError}. In that case we log a warning and return {@code null}
@@ -202,6 +216,11 @@ public class RocksDBHelper {
      * @return a sized {@link LRUCache}, or {@code null} if one cannot be constructed
      */
     protected org.rocksdb.Cache createBlockCache() {
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        this.sharedBlockCache = shared != null;
+        if (shared != null) {
+            return shared.blockCache();
+        }
         try {
             return new LRUCache(BLOCK_CACHE_SIZE);
         } catch (Throwable t) {
@@ -344,4 +363,20 @@ public class RocksDBHelper {
         return columnFamilyHandleList.remove(index);
     }
 
+    /**
+     * Adds the memory usage of the store, and of the {@link SharedRocksDBMemory} if in use, to a labels store
+     * properties map.
+     *
+     * @param properties Properties map to add to
+     */
+    public void addMemoryProperties(Map<String, String> properties) {
+        if (openFlag.get() && db != null) {
+            SharedRocksDBMemory.addStoreProperties(db, properties);
+        }
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        if (sharedBlockCache && shared != null) {
+            shared.addProperties(properties);
+        }
+    }
+
 }
@@ -2,6 +2,7 @@ package io.telicent.jena.abac.labels.store.rocksdb.modern;
 
 import io.telicent.jena.abac.labels.*;
 import io.telicent.jena.abac.labels.hashing.HasherUtil;
+import io.telicent.jena.abac.labels.store.rocksdb.SharedRocksDBMemory;
 import io.telicent.jena.abac.labels.store.rocksdb.legacy.LegacyLabelsStoreRocksDB;
 import io.telicent.jena.abac.labels.store.rocksdb.legacy.RocksDBHelper;
 import io.telicent.smart.cache.storage.RestoreConfig;
@@ -10,16 +11,16 @@ import io.telicent.smart.cache.storage.RestoreStatus;
 import io.telicent.smart.cache.storage.labels.rocksdb.RocksDbLabelsStore;
 import io.telicent.smart.cache.storage.rocksdb.KeyValue;
 import io.telicent.smart.cache.storage.rocksdb.TransactionContext;
-import org.apache.jena.atlas.lib.Cache;
-import org.apache.jena.atlas.lib.CacheFactory;
 import org.apache.jena.graph.Graph;
 import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.TxnType;
 import org.apache.jena.riot.out.NodeFmtLib;
 import org.apache.jena.sparql.JenaTransactionException;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
 import org.rocksdb.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,6 +31,8 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiConsumer;
@@ -50,6 +53,12 @@ import java.util.function.BiConsumer;
  * otherwise the migration will migrate keys using the wrong hash function and none of your labels will be correctly
  * retrieved post migration.
  * </p>
+ * <p>
+ * Lookups made inside a read transaction see a consistent snapshot of the store, as of when the transaction began,
+ * regardless of any writes committed while the transaction is active.  Database reads go through the read
+ * transaction's RocksDB context, and the label cache only serves that transaction entries that were valid as of its
+ * snapshot.
+ * </p>
  */
 @SuppressWarnings("deprecation")
 public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements LabelsStore {
@@ -58,6 +67,45 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
 
     public static final byte[] TRUE_BYTES = "true".getBytes(StandardCharsets.UTF_8);
 
+    /**
+     * Name of the column family holding the label ID to label mapping, see the storage layout documentation
+     */
+    static final String IDS_TO_LABELS_CF = "ids_to_labels";
+
+    /**
+     * Name of the column family holding the per-graph label summaries, keyed by graph and label ID with the number of
+     * quads in that graph with that label as the value
+     */
+    static final String GRAPHS_TO_LABELS_CF = "graphs_to_labels";
+
+    /**
+     * Metadata key recording that the store has maintained per-graph label summaries since it was created
+     */
+    static final byte[] GRAPH_LABELS_KEY = "graphLabels".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Name of the column family holding the per-predicate label counts, keyed by predicate and label ID with the number
+     * of quads with that predicate and label as the value.  Counts across all predicates are held under a prefix of a
+     * single zero byte.
+     */
+    static final String PREDICATES_TO_LABELS_CF = "predicates_to_labels";
+
+    /**
+     * Metadata key recording that the store has maintained per-predicate label counts since it was created
+     */
+    static final byte[] PREDICATE_LABELS_KEY = "predicateLabels".getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * Name of the column family holding the optional index from each key back to its original quad, whose value is the
+     * four nodes of the quad, see {@link #encodeQuad(Quad)}
+     */
+    static final String KEYS_TO_QUADS_CF = "keys_to_quads";
+
+    /**
+     * Metadata key recording that the store has maintained an index of its original quads since it was created
+     */
+    static final byte[] QUAD_INDEX_KEY = "quadIndex".getBytes(StandardCharsets.UTF_8);
+
     /**
      * Thread local byte buffers for encoding keys.  The size of this buffer is based upon the maximum hash length
      * (since we only allow {@link StoreFmtByHash} to be used) times 4. This is because we're mapping {@link Quad}'s to
@@ -67,14 +115,89 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
     private final ThreadLocal<ByteBuffer> keyBuffer =
             ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(4 * HasherUtil.MAX_HASH_LENGTH).order(
                     ByteOrder.LITTLE_ENDIAN));
+    private final File dbPath;
     private final StoreFmt storeFmt;
     private final StoreFmt.Encoder encoder;
     @SuppressWarnings("unused")
     private final StoreFmt.Parser parser;
     private final JenaTransactionWrapper wrapper;
-    private static final int LABEL_LOOKUP_CACHE_SIZE = 1_000_000;
-    // Hit cache of triple to list of strings (labels).
-    private final Cache<Quad, Label> labelCache = CacheFactory.createCache(LABEL_LOOKUP_CACHE_SIZE);
+    // Hit cache of quad to label, bounded by estimated memory use.
+    private final LabelsCache labelCache;
+    // Incremented on every commit that may have changed labels, cache entries are tagged with the version from which
+    // they are valid so readers only see entries valid as of their snapshot.
+    private final AtomicLong commitVersion = new AtomicLong(0);
+    // Number of writes in progress, while there are any entries read from the database must not be cached as they may
+    // be about to be changed.
+    private final AtomicInteger writesInProgress = new AtomicInteger(0);
+    // Distinct labels as of a commit version, labels are never removed from the dictionary so these remain a superset
+    // of the labels in use by any snapshot up to that version.
+    private volatile DistinctLabels distinctLabels = null;
+
+    private record DistinctLabels(long version, int limit, Collection<Label> labels) {}
+
+    // Whether this store has per-graph label summaries
+    private volatile boolean graphLabels;
+    // Per-graph distinct labels as of a commit version, unlike the dictionary these can shrink so are only used by
+    // readers of the same version
+    private volatile GraphLabels graphLabelsCache = null;
+
+    private record GraphLabels(long version, int limit, Map<Node, Optional<Collection<Label>>> labels) {}
+
+    // Whether this store has per-predicate label counts
+    private volatile boolean predicateLabels;
+    // Per-predicate label counts as of a commit version, only used by readers of the same version
+    private volatile PredicateLabels predicateLabelsCache = null;
+
+    // Label count changes made by the current thread's transaction, applied when it commits
+    private final ThreadLocal<Map<CountKey, Long>> countDeltas = ThreadLocal.withInitial(HashMap::new);
+    // Labels written by the current thread's transaction, only added to the cache once it has committed so that other
+    // transactions never see them beforehand
+    private final ThreadLocal<PendingLabels> pendingLabels = new ThreadLocal<>();
+    // Held while applying label count changes and committing, so that no other transaction's changes to the counts
+    // are committed between reading and writing them, and so commit versions are assigned in commit order
+    private final Object countLock = new Object();
+
+    /**
+     * Maximum number of labels written by a transaction that are added to the cache when it commits, a transaction
+     * that writes more than this clears the cache instead.
+     */
+    static final int MAX_PENDING_LABELS = 100_000;
+
+    private record CountKey(ColumnFamilyHandle handle, ByteBuffer key) {}
+
+    private record PredicateLabels(long version, int limit, Map<Node, Optional<Map<Label, Long>>> counts) {}
+
+    /**
+     * Labels written by a transaction that has yet to commit, {@link Label#EMPTY} for a removal.  Past
+     * {@link #MAX_PENDING_LABELS} they are no longer tracked and the whole cache is cleared on commit instead.
+     */
+    private static final class PendingLabels {
+        private final Map<Quad, Label> labels = new HashMap<>();
+        private boolean overflowed = false;
+
+        void put(Quad quad, Label label) {
+            if (overflowed) {
+                return;
+            }
+            labels.put(quad, label);
+            if (labels.size() > MAX_PENDING_LABELS) {
+                overflowed = true;
+                labels.clear();
+            }
+        }
+
+        void publish(LabelsCache cache, long version) {
+            if (overflowed) {
+                cache.clear();
+            } else {
+                labels.forEach((quad, label) -> cache.putAsOf(quad, label, version));
+            }
+        }
+    }
+
+    // Whether an index of the original quads was requested, and whether this store has one
+    private final boolean quadIndexRequested;
+    private volatile boolean quadIndex;
 
     private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
 
@@ -89,7 +212,48 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
      *                                  directory
      */
     public DictionaryLabelStoreRocksDB(File dbPath, StoreFmt storeFmt) throws IOException, RocksDBException {
+        this(dbPath, storeFmt, LabelsCache.create());
+    }
+
+    /**
+     * Creates a new dictionary encoded labels store backed by RocksDB
+     *
+     * @param dbPath     Database directory
+     * @param storeFmt   Store Format
+     * @param labelCache Cache to use for label lookups
+     * @throws IllegalArgumentException Thrown if an unsupported store format is provided
+     * @throws IOException              Thrown if there's a problem accessing the database directory
+     * @throws RocksDBException         Thrown if there's a problem accessing the RocksDB database in the given
+     *                                  directory
+     */
+    public DictionaryLabelStoreRocksDB(File dbPath, StoreFmt storeFmt, LabelsCache labelCache) throws IOException,
+            RocksDBException {
+        this(dbPath, storeFmt, labelCache, false);
+    }
+
+    /**
+     * Creates a new dictionary encoded labels store backed by RocksDB
+     * <p>
+     * A store can only have an index of its original quads, from which its labels can be exported, if it's requested
+     * when the store is first created.  Once a store has the index it's maintained whether or not it's requested, as
+     * otherwise it would no longer be complete.
+     * </p>
+     *
+     * @param dbPath     Database directory
+     * @param storeFmt   Store Format
+     * @param labelCache Cache to use for label lookups
+     * @param quadIndex  Whether to keep an index from each key back to its original quad
+     * @throws IllegalArgumentException Thrown if an unsupported store format is provided
+     * @throws IOException              Thrown if there's a problem accessing the database directory
+     * @throws RocksDBException         Thrown if there's a problem accessing the RocksDB database in the given
+     *                                  directory
+     */
+    public DictionaryLabelStoreRocksDB(File dbPath, StoreFmt storeFmt, LabelsCache labelCache, boolean quadIndex)
+            throws IOException, RocksDBException {
         super(dbPath);
+        this.dbPath = dbPath;
+        this.labelCache = Objects.requireNonNull(labelCache);
+        this.quadIndexRequested = quadIndex;
 
         this.storeFmt = Objects.requireNonNull(storeFmt);
         if (!(this.storeFmt instanceof StoreFmtByHash)) {
@@ -101,6 +265,9 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
 
         performMigrations(dbPath);
         validateStoreFormat(dbPath, storeFmt);
+        this.graphLabels = initGraphLabels(dbPath);
+        this.predicateLabels = initPredicateLabels(dbPath);
+        this.quadIndex = initQuadIndex(dbPath);
     }
 
     /**
@@ -155,6 +322,65 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         }
     }
 
+    /**
+     * Determines whether this store has per-graph label summaries, which are maintained from the point a store is
+     * first created.  Stores created by earlier versions, or migrated from the legacy format, don't have them since
+     * the graphs of their existing quads can't be recovered from the hashed keys.
+     *
+     * @param dbPath Database path
+     * @return True if per-graph label summaries are available
+     * @throws RocksDBException Thrown if there's a problem reading/writing the metadata
+     */
+    private boolean initGraphLabels(File dbPath) throws RocksDBException {
+        return initSummary(dbPath, GRAPH_LABELS_KEY,
+                           "per-graph label summaries, named graph visibility pruning is disabled for it");
+    }
+
+    /**
+     * Determines whether this store has per-predicate label counts, which like the per-graph label summaries are
+     * maintained from the point a store is first created
+     *
+     * @param dbPath Database path
+     * @return True if per-predicate label counts are available
+     * @throws RocksDBException Thrown if there's a problem reading/writing the metadata
+     */
+    private boolean initPredicateLabels(File dbPath) throws RocksDBException {
+        return initSummary(dbPath, PREDICATE_LABELS_KEY,
+                           "per-predicate label counts, label statistics for query planning are disabled for it");
+    }
+
+    /**
+     * Determines whether this store has an index of its original quads, which like the per-graph label summaries can
+     * only be maintained from the point a store is first created
+     *
+     * @param dbPath Database path
+     * @return True if the index is available
+     * @throws RocksDBException Thrown if there's a problem reading/writing the metadata
+     */
+    private boolean initQuadIndex(File dbPath) throws RocksDBException {
+        if (!this.quadIndexRequested) {
+            try (TransactionContext context = this.begin()) {
+                return context.get(this.getDefaultHandle(), QUAD_INDEX_KEY) != null;
+            }
+        }
+        return initSummary(dbPath, QUAD_INDEX_KEY, "an index of its original quads, its labels can't be exported");
+    }
+
+    private boolean initSummary(File dbPath, byte[] markerKey, String missing) throws RocksDBException {
+        try (TransactionContext context = this.begin()) {
+            if (context.get(this.getDefaultHandle(), markerKey) != null) {
+                return true;
+            }
+            if (!context.isEmpty(this.getHandle(KEYS_TO_LABELS_CF))) {
+                LOGGER.info("RocksDB store at {} was created without {}", dbPath.getAbsolutePath(), missing);
+                return false;
+            }
+            context.put(this.getDefaultHandle(), markerKey, TRUE_BYTES);
+            context.commit();
+            return true;
+        }
+    }
+
     /**
      * Performs any database schema migrations required
      * <p>
@@ -212,16 +438,37 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         // TODO Once SC-Storage 0.11.0 is available these settings are applied in our base class and can be removed
         Options options = super.createDefaultOptions();
         RocksDBHelper.configureRocksOptions(options);
+        // Charge memtable memory against the process-wide shared budget
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        if (shared != null) {
+            options.setWriteBufferManager(shared.writeBufferManager());
+        }
         return options;
     }
 
     @Override
     protected ColumnFamilyOptions defaultColumnFamilyOptions() {
         // TODO Once SC-Storage 0.11.0 is available these settings are applied in our base class and can be removed
-        return super.defaultColumnFamilyOptions()
-                    .setLevelCompactionDynamicLevelBytes(true)
-                    .setCompressionType(CompressionType.LZ4_COMPRESSION)
-                    .setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION);
+        ColumnFamilyOptions options = super.defaultColumnFamilyOptions()
+                                           .setLevelCompactionDynamicLevelBytes(true)
+                                           .setCompressionType(CompressionType.LZ4_COMPRESSION)
+                                           .setBottommostCompressionType(CompressionType.ZSTD_COMPRESSION);
+        // Use the process-wide shared block cache, rather than a cache per store, so memory use is bounded by a single
+        // budget no matter how many stores are open.  NB - This is called from our superclass constructor so MUST only
+        // rely upon static state.
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        if (shared != null) {
+            BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+            tableConfig.setBlockCache(shared.blockCache());
+            tableConfig.setBlockSize(16 * 1024);
+            tableConfig.setCacheIndexAndFilterBlocks(true);
+            tableConfig.setCacheIndexAndFilterBlocksWithHighPriority(true);
+            tableConfig.setPinL0FilterAndIndexBlocksInCache(true);
+            tableConfig.setFilterPolicy(shared.bloomFilter());
+            tableConfig.setFormatVersion(5);
+            options.setTableFormatConfig(tableConfig);
+        }
+        return options;
     }
 
     @Override
@@ -236,19 +483,96 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         for (byte[] name : RocksDBHelper.LEGACY_COLUMN_FAMILIES) {
             descriptors.add(new ColumnFamilyDescriptor(name, cfOptions));
         }
+        descriptors.add(new ColumnFamilyDescriptor(GRAPHS_TO_LABELS_CF.getBytes(StandardCharsets.UTF_8), cfOptions));
+        descriptors.add(
+                new ColumnFamilyDescriptor(PREDICATES_TO_LABELS_CF.getBytes(StandardCharsets.UTF_8), cfOptions));
+        // Declared whether or not the index is used, so that any store can be opened
+        descriptors.add(new ColumnFamilyDescriptor(KEYS_TO_QUADS_CF.getBytes(StandardCharsets.UTF_8), cfOptions));
         return descriptors;
     }
 
 
     @Override
     public Label labelForQuad(Quad quad) {
-        Label label = labelCache.get(quad, this::labelForQuadInternal);
+        PendingLabels pending = this.pendingLabels.get();
+        if (pending != null) {
+            return pendingLabel(pending, quad);
+        }
+        long version = this.wrapper.readVersion();
+        Label label = labelCache.getAsOf(quad, version, () -> canCache(version), this::labelForQuadInternal);
         // NB - Label.EMPTY is used as a placeholder value so we hold database misses in the cache, otherwise every
         //      missed lookup would bypass the cache (as the cache does not store null) and require a full database
         //      lookup which is bad for performance
         return label == Label.EMPTY ? null : label;
     }
 
+    @Override
+    public Label labelForQuadScan(Quad quad) {
+        PendingLabels pending = this.pendingLabels.get();
+        if (pending != null) {
+            return pendingLabel(pending, quad);
+        }
+        Label label = labelCache.getAsOf(quad, this.wrapper.readVersion(), () -> false, this::labelForQuadInternal);
+        return label == Label.EMPTY ? null : label;
+    }
+
+    /**
+     * Looks up a label within a transaction that has written labels of its own, which take precedence over both the
+     * cache, which may hold labels committed by other transactions since this one began, and the database.
+     */
+    private Label pendingLabel(PendingLabels pending, Quad quad) {
+        Label label = pending.labels.get(RocksDBHelper.normalize(quad));
+        if (label == null) {
+            label = labelForQuadInternal(quad);
+        }
+        return label == Label.EMPTY ? null : label;
+    }
+
+    /**
+     * Whether a quad may already have a label, so its old label has to be read in order to update the label counts.
+     * Loads into a fresh store mostly write quads that have no label yet, which the bloom filters can usually rule out
+     * without reading the key, unless it was written earlier in the same transaction.
+     */
+    private boolean mayHaveLabel(Quad quad, byte[] key) {
+        PendingLabels pending = this.pendingLabels.get();
+        if (pending != null && (pending.overflowed || pending.labels.containsKey(quad))) {
+            return true;
+        }
+        return this.db.keyMayExist(this.getHandle(KEYS_TO_LABELS_CF), key, null);
+    }
+
+    private void addPending(Quad quad, Label label) {
+        PendingLabels pending = this.pendingLabels.get();
+        if (pending == null) {
+            pending = new PendingLabels();
+            this.pendingLabels.set(pending);
+        }
+        pending.put(quad, label);
+    }
+
+    /**
+     * Whether a label read as of the given version may be cached, which is only the case if it's the latest committed
+     * version and no write is in progress.
+     */
+    private boolean canCache(long version) {
+        return this.writesInProgress.get() == 0 && version == this.commitVersion.get();
+    }
+
+    /**
+     * The version from which labels written by the current write will be valid, assuming no other write commits first
+     */
+    private long pendingVersion() {
+        return this.commitVersion.get() + 1;
+    }
+
+    private void beginWrite() {
+        this.writesInProgress.incrementAndGet();
+    }
+
+    private void endWrite() {
+        this.writesInProgress.decrementAndGet();
+    }
+
     private void verifyWritableTransaction() {
         if (this.wrapper.isInTransaction() && !this.wrapper.isWriteLikeTransaction()) {
             throw new JenaTransactionException("Cannot write in a read-only transaction");
@@ -269,10 +593,27 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         buffer.flip();
 
         byte[] key = asByteArray(buffer);
-        byte[] label = this.getLabelAsBytes(key);
+        byte[] label = readLabelAsBytes(key);
         return label != null ? new Label(label, StandardCharsets.UTF_8) : Label.EMPTY;
     }
 
+    /**
+     * Reads the label for a key, via the snapshot of the current read transaction if there is one
+     */
+    private byte[] readLabelAsBytes(byte[] key) {
+        TransactionContext readContext = this.wrapper.readContext();
+        if (readContext == null) {
+            return this.getLabelAsBytes(key);
+        }
+        try {
+            // The value is the encoded label ID, which is in turn the key for the label itself
+            byte[] labelId = readContext.get(this.getHandle(KEYS_TO_LABELS_CF), key);
+            return labelId != null ? readContext.get(this.getHandle(IDS_TO_LABELS_CF), labelId) : null;
+        } catch (RocksDBException e) {
+            throw new LabelsException("Failed to read label from RocksDB", e);
+        }
+    }
+
     /**
      * Converts a {@link ByteBuffer} to a {@code byte[]}
      * <p>
@@ -311,20 +652,46 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         buffer.flip();
         byte[] key = asByteArray(buffer);
 
-        // Store the label and associate the label with this quad as a single atomic transaction
-        // Calling beginNested() ensures that when the called methods call begin() they share the same transaction
-        // rather than performing their actions in independent transactions
-        try (TransactionContext context = this.beginNested()) {
-            long labelId = this.idForLabel(label.getData());
-            this.setLabel(key, labelId);
-
-            context.commit();
-        } catch (RocksDBException e) {
-            throw new LabelsException("Failed to store label in RocksDB", e);
+        boolean autoCommit = !this.wrapper.isInTransaction();
+        if (autoCommit) {
+            beginWrite();
         }
+        try {
+            // Store the label and associate the label with this quad as a single atomic transaction
+            // Calling beginNested() ensures that when the called methods call begin() they share the same transaction
+            // rather than performing their actions in independent transactions
+            try (TransactionContext context = this.beginNested()) {
+                byte[] oldLabelId = (this.graphLabels || this.predicateLabels) && mayHaveLabel(quad, key) ?
+                                    context.get(this.getHandle(KEYS_TO_LABELS_CF), key) : null;
+                long labelId = this.idForLabel(label.getData());
+                this.setLabel(key, labelId);
+                if (this.graphLabels) {
+                    updateGraphLabels(quad.getGraph(), oldLabelId, longToBytes(labelId));
+                }
+                if (this.predicateLabels) {
+                    updatePredicateLabels(quad.getPredicate(), oldLabelId, longToBytes(labelId));
+                }
+                if (this.quadIndex) {
+                    context.put(this.getHandle(KEYS_TO_QUADS_CF), key, encodeQuad(quad));
+                }
+                addPending(quad, label);
+
+                if (autoCommit) {
+                    commitWithCounts(context);
+                } else {
+                    context.commit();
+                }
+            } catch (RocksDBException e) {
+                throw new LabelsException("Failed to store label in RocksDB", e);
+            }
 
-        // Update the cache when we successfully update
-        labelCache.put(quad, label);
+        } finally {
+            if (autoCommit) {
+                this.countDeltas.remove();
+                this.pendingLabels.remove();
+                endWrite();
+            }
+        }
     }
 
     @Override
@@ -345,36 +712,540 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         buffer.flip();
         final byte[] key = asByteArray(buffer);
 
-        try (TransactionContext context = this.begin()) {
-            context.delete(this.getHandle(KEYS_TO_LABELS_CF), key);
+        boolean autoCommit = !this.wrapper.isInTransaction();
+        if (autoCommit) {
+            beginWrite();
+        }
+        try {
+            try (TransactionContext context = this.begin()) {
+                byte[] oldLabelId = (this.graphLabels || this.predicateLabels) && mayHaveLabel(normalizedQuad, key) ?
+                                    context.get(this.getHandle(KEYS_TO_LABELS_CF), key) : null;
+                context.delete(this.getHandle(KEYS_TO_LABELS_CF), key);
+                if (oldLabelId != null && this.graphLabels) {
+                    updateGraphLabels(graph, oldLabelId, null);
+                }
+                if (oldLabelId != null && this.predicateLabels) {
+                    updatePredicateLabels(predicate, oldLabelId, null);
+                }
+                if (this.quadIndex) {
+                    context.delete(this.getHandle(KEYS_TO_QUADS_CF), key);
+                }
+                // Cache the removal, rather than invalidating the entry, so that readers with an earlier snapshot
+                // can't re-cache the label being removed
+                addPending(normalizedQuad, Label.EMPTY);
+                if (autoCommit) {
+                    commitWithCounts(context);
+                } else {
+                    context.commit();
+                }
+            } catch (RocksDBException e) {
+                throw new LabelsException("Failed to remove label from RocksDB", e);
+            }
+        } finally {
+            if (autoCommit) {
+                this.countDeltas.remove();
+                this.pendingLabels.remove();
+                endWrite();
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try (TransactionContext context = this.beginReadOnly()) {
+            return context.isEmpty(this.getHandle(KEYS_TO_LABELS_CF));
+        }
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(int limit) {
+        long version = this.commitVersion.get();
+        DistinctLabels cached = this.distinctLabels;
+        if (cached != null && cached.version() == version && cached.limit() == limit) {
+            return cached.labels();
+        }
+        Collection<Label> labels;
+        try (TransactionContext context = this.beginReadOnly()) {
+            labels = distinctLabels(context.iterator(this.getHandle(IDS_TO_LABELS_CF)), limit);
+        }
+        this.distinctLabels = new DistinctLabels(version, limit, labels);
+        return labels;
+    }
+
+    /**
+     * Reads the distinct labels from an iterator over the {@code ids_to_labels} column family, closing the iterator
+     *
+     * @param iterator Iterator
+     * @param limit    Maximum number of labels to read
+     * @return Distinct labels, or {@code null} if there are more than {@code limit} of them
+     */
+    static Collection<Label> distinctLabels(RocksIterator iterator, int limit) {
+        try (iterator) {
+            List<Label> labels = new ArrayList<>();
+            for (iterator.seekToFirst(); iterator.isValid(); iterator.next()) {
+                if (labels.size() >= limit) {
+                    return null;
+                }
+                labels.add(new Label(iterator.value(), StandardCharsets.UTF_8));
+            }
+            return labels;
+        }
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(Node graph, int limit) {
+        // Summaries are only used by readers, a write transaction would need to see its own uncommitted changes
+        if (!this.graphLabels || (this.wrapper.isInTransaction() && this.wrapper.isWriteLikeTransaction())) {
+            return null;
+        }
+        long version = this.wrapper.readVersion();
+        GraphLabels cached = this.graphLabelsCache;
+        if (cached != null && cached.version() == version && cached.limit() == limit) {
+            Optional<Collection<Label>> labels = cached.labels().get(graph);
+            if (labels != null) {
+                return labels.orElse(null);
+            }
+        }
+        Collection<Label> labels = readGraphLabels(graph, limit);
+        if (canCache(version)) {
+            if (cached == null || cached.version() != version || cached.limit() != limit) {
+                cached = new GraphLabels(version, limit, new ConcurrentHashMap<>());
+                this.graphLabelsCache = cached;
+            }
+            cached.labels().put(graph, Optional.ofNullable(labels));
+            if (!canCache(version)) {
+                // A write started meanwhile so what we read may be newer than the version
+                cached.labels().remove(graph);
+            }
+        }
+        return labels;
+    }
+
+    private Collection<Label> readGraphLabels(Node graph, int limit) {
+        TransactionContext readContext = this.wrapper.readContext();
+        if (readContext != null) {
+            return readGraphLabels(readContext, graph, limit);
+        }
+        try (TransactionContext context = this.beginReadOnly()) {
+            return readGraphLabels(context, graph, limit);
+        }
+    }
+
+    private Collection<Label> readGraphLabels(TransactionContext context, Node graph, int limit) {
+        List<byte[]> labelIds = graphLabelIds(context.iterator(this.getHandle(GRAPHS_TO_LABELS_CF)), graph, limit);
+        if (labelIds == null) {
+            return null;
+        }
+        try {
+            List<Label> labels = new ArrayList<>(labelIds.size());
+            for (byte[] labelId : labelIds) {
+                byte[] label = context.get(this.getHandle(IDS_TO_LABELS_CF), labelId);
+                if (label != null) {
+                    labels.add(new Label(label, StandardCharsets.UTF_8));
+                }
+            }
+            return labels;
+        } catch (RocksDBException e) {
+            throw new LabelsException("Failed to read graph labels from RocksDB", e);
+        }
+    }
+
+    /**
+     * Reads the IDs of the distinct labels in a graph from an iterator over the {@code graphs_to_labels} column family,
+     * closing the iterator
+     *
+     * @param iterator Iterator
+     * @param graph    Graph name
+     * @param limit    Maximum number of label IDs to read
+     * @return Label IDs, or {@code null} if there are more than {@code limit} of them
+     */
+    static List<byte[]> graphLabelIds(RocksIterator iterator, Node graph, int limit) {
+        byte[] prefix = graphKeyPrefix(graph);
+        try (iterator) {
+            List<byte[]> labelIds = new ArrayList<>();
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (key.length <= prefix.length || !Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length)) {
+                    break;
+                }
+                if (labelIds.size() >= limit) {
+                    return null;
+                }
+                labelIds.add(Arrays.copyOfRange(key, prefix.length, key.length));
+            }
+            return labelIds;
+        }
+    }
+
+    /**
+     * The key prefix for a graph's entries in the {@code graphs_to_labels} column family, a zero byte separates the
+     * graph name from the label ID so no graph's prefix is a prefix of another's
+     */
+    static byte[] graphKeyPrefix(Node graph) {
+        byte[] name = NodeFmtLib.strNT(graph).getBytes(StandardCharsets.UTF_8);
+        return Arrays.copyOf(name, name.length + 1);
+    }
+
+    /**
+     * The key prefix for a predicate's entries in the {@code predicates_to_labels} column family, laid out in the same
+     * way as {@link #graphKeyPrefix(Node)}.  The counts across all predicates use a prefix of a single zero byte, which
+     * no predicate's prefix can start with.
+     */
+    static byte[] predicateKeyPrefix(Node predicate) {
+        return Node.ANY.equals(predicate) ? new byte[1] : graphKeyPrefix(predicate);
+    }
+
+    /**
+     * Reads the label IDs, and their counts, under a key prefix from an iterator over the {@code predicates_to_labels}
+     * column family, closing the iterator
+     *
+     * @param iterator Iterator
+     * @param prefix   Key prefix
+     * @param limit    Maximum number of label IDs to read
+     * @return Counts by label ID, or {@code null} if there are more than {@code limit} label IDs
+     */
+    static List<Map.Entry<byte[], Long>> labelIdCounts(RocksIterator iterator, byte[] prefix, int limit) {
+        try (iterator) {
+            List<Map.Entry<byte[], Long>> counts = new ArrayList<>();
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (key.length <= prefix.length || !Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length)) {
+                    break;
+                }
+                if (counts.size() >= limit) {
+                    return null;
+                }
+                counts.add(Map.entry(Arrays.copyOfRange(key, prefix.length, key.length), bytesToLong(iterator.value())));
+            }
+            return counts;
+        }
+    }
+
+    @Override
+    public Map<Label, Long> labelCounts(Node predicate, int limit) {
+        // As with the per-graph summaries these are only used by readers
+        if (!this.predicateLabels || (this.wrapper.isInTransaction() && this.wrapper.isWriteLikeTransaction())) {
+            return null;
+        }
+        long version = this.wrapper.readVersion();
+        PredicateLabels cached = this.predicateLabelsCache;
+        if (cached != null && cached.version() == version && cached.limit() == limit) {
+            Optional<Map<Label, Long>> counts = cached.counts().get(predicate);
+            if (counts != null) {
+                return counts.orElse(null);
+            }
+        }
+        Map<Label, Long> counts = readPredicateLabels(predicate, limit);
+        if (canCache(version)) {
+            if (cached == null || cached.version() != version || cached.limit() != limit) {
+                cached = new PredicateLabels(version, limit, new ConcurrentHashMap<>());
+                this.predicateLabelsCache = cached;
+            }
+            cached.counts().put(predicate, Optional.ofNullable(counts));
+            if (!canCache(version)) {
+                cached.counts().remove(predicate);
+            }
+        }
+        return counts;
+    }
+
+    private Map<Label, Long> readPredicateLabels(Node predicate, int limit) {
+        TransactionContext readContext = this.wrapper.readContext();
+        if (readContext != null) {
+            return readPredicateLabels(readContext, predicate, limit);
+        }
+        try (TransactionContext context = this.beginReadOnly()) {
+            return readPredicateLabels(context, predicate, limit);
+        }
+    }
+
+    private Map<Label, Long> readPredicateLabels(TransactionContext context, Node predicate, int limit) {
+        List<Map.Entry<byte[], Long>> labelIdCounts =
+                labelIdCounts(context.iterator(this.getHandle(PREDICATES_TO_LABELS_CF)), predicateKeyPrefix(predicate),
+                              limit);
+        if (labelIdCounts == null) {
+            return null;
+        }
+        try {
+            Map<Label, Long> counts = new HashMap<>();
+            for (Map.Entry<byte[], Long> entry : labelIdCounts) {
+                byte[] label = context.get(this.getHandle(IDS_TO_LABELS_CF), entry.getKey());
+                if (label != null) {
+                    counts.put(new Label(label, StandardCharsets.UTF_8), entry.getValue());
+                }
+            }
+            return Collections.unmodifiableMap(counts);
+        } catch (RocksDBException e) {
+            throw new LabelsException("Failed to read predicate labels from RocksDB", e);
+        }
+    }
+
+    /**
+     * Updates the per-graph label counts when the label of a quad in that graph changes
+     */
+    private void updateGraphLabels(Node graph, byte[] oldLabelId, byte[] newLabelId) {
+        if (Arrays.equals(oldLabelId, newLabelId)) {
+            return;
+        }
+        ColumnFamilyHandle handle = this.getHandle(GRAPHS_TO_LABELS_CF);
+        byte[] prefix = graphKeyPrefix(graph);
+        if (oldLabelId != null) {
+            adjustCount(handle, concat(prefix, oldLabelId), -1);
+        }
+        if (newLabelId != null) {
+            adjustCount(handle, concat(prefix, newLabelId), 1);
+        }
+    }
+
+    /**
+     * Updates the per-predicate, and all quads, label counts when the label of a quad with that predicate changes
+     */
+    private void updatePredicateLabels(Node predicate, byte[] oldLabelId, byte[] newLabelId) {
+        if (Arrays.equals(oldLabelId, newLabelId)) {
+            return;
+        }
+        ColumnFamilyHandle handle = this.getHandle(PREDICATES_TO_LABELS_CF);
+        for (byte[] prefix : List.of(predicateKeyPrefix(predicate), predicateKeyPrefix(Node.ANY))) {
+            if (oldLabelId != null) {
+                adjustCount(handle, concat(prefix, oldLabelId), -1);
+            }
+            if (newLabelId != null) {
+                adjustCount(handle, concat(prefix, newLabelId), 1);
+            }
+        }
+    }
+
+    /**
+     * Records a change to a label count, which is only read and written when the transaction commits, see
+     * {@link #commitWithCounts(TransactionContext)}.  So a transaction changing many quads with the same labels makes a
+     * single update to each count.
+     */
+    private void adjustCount(ColumnFamilyHandle handle, byte[] key, long delta) {
+        this.countDeltas.get().merge(new CountKey(handle, ByteBuffer.wrap(key)), delta, Long::sum);
+    }
+
+    /**
+     * Commits a transaction, first applying the label count changes it made, and then adds the labels it wrote to the
+     * cache as of the version it committed as.  Counts are read and written while holding a lock, through to the
+     * commit, so that concurrent transactions can't lose each other's changes.  The version is assigned under the same
+     * lock so that an earlier commit's labels never replace a later commit's in the cache.
+     */
+    private void commitWithCounts(TransactionContext context) throws RocksDBException {
+        Map<CountKey, Long> deltas = this.countDeltas.get();
+        this.countDeltas.remove();
+        PendingLabels pending = this.pendingLabels.get();
+        this.pendingLabels.remove();
+        synchronized (this.countLock) {
+            for (Map.Entry<CountKey, Long> delta : deltas.entrySet()) {
+                if (delta.getValue() == 0) {
+                    continue;
+                }
+                ColumnFamilyHandle handle = delta.getKey().handle();
+                byte[] key = delta.getKey().key().array();
+                byte[] value = context.get(handle, key);
+                long count = (value != null ? bytesToLong(value) : 0) + delta.getValue();
+                if (count > 0) {
+                    context.put(handle, key, longToBytes(count));
+                } else {
+                    context.delete(handle, key);
+                }
+            }
             context.commit();
+            long version = this.commitVersion.incrementAndGet();
+            if (pending != null) {
+                pending.publish(this.labelCache, version);
+            }
+        }
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    /**
+     * Encodes a quad as the value of its entry in the {@code keys_to_quads} column family, its four nodes separated by
+     * newlines.  Nodes are in N-Triples syntax, which has no newlines, except that blank nodes keep their label.
+     */
+    static byte[] encodeQuad(Quad quad) {
+        String value = encodeNode(quad.getGraph()) + '\n' + encodeNode(quad.getSubject()) + '\n' + encodeNode(
+                quad.getPredicate()) + '\n' + encodeNode(quad.getObject());
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String encodeNode(Node node) {
+        if (node.isBlank()) {
+            return "_:" + node.getBlankNodeLabel();
+        }
+        return NodeFmtLib.strNT(node);
+    }
+
+    /**
+     * Decodes a quad encoded by {@link #encodeQuad(Quad)}
+     */
+    static Quad decodeQuad(byte[] value) {
+        String[] nodes = new String(value, StandardCharsets.UTF_8).split("\n", 4);
+        if (nodes.length != 4) {
+            throw new LabelsException("Invalid entry in the index of original quads");
+        }
+        return Quad.create(decodeNode(nodes[0]), decodeNode(nodes[1]), decodeNode(nodes[2]), decodeNode(nodes[3]));
+    }
+
+    private static Node decodeNode(String node) {
+        if (node.startsWith("_:")) {
+            return NodeFactory.createBlankNode(node.substring(2));
+        }
+        return NodeFactoryExtra.parseNode(node);
+    }
+
+    /**
+     * The key prefix shared by the keys of all quads in a graph, and with a subject, or an empty prefix if no graph is
+     * given
+     */
+    static byte[] quadKeyPrefix(StoreFmt.Encoder encoder, Node graph, Node subject) {
+        if (graph == null || Node.ANY.equals(graph)) {
+            return new byte[0];
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(2 * HasherUtil.MAX_HASH_LENGTH);
+        encoder.formatSingleNode(buffer, Quad.isDefaultGraph(graph) ? Quad.defaultGraphIRI : graph);
+        if (subject != null && !Node.ANY.equals(subject)) {
+            encoder.formatSingleNode(buffer, subject);
+        }
+        buffer.flip();
+        return asByteArray(buffer);
+    }
+
+    /**
+     * Reads the label for a key
+     */
+    @FunctionalInterface
+    interface LabelReader {
+        byte[] read(byte[] key) throws RocksDBException;
+    }
+
+    /**
+     * Reads a page of entries from an iterator over the {@code keys_to_quads} column family, in key order, closing the
+     * iterator.  The continuation token is the last key read.
+     *
+     * @param iterator Iterator
+     * @param prefix   Prefix of the keys to read, see {@link #quadKeyPrefix(StoreFmt.Encoder, Node, Node)}
+     * @param graph    Graph name, or {@code null} or {@link Node#ANY} for any graph
+     * @param subject  Subject, or {@code null} or {@link Node#ANY} for any subject
+     * @param after    Continuation token, or {@code null} for the first page
+     * @param limit    Maximum number of entries to read
+     * @param labels   Reads the label for a key
+     * @param action   Action applied to each entry
+     * @return Continuation token for the next page, or {@code null} if this is the last page
+     */
+    static String readPage(RocksIterator iterator, byte[] prefix, Node graph, Node subject, String after, int limit,
+                           LabelReader labels, BiConsumer<Quad, Label> action) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page limit must be at least 1");
+        }
+        byte[] from = after != null ? Base64.getUrlDecoder().decode(after) : null;
+        try (iterator) {
+            if (from != null && Arrays.compareUnsigned(from, prefix) >= 0) {
+                iterator.seek(from);
+                if (iterator.isValid() && Arrays.equals(iterator.key(), from)) {
+                    iterator.next();
+                }
+            } else if (prefix.length > 0) {
+                iterator.seek(prefix);
+            } else {
+                iterator.seekToFirst();
+            }
+            byte[] lastKey = null;
+            int count = 0;
+            for (; iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (key.length < prefix.length || !Arrays.equals(key, 0, prefix.length, prefix, 0, prefix.length)) {
+                    break;
+                }
+                Quad quad = decodeQuad(iterator.value());
+                // The prefix only narrows the search, a subject without a graph needs a scan, and hashes may collide
+                if (!L.matchesFilter(graph, quad.getGraph()) || !L.matchesFilter(subject, quad.getSubject())) {
+                    continue;
+                }
+                byte[] label = labels.read(key);
+                if (label == null) {
+                    continue;
+                }
+                if (count == limit) {
+                    return Base64.getUrlEncoder().withoutPadding().encodeToString(lastKey);
+                }
+                action.accept(quad, new Label(label, StandardCharsets.UTF_8));
+                lastKey = key;
+                count++;
+            }
+            return null;
         } catch (RocksDBException e) {
-            throw new LabelsException("Failed to remove label from RocksDB", e);
+            throw new LabelsException("Failed to read labels from RocksDB", e);
         }
+    }
 
-        labelCache.remove(normalizedQuad);
+    private void verifyQuadIndex() {
+        if (!this.quadIndex) {
+            throw new UnsupportedOperationException(
+                    "Original quads are not stored so cannot be iterated over, the store must be created with " +
+                            "an index of its original quads");
+        }
     }
 
     @Override
-    public boolean isEmpty() {
+    public String forEachPage(Node graph, Node subject, String after, int limit, BiConsumer<Quad, Label> action) {
+        verifyQuadIndex();
+        byte[] prefix = quadKeyPrefix(this.encoder, graph, subject);
+        TransactionContext readContext = this.wrapper.readContext();
+        if (readContext != null) {
+            return readPage(readContext, prefix, graph, subject, after, limit, action);
+        }
         try (TransactionContext context = this.beginReadOnly()) {
-            return context.isEmpty(this.getHandle(KEYS_TO_LABELS_CF));
+            return readPage(context, prefix, graph, subject, after, limit, action);
         }
     }
 
+    private String readPage(TransactionContext context, byte[] prefix, Node graph, Node subject, String after,
+                            int limit, BiConsumer<Quad, Label> action) {
+        return readPage(context.iterator(this.getHandle(KEYS_TO_QUADS_CF)), prefix, graph, subject, after, limit,
+                        key -> {
+                            byte[] labelId = context.get(this.getHandle(KEYS_TO_LABELS_CF), key);
+                            return labelId != null ? context.get(this.getHandle(IDS_TO_LABELS_CF), labelId) : null;
+                        }, action);
+    }
+
     @Override
     public void forEach(BiConsumer<Quad, Label> action) {
-        throw new UnsupportedOperationException("Original quads are not stored so cannot be iterated over");
+        forEachPage(null, null, null, Integer.MAX_VALUE, action);
+    }
+
+    @Override
+    public void forEach(Node graph, Node subject, BiConsumer<Quad, Label> action) {
+        // Seeks to the entries of the graph, and subject, as for a page
+        forEachPage(graph, subject, null, Integer.MAX_VALUE, action);
     }
 
     @Override
     public Graph asGraph() {
-        return null;
+        if (!this.quadIndex) {
+            return null;
+        }
+        Graph graph = L.newLabelGraph();
+        L.labelsToGraph(this, graph);
+        return graph;
     }
 
     @Override
     public Map<String, String> getProperties() {
-        return Map.of("size", Long.toString(this.keyCount()));
+        Map<String, String> properties = new HashMap<>();
+        properties.put("size", Long.toString(this.keyCount()));
+        properties.put("commitVersion", Long.toString(this.commitVersion.get()));
+        SharedRocksDBMemory.addStoreProperties(this.db, properties);
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        if (shared != null) {
+            shared.addProperties(properties);
+        }
+        return this.labelCache.addProperties(properties);
     }
 
     @Override
@@ -386,6 +1257,26 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
             // labels have previously been cached
             if (status.isSuccess()) {
                 this.labelCache.clear();
+                this.commitVersion.incrementAndGet();
+                try {
+                    this.graphLabels = initGraphLabels(this.dbPath);
+                } catch (RocksDBException e) {
+                    LOGGER.warn("Failed to check restored store for per-graph label summaries: {}", e.getMessage());
+                    this.graphLabels = false;
+                }
+                try {
+                    this.predicateLabels = initPredicateLabels(this.dbPath);
+                } catch (RocksDBException e) {
+                    LOGGER.warn("Failed to check restored store for per-predicate label counts: {}", e.getMessage());
+                    this.predicateLabels = false;
+                }
+                try {
+                    this.quadIndex = initQuadIndex(this.dbPath);
+                } catch (RocksDBException e) {
+                    LOGGER.warn("Failed to check restored store for an index of its original quads: {}",
+                                e.getMessage());
+                    this.quadIndex = false;
+                }
             }
             return status;
         } finally {
@@ -400,6 +1291,11 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
      * This is a thread-safe singleton (since transactions in Jena are thread scoped) using a {@link ThreadLocal} to
      * hold the underlying RocksDB transaction.
      * </p>
+     * <p>
+     * Each transaction also records the store commit version that it reads as of.  For a read transaction that is the
+     * latest committed version when it began, for a write transaction it is the version its own writes will be
+     * committed as, so that it sees its own writes.
+     * </p>
      */
     private static final class JenaTransactionWrapper implements Transactional {
 
@@ -407,6 +1303,9 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         private final ThreadLocal<TransactionContext> context;
         private final ThreadLocal<TxnType> requestedTxnType;
         private final ThreadLocal<Boolean> promotedToWrite;
+        private final ThreadLocal<Long> readVersion;
+        // Whether the current transaction has begun a write on the store that it has yet to end
+        private final ThreadLocal<Boolean> writing;
 
         /**
          * Creates a new transaction wrapper
@@ -418,6 +1317,38 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
             this.context = ThreadLocal.withInitial(() -> null);
             this.requestedTxnType = ThreadLocal.withInitial(() -> null);
             this.promotedToWrite = ThreadLocal.withInitial(() -> Boolean.FALSE);
+            this.readVersion = ThreadLocal.withInitial(() -> null);
+            this.writing = ThreadLocal.withInitial(() -> Boolean.FALSE);
+        }
+
+        private void beginWrite() {
+            this.store.beginWrite();
+            this.writing.set(Boolean.TRUE);
+        }
+
+        /**
+         * Ends the current transaction's write on the store, if it has one, so that each write is ended exactly once
+         */
+        private void endWrite() {
+            if (this.writing.get()) {
+                this.writing.remove();
+                this.store.endWrite();
+            }
+        }
+
+        /**
+         * The store version that lookups on the current thread should see
+         */
+        long readVersion() {
+            Long version = isInTransaction() ? this.readVersion.get() : null;
+            return version != null ? version : this.store.commitVersion.get();
+        }
+
+        /**
+         * The RocksDB context of the current read transaction, if any
+         */
+        TransactionContext readContext() {
+            return isInTransaction() && !isWriteLikeTransaction() ? this.context.get() : null;
         }
 
         @Override
@@ -439,7 +1370,15 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         }
 
         private void beginInternal(TxnType type) {
-            this.context.set(requiresWriteContext(type) ? this.store.beginNested() : this.store.beginReadOnly());
+            if (requiresWriteContext(type)) {
+                beginWrite();
+                this.readVersion.set(this.store.pendingVersion());
+                this.context.set(this.store.beginNested());
+            } else {
+                // Take the version before the snapshot so the snapshot is never older than the version we read as of
+                this.readVersion.set(this.store.commitVersion.get());
+                this.context.set(this.store.beginReadOnly());
+            }
             this.requestedTxnType.set(type);
             this.promotedToWrite.set(Boolean.FALSE);
         }
@@ -476,6 +1415,8 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
             if (current != null) {
                 current.close();
             }
+            beginWrite();
+            this.readVersion.set(this.store.pendingVersion());
             this.context.set(this.store.beginNested());
             this.promotedToWrite.set(Boolean.TRUE);
             return true;
@@ -485,8 +1426,14 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         public void commit() {
             verifyTransaction();
             try {
-                this.context.get().commit();
-                cleanupTransactionContext(false);
+                if (this.writing.get()) {
+                    this.store.commitWithCounts(this.context.get());
+                } else {
+                    // Committing a read changes nothing so mustn't advance the commit version
+                    this.context.get().commit();
+                }
+                endWrite();
+                cleanupTransactionContext();
             } catch (RocksDBException e) {
                 throw new JenaTransactionException(e);
             }
@@ -495,7 +1442,7 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         @Override
         public void abort() {
             verifyTransaction();
-            cleanupTransactionContext(true);
+            cleanupTransactionContext();
         }
 
         @Override
@@ -507,9 +1454,9 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
                 return;
             }
             if (current.isActive()) {
-                // If a transaction ends without a commit we need to treat this as an abort and clear the label
-                // cache otherwise changes will leak beyond the aborted transaction
-                cleanupTransactionContext(true);
+                // If a transaction ends without a commit we need to treat this as an abort, its labels were never
+                // added to the cache so only need discarding
+                cleanupTransactionContext();
             } else {
                 clearThreadLocals();
             }
@@ -524,12 +1471,9 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
          * Ensure the nested transaction context is fully closed so RocksDB read/write options do not linger until a
          * later end() call.
          */
-        private void cleanupTransactionContext(boolean clearCache) {
+        private void cleanupTransactionContext() {
             TransactionContext current = this.context.get();
             try {
-                if (clearCache) {
-                    store.labelCache.clear();
-                }
                 if (current != null) {
                     current.close();
                 }
@@ -539,9 +1483,13 @@ public class DictionaryLabelStoreRocksDB extends RocksDbLabelsStore implements L
         }
 
         private void clearThreadLocals() {
+            endWrite();
+            this.store.countDeltas.remove();
+            this.store.pendingLabels.remove();
             this.context.remove();
             this.requestedTxnType.remove();
             this.promotedToWrite.remove();
+            this.readVersion.remove();
         }
 
         @Override
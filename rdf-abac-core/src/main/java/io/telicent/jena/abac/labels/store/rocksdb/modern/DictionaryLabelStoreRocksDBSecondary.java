@@ -0,0 +1,403 @@
+package io.telicent.jena.abac.labels.store.rocksdb.modern;
+
+import io.telicent.jena.abac.labels.*;
+import io.telicent.jena.abac.labels.hashing.HasherUtil;
+import io.telicent.jena.abac.labels.store.rocksdb.SharedRocksDBMemory;
+import io.telicent.jena.abac.labels.store.rocksdb.legacy.RocksDBHelper;
+import io.telicent.smart.cache.storage.labels.rocksdb.RocksDbLabelsStore;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.sparql.core.TransactionalNull;
+import org.rocksdb.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * A read-only view of a {@link DictionaryLabelStoreRocksDB} opened as a RocksDB secondary instance.
+ * <p>
+ * This allows several query nodes to read a labels store that is written by a single primary (ingest) node on a shared
+ * filesystem.  The secondary periodically calls {@link RocksDB#tryCatchUpWithPrimary()} to pick up the primaries
+ * changes.  Since the store only holds hashes of quads the specific quads that changed cannot be determined, so every
+ * cached label is tagged with the sequence number it was looked up as of and is only used while the secondary remains
+ * at that sequence number, see {@link LabelsCache#getAtVersion(Quad, long, boolean, java.util.function.Function)}.
+ * </p>
+ * <p>
+ * Attempts to {@link #add(Quad, Label)} or {@link #remove(Quad)} labels are rejected.
+ * </p>
+ */
+public class DictionaryLabelStoreRocksDBSecondary implements LabelsStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DictionaryLabelStoreRocksDBSecondary.class);
+
+    /**
+     * Default interval between attempts to catch up with the primary
+     */
+    public static final Duration DEFAULT_CATCH_UP_INTERVAL = Duration.ofSeconds(5);
+
+    private final ThreadLocal<ByteBuffer> keyBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(4 * HasherUtil.MAX_HASH_LENGTH).order(
+                    ByteOrder.LITTLE_ENDIAN));
+    private final File primaryPath;
+    private final StoreFmt.Encoder encoder;
+    private final LabelsCache labelCache;
+    private final Transactional transactional = TransactionalNull.create();
+    private final List<ColumnFamilyHandle> handles = new ArrayList<>();
+    // Options must outlive the database so are closed along with it
+    private final DBOptions options;
+    private final ColumnFamilyOptions cfOptions;
+    private final RocksDB db;
+    private final ColumnFamilyHandle keysToLabels;
+    private final ColumnFamilyHandle idsToLabels;
+    // Null if the primary doesn't maintain per-graph label summaries
+    private final ColumnFamilyHandle graphsToLabels;
+    // Null if the primary doesn't maintain per-predicate label counts
+    private final ColumnFamilyHandle predicatesToLabels;
+    // Null if the primary doesn't maintain an index of its original quads
+    private final ColumnFamilyHandle keysToQuads;
+    private final ScheduledExecutorService catchUpExecutor;
+    private volatile long lastSequenceNumber;
+
+    /**
+     * Opens a dictionary encoded labels store as a read-only secondary instance
+     *
+     * @param primaryPath       Database directory of the primary
+     * @param secondaryPath     Directory in which this secondary instance keeps its own metadata and logs, this
+     *                          <strong>MUST</strong> be unique to this instance
+     * @param storeFmt          Store Format, must match that used by the primary
+     * @param labelCache        Cache to use for label lookups
+     * @param catchUpInterval   Interval between attempts to catch up with the primary, zero or negative to disable
+     *                          automatic catch-up, in which case {@link #catchUp()} must be called explicitly
+     * @throws IllegalArgumentException Thrown if an unsupported store format is provided
+     * @throws RocksDBException         Thrown if the store can't be opened as a secondary
+     */
+    public DictionaryLabelStoreRocksDBSecondary(File primaryPath, File secondaryPath, StoreFmt storeFmt,
+                                                LabelsCache labelCache, Duration catchUpInterval)
+            throws RocksDBException {
+        if (!(Objects.requireNonNull(storeFmt) instanceof StoreFmtByHash)) {
+            throw new IllegalArgumentException("Only StoreFmtByHash is supported");
+        }
+        this.primaryPath = primaryPath;
+        this.encoder = storeFmt.createEncoder();
+        this.labelCache = Objects.requireNonNull(labelCache);
+
+        // Secondary instances must keep all files open, and must open every column family of the primary
+        this.options = new DBOptions().setMaxOpenFiles(-1);
+        this.cfOptions = columnFamilyOptions();
+        List<ColumnFamilyDescriptor> descriptors = new ArrayList<>();
+        ColumnFamilyHandle keysToLabelsHandle = null, idsToLabelsHandle = null, graphsToLabelsHandle = null,
+                predicatesToLabelsHandle = null, keysToQuadsHandle = null;
+        try (Options listOptions = new Options()) {
+            for (byte[] name : RocksDB.listColumnFamilies(listOptions, primaryPath.getAbsolutePath())) {
+                descriptors.add(new ColumnFamilyDescriptor(name, this.cfOptions));
+            }
+            this.db = RocksDB.openAsSecondary(this.options, primaryPath.getAbsolutePath(),
+                                              secondaryPath.getAbsolutePath(), descriptors, this.handles);
+        } catch (RocksDBException | RuntimeException e) {
+            this.cfOptions.close();
+            this.options.close();
+            throw e;
+        }
+        for (int i = 0; i < descriptors.size(); i++) {
+            String name = new String(descriptors.get(i).getName(), StandardCharsets.UTF_8);
+            if (RocksDbLabelsStore.KEYS_TO_LABELS_CF.equals(name)) {
+                keysToLabelsHandle = this.handles.get(i);
+            } else if (DictionaryLabelStoreRocksDB.IDS_TO_LABELS_CF.equals(name)) {
+                idsToLabelsHandle = this.handles.get(i);
+            } else if (DictionaryLabelStoreRocksDB.GRAPHS_TO_LABELS_CF.equals(name)) {
+                graphsToLabelsHandle = this.handles.get(i);
+            } else if (DictionaryLabelStoreRocksDB.PREDICATES_TO_LABELS_CF.equals(name)) {
+                predicatesToLabelsHandle = this.handles.get(i);
+            } else if (DictionaryLabelStoreRocksDB.KEYS_TO_QUADS_CF.equals(name)) {
+                keysToQuadsHandle = this.handles.get(i);
+            }
+        }
+        if (keysToLabelsHandle == null || idsToLabelsHandle == null) {
+            this.close();
+            throw new LabelsException(
+                    "RocksDB store at " + primaryPath + " is not a dictionary labels store so cannot be opened as a secondary");
+        }
+        this.keysToLabels = keysToLabelsHandle;
+        this.idsToLabels = idsToLabelsHandle;
+        this.graphsToLabels = graphsToLabelsHandle != null && this.db.get(
+                DictionaryLabelStoreRocksDB.GRAPH_LABELS_KEY) != null ? graphsToLabelsHandle : null;
+        this.predicatesToLabels = predicatesToLabelsHandle != null && this.db.get(
+                DictionaryLabelStoreRocksDB.PREDICATE_LABELS_KEY) != null ? predicatesToLabelsHandle : null;
+        this.keysToQuads = keysToQuadsHandle != null && this.db.get(
+                DictionaryLabelStoreRocksDB.QUAD_INDEX_KEY) != null ? keysToQuadsHandle : null;
+        verifyStoreFormat(storeFmt);
+        this.lastSequenceNumber = this.db.getLatestSequenceNumber();
+
+        if (catchUpInterval != null && catchUpInterval.isPositive()) {
+            this.catchUpExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "LabelsStoreCatchUp-" + primaryPath.getName());
+                t.setDaemon(true);
+                return t;
+            });
+            this.catchUpExecutor.scheduleWithFixedDelay(this::catchUpQuietly, catchUpInterval.toMillis(),
+                                                        catchUpInterval.toMillis(), TimeUnit.MILLISECONDS);
+        } else {
+            this.catchUpExecutor = null;
+        }
+    }
+
+    private static ColumnFamilyOptions columnFamilyOptions() {
+        ColumnFamilyOptions cfOptions = new ColumnFamilyOptions();
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        if (shared != null) {
+            BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
+            tableConfig.setBlockCache(shared.blockCache());
+            tableConfig.setCacheIndexAndFilterBlocks(true);
+            tableConfig.setFilterPolicy(shared.bloomFilter());
+            cfOptions.setTableFormatConfig(tableConfig);
+        }
+        return cfOptions;
+    }
+
+    private void verifyStoreFormat(StoreFmt storeFmt) throws RocksDBException {
+        byte[] recordedFormat = this.db.get(RocksDBHelper.STORE_FORMAT_KEY);
+        if (recordedFormat != null && !Arrays.equals(recordedFormat,
+                                                     storeFmt.toString().getBytes(StandardCharsets.UTF_8))) {
+            this.close();
+            throw new IllegalStateException(
+                    "The RocksDB store at " + primaryPath + " was created with Store Format " + new String(
+                            recordedFormat,
+                            StandardCharsets.UTF_8) + " but was requested to open with different Store Format " + storeFmt);
+        }
+    }
+
+    /**
+     * Catches up with any changes made by the primary, which supersedes all the cached labels if there were any
+     *
+     * @return True if new changes were caught up on, false otherwise
+     * @throws RocksDBException Thrown if there is a problem catching up
+     */
+    public boolean catchUp() throws RocksDBException {
+        this.db.tryCatchUpWithPrimary();
+        long sequenceNumber = this.db.getLatestSequenceNumber();
+        if (sequenceNumber != this.lastSequenceNumber) {
+            this.lastSequenceNumber = sequenceNumber;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The sequence number of the primary's changes last caught up on, so that state derived from the labels is
+     * discarded once the secondary catches up
+     */
+    @Override
+    public long labelsVersion() {
+        return this.lastSequenceNumber;
+    }
+
+    private void catchUpQuietly() {
+        try {
+            if (catchUp()) {
+                LOGGER.debug("Labels store {} caught up with primary to sequence number {}", primaryPath,
+                             this.lastSequenceNumber);
+            }
+        } catch (Throwable e) {
+            LOGGER.warn("Labels store {} failed to catch up with primary: {}", primaryPath, e.getMessage());
+        }
+    }
+
+    @Override
+    public Label labelForQuad(Quad quad) {
+        Label label = labelCache.getAtVersion(quad, this.lastSequenceNumber, true, this::labelForQuadInternal);
+        return label == Label.EMPTY ? null : label;
+    }
+
+    @Override
+    public Label labelForQuadScan(Quad quad) {
+        Label label = labelCache.getAtVersion(quad, this.lastSequenceNumber, false, this::labelForQuadInternal);
+        return label == Label.EMPTY ? null : label;
+    }
+
+    private Label labelForQuadInternal(Quad quad) {
+        quad = RocksDBHelper.normalize(quad);
+        if (!quad.isConcrete()) {
+            throw new LabelsException(
+                    "Asked for labels for a quad with wildcards: " + NodeFmtLib.strNodesTTL(quad.getGraph(),
+                                                                                            quad.getSubject(),
+                                                                                            quad.getPredicate(),
+                                                                                            quad.getObject()));
+        }
+        ByteBuffer buffer = keyBuffer.get().clear();
+        this.encoder.formatQuad(buffer, quad.getGraph(), quad.getSubject(), quad.getPredicate(), quad.getObject());
+        buffer.flip();
+        byte[] key = DictionaryLabelStoreRocksDB.asByteArray(buffer);
+
+        try {
+            // The value is the encoded label ID, which is in turn the key for the label itself
+            byte[] labelId = this.db.get(this.keysToLabels, key);
+            if (labelId == null) {
+                return Label.EMPTY;
+            }
+            byte[] label = this.db.get(this.idsToLabels, labelId);
+            return label != null ? new Label(label, StandardCharsets.UTF_8) : Label.EMPTY;
+        } catch (RocksDBException e) {
+            throw new LabelsException("Failed to read label from RocksDB", e);
+        }
+    }
+
+    @Override
+    public Transactional getTransactional() {
+        return this.transactional;
+    }
+
+    @Override
+    public void add(Quad quad, Label label) {
+        throw new LabelsException("Labels store at " + primaryPath + " is a read-only secondary instance");
+    }
+
+    @Override
+    public void remove(Quad quad) {
+        throw new LabelsException("Labels store at " + primaryPath + " is a read-only secondary instance");
+    }
+
+    @Override
+    public boolean isEmpty() {
+        try (RocksIterator iterator = this.db.newIterator(this.keysToLabels)) {
+            iterator.seekToFirst();
+            return !iterator.isValid();
+        }
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(int limit) {
+        return DictionaryLabelStoreRocksDB.distinctLabels(this.db.newIterator(this.idsToLabels), limit);
+    }
+
+    @Override
+    public Collection<Label> distinctLabels(Node graph, int limit) {
+        if (this.graphsToLabels == null) {
+            return null;
+        }
+        List<byte[]> labelIds =
+                DictionaryLabelStoreRocksDB.graphLabelIds(this.db.newIterator(this.graphsToLabels), graph, limit);
+        if (labelIds == null) {
+            return null;
+        }
+        try {
+            List<Label> labels = new ArrayList<>(labelIds.size());
+            for (byte[] labelId : labelIds) {
+                byte[] label = this.db.get(this.idsToLabels, labelId);
+                if (label != null) {
+                    labels.add(new Label(label, StandardCharsets.UTF_8));
+                }
+            }
+            return labels;
+        } catch (RocksDBException e) {
+            throw new LabelsException("Failed to read graph labels from RocksDB", e);
+        }
+    }
+
+    @Override
+    public Map<Label, Long> labelCounts(Node predicate, int limit) {
+        if (this.predicatesToLabels == null) {
+            return null;
+        }
+        List<Map.Entry<byte[], Long>> labelIdCounts =
+                DictionaryLabelStoreRocksDB.labelIdCounts(this.db.newIterator(this.predicatesToLabels),
+                                                          DictionaryLabelStoreRocksDB.predicateKeyPrefix(predicate),
+                                                          limit);
+        if (labelIdCounts == null) {
+            return null;
+        }
+        try {
+            Map<Label, Long> counts = new HashMap<>();
+            for (Map.Entry<byte[], Long> entry : labelIdCounts) {
+                byte[] label = this.db.get(this.idsToLabels, entry.getKey());
+                if (label != null) {
+                    counts.put(new Label(label, StandardCharsets.UTF_8), entry.getValue());
+                }
+            }
+            return Collections.unmodifiableMap(counts);
+        } catch (RocksDBException e) {
+            throw new LabelsException("Failed to read predicate labels from RocksDB", e);
+        }
+    }
+
+    @Override
+    public String forEachPage(Node graph, Node subject, String after, int limit, BiConsumer<Quad, Label> action) {
+        if (this.keysToQuads == null) {
+            throw new UnsupportedOperationException("Original quads are not stored so cannot be iterated over");
+        }
+        return DictionaryLabelStoreRocksDB.readPage(this.db.newIterator(this.keysToQuads),
+                                                    DictionaryLabelStoreRocksDB.quadKeyPrefix(this.encoder, graph,
+                                                                                              subject),
+                                                    graph, subject, after, limit, key -> {
+                    byte[] labelId = this.db.get(this.keysToLabels, key);
+                    return labelId != null ? this.db.get(this.idsToLabels, labelId) : null;
+                }, action);
+    }
+
+    @Override
+    public void forEach(BiConsumer<Quad, Label> action) {
+        forEachPage(null, null, null, Integer.MAX_VALUE, action);
+    }
+
+    @Override
+    public void forEach(Node graph, Node subject, BiConsumer<Quad, Label> action) {
+        // Seeks to the entries of the graph, and subject, as for a page
+        forEachPage(graph, subject, null, Integer.MAX_VALUE, action);
+    }
+
+    @Override
+    public Graph asGraph() {
+        if (this.keysToQuads == null) {
+            return null;
+        }
+        Graph graph = L.newLabelGraph();
+        L.labelsToGraph(this, graph);
+        return graph;
+    }
+
+    @Override
+    public Map<String, String> getProperties() {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("secondary", "true");
+        properties.put("sequenceNumber", Long.toString(this.lastSequenceNumber));
+        SharedRocksDBMemory.addStoreProperties(this.db, properties);
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        if (shared != null) {
+            shared.addProperties(properties);
+        }
+        return this.labelCache.addProperties(properties);
+    }
+
+    @Override
+    public void close() {
+        if (this.catchUpExecutor != null) {
+            this.catchUpExecutor.shutdownNow();
+            try {
+                this.catchUpExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (ColumnFamilyHandle handle : this.handles) {
+            handle.close();
+        }
+        this.handles.clear();
+        if (this.db != null) {
+            this.db.close();
+        }
+        this.cfOptions.close();
+        this.options.close();
+    }
+}
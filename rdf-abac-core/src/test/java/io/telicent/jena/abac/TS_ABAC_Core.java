@@ -20,9 +20,16 @@ import io.telicent.jena.abac.attributes.syntax.*;
 import io.telicent.jena.abac.attributes.syntax.tokens.TestToken;
 import io.telicent.jena.abac.attributes.syntax.tokens.TestTokenizerABAC;
 import io.telicent.jena.abac.core.*;
+import io.telicent.jena.abac.engine.TestABACQueryEngine;
 import io.telicent.jena.abac.engine.TestUnionGraphQueryEngine;
+import io.telicent.jena.abac.labels.store.rocksdb.TestSharedRocksDBMemory;
 import io.telicent.jena.abac.labels.store.rocksdb.legacy.TestLegacyLabelsStoreRocksDB;
+import io.telicent.jena.abac.labels.TestLabelsCache;
+import io.telicent.jena.abac.labels.TestLabelsSpillBuffer;
+import io.telicent.jena.abac.labels.TestLabelsStorePages;
+import io.telicent.jena.abac.labels.TestLinesSpillBuffer;
 import io.telicent.jena.abac.labels.TestStoreFmtByString;
+import io.telicent.jena.abac.labels.changes.TestLabelsChangeLog;
 import org.junit.platform.suite.api.SelectClasses;
 import org.junit.platform.suite.api.Suite;
 
@@ -67,11 +74,19 @@ import org.junit.platform.suite.api.Suite;
     , TestAE_Allow.class
     , TestToken.class
     , TestUnionGraphQueryEngine.class
+    , TestABACQueryEngine.class
     ,TestDatasetFilterProvider.class
+    ,TestTDB2DatasetFilterProvider.class
 
     // RocksDB related.
     , TestStoreFmtByString.class
+    , TestLabelsCache.class
+    , TestLabelsSpillBuffer.class
+    , TestLinesSpillBuffer.class
+    , TestLabelsStorePages.class
+    , TestLabelsChangeLog.class
     , TestLegacyLabelsStoreRocksDB.class
+    , TestSharedRocksDBMemory.class
     , TestLabelStoreRocksDBGeneral.ByString.class
 
     /*
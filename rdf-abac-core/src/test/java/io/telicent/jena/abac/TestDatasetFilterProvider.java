@@ -19,20 +19,41 @@ package io.telicent.jena.abac;
 import io.telicent.jena.abac.core.AttributesStore;
 import io.telicent.jena.abac.core.CxtABAC;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.engine.LabelSelectivity;
+import io.telicent.jena.abac.engine.ParallelScans;
 import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
 import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.TxnType;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class TestDatasetFilterProvider {
 
@@ -144,6 +165,463 @@ public class TestDatasetFilterProvider {
                      "Global provider should be invoked when no per-dataset override is set");
     }
 
+    private static final Quad q1 = SSE.parseQuad("(:g :s :p 1)");
+    private static final Quad q2 = SSE.parseQuad("(:g :s :p 2)");
+
+    private static DatasetGraph filterDataset(LabelsStore labels, Label defaultLabel, String attributes) {
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        dsgBase.add(q1);
+        dsgBase.add(q2);
+        CxtABAC cxt = CxtABAC.context(AttributeValueSet.of(attributes), a -> null, dsgBase);
+        return ABAC.DEFAULT_DATASET_FILTER_PROVIDER.filterDataset(dsgBase, labels, defaultLabel, cxt);
+    }
+
+    @Test
+    public void test_constantDecision_emptyStore() {
+        // given
+        LabelsStore labels = Labels.createLabelsStoreMem();
+
+        // when
+        DatasetGraph allowed = filterDataset(labels, Label.fromText("public"), "public");
+        DatasetGraph denied = filterDataset(labels, Label.fromText("public"), "other");
+
+        // then
+        assertTrue(allowed.contains(q1));
+        assertTrue(allowed.contains(q2));
+        assertTrue(denied.isEmpty());
+        assertFalse(denied.listGraphNodes().hasNext());
+    }
+
+    @Test
+    public void test_constantDecision_uniformLabels() {
+        // given
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        labels.add(q1, Label.fromText("secret"));
+        labels.add(q2, Label.fromText("secret"));
+
+        // when
+        DatasetGraph allowed = filterDataset(labels, Label.fromText("secret"), "secret");
+        DatasetGraph denied = filterDataset(labels, Label.fromText("public"), "public");
+
+        // then
+        assertTrue(allowed.contains(q1));
+        assertTrue(allowed.contains(q2));
+        assertFalse(denied.contains(q1));
+        assertFalse(denied.contains(q2));
+    }
+
+    @Test
+    public void test_constantDecision_mixedLabels() {
+        // given
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        labels.add(q1, Label.fromText("public"));
+        labels.add(q2, Label.fromText("secret"));
+
+        // when
+        DatasetGraph dsg = filterDataset(labels, Label.fromText("public"), "public");
+
+        // then
+        assertTrue(dsg.contains(q1));
+        assertFalse(dsg.contains(q2));
+    }
+
+    @Test
+    public void test_namedGraphVisibility() {
+        // given
+        Quad visible = SSE.parseQuad("(:g1 :s :p 1)");
+        Quad hidden = SSE.parseQuad("(:g2 :s :p 2)");
+        Quad mixedVisible = SSE.parseQuad("(:g3 :s :p 3)");
+        Quad mixedHidden = SSE.parseQuad("(:g3 :s :p 4)");
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        for (Quad quad : List.of(visible, hidden, mixedVisible, mixedHidden)) {
+            dsgBase.add(quad);
+        }
+        labels.add(visible, Label.fromText("public"));
+        labels.add(hidden, Label.fromText("secret"));
+        labels.add(mixedVisible, Label.fromText("public"));
+        labels.add(mixedHidden, Label.fromText("secret"));
+        CxtABAC cxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+
+        // when
+        // Unlabelled quads would be hidden, so only graphs with labels all of which are hidden are hidden
+        DatasetGraph dsg = ABAC.DEFAULT_DATASET_FILTER_PROVIDER.filterDataset(dsgBase, labels,
+                                                                              Label.fromText("secret"), cxt);
+
+        // then
+        assertEquals(Set.of(visible.getGraph(), mixedVisible.getGraph()), Iter.toSet(dsg.listGraphNodes()));
+        assertFalse(dsg.find(hidden.getGraph(), Node.ANY, Node.ANY, Node.ANY).hasNext());
+        assertEquals(Set.of(visible, mixedVisible), Iter.toSet(dsg.find()));
+        assertTrue(dsg.contains(visible));
+        assertFalse(dsg.contains(hidden));
+        assertFalse(dsg.contains(mixedHidden));
+    }
+
+    @Test
+    public void test_namedGraphs_sharedUntilWrite() {
+        // given
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        DatasetGraphABAC dsgAuthz = new DatasetGraphABAC(DatasetGraphFactory.createTxnMem(), "attr=1", labels,
+                                                         Label.fromText("public"),
+                                                         Mockito.mock(AttributesStore.class));
+        Txn.executeWrite(dsgAuthz, () -> dsgAuthz.add(q1));
+
+        // when
+        Set<Node> first = dsgAuthz.namedGraphs();
+        Set<Node> second = Txn.calculateRead(dsgAuthz, dsgAuthz::namedGraphs);
+
+        // then
+        assertEquals(Set.of(q1.getGraph()), first);
+        assertSame(first, second);
+
+        // and when
+        Quad other = SSE.parseQuad("(:g2 :s :p 3)");
+        Txn.executeWrite(dsgAuthz, () -> dsgAuthz.add(other));
+        CxtABAC cxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgAuthz.getData());
+        DatasetGraph dsg = ABAC.DEFAULT_DATASET_FILTER_PROVIDER.filterDataset(dsgAuthz, cxt);
+
+        // then
+        assertNotSame(first, dsgAuthz.namedGraphs());
+        assertEquals(Set.of(q1.getGraph(), other.getGraph()), Iter.toSet(dsg.listGraphNodes()));
+        assertSame(dsgAuthz.namedGraphs(), cxt.namedGraphs().get());
+    }
+
+    @Test
+    public void test_distinctLabels_graph() {
+        // given
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        labels.add(q1, Label.fromText("public"));
+        labels.add(q2, Label.fromText("secret"));
+
+        // when and then
+        assertEquals(2, labels.distinctLabels(q1.getGraph(), 2).size());
+        assertEquals(null, labels.distinctLabels(q1.getGraph(), 1));
+        assertTrue(labels.distinctLabels(Quad.defaultGraphIRI, 1).isEmpty());
+
+        // and when
+        labels.add(q2, Label.fromText("public"));
+
+        // then
+        assertEquals(List.of(Label.fromText("public")), labels.distinctLabels(q1.getGraph(), 1));
+    }
+
+    @Test
+    public void test_distinctLabels_limit() {
+        // given
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        labels.add(q1, Label.fromText("public"));
+        labels.add(q2, Label.fromText("secret"));
+
+        // when and then
+        assertEquals(2, labels.distinctLabels(2).size());
+        assertEquals(null, labels.distinctLabels(1));
+
+        // and when
+        labels.remove(q2);
+
+        // then
+        assertEquals(1, labels.distinctLabels(1).size());
+    }
+
+    @Test
+    public void test_labelCounts_predicate() {
+        // given
+        Quad q3 = SSE.parseQuad("(:g :s :q 3)");
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        labels.add(q1, Label.fromText("public"));
+        labels.add(q2, Label.fromText("secret"));
+        labels.add(q3, Label.fromText("public"));
+
+        // when and then
+        assertEquals(Map.of(Label.fromText("public"), 1L, Label.fromText("secret"), 1L),
+                     labels.labelCounts(q1.getPredicate(), 2));
+        assertEquals(Map.of(Label.fromText("public"), 1L), labels.labelCounts(q3.getPredicate(), 2));
+        assertEquals(Map.of(Label.fromText("public"), 2L, Label.fromText("secret"), 1L),
+                     labels.labelCounts(Node.ANY, 2));
+        assertEquals(null, labels.labelCounts(q1.getPredicate(), 1));
+
+        // and when
+        labels.add(q2, Label.fromText("public"));
+        labels.remove(q3);
+
+        // then
+        assertEquals(Map.of(Label.fromText("public"), 2L), labels.labelCounts(q1.getPredicate(), 1));
+        assertTrue(labels.labelCounts(q3.getPredicate(), 1).isEmpty());
+    }
+
+    @Test
+    public void test_labelSelectivity() {
+        // given
+        Quad q3 = SSE.parseQuad("(:g :s :q 3)");
+        Quad q4 = SSE.parseQuad("(:g :s :p 4)");
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        labels.add(q1, Label.fromText("public"));
+        labels.add(q2, Label.fromText("secret"));
+        labels.add(q3, Label.fromText("secret"));
+        labels.add(q4, Label.fromText("secret"));
+
+        // when
+        DatasetGraph dsg = filterDataset(labels, Label.fromText("public"), "public");
+
+        // then
+        LabelSelectivity selectivity = assertInstanceOf(LabelSelectivity.class, dsg);
+        assertEquals(1.0 / 3, selectivity.selectivity(q1.getPredicate()), 0.001);
+        assertEquals(0.0, selectivity.selectivity(q3.getPredicate()), 0.001);
+        assertEquals(0.25, selectivity.selectivity(Node.ANY), 0.001);
+        assertEquals(1.0, selectivity.selectivity(SSE.parseNode(":other")), 0.001);
+    }
+
+    @Test
+    public void test_forEachQuad_parallel() {
+        // given
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        for (int i = 0; i < 5000; i++) {
+            Quad quad = SSE.parseQuad("(:g" + (i % 4) + " :s" + i + " :p " + i + ")");
+            dsgBase.add(quad);
+            labels.add(quad, Label.fromText(i % 3 == 0 ? "secret" : "public"));
+        }
+        dsgBase.add(SSE.parseQuad("(<urn:x-arq:DefaultGraph> :s :p 1)"));
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(dsgBase, labels, Label.fromText("public"), null);
+        Quad all = Quad.create(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+        Quad g1 = Quad.create(SSE.parseNode(":g1"), Node.ANY, Node.ANY, Node.ANY);
+        int threads = ABAC.parallelScanThreads;
+
+        try {
+            // when
+            ABAC.parallelScanThreads = 1;
+            CxtABAC serialCxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+            long serial = ABAC.countQuads(dsgAuthz, serialCxt, all);
+            ABAC.parallelScanThreads = 4;
+            CxtABAC cxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+            Set<Quad> visible = ConcurrentHashMap.newKeySet();
+            ABAC.forEachQuad(dsgAuthz, cxt, all, visible::add);
+            long graphCount = ABAC.countQuads(dsgAuthz, cxt, g1);
+
+            // then
+            assertFalse(serialCxt.isConcurrent());
+            assertTrue(cxt.isConcurrent());
+            assertEquals(3334, serial);
+            assertEquals(Iter.toSet(ABAC.filterDataset(dsgAuthz, serialCxt).find()), visible);
+            assertEquals(Iter.count(ABAC.filterDataset(dsgAuthz, serialCxt).find(g1)), graphCount);
+        } finally {
+            ABAC.parallelScanThreads = threads;
+        }
+    }
+
+    @Test
+    public void test_forEachQuad_parallel_writeDuringScan() throws Exception {
+        // given
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(dsgBase, labels, Label.fromText("public"), null);
+        Txn.executeWrite(dsgAuthz, () -> {
+            for (int i = 0; i < 20000; i++) {
+                Quad quad = SSE.parseQuad("(:g" + (i % 16) + " :s" + i + " :p " + i + ")");
+                dsgBase.add(quad);
+                labels.add(quad, Label.fromText(i % 3 == 0 ? "secret" : "public"));
+            }
+        });
+        Quad all = Quad.create(Node.ANY, Node.ANY, Node.ANY, Node.ANY);
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        int threads = ABAC.parallelScanThreads;
+
+        try {
+            // Fewer threads than graphs so that some graphs are only scanned after the write
+            ABAC.parallelScanThreads = 2;
+            Set<Quad> expected = Txn.calculateRead(dsgAuthz, () -> Iter.toSet(ABAC.filterDataset(
+                    dsgAuthz, CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase)).find()));
+
+            // when
+            Set<Quad> visible = ConcurrentHashMap.newKeySet();
+            AtomicBoolean written = new AtomicBoolean();
+            Txn.executeRead(dsgAuthz, () -> {
+                CxtABAC cxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+                ABAC.forEachQuad(dsgAuthz, cxt, all, quad -> {
+                    if (written.compareAndSet(false, true)) {
+                        try {
+                            writer.submit(() -> Txn.executeWrite(dsgAuthz, () -> {
+                                for (int g = 0; g < 16; g++) {
+                                    dsgAuthz.add(SSE.parseQuad("(:g" + g + " :s :p 'added')"));
+                                }
+                            })).get();
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    visible.add(quad);
+                });
+            });
+
+            // then: the scan sees the data as of the reading transaction
+            assertTrue(written.get());
+            assertEquals(13333, expected.size());
+            assertEquals(expected, visible);
+        } finally {
+            ABAC.parallelScanThreads = threads;
+            writer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_parallelScans_sameDataAsRequest() throws Exception {
+        // given
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        Quad q1 = SSE.parseQuad("(:g1 :s :p 1)");
+        Quad q2 = SSE.parseQuad("(:g1 :s :p 2)");
+        dsgBase.add(q1);
+        dsgBase.add(q2);
+        Txn.executeWrite(labels.getTransactional(), () -> {
+            labels.add(q1, Label.fromText("public"));
+            labels.add(q2, Label.fromText("secret"));
+        });
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(dsgBase, labels, Label.fromText("public"), null);
+        CxtABAC cxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+        ExecutorService scanner = Executors.newSingleThreadExecutor();
+
+        try {
+            dsgAuthz.begin(TxnType.READ);
+            try {
+                ParallelScans scans = assertInstanceOf(ParallelScans.class, ABAC.filterDataset(dsgAuthz, cxt));
+                scans.prepareParallelScans();
+
+                // when
+                boolean before = scanner.submit(() -> scans.runScan(() -> {})).get();
+                scanner.submit(() -> Txn.executeWrite(dsgAuthz, () -> dsgAuthz.add(SSE.parseQuad("(:g2 :s :p 3)"))))
+                       .get();
+                boolean after = scanner.submit(() -> scans.runScan(() -> {})).get();
+
+                // then
+                assertTrue(before);
+                assertFalse(after);
+                // The request's own thread can always scan
+                assertTrue(scans.runScan(() -> {}));
+            } finally {
+                dsgAuthz.end();
+            }
+        } finally {
+            scanner.shutdownNow();
+        }
+    }
+
+    @Test
+    public void test_attributeProfiles_sharedDecisions() {
+        // given
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        dsgBase.add(q1);
+        dsgBase.add(q2);
+        labels.add(q1, Label.fromText("public"));
+        labels.add(q2, Label.fromText("secret"));
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(dsgBase, labels, Label.fromText("public"), null);
+        int profiles = ABAC.attributeProfiles;
+
+        try {
+            // when
+            ABAC.attributeProfiles = 2;
+            CxtABAC cxt1 = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+            Set<Quad> visible1 = Iter.toSet(ABAC.filterDataset(dsgAuthz, cxt1).find());
+            CxtABAC cxt2 = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+            Set<Quad> visible2 = Iter.toSet(ABAC.filterDataset(dsgAuthz, cxt2).find());
+            CxtABAC other = CxtABAC.context(AttributeValueSet.of("secret"), a -> null, dsgBase);
+            Set<Quad> otherVisible = Iter.toSet(ABAC.filterDataset(dsgAuthz, other).find());
+
+            // then
+            assertTrue(cxt1.hasSharedDecisions());
+            assertSame(cxt1.labelEvalCache(), cxt2.labelEvalCache());
+            assertNotSame(cxt1.labelEvalCache(), other.labelEvalCache());
+            assertEquals(2, dsgAuthz.attributeProfiles().size());
+            assertEquals(Set.of(q1), visible1);
+            assertEquals(Set.of(q1), visible2);
+            assertEquals(Set.of(q2), otherVisible);
+        } finally {
+            ABAC.attributeProfiles = profiles;
+        }
+    }
+
+    @Test
+    public void test_attributeProfiles_newLabelsAfterWrite() {
+        // given
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        dsgBase.add(q1);
+        dsgBase.add(q2);
+        labels.add(q1, Label.fromText("public"));
+        labels.add(q2, Label.fromText("secret"));
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(dsgBase, labels, Label.fromText("public"), null);
+        Quad q3 = SSE.parseQuad("(:g :s :p 3)");
+        int profiles = ABAC.attributeProfiles;
+
+        try {
+            ABAC.attributeProfiles = 1;
+            CxtABAC before = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+            Iter.count(ABAC.filterDataset(dsgAuthz, before).find());
+            long decided = before.labelEvalCache().size();
+
+            // when
+            Txn.executeWrite(dsgAuthz, () -> {
+                dsgBase.add(q3);
+                labels.add(q3, Label.fromText("public || secret"));
+            });
+            CxtABAC after = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgBase);
+            Set<Quad> visible = Iter.toSet(ABAC.filterDataset(dsgAuthz, after).find());
+
+            // then
+            assertEquals(Set.of(q1, q3), visible);
+            assertSame(before.labelEvalCache(), after.labelEvalCache());
+            assertEquals(decided + 1, after.labelEvalCache().size());
+        } finally {
+            ABAC.attributeProfiles = profiles;
+        }
+    }
+
+    @Test
+    public void test_attributeProfiles_hierarchyChange() {
+        // given
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        dsgBase.add(q1);
+        labels.add(q1, Label.fromText("clearance=S"));
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(dsgBase, labels, Label.fromText("public"), null);
+        AttributeValueSet attributes = AttributeValueSet.of(AE.parseAttrValueList("clearance=TS"));
+        AtomicReference<Hierarchy> hierarchy = new AtomicReference<>(Hierarchy.create("clearance", "O", "S", "TS"));
+        int profiles = ABAC.attributeProfiles;
+
+        try {
+            ABAC.attributeProfiles = 1;
+            CxtABAC before = CxtABAC.context(attributes, a -> hierarchy.get(), dsgBase);
+            Set<Quad> visibleBefore = Iter.toSet(ABAC.filterDataset(dsgAuthz, before).find());
+
+            // when
+            hierarchy.set(Hierarchy.create("clearance", "O", "TS", "S"));
+            CxtABAC after = CxtABAC.context(attributes, a -> hierarchy.get(), dsgBase);
+            Set<Quad> visibleAfter = Iter.toSet(ABAC.filterDataset(dsgAuthz, after).find());
+
+            // then
+            assertEquals(Set.of(q1), visibleBefore);
+            assertEquals(Set.of(), visibleAfter);
+            assertNotSame(before.labelEvalCache(), after.labelEvalCache());
+        } finally {
+            ABAC.attributeProfiles = profiles;
+        }
+    }
+
+    @Test
+    public void test_attributeProfiles_disabled() {
+        // given
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(DatasetGraphFactory.createTxnMem(),
+                                                      Labels.createLabelsStoreMem(), Label.fromText("public"), null);
+
+        // when
+        CxtABAC cxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgAuthz.getData());
+        ABAC.filterDataset(dsgAuthz, cxt);
+
+        // then
+        assertNull(dsgAuthz.attributeProfiles());
+        assertFalse(cxt.hasSharedDecisions());
+    }
+
     private static DatasetGraphABAC createDSGABACMock() {
         return new DatasetGraphABAC(Mockito.mock(DatasetGraph.class),
                                     "attr=1",
@@ -0,0 +1,211 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac;
+
+import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import io.telicent.jena.abac.labels.changes.LabelsChangeLog;
+import io.telicent.jena.abac.labels.changes.LabelsStoreFollower;
+import io.telicent.jena.abac.labels.changes.LabelsStoreWithChangeLog;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestTDB2DatasetFilterProvider {
+
+    private static final Quad dftPublic = SSE.parseQuad("(<urn:x-arq:DefaultGraph> :s :p 1)");
+    private static final Quad dftSecret = SSE.parseQuad("(<urn:x-arq:DefaultGraph> :s :p 2)");
+    private static final Quad g1Public = SSE.parseQuad("(:g1 :s :p 3)");
+    private static final Quad g1Secret = SSE.parseQuad("(:g1 :s :p 4)");
+    private static final Quad g2Secret = SSE.parseQuad("(:g2 :s :q 5)");
+    private static final Quad g2Unlabelled = SSE.parseQuad("(:g2 :s :q 6)");
+
+    private static DatasetGraphABAC createDataset(DatasetGraph base) {
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(base, null, labels, Label.fromText("public"),
+                                                      Mockito.mock(AttributesStore.class));
+        Txn.executeWrite(dsgAuthz, () -> {
+            for (Quad quad : List.of(dftPublic, dftSecret, g1Public, g1Secret, g2Secret, g2Unlabelled)) {
+                base.add(quad);
+            }
+            labels.add(dftPublic, Label.fromText("public"));
+            labels.add(dftSecret, Label.fromText("secret"));
+            labels.add(g1Public, Label.fromText("public"));
+            labels.add(g1Secret, Label.fromText("secret"));
+            labels.add(g2Secret, Label.fromText("secret"));
+        });
+        return dsgAuthz;
+    }
+
+    private static CxtABAC context(DatasetGraphABAC dsgAuthz) {
+        return CxtABAC.context(AttributeValueSet.of("public"), a -> null, dsgAuthz.getData());
+    }
+
+    private static Set<Quad> visibleQuads(DatasetFilterProvider provider, DatasetGraphABAC dsgAuthz, CxtABAC cxt) {
+        return Txn.calculateRead(dsgAuthz, () -> Iter.toSet(provider.filterDataset(dsgAuthz, cxt).find()));
+    }
+
+    @Test
+    public void givenTdb2Dataset_whenFiltering_thenSameQuadsAsDefaultProvider() {
+        // Given
+        DatasetGraphABAC dsgAuthz = createDataset(DatabaseMgr.createDatasetGraph());
+        TDB2DatasetFilterProvider provider = new TDB2DatasetFilterProvider();
+
+        // When
+        Set<Quad> visible = visibleQuads(provider, dsgAuthz, context(dsgAuthz));
+
+        // Then
+        assertEquals(Set.of(dftPublic, g1Public, g2Unlabelled), visible);
+        assertEquals(visibleQuads(ABAC.DEFAULT_DATASET_FILTER_PROVIDER, dsgAuthz, context(dsgAuthz)), visible);
+        Txn.executeRead(dsgAuthz, () -> {
+            DatasetGraph dsg = provider.filterDataset(dsgAuthz, context(dsgAuthz));
+            assertInstanceOf(DatasetGraphNodeIdView.class, dsg);
+            Node g2 = g2Secret.getGraph();
+            assertEquals(Set.of(g2Unlabelled), Iter.toSet(dsg.find(g2, Node.ANY, Node.ANY, Node.ANY)));
+            assertEquals(Set.of(g1Public, g2Unlabelled), Iter.toSet(dsg.findNG(Node.ANY, Node.ANY, Node.ANY, Node.ANY)));
+            assertEquals(Set.of(dftPublic), Iter.toSet(dsg.find(Quad.defaultGraphIRI, Node.ANY, Node.ANY, Node.ANY)));
+            assertTrue(dsg.contains(g1Public));
+            assertFalse(dsg.contains(g1Secret));
+            assertFalse(dsg.find(SSE.parseQuad("(:g1 :unknown :p 3)")).hasNext());
+        });
+    }
+
+    @Test
+    public void givenTdb2Dataset_whenFilteringAgain_thenNoLabelLookups() {
+        // Given
+        DatasetGraphABAC dsgAuthz = createDataset(DatabaseMgr.createDatasetGraph());
+        TDB2DatasetFilterProvider provider = new TDB2DatasetFilterProvider();
+        CxtABAC first = context(dsgAuthz);
+        CxtABAC second = context(dsgAuthz);
+
+        // When
+        Set<Quad> firstVisible = visibleQuads(provider, dsgAuthz, first);
+        Set<Quad> secondVisible = visibleQuads(provider, dsgAuthz, second);
+
+        // Then
+        assertEquals(6, first.labelLookups());
+        assertEquals(0, second.labelLookups());
+        assertEquals(firstVisible, secondVisible);
+    }
+
+    @Test
+    public void givenTdb2Dataset_whenRelabelled_thenNewLabelsApply() {
+        // Given
+        DatasetGraphABAC dsgAuthz = createDataset(DatabaseMgr.createDatasetGraph());
+        TDB2DatasetFilterProvider provider = new TDB2DatasetFilterProvider();
+        visibleQuads(provider, dsgAuthz, context(dsgAuthz));
+
+        // When
+        Txn.executeWrite(dsgAuthz, () -> dsgAuthz.labelsStore().add(g1Secret, Label.fromText("public")));
+        Set<Quad> visible = visibleQuads(provider, dsgAuthz, context(dsgAuthz));
+
+        // Then
+        assertEquals(Set.of(dftPublic, g1Public, g1Secret, g2Unlabelled), visible);
+    }
+
+    @Test
+    public void givenFollowerLabelsStore_whenRelabelledByPrimary_thenNewLabelsApply() throws Exception {
+        // Given
+        Path dir = Files.createTempDirectory("tdb2-filter-follower");
+        Path logFile = dir.resolve("changes.log");
+        Quad g1StillSecret = SSE.parseQuad("(:g1 :s :p 7)");
+        DatasetGraph base = DatabaseMgr.createDatasetGraph();
+        TDB2DatasetFilterProvider provider = new TDB2DatasetFilterProvider();
+        try (LabelsStore primary = new LabelsStoreWithChangeLog(Labels.createLabelsStoreMem(),
+                                                                new LabelsChangeLog(logFile));
+             LabelsStoreFollower follower = new LabelsStoreFollower(Labels.createLabelsStoreMem(), logFile,
+                                                                    Duration.ofHours(1))) {
+            Txn.executeWrite(primary.getTransactional(), () -> {
+                primary.add(g1Secret, Label.fromText("secret"));
+                primary.add(g1StillSecret, Label.fromText("secret"));
+            });
+            follower.follower().poll();
+            DatasetGraphABAC dsgAuthz = ABAC.authzDataset(base, null, follower, Label.fromText("public"),
+                                                          Mockito.mock(AttributesStore.class));
+            Txn.executeWrite(dsgAuthz, () -> List.of(g1Public, g1Secret, g1StillSecret).forEach(base::add));
+            assertEquals(Set.of(g1Public), visibleQuads(provider, dsgAuthz, context(dsgAuthz)));
+
+            // When: the labels change without a write transaction on the dataset
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(g1Secret, Label.fromText("public")));
+            follower.follower().poll();
+            Set<Quad> visible = visibleQuads(provider, dsgAuthz, context(dsgAuthz));
+
+            // Then
+            assertEquals(Set.of(g1Public, g1Secret), visible);
+
+        } finally {
+            FileUtils.deleteQuietly(dir.toFile());
+        }
+    }
+
+    @Test
+    public void givenTdb2Dataset_whenScanningInParallel_thenSameQuadsAsFiltering() {
+        // Given
+        DatasetGraphABAC dsgAuthz = createDataset(DatabaseMgr.createDatasetGraph());
+        dsgAuthz.setFilterProvider(new TDB2DatasetFilterProvider());
+        Set<Quad> visible = ConcurrentHashMap.newKeySet();
+        int threads = ABAC.parallelScanThreads;
+        ABAC.parallelScanThreads = 4;
+
+        // When
+        try {
+            Txn.executeRead(dsgAuthz, () -> ABAC.forEachQuad(dsgAuthz, context(dsgAuthz), Quad.create(
+                    Node.ANY, Node.ANY, Node.ANY, Node.ANY), visible::add));
+        } finally {
+            ABAC.parallelScanThreads = threads;
+        }
+
+        // Then
+        assertEquals(Set.of(dftPublic, g1Public, g2Unlabelled), visible);
+    }
+
+    @Test
+    public void givenNonTdb2Dataset_whenFiltering_thenDefaultView() {
+        // Given
+        DatasetGraphABAC dsgAuthz = createDataset(DatasetGraphFactory.createTxnMem());
+        TDB2DatasetFilterProvider provider = new TDB2DatasetFilterProvider();
+
+        // When
+        DatasetGraph dsg = Txn.calculateRead(dsgAuthz, () -> provider.filterDataset(dsgAuthz, context(dsgAuthz)));
+
+        // Then
+        assertInstanceOf(DatasetGraphPrunedView.class, dsg);
+        assertFalse(dsg instanceof DatasetGraphNodeIdView);
+        assertEquals(Set.of(dftPublic, g1Public, g2Unlabelled), visibleQuads(provider, dsgAuthz, context(dsgAuthz)));
+    }
+}
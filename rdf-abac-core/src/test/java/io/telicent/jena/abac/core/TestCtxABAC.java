@@ -1,14 +1,17 @@
 package io.telicent.jena.abac.core;
 
+import io.telicent.jena.abac.ABAC;
 import io.telicent.jena.abac.AttributeValueSet;
 import io.telicent.jena.abac.Hierarchy;
 import io.telicent.jena.abac.attributes.Attribute;
 import io.telicent.jena.abac.attributes.ValueTerm;
+import io.telicent.jena.abac.labels.Label;
 import org.apache.jena.atlas.lib.Cache;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -134,4 +137,111 @@ public class TestCtxABAC {
         CxtABAC cxtABAC = CxtABAC.context(mockAttributeValueSet,mockHierarchyGetter,mockDatasetGraph);
         assertEquals(Track.NONE, cxtABAC.tracking());
     }
+
+    @Test
+    public void test_scan_detection() {
+        AttributeValueSet mockAttributeValueSet = Mockito.mock(AttributeValueSet.class);
+        HierarchyGetter mockHierarchyGetter = Mockito.mock(HierarchyGetter.class);
+        DatasetGraph mockDatasetGraph = Mockito.mock(DatasetGraph.class);
+        CxtABAC cxtABAC = CxtABAC.context(mockAttributeValueSet,mockHierarchyGetter,mockDatasetGraph);
+        assertFalse(cxtABAC.isScan());
+        for ( long i = 0 ; i <= ABAC.labelScanThreshold ; i++ )
+            cxtABAC.recordLabelLookup();
+        assertEquals(ABAC.labelScanThreshold + 1, cxtABAC.labelLookups());
+        assertTrue(cxtABAC.isScan());
+    }
+
+    @Test
+    public void test_concurrent() throws Exception {
+        AttributeValueSet mockAttributeValueSet = Mockito.mock(AttributeValueSet.class);
+        HierarchyGetter mockHierarchyGetter = Mockito.mock(HierarchyGetter.class);
+        DatasetGraph mockDatasetGraph = Mockito.mock(DatasetGraph.class);
+        CxtABAC cxtABAC = CxtABAC.context(mockAttributeValueSet,mockHierarchyGetter,mockDatasetGraph);
+        Cache<Label, ValueTerm> cache = cxtABAC.labelEvalCache();
+        assertFalse(cxtABAC.isConcurrent());
+        cxtABAC.concurrent();
+        assertTrue(cxtABAC.isConcurrent());
+        assertNotSame(cache, cxtABAC.labelEvalCache());
+
+        Thread[] threads = new Thread[4];
+        for ( int t = 0 ; t < threads.length ; t++ ) {
+            threads[t] = new Thread(() -> {
+                for ( int i = 0 ; i < 1000 ; i++ ) {
+                    cxtABAC.recordLabelLookup();
+                    cxtABAC.labelEvalCache().put(Label.fromText("label" + i), ValueTerm.TRUE);
+                }
+            });
+            threads[t].start();
+        }
+        for ( Thread thread : threads )
+            thread.join();
+        assertEquals(4000, cxtABAC.labelLookups());
+        assertEquals(ValueTerm.TRUE, cxtABAC.labelEvalCache().getIfPresent(Label.fromText("label999")));
+    }
+
+    @Test
+    public void test_labelDecisions() {
+        AttributeValueSet mockAttributeValueSet = Mockito.mock(AttributeValueSet.class);
+        HierarchyGetter mockHierarchyGetter = Mockito.mock(HierarchyGetter.class);
+        DatasetGraph mockDatasetGraph = Mockito.mock(DatasetGraph.class);
+        AttributeProfiles profiles = new AttributeProfiles(1, 10, Duration.ofMinutes(1));
+        Cache<Label, ValueTerm> decisions = profiles.decisions(AttributeValueSet.of("clearance=S"));
+        CxtABAC cxtABAC = CxtABAC.context(mockAttributeValueSet,mockHierarchyGetter,mockDatasetGraph);
+        assertFalse(cxtABAC.hasSharedDecisions());
+        cxtABAC.labelDecisions(decisions);
+        cxtABAC.concurrent();
+        assertTrue(cxtABAC.hasSharedDecisions());
+        assertSame(decisions, cxtABAC.labelEvalCache());
+
+        decisions.put(Label.fromText("label1"), ValueTerm.TRUE);
+        decisions.put(Label.fromText("label2"), ValueTerm.FALSE);
+        assertEquals(ValueTerm.TRUE, decisions.getIfPresent(Label.fromText("label1")));
+        assertEquals(ValueTerm.FALSE, decisions.get(Label.fromText("label2"), l -> ValueTerm.TRUE));
+        assertNull(decisions.getIfPresent(Label.fromText("label3")));
+        assertEquals(2, decisions.size());
+        assertSame(decisions, profiles.decisions(AttributeValueSet.of("clearance=S")));
+    }
+
+    @Test
+    public void test_labelDecisions_outOfLabelIds() {
+        AttributeProfiles profiles = new AttributeProfiles(1, 1, Duration.ofMinutes(1));
+        Cache<Label, ValueTerm> decisions = profiles.decisions(AttributeValueSet.of("clearance=S"));
+        decisions.put(Label.fromText("label1"), ValueTerm.TRUE);
+        assertEquals(ValueTerm.FALSE, decisions.get(Label.fromText("label2"), l -> ValueTerm.FALSE));
+        assertNull(decisions.getIfPresent(Label.fromText("label2")));
+        // Label ids, and the decisions recorded against them, start afresh
+        Cache<Label, ValueTerm> renewed = profiles.decisions(AttributeValueSet.of("clearance=S"));
+        assertNotSame(decisions, renewed);
+        assertNull(renewed.getIfPresent(Label.fromText("label1")));
+        renewed.put(Label.fromText("label2"), ValueTerm.FALSE);
+        assertEquals(ValueTerm.FALSE, renewed.getIfPresent(Label.fromText("label2")));
+        assertEquals(1, profiles.labels());
+        // Decisions already handed out still work
+        assertEquals(ValueTerm.TRUE, decisions.getIfPresent(Label.fromText("label1")));
+    }
+
+    @Test
+    public void test_labelDecisions_clearResetsLabelIds() {
+        AttributeProfiles profiles = new AttributeProfiles(1, 10, Duration.ofMinutes(1));
+        profiles.decisions(AttributeValueSet.of("clearance=S")).put(Label.fromText("label1"), ValueTerm.TRUE);
+        assertEquals(1, profiles.labels());
+        profiles.clear();
+        assertEquals(0, profiles.labels());
+        assertEquals(0, profiles.size());
+        assertNull(profiles.decisions(AttributeValueSet.of("clearance=S")).getIfPresent(Label.fromText("label1")));
+    }
+
+    @Test
+    public void test_scan_hint() {
+        AttributeValueSet mockAttributeValueSet = Mockito.mock(AttributeValueSet.class);
+        HierarchyGetter mockHierarchyGetter = Mockito.mock(HierarchyGetter.class);
+        DatasetGraph mockDatasetGraph = Mockito.mock(DatasetGraph.class);
+        CxtABAC cxtABAC = CxtABAC.context(mockAttributeValueSet,mockHierarchyGetter,mockDatasetGraph);
+        cxtABAC.scan(true);
+        assertTrue(cxtABAC.isScan());
+        cxtABAC.scan(false);
+        for ( long i = 0 ; i <= ABAC.labelScanThreshold ; i++ )
+            cxtABAC.recordLabelLookup();
+        assertFalse(cxtABAC.isScan());
+    }
 }
@@ -10,6 +10,8 @@ import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.graph.GraphFactory;
 import org.junit.jupiter.api.Test;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Stream;
@@ -212,6 +214,57 @@ public class TestStreamSplitter {
     }
 
 
+    @Test
+    public void test_triple_labelsHandler() {
+        // given
+        StreamRDF data = new TestStreamRDF();
+        Graph graph = GraphFactory.createDefaultGraph();
+        Label label = Label.fromText("LABEL");
+        Map<Quad, Label> handled = new HashMap<>();
+        StreamSplitter cut = new StreamSplitter(data, graph, label, handled::put);
+        // when
+        Triple triple = Triple.create(NodeFactory.createBlankNode(), NodeFactory.createURI("http://example/p"), NodeFactory.createBlankNode());
+        cut.triple(triple);
+        // then
+        assertTrue(graph.isEmpty());
+        assertEquals(Map.of(Quad.create(Quad.defaultGraphIRI, triple), label), handled);
+    }
+
+    @Test
+    public void test_quad_labelsHandler() {
+        // given
+        StreamRDF data = new TestStreamRDF();
+        Graph graph = GraphFactory.createDefaultGraph();
+        Label label = Label.fromText("LABEL");
+        Map<Quad, Label> handled = new HashMap<>();
+        StreamSplitter cut = new StreamSplitter(data, graph, label, handled::put);
+        Triple triple = Triple.create(NodeFactory.createURI("http://example/s"), NodeFactory.createURI("http://example/p"), NodeFactory.createURI("http://example/o"));
+        Quad named = Quad.create(NodeFactory.createURI("http://example/g"), triple);
+        Quad labels = Quad.create(graphForLabels, NodeFactory.createBlankNode(), VocabAuthzLabels.pLabel, NodeFactory.createLiteralString("LABEL-2"));
+        // when
+        cut.quad(named);
+        cut.quad(Quad.create(Quad.defaultGraphNodeGenerated, triple));
+        cut.quad(labels);
+        // then
+        assertEquals(1, graph.size());
+        assertTrue(graph.contains(labels.asTriple()));
+        assertEquals(Map.of(named, label, Quad.create(Quad.defaultGraphIRI, triple), label), handled);
+    }
+
+    @Test
+    public void test_quad_labelsHandler_labelsNull() {
+        // given
+        StreamRDF data = new TestStreamRDF();
+        Graph graph = GraphFactory.createDefaultGraph();
+        Map<Quad, Label> handled = new HashMap<>();
+        StreamSplitter cut = new StreamSplitter(data, graph, null, handled::put);
+        // when
+        cut.quad(Quad.create(NodeFactory.createURI("http://example/g"), NodeFactory.createBlankNode(), NodeFactory.createURI("http://example/p"), NodeFactory.createBlankNode()));
+        // then
+        assertTrue(graph.isEmpty());
+        assertTrue(handled.isEmpty());
+    }
+
     public static class TestStreamRDF implements StreamRDF {
 
         @Override
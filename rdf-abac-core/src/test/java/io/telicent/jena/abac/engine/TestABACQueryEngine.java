@@ -0,0 +1,199 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package io.telicent.jena.abac.engine;
+
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.AttributeValueSet;
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Node;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.DatasetGraphFilteredView;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.engine.QueryEngineFactory;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestABACQueryEngine {
+
+    private static final String JOIN_QUERY = "PREFIX : <http://example/> SELECT * { GRAPH ?g { ?s :p ?o . ?s :q ?v } }";
+
+    @BeforeEach
+    void setup() {
+        ABACQueryEngine.statisticsCheck = () -> true;
+        ABACQueryEngine.register();
+    }
+
+    @AfterEach
+    void teardown() {
+        ABACQueryEngine.unregister();
+        // Restore the real env-var reader
+        ABACQueryEngine.statisticsCheck =
+                () -> Boolean.parseBoolean(System.getenv(ABACQueryEngine.ENV_QUERY_STATISTICS));
+    }
+
+    private static long countResults(DatasetGraph dsg, String query) {
+        try (QueryExec qe = QueryExec.dataset(dsg).query(query).build()) {
+            long count = 0;
+            var rowSet = qe.select();
+            while (rowSet.hasNext()) {
+                rowSet.next();
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * A filtered view that counts the requests for selectivity estimates
+     */
+    private static class CountingView extends DatasetGraphFilteredView implements LabelSelectivity {
+        final AtomicInteger calls = new AtomicInteger();
+
+        CountingView(DatasetGraph base) {
+            super(base, q -> true, List.of(SSE.parseNode(":g")));
+        }
+
+        @Override
+        public double selectivity(Node predicate) {
+            calls.incrementAndGet();
+            return 1.0;
+        }
+    }
+
+    @Test
+    void givenStatisticsEnabled_whenCheckingAccept_thenFactoryAcceptsFilteredView() {
+        final DatasetGraph filteredView = new DatasetGraphFilteredView(
+                DatasetGraphFactory.createTxnMem(), null, List.of());
+        final QueryEngineFactory factory = ABACQueryEngine.getFactory();
+        assertTrue(factory.accept((Query) null, filteredView, null));
+        assertFalse(factory.accept((Query) null, DatasetGraphFactory.createTxnMem(), null));
+    }
+
+    @Test
+    void givenStatisticsDisabled_whenCheckingAccept_thenFactoryRejects() {
+        ABACQueryEngine.statisticsCheck = () -> false;
+        final DatasetGraph filteredView = new DatasetGraphFilteredView(
+                DatasetGraphFactory.createTxnMem(), null, List.of());
+        assertFalse(ABACQueryEngine.getFactory().accept((Query) null, filteredView, null));
+    }
+
+    @Test
+    void givenUnionGraphRouting_whenCheckingAccept_thenFactoryRejects() {
+        UnionGraphQueryEngine.routingCheck = () -> true;
+        try {
+            final DatasetGraph filteredView = new DatasetGraphFilteredView(
+                    DatasetGraphFactory.createTxnMem(), null, List.of());
+            assertFalse(ABACQueryEngine.getFactory().accept((Query) null, filteredView, null));
+        } finally {
+            UnionGraphQueryEngine.routingCheck =
+                    () -> Boolean.parseBoolean(System.getenv(UnionGraphQueryEngine.ENV_ROUTE_TO_NAMED_GRAPHS));
+        }
+    }
+
+    @Test
+    void givenSelectivity_whenReordering_thenMostlyHiddenPatternFirst() {
+        // Given
+        BasicPattern pattern = SSE.parseBGP("(bgp (?s :p ?o) (?s :q ?v))");
+        Node q = SSE.parseNode(":q");
+
+        // When
+        BasicPattern reordered = new LabelSelectivityStageGenerator.LabelSelectivityReorder(
+                p -> q.equals(p) ? 0.1 : 1.0).reorder(pattern);
+        BasicPattern unchanged = new LabelSelectivityStageGenerator.LabelSelectivityReorder(p -> 1.0).reorder(pattern);
+
+        // Then
+        assertEquals(q, reordered.get(0).getPredicate());
+        assertEquals(pattern, unchanged);
+    }
+
+    @Test
+    void givenStatisticsEnabled_whenQuerying_thenSelectivityUsed() {
+        // Given
+        DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        base.add(SSE.parseQuad("(:g :s :p 1)"));
+        base.add(SSE.parseQuad("(:g :s :q 2)"));
+        CountingView view = new CountingView(base);
+
+        // When
+        long count = countResults(view, JOIN_QUERY);
+
+        // Then
+        assertEquals(1, count);
+        assertTrue(view.calls.get() > 0);
+    }
+
+    @Test
+    void givenStatisticsDisabled_whenQuerying_thenSelectivityNotUsed() {
+        // Given
+        ABACQueryEngine.statisticsCheck = () -> false;
+        DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        base.add(SSE.parseQuad("(:g :s :p 1)"));
+        base.add(SSE.parseQuad("(:g :s :q 2)"));
+        CountingView view = new CountingView(base);
+
+        // When
+        long count = countResults(view, JOIN_QUERY);
+
+        // Then
+        assertEquals(1, count);
+        assertEquals(0, view.calls.get());
+    }
+
+    @Test
+    void givenLabelledDataset_whenQueryingWithStatistics_thenResultsFiltered() {
+        // Given
+        DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        for (int i = 0; i < 10; i++) {
+            Quad p = SSE.parseQuad("(:g :s" + i + " :p " + i + ")");
+            Quad q = SSE.parseQuad("(:g :s" + i + " :q " + i + ")");
+            base.add(p);
+            base.add(q);
+            labels.add(p, Label.fromText("public"));
+            labels.add(q, Label.fromText(i < 8 ? "secret" : "public"));
+        }
+        DatasetGraphABAC dsgAuthz = ABAC.authzDataset(base, null, labels, Label.fromText("public"), null);
+        CxtABAC cxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, base);
+
+        // When
+        DatasetGraph dsg = ABAC.filterDataset(dsgAuthz, cxt);
+        long withStatistics = countResults(dsg, JOIN_QUERY);
+        ABACQueryEngine.statisticsCheck = () -> false;
+        long withoutStatistics = countResults(ABAC.filterDataset(dsgAuthz, cxt), JOIN_QUERY);
+
+        // Then
+        assertEquals(0.2, assertInstanceOf(LabelSelectivity.class, dsg).selectivity(SSE.parseNode(":q")), 0.001);
+        assertEquals(2, withStatistics);
+        assertEquals(withoutStatistics, withStatistics);
+    }
+}
@@ -17,11 +17,16 @@
 package io.telicent.jena.abac.engine;
 
 import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.AttributeValueSet;
 import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.CxtABAC;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
 import io.telicent.jena.abac.labels.Label;
 import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.query.Query;
 import org.apache.jena.sparql.algebra.Op;
 import org.apache.jena.sparql.core.DatasetGraph;
@@ -33,11 +38,17 @@ import org.apache.jena.sparql.engine.QueryEngineFactory;
 import org.apache.jena.sparql.engine.QueryEngineRegistry;
 import org.apache.jena.sparql.exec.QueryExec;
 import org.apache.jena.sparql.exec.QueryExecDatasetBuilder;
+import org.apache.jena.sparql.sse.SSE;
 import org.apache.jena.system.Txn;
 import org.junit.jupiter.api.*;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -70,10 +81,15 @@ public class TestUnionGraphQueryEngine {
     }
 
     private long countDefaultGraphResults(DatasetGraph dsg) {
-        try (QueryExec qe = QueryExecDatasetBuilder.create()
-                .dataset(dsg)
-                .query(DEFAULT_GRAPH_QUERY)
-                .build()) {
+        return countResults(dsg, DEFAULT_GRAPH_QUERY, null);
+    }
+
+    private long countResults(DatasetGraph dsg, String query, Integer parallelism) {
+        QueryExecDatasetBuilder builder = QueryExecDatasetBuilder.create().dataset(dsg).query(query);
+        if (parallelism != null) {
+            builder.set(UnionGraphQueryEngine.symUnionGraphParallelism, parallelism);
+        }
+        try (QueryExec qe = builder.build()) {
             long count = 0;
             var rowSet = qe.select();
             while (rowSet.hasNext()) {
@@ -96,6 +112,7 @@ public class TestUnionGraphQueryEngine {
         // Restore the real env-var reader
         UnionGraphQueryEngine.routingCheck =
                 () -> Boolean.parseBoolean(System.getenv(UnionGraphQueryEngine.ENV_ROUTE_TO_NAMED_GRAPHS));
+        UnionGraphQueryEngine.parallelismCheck = () -> 1;
     }
 
     // ---- accept() / registration tests
@@ -182,4 +199,176 @@ public class TestUnionGraphQueryEngine {
         // When / Then: standard engine sees only the default graph triple
         assertEquals(1, countDefaultGraphResults(dsg));
     }
+
+    // ---- Parallel evaluation
+
+    /**
+     * A filtered view that can be scanned in parallel, recording whether it was prepared for that and how many scans
+     * other threads ran.
+     */
+    private static class ParallelView extends DatasetGraphFilteredView implements ParallelScans {
+        private final AtomicBoolean prepared = new AtomicBoolean();
+        private final AtomicInteger scans = new AtomicInteger();
+        private volatile boolean allowScans = true;
+
+        ParallelView(DatasetGraph base, Predicate<Quad> filter, List<Node> graphs) {
+            super(base, filter, graphs);
+        }
+
+        @Override
+        public void prepareParallelScans() {
+            prepared.set(true);
+        }
+
+        @Override
+        public boolean runScan(Runnable scan) {
+            if (!allowScans) {
+                return false;
+            }
+            scans.incrementAndGet();
+            Txn.executeRead(getWrapped(), scan);
+            return true;
+        }
+    }
+
+    /** Ten named graphs where every graph holds a shared triple, 300 values and a link to the next graph. */
+    private List<Node> populateManyGraphs(DatasetGraph base) {
+        final List<Node> graphs = new ArrayList<>();
+        Txn.executeWrite(base, () -> {
+            for (int i = 0; i < 10; i++) {
+                Node g = NodeFactory.createURI("http://example.org/graph#" + i);
+                graphs.add(g);
+                base.add(g, SSE.parseNode(":shared"), SSE.parseNode(":p"), SSE.parseNode(":o"));
+                for (int j = 0; j < 300; j++) {
+                    base.add(g, SSE.parseNode(":s" + i), SSE.parseNode(":p"), NodeFactory.createLiteralString("v" + j));
+                }
+                base.add(g, SSE.parseNode(":s" + i), SSE.parseNode(":next"), SSE.parseNode(":s" + (i + 1)));
+            }
+        });
+        return graphs;
+    }
+
+    /** Builds a filtered view over ten named graphs, hiding the last. */
+    private ParallelView buildManyGraphsView() {
+        final DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        final List<Node> graphs = populateManyGraphs(base);
+        final Node hidden = graphs.get(9);
+        return new ParallelView(base, q -> !q.getGraph().equals(hidden), graphs.subList(0, 9));
+    }
+
+    @Test
+    void givenParallelism_whenQueryingDefaultGraph_thenDistinctUnionIsReturned() {
+        // Given
+        UnionGraphQueryEngine.parallelismCheck = () -> 4;
+        final ParallelView filteredView = buildManyGraphsView();
+
+        // When
+        final long parallel = countDefaultGraphResults(filteredView);
+        final long serial = countResults(filteredView, DEFAULT_GRAPH_QUERY, 1);
+
+        // Then: shared triple once, 300 values and one link per visible graph
+        assertEquals(1 + 9 * 301, parallel);
+        assertEquals(serial, parallel);
+        assertTrue(filteredView.prepared.get());
+    }
+
+    @Test
+    void givenParallelismAndScansRefused_whenQueryingDefaultGraph_thenCallingThreadScansAllGraphs() {
+        // Given: a view whose scanning threads can't see the same data as the query, e.g. after a write
+        UnionGraphQueryEngine.parallelismCheck = () -> 4;
+        final ParallelView filteredView = buildManyGraphsView();
+        filteredView.allowScans = false;
+
+        // When / Then
+        assertEquals(1 + 9 * 301, countDefaultGraphResults(filteredView));
+        assertTrue(filteredView.prepared.get());
+        assertEquals(0, filteredView.scans.get());
+    }
+
+    @Test
+    void givenParallelism_whenQueryingBoundSubject_thenUnionGraphIsUsed() {
+        // Given
+        final ParallelView filteredView = buildManyGraphsView();
+
+        // When
+        final long results = countResults(filteredView, "PREFIX : <http://example/> SELECT * { :s1 ?p ?o }", 4);
+
+        // Then: narrow finds aren't worth scanning in parallel
+        assertEquals(301, results);
+        assertFalse(filteredView.prepared.get());
+        assertEquals(0, filteredView.scans.get());
+    }
+
+    @Test
+    void givenSmallDeduplicationBound_whenFindingAll_thenEachTripleReturnedOnce() {
+        // Given
+        final ParallelView filteredView = buildManyGraphsView();
+        final ParallelUnionGraph union = new ParallelUnionGraph(filteredView, 4, 10);
+
+        // When
+        final List<Triple> triples = Txn.calculateRead(filteredView, () -> union.find().toList());
+
+        // Then: the shared triple once, 300 values and one link per visible graph
+        assertEquals(1 + 9 * 301, triples.size());
+        assertEquals(triples.size(), new HashSet<>(triples).size());
+        assertTrue(filteredView.scans.get() > 0);
+    }
+
+    @Test
+    void givenParallelismAndViewNotPreparable_whenQueryingDefaultGraph_thenScannedSerially() {
+        // Given: a view that doesn't implement ParallelScans
+        UnionGraphQueryEngine.parallelismCheck = () -> 4;
+        final DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        final List<Node> graphs = populateManyGraphs(base);
+        final DatasetGraph filteredView = new DatasetGraphFilteredView(base, q -> true, graphs);
+
+        // When / Then
+        assertEquals(1 + 10 * 301, countDefaultGraphResults(filteredView));
+    }
+
+    @Test
+    void givenParallelism_whenQueryingABACDataset_thenMatchesSerialEvaluation() {
+        // Given: the values of the odd numbered graphs are partly labelled with an attribute the request lacks
+        final DatasetGraph base = DatasetGraphFactory.createTxnMem();
+        final List<Node> graphs = populateManyGraphs(base);
+        final LabelsStore labels = Labels.createLabelsStoreMem();
+        Txn.executeWrite(labels.getTransactional(), () -> {
+            for (int i = 1; i < graphs.size(); i += 2) {
+                for (int j = 0; j < 100; j++) {
+                    labels.add(Quad.create(graphs.get(i), SSE.parseNode(":s" + i), SSE.parseNode(":p"),
+                                           NodeFactory.createLiteralString("v" + j)), Label.fromText("secret"));
+                }
+            }
+        });
+        final DatasetGraphABAC dsgAuthz = ABAC.authzDataset(base, null, labels, Label.fromText("public"),
+                                                            Mockito.mock(AttributesStore.class));
+        final CxtABAC parallelCxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, base);
+        final CxtABAC serialCxt = CxtABAC.context(AttributeValueSet.of("public"), a -> null, base);
+
+        // When
+        final long parallel = countResults(ABAC.filterDataset(dsgAuthz, parallelCxt), DEFAULT_GRAPH_QUERY, 4);
+        final long serial = countResults(ABAC.filterDataset(dsgAuthz, serialCxt), DEFAULT_GRAPH_QUERY, 1);
+
+        // Then: label decisions were made by several threads with thread-safe caches
+        assertEquals(1 + 10 * 301 - 5 * 100, parallel);
+        assertEquals(serial, parallel);
+        assertTrue(parallelCxt.isConcurrent());
+        assertFalse(serialCxt.isConcurrent());
+    }
+
+    @Test
+    void givenRequestParallelism_whenJoiningAcrossGraphs_thenMatchesSerialEvaluation() {
+        // Given
+        final DatasetGraph filteredView = buildManyGraphsView();
+        final String query = "PREFIX : <http://example/> "
+                + "SELECT * { ?a :next ?b . ?b :next ?c . ?c :p ?v }";
+
+        // When
+        final long parallel = countResults(filteredView, query, 3);
+        final long serial = countResults(filteredView, query, 1);
+
+        // Then: chains s0..s7 reach a visible graph, s8 links into the hidden graph
+        assertEquals(7 * 300, parallel);
+        assertEquals(serial, parallel);
+    }
 }
@@ -0,0 +1,330 @@
+package io.telicent.jena.abac.labels;
+
+import io.telicent.jena.abac.core.VocabAuthzDataset;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLabelsCache {
+
+    private static final Quad QUAD = SSE.parseQuad("(:g :s :p 'some value')");
+    private static final Label LABEL = Label.fromText("clearance=secret");
+
+    private static Resource config() {
+        Model model = ModelFactory.createDefaultModel();
+        return model.createResource();
+    }
+
+    @Test
+    public void cache_put_get() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+
+        // when
+        cache.put(QUAD, LABEL);
+
+        // then
+        assertEquals(LABEL, cache.getIfPresent(QUAD));
+        assertTrue(cache.containsKey(QUAD));
+        assertEquals(1, cache.size());
+        // Weights are updated by the cache's asynchronous maintenance
+        cache.cleanUp();
+        assertTrue(cache.weightedSize() > 0);
+        assertTrue(cache.hasCapacity());
+    }
+
+    @Test
+    public void cache_no_admit() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+
+        // when
+        Label label = cache.getNoAdmit(QUAD, q -> LABEL);
+
+        // then
+        assertEquals(LABEL, label);
+        assertFalse(cache.containsKey(QUAD));
+
+        // and given an already cached entry
+        Label other = Label.fromText("other");
+        cache.put(QUAD, other);
+
+        // then it is used
+        assertEquals(other, cache.getNoAdmit(QUAD, q -> LABEL));
+    }
+
+    @Test
+    public void cache_stats() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+
+        // when
+        cache.get(QUAD, q -> LABEL);
+        cache.get(QUAD, q -> LABEL);
+
+        // then
+        assertEquals(1, cache.stats().hits);
+        assertEquals(1, cache.stats().misses);
+        Map<String, String> properties = cache.addProperties(new HashMap<>());
+        assertEquals("1", properties.get("cacheHitCount"));
+        assertEquals("1", properties.get("cacheMissCount"));
+        assertEquals("0", properties.get("cacheEvictionCount"));
+    }
+
+    @Test
+    public void cache_bounded_by_weight() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+        Label large = Label.fromText("x".repeat(10_000));
+
+        // when
+        for (int i = 0; i < 1_000; i++) {
+            cache.put(SSE.parseQuad("(:g :s :p " + i + ")"), large);
+        }
+        cache.cleanUp();
+
+        // then
+        assertTrue(cache.size() < 1_000);
+        assertTrue(cache.weightedSize() <= cache.maxWeight());
+    }
+
+    @Test
+    public void cache_size_default() {
+        long expected = (long) (Runtime.getRuntime().maxMemory() * LabelsCache.DEFAULT_HEAP_FRACTION);
+        assertEquals(expected, LabelsCache.cacheSize(null));
+        assertEquals(expected, LabelsCache.cacheSize(config()));
+    }
+
+    @Test
+    public void cache_size_explicit() {
+        // given
+        Resource config = config();
+        config.addLiteral(VocabAuthzDataset.pLabelsStoreCacheSize, 5_000_000L);
+        config.addLiteral(VocabAuthzDataset.pLabelsStoreCacheHeapFraction, 0.5d);
+
+        // when
+        LabelsCache cache = LabelsCache.create(config);
+
+        // then
+        assertEquals(5_000_000L, cache.maxWeight());
+    }
+
+    @Test
+    public void cache_shared_by_default() {
+        // given
+        LabelsCache cache1 = LabelsCache.create(config());
+        LabelsCache cache2 = LabelsCache.create();
+
+        // when
+        cache1.put(QUAD, LABEL);
+
+        // then
+        assertTrue(cache1.isShared());
+        assertTrue(cache2.isShared());
+        assertEquals(cache1.maxWeight(), cache2.maxWeight());
+        assertTrue(cache1.containsKey(QUAD));
+        assertFalse(cache2.containsKey(QUAD));
+        assertNull(cache2.getIfPresent(QUAD));
+        assertEquals(1, cache1.size());
+        assertTrue(cache2.isEmpty());
+        // Both count against the same budget
+        cache1.cleanUp();
+        assertEquals(cache1.weightedSize(), cache2.weightedSize());
+
+        // and when
+        cache2.put(QUAD, Label.fromText("other"));
+        cache2.clear();
+
+        // then
+        assertEquals(LABEL, cache1.getIfPresent(QUAD));
+        assertFalse(cache2.containsKey(QUAD));
+    }
+
+    @Test
+    public void cache_shared_clear_and_size() {
+        // given
+        LabelsCache cache1 = LabelsCache.create();
+        LabelsCache cache2 = LabelsCache.create();
+        Quad other = SSE.parseQuad("(:g :s :p :o2)");
+        cache2.put(QUAD, LABEL);
+
+        // when
+        cache1.put(QUAD, LABEL);
+        cache1.put(QUAD, Label.fromText("replaced"));
+        cache1.put(other, LABEL);
+
+        // then
+        assertEquals(2, cache1.size());
+        assertEquals(1, cache2.size());
+
+        // and when
+        cache1.remove(other);
+
+        // then
+        assertEquals(1, cache1.size());
+
+        // and when
+        cache1.clear();
+
+        // then
+        assertTrue(cache1.isEmpty());
+        assertNull(cache1.getIfPresent(QUAD));
+        assertFalse(cache1.keys().hasNext());
+        assertEquals(LABEL, cache2.getIfPresent(QUAD));
+        assertEquals(1, cache2.size());
+
+        // and when
+        cache1.put(QUAD, LABEL);
+
+        // then
+        assertEquals(1, cache1.size());
+        assertEquals(LABEL, cache1.getIfPresent(QUAD));
+    }
+
+    @Test
+    public void cache_shared_stats() {
+        // given
+        LabelsCache cache1 = LabelsCache.create();
+        LabelsCache cache2 = LabelsCache.create();
+
+        // when
+        cache1.get(QUAD, q -> LABEL);
+        cache1.get(QUAD, q -> LABEL);
+        cache2.getIfPresent(QUAD);
+
+        // then
+        assertEquals(1, cache1.stats().hits);
+        assertEquals(1, cache1.stats().misses);
+        assertEquals(0, cache2.stats().hits);
+        assertEquals(1, cache2.stats().misses);
+        assertEquals("true", cache1.addProperties(new HashMap<>()).get("cacheShared"));
+    }
+
+    @Test
+    public void cache_explicit_size_not_shared() {
+        // given
+        Resource config = config();
+        config.addLiteral(VocabAuthzDataset.pLabelsStoreCacheSize, 5_000_000L);
+
+        // when
+        LabelsCache cache = LabelsCache.create(config);
+
+        // then
+        assertFalse(cache.isShared());
+        assertFalse(new LabelsCache(LabelsCache.MIN_CACHE_SIZE).isShared());
+    }
+
+    @Test
+    public void cache_size_heap_fraction() {
+        // given
+        Resource config = config();
+        config.addLiteral(VocabAuthzDataset.pLabelsStoreCacheHeapFraction, 0.25d);
+
+        // when
+        long size = LabelsCache.cacheSize(config);
+
+        // then
+        assertEquals((long) (Runtime.getRuntime().maxMemory() * 0.25d), size);
+    }
+
+    @Test
+    public void cache_size_bad() {
+        Resource config1 = config();
+        config1.addLiteral(VocabAuthzDataset.pLabelsStoreCacheSize, -1L);
+        assertThrows(LabelsException.class, () -> LabelsCache.create(config1));
+
+        Resource config2 = config();
+        config2.addLiteral(VocabAuthzDataset.pLabelsStoreCacheHeapFraction, 1.5d);
+        assertThrows(LabelsException.class, () -> LabelsCache.create(config2));
+
+        Resource config3 = config();
+        config3.addProperty(VocabAuthzDataset.pLabelsStoreCacheSize, "big");
+        assertThrows(LabelsException.class, () -> LabelsCache.create(config3));
+    }
+
+    @Test
+    public void cache_as_of_version() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+        Label newer = Label.fromText("clearance=topsecret");
+        cache.putAsOf(QUAD, newer, 5);
+
+        // when
+        Label older = cache.getAsOf(QUAD, 4, () -> true, q -> LABEL);
+        Label current = cache.getAsOf(QUAD, 5, () -> true, q -> LABEL);
+
+        // then
+        assertEquals(LABEL, older);
+        assertEquals(newer, current);
+        assertEquals(newer, cache.getIfPresent(QUAD));
+    }
+
+    @Test
+    public void cache_at_version() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+        Label newer = Label.fromText("clearance=topsecret");
+
+        // when
+        cache.getAtVersion(QUAD, 1, false, q -> LABEL);
+
+        // then
+        assertFalse(cache.containsKey(QUAD));
+
+        // and when
+        cache.getAtVersion(QUAD, 1, true, q -> LABEL);
+
+        // then
+        assertEquals(LABEL, cache.getAtVersion(QUAD, 1, true, q -> fail("Should be cached")));
+        // An entry is superseded by any later version
+        assertEquals(newer, cache.getAtVersion(QUAD, 2, true, q -> newer));
+        assertEquals(newer, cache.getAtVersion(QUAD, 2, true, q -> fail("Should be cached")));
+        // A lookup that started before the later version doesn't replace its entry
+        assertEquals(LABEL, cache.getAtVersion(QUAD, 1, true, q -> LABEL));
+        assertEquals(newer, cache.getIfPresent(QUAD));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void cache_as_of_admit() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+
+        // when
+        cache.getAsOf(QUAD, 3, () -> false, q -> LABEL);
+
+        // then
+        assertFalse(cache.containsKey(QUAD));
+
+        // and when
+        cache.getAsOf(QUAD, 3, () -> true, q -> LABEL);
+
+        // then
+        assertEquals(LABEL, cache.getAsOf(QUAD, 3, () -> true, q -> fail("Should be cached")));
+        // An entry cached as of version 3 isn't used for an older snapshot
+        assertNull(cache.getAsOf(QUAD, 2, () -> true, q -> null));
+    }
+
+    @Test
+    public void cache_as_of_admit_revoked() {
+        // given
+        LabelsCache cache = new LabelsCache(LabelsCache.MIN_CACHE_SIZE);
+        boolean[] calls = new boolean[] { true, false };
+        int[] call = new int[] { 0 };
+
+        // when
+        Label label = cache.getAsOf(QUAD, 1, () -> calls[call[0]++], q -> LABEL);
+
+        // then
+        assertEquals(LABEL, label);
+        assertFalse(cache.containsKey(QUAD));
+    }
+}
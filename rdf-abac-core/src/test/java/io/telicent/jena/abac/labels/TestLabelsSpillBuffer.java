@@ -0,0 +1,156 @@
+package io.telicent.jena.abac.labels;
+
+import io.telicent.jena.abac.core.VocabAuthz;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLabelsSpillBuffer {
+
+    // Descriptions interleaved, and the label of the first one separated from its pattern
+    private static final String LABELS = """
+            PREFIX authz: <http://telicent.io/security#>
+            PREFIX xsd:   <http://www.w3.org/2001/XMLSchema#>
+            PREFIX :      <http://example/>
+            GRAPH authz:labels {
+              _:a authz:pattern ':s :p 1' .
+              _:b authz:pattern ':g :s :p 2' ; authz:label "b" .
+              _:c authz:pattern ':s :p 3' ; authz:label "dGVzdA=="^^xsd:base64Binary ; :note "Ignored" .
+              _:d authz:label "d" ; authz:pattern ':s :p 4' .
+              _:a authz:label "a" .
+            }
+            """;
+
+    @TempDir
+    private Path tempDir;
+
+    private static Map<Quad, Label> collect(LabelsSpillBuffer buffer, String trig) {
+        RDFParser.fromString(trig, Lang.TRIG).parse(bufferStream(buffer));
+        Map<Quad, Label> labels = new HashMap<>();
+        buffer.forEachLabel(labels::put);
+        return labels;
+    }
+
+    private static StreamRDF bufferStream(LabelsSpillBuffer buffer) {
+        return new StreamRDFBase() {
+            @Override
+            public void quad(Quad quad) {
+                if (VocabAuthz.graphForLabels.equals(quad.getGraph())) {
+                    buffer.add(quad.asTriple());
+                }
+            }
+
+            @Override
+            public void prefix(String prefix, String iri) {
+                buffer.prefix(prefix, iri);
+            }
+        };
+    }
+
+    private static Map<Quad, Label> expected() {
+        Graph labelsGraph = RDFParser.fromString(LABELS, Lang.TRIG).toDatasetGraph()
+                                     .getGraph(VocabAuthz.graphForLabels);
+        Map<Quad, Label> labels = new HashMap<>();
+        L.graphToLabels(labelsGraph, labels::put);
+        return labels;
+    }
+
+    private long tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void inMemory() throws IOException {
+        LabelsSpillBuffer buffer = new LabelsSpillBuffer(1000, tempDir);
+        Map<Quad, Label> labels = collect(buffer, LABELS);
+        assertEquals(0, buffer.spills());
+        assertEquals(expected(), labels);
+        assertEquals(4, labels.size());
+        assertEquals(0, tempFiles());
+    }
+
+    @Test
+    public void spilled() throws IOException {
+        LabelsSpillBuffer buffer = new LabelsSpillBuffer(1, tempDir);
+        RDFParser.fromString(LABELS, Lang.TRIG).parse(bufferStream(buffer));
+        // The :note triple isn't kept
+        assertEquals(8, buffer.spills());
+        assertEquals(8, tempFiles());
+        Map<Quad, Label> labels = new HashMap<>();
+        buffer.forEachLabel(labels::put);
+        assertEquals(expected(), labels);
+        assertEquals(Label.fromText("a"), labels.get(Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(:s :p 1)"))));
+        assertEquals(Label.fromText("b"), labels.get(SSE.parseQuad("(:g :s :p 2)")));
+        // Temporary files are deleted once the labels are applied
+        assertEquals(0, tempFiles());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void spilled_partly() throws IOException {
+        LabelsSpillBuffer buffer = new LabelsSpillBuffer(3, tempDir);
+        RDFParser.fromString(LABELS, Lang.TRIG).parse(bufferStream(buffer));
+        assertEquals(2, buffer.spills());
+        Map<Quad, Label> labels = new HashMap<>();
+        buffer.forEachLabel(labels::put);
+        assertEquals(expected(), labels);
+        assertEquals(0, tempFiles());
+    }
+
+    @Test
+    public void duplicateTriples() throws IOException {
+        // The same triples repeated, as when the labels graph is sent in overlapping parts
+        String trig = LABELS + LABELS.replace(":note \"Ignored\"", ":note \"Other\"");
+        for (int maxInMemory : new int[] { 1, 3, 1000 }) {
+            LabelsSpillBuffer buffer = new LabelsSpillBuffer(maxInMemory, tempDir);
+            assertEquals(expected(), collect(buffer, trig));
+            assertEquals(0, tempFiles());
+        }
+    }
+
+    @Test
+    public void missingLabel() throws IOException {
+        String trig = """
+                PREFIX authz: <http://telicent.io/security#>
+                PREFIX :      <http://example/>
+                GRAPH authz:labels {
+                  _:a authz:pattern ':s :p 1' .
+                  _:b authz:pattern ':s :p 2' ; authz:label "b" .
+                }
+                """;
+        LabelsSpillBuffer buffer = new LabelsSpillBuffer(1, tempDir);
+        assertThrows(LabelsException.class, () -> collect(buffer, trig));
+        assertEquals(0, tempFiles());
+    }
+
+    @Test
+    public void close_deletesFiles() throws IOException {
+        LabelsSpillBuffer buffer = new LabelsSpillBuffer(1, tempDir);
+        RDFParser.fromString(LABELS, Lang.TRIG).parse(bufferStream(buffer));
+        assertNotEquals(0, tempFiles());
+        buffer.close();
+        assertEquals(0, tempFiles());
+    }
+
+    @Test
+    public void badMaxInMemory() {
+        assertThrows(IllegalArgumentException.class, () -> new LabelsSpillBuffer(0));
+    }
+}
@@ -0,0 +1,136 @@
+package io.telicent.jena.abac.labels;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLabelsStorePages {
+
+    private static final Node g1 = NodeFactory.createURI("http://example/g1");
+    private static final Node s1 = NodeFactory.createURI("http://example/s1");
+
+    private static LabelsStore store(int n) {
+        LabelsStore store = Labels.createLabelsStoreMem();
+        Txn.executeWrite(store.getTransactional(), () -> {
+            for (int i = 0; i < n; i++) {
+                store.add(Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(:s :p " + i + ")")),
+                          Label.fromText("l" + i));
+                store.add(Quad.create(g1, SSE.parseTriple("(:s1 :p " + i + ")")), Label.fromText("g" + i));
+            }
+        });
+        return store;
+    }
+
+    private static Map<Quad, Label> allPages(LabelsStore store, Node graph, Node subject, int limit) {
+        Map<Quad, Label> labels = new LinkedHashMap<>();
+        String after = null;
+        do {
+            Map<Quad, Label> page = new LinkedHashMap<>();
+            after = store.forEachPage(graph, subject, after, limit, page::put);
+            assertTrue(page.size() <= limit);
+            if (after != null) {
+                assertEquals(limit, page.size());
+            }
+            page.forEach((quad, label) -> assertNull(labels.put(quad, label), "Entry in more than one page"));
+        } while (after != null);
+        return labels;
+    }
+
+    @Test
+    public void pages_all() {
+        LabelsStore store = store(10);
+        Map<Quad, Label> expected = new HashMap<>();
+        store.forEach(expected::put);
+        assertEquals(20, expected.size());
+        for (int limit : new int[] { 1, 3, 19, 20, 21 }) {
+            assertEquals(expected, allPages(store, null, null, limit));
+        }
+    }
+
+    @Test
+    public void pages_stableOrder() {
+        LabelsStore store = store(5);
+        Map<Quad, Label> first = new LinkedHashMap<>();
+        Map<Quad, Label> again = new LinkedHashMap<>();
+        String next = store.forEachPage(null, null, null, 4, first::put);
+        assertEquals(next, store.forEachPage(null, null, null, 4, again::put));
+        assertEquals(first.keySet().stream().toList(), again.keySet().stream().toList());
+    }
+
+    @Test
+    public void pages_lastPage() {
+        LabelsStore store = store(2);
+        Map<Quad, Label> page = new HashMap<>();
+        assertNull(store.forEachPage(null, null, null, 4, page::put));
+        assertEquals(4, page.size());
+    }
+
+    @Test
+    public void pages_byGraph() {
+        LabelsStore store = store(5);
+        Map<Quad, Label> labels = allPages(store, g1, null, 2);
+        assertEquals(5, labels.size());
+        labels.keySet().forEach(quad -> assertEquals(g1, quad.getGraph()));
+        Map<Quad, Label> defaultGraph = allPages(store, Quad.defaultGraphNodeGenerated, null, 2);
+        assertEquals(5, defaultGraph.size());
+        defaultGraph.keySet().forEach(quad -> assertTrue(quad.isDefaultGraph()));
+    }
+
+    @Test
+    public void pages_bySubject() {
+        LabelsStore store = store(5);
+        Map<Quad, Label> labels = allPages(store, Node.ANY, s1, 3);
+        assertEquals(5, labels.size());
+        labels.keySet().forEach(quad -> assertEquals(s1, quad.getSubject()));
+        assertTrue(allPages(store, Quad.defaultGraphIRI, s1, 3).isEmpty());
+    }
+
+    @Test
+    public void forEach_filtered() {
+        LabelsStore store = store(5);
+        Map<Quad, Label> labels = new HashMap<>();
+        store.forEach(g1, s1, labels::put);
+        assertEquals(allPages(store, g1, s1, 2), labels);
+        assertEquals(5, labels.size());
+    }
+
+    @Test
+    public void pages_changedBetweenPages() {
+        LabelsStore store = store(5);
+        Map<Quad, Label> first = new LinkedHashMap<>();
+        String after = store.forEachPage(null, null, null, 4, first::put);
+        Quad removed = Quad.create(g1, SSE.parseTriple("(:s1 :p 4)"));
+        Quad added = Quad.create(g1, SSE.parseTriple("(:s1 :p 9)"));
+        assertFalse(first.containsKey(removed));
+        Txn.executeWrite(store.getTransactional(), () -> {
+            store.remove(removed);
+            store.add(added, Label.fromText("added"));
+        });
+
+        Map<Quad, Label> rest = new LinkedHashMap<>();
+        do {
+            after = store.forEachPage(null, null, after, 4, rest::put);
+        } while (after != null);
+
+        rest.keySet().forEach(quad -> assertFalse(first.containsKey(quad), "Entry in more than one page"));
+        assertFalse(rest.containsKey(removed));
+        assertEquals(Label.fromText("added"), rest.get(added));
+        assertEquals(10, first.size() + rest.size());
+    }
+
+    @Test
+    public void pages_badArguments() {
+        LabelsStore store = store(1);
+        assertThrows(IllegalArgumentException.class, () -> store.forEachPage(null, null, null, 0, (q, l) -> {}));
+        assertThrows(IllegalArgumentException.class, () -> store.forEachPage(null, null, "*", 1, (q, l) -> {}));
+    }
+}
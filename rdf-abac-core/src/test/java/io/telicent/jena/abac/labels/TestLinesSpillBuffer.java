@@ -0,0 +1,80 @@
+package io.telicent.jena.abac.labels;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLinesSpillBuffer {
+
+    private static final List<String> LINES = List.of("c", "a\tx", "b", "a", "c", "a\tx", "ab");
+    private static final List<String> DISTINCT = List.of("a", "a\tx", "ab", "b", "c");
+
+    @TempDir
+    private Path tempDir;
+
+    private static List<String> collect(LinesSpillBuffer buffer) {
+        LINES.forEach(buffer::add);
+        List<String> lines = new ArrayList<>();
+        buffer.forEachDistinct(lines::add);
+        return lines;
+    }
+
+    private long tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void inMemory() throws IOException {
+        LinesSpillBuffer buffer = new LinesSpillBuffer(1000, tempDir);
+        assertEquals(DISTINCT, collect(buffer));
+        assertEquals(0, buffer.spills());
+        assertEquals(0, tempFiles());
+    }
+
+    @Test
+    public void spilled() throws IOException {
+        LinesSpillBuffer buffer = new LinesSpillBuffer(1, tempDir);
+        LINES.forEach(buffer::add);
+        assertEquals(7, buffer.spills());
+        assertEquals(7, tempFiles());
+        List<String> lines = new ArrayList<>();
+        buffer.forEachDistinct(lines::add);
+        // Duplicates in different runs are merged
+        assertEquals(DISTINCT, lines);
+        // Temporary files are deleted once the lines are read
+        assertEquals(0, tempFiles());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void spilled_partly() throws IOException {
+        LinesSpillBuffer buffer = new LinesSpillBuffer(3, tempDir);
+        assertEquals(DISTINCT, collect(buffer));
+        assertEquals(0, tempFiles());
+    }
+
+    @Test
+    public void close_deletesFiles() throws IOException {
+        LinesSpillBuffer buffer = new LinesSpillBuffer(1, tempDir);
+        LINES.forEach(buffer::add);
+        assertNotEquals(0, tempFiles());
+        buffer.close();
+        assertEquals(0, tempFiles());
+        assertTrue(buffer.isEmpty());
+    }
+
+    @Test
+    public void badMaxInMemory() {
+        assertThrows(IllegalArgumentException.class, () -> new LinesSpillBuffer(0));
+    }
+}
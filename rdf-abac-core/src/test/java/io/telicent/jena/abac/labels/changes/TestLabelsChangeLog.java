@@ -0,0 +1,358 @@
+package io.telicent.jena.abac.labels.changes;
+
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsException;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLabelsChangeLog {
+
+    private static final Quad q1 = SSE.parseQuad("(:g :s :p 123)");
+    private static final Quad q2 = SSE.parseQuad("(_ :s :p 'test \"quoted\"'@en)");
+    private static final Quad q3 = Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(:s :p :o)"));
+
+    private static final Label l1 = Label.fromText("public");
+    private static final Label l2 = Label.fromText("admin && employee");
+
+    private Path dir;
+    private Path logFile;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("labels-changes");
+        logFile = dir.resolve("changes.log");
+    }
+
+    @AfterEach
+    public void teardown() {
+        FileUtils.deleteQuietly(dir.toFile());
+    }
+
+    @Test
+    public void change_format_parse() {
+        for (LabelsChange change : List.of(LabelsChange.add(q1, l1).withSequence(1),
+                                           LabelsChange.add(q2, l2).withSequence(2),
+                                           LabelsChange.remove(q3).withSequence(3),
+                                           new LabelsChange(4, LabelsChange.Operation.COMMIT, null, null),
+                                           new LabelsChange(5, LabelsChange.Operation.ABORT, null, null))) {
+            assertEquals(change, LabelsChange.parse(change.format()));
+        }
+    }
+
+    @Test
+    public void change_parse_bad() {
+        assertThrows(LabelsException.class, () -> LabelsChange.parse("1 Z ."));
+        assertThrows(LabelsException.class, () -> LabelsChange.parse("1 A <http://g> <http://s>"));
+        assertThrows(LabelsException.class, () -> LabelsChange.parse("one C ."));
+    }
+
+    @Test
+    public void log_transaction_committed() throws Exception {
+        // given
+        try (LabelsStoreWithChangeLog store = new LabelsStoreWithChangeLog(Labels.createLabelsStoreMem(),
+                                                                            new LabelsChangeLog(logFile))) {
+            // when
+            Txn.executeWrite(store.getTransactional(), () -> {
+                store.add(q1, l1);
+                store.add(q2, l2);
+            });
+
+            // then
+            assertEquals(l1, store.labelForQuad(q1));
+            assertEquals(3, store.changeLog().lastSequence());
+            assertEquals("3", store.getProperties().get("changeLogSequence"));
+            List<String> lines = Files.readAllLines(logFile);
+            assertEquals(4, lines.size());
+            assertEquals(LabelsChangeLog.HEADER_PREFIX + store.changeLog().epoch(), lines.getFirst());
+        }
+    }
+
+    @Test
+    public void log_transaction_aborted() throws Exception {
+        // given
+        try (LabelsStoreWithChangeLog store = new LabelsStoreWithChangeLog(Labels.createLabelsStoreMem(),
+                                                                            new LabelsChangeLog(logFile))) {
+            // when
+            store.getTransactional().begin();
+            store.add(q1, l1);
+            store.getTransactional().abort();
+            store.getTransactional().end();
+
+            // then
+            assertEquals(0, store.changeLog().lastSequence());
+            assertEquals(1, Files.readAllLines(logFile).size());
+        }
+    }
+
+    @Test
+    public void log_reopen_continues_sequence() throws Exception {
+        // given
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            log.append(List.of(LabelsChange.add(q1, l1)));
+        }
+
+        // when
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            long commit = log.append(List.of(LabelsChange.remove(q1)));
+
+            // then
+            assertEquals(4, commit);
+        }
+    }
+
+    @Test
+    public void log_reopen_truncates_incomplete() throws Exception {
+        // given
+        String epoch;
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            log.append(List.of(LabelsChange.add(q1, l1)));
+            epoch = log.epoch();
+        }
+        String prepared = LabelsChange.add(q2, l2).withSequence(3).format() + "\n";
+        long preparedSize = Files.size(logFile) + prepared.getBytes(StandardCharsets.UTF_8).length;
+        Files.writeString(logFile, prepared + "4 A <http://ex", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        // when
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            // then
+            assertEquals(epoch, log.epoch());
+            assertEquals(3, log.lastSequence());
+            assertEquals(preparedSize, Files.size(logFile));
+            assertEquals(List.of(LabelsChange.add(q2, l2).withSequence(3)), log.uncommitted());
+        }
+    }
+
+    @Test
+    public void log_write_ahead_aborted() throws Exception {
+        // given
+        Path otherLog = dir.resolve("other.log");
+        LabelsStore readOnly = new LabelsStoreFollower(Labels.createLabelsStoreMem(), otherLog, Duration.ofHours(1));
+        try (LabelsStoreWithChangeLog store = new LabelsStoreWithChangeLog(readOnly, new LabelsChangeLog(logFile));
+             LabelsChangeFollower changes = new LabelsChangeFollower(logFile, Labels.createLabelsStoreMem())) {
+            // when
+            assertThrows(LabelsException.class, () -> store.add(q1, l1));
+
+            // then
+            List<String> lines = Files.readAllLines(logFile);
+            assertEquals(List.of(LabelsChange.add(q1, l1).withSequence(1).format(), "2 X ."),
+                         lines.subList(1, lines.size()));
+            assertEquals(0, changes.poll());
+            assertEquals(0, changes.lastApplied());
+        }
+    }
+
+    @Test
+    public void log_reopen_resolves_prepared() throws Exception {
+        // given a leader that stopped after preparing two transactions, only the first of which its store committed
+        LabelsStore delegate = Labels.createLabelsStoreMem();
+        Txn.executeWrite(delegate.getTransactional(), () -> delegate.add(q1, l1));
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            log.prepare(List.of(LabelsChange.add(q1, l2), LabelsChange.add(q1, l1)));
+        }
+
+        // when
+        try (LabelsStoreWithChangeLog store = new LabelsStoreWithChangeLog(delegate, new LabelsChangeLog(logFile))) {
+            // then
+            assertTrue(store.changeLog().uncommitted().isEmpty());
+            assertEquals("3 C .", Files.readAllLines(logFile).getLast());
+
+            // and given
+            store.changeLog().prepare(List.of(LabelsChange.remove(q1)));
+        }
+
+        // when
+        try (LabelsStoreWithChangeLog store = new LabelsStoreWithChangeLog(delegate, new LabelsChangeLog(logFile))) {
+            // then
+            assertEquals("5 X .", Files.readAllLines(logFile).getLast());
+            assertEquals(l1, store.labelForQuad(q1));
+        }
+    }
+
+    @Test
+    public void follower_applies_changes() throws Exception {
+        // given
+        LabelsStore follower = Labels.createLabelsStoreMem();
+        try (LabelsStoreWithChangeLog leader = new LabelsStoreWithChangeLog(Labels.createLabelsStoreMem(),
+                                                                             new LabelsChangeLog(logFile));
+             LabelsChangeFollower changes = new LabelsChangeFollower(logFile, follower)) {
+            Txn.executeWrite(leader.getTransactional(), () -> {
+                leader.add(q1, l1);
+                leader.add(q2, l1);
+            });
+
+            // when
+            int applied = changes.poll();
+
+            // then
+            assertEquals(2, applied);
+            assertEquals(l1, follower.labelForQuad(q1));
+            assertEquals(l1, follower.labelForQuad(q2));
+
+            // and when
+            Txn.executeWrite(leader.getTransactional(), () -> {
+                leader.add(q1, l2);
+                leader.remove(q2);
+            });
+            applied = changes.poll();
+
+            // then
+            assertEquals(2, applied);
+            assertEquals(l2, follower.labelForQuad(q1));
+            assertNull(follower.labelForQuad(q2));
+            assertEquals(leader.changeLog().lastSequence(), changes.lastApplied());
+            assertEquals(0, changes.poll());
+        }
+    }
+
+    @Test
+    public void follower_ignores_incomplete_transaction() throws Exception {
+        // given
+        LabelsStore follower = Labels.createLabelsStoreMem();
+        Files.writeString(logFile, LabelsChange.add(q1, l1).withSequence(1).format() + "\n", StandardCharsets.UTF_8);
+
+        try (LabelsChangeFollower changes = new LabelsChangeFollower(logFile, follower)) {
+            // when
+            int applied = changes.poll();
+
+            // then
+            assertEquals(0, applied);
+            assertNull(follower.labelForQuad(q1));
+
+            // and when
+            Files.writeString(logFile, "2 C .\n", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+            // then
+            assertEquals(1, changes.poll());
+            assertEquals(l1, follower.labelForQuad(q1));
+        }
+    }
+
+    @Test
+    public void follower_resumes() throws Exception {
+        // given
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            log.append(List.of(LabelsChange.add(q1, l1)));
+            log.append(List.of(LabelsChange.add(q2, l2)));
+        }
+        LabelsStore follower = Labels.createLabelsStoreMem();
+
+        // when
+        try (LabelsChangeFollower changes = new LabelsChangeFollower(logFile, follower, 2)) {
+            int applied = changes.poll();
+
+            // then
+            assertEquals(1, applied);
+            assertNull(follower.labelForQuad(q1));
+            assertEquals(l2, follower.labelForQuad(q2));
+        }
+    }
+
+    @Test
+    public void follower_aborted_transaction() throws Exception {
+        // given
+        LabelsStore follower = Labels.createLabelsStoreMem();
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile);
+             LabelsChangeFollower changes = new LabelsChangeFollower(logFile, follower)) {
+            log.prepare(List.of(LabelsChange.add(q1, l1)));
+            log.abort();
+            log.append(List.of(LabelsChange.add(q2, l2)));
+
+            // when
+            int applied = changes.poll();
+
+            // then
+            assertEquals(1, applied);
+            assertNull(follower.labelForQuad(q1));
+            assertEquals(l2, follower.labelForQuad(q2));
+        }
+    }
+
+    @Test
+    public void follower_position_persisted() throws Exception {
+        // given
+        Path position = dir.resolve(LabelsChangeFollower.POSITION_FILE);
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            log.append(List.of(LabelsChange.add(q1, l1)));
+            log.prepare(List.of(LabelsChange.add(q2, l2)));
+            try (LabelsChangeFollower changes = new LabelsChangeFollower(logFile, Labels.createLabelsStoreMem(),
+                                                                         position)) {
+                assertEquals(1, changes.poll());
+            }
+            log.commit();
+        }
+
+        // when
+        LabelsStore follower = Labels.createLabelsStoreMem();
+        try (LabelsChangeFollower changes = new LabelsChangeFollower(logFile, follower, position)) {
+            // then
+            assertEquals(2, changes.lastApplied());
+            assertEquals(1, changes.poll());
+            assertNull(follower.labelForQuad(q1));
+            assertEquals(l2, follower.labelForQuad(q2));
+            assertEquals(4, changes.lastApplied());
+        }
+    }
+
+    @Test
+    public void follower_log_replaced() throws Exception {
+        // given
+        LabelsStore follower = Labels.createLabelsStoreMem();
+        try (LabelsChangeFollower changes = new LabelsChangeFollower(logFile, follower)) {
+            try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+                log.append(List.of(LabelsChange.add(q1, l1)));
+                log.append(List.of(LabelsChange.add(q3, l1)));
+            }
+            assertEquals(2, changes.poll());
+
+            // when the log is replaced by a new one that grows past the follower's offset
+            Files.delete(logFile);
+            try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+                log.append(List.of(LabelsChange.add(q2, l2), LabelsChange.remove(q1), LabelsChange.remove(q3)));
+            }
+            int applied = changes.poll();
+
+            // then
+            assertEquals(3, applied);
+            assertNull(follower.labelForQuad(q1));
+            assertEquals(l2, follower.labelForQuad(q2));
+            assertEquals(4, changes.lastApplied());
+        }
+    }
+
+    @Test
+    public void follower_store_read_only() throws Exception {
+        // given
+        try (LabelsChangeLog log = new LabelsChangeLog(logFile)) {
+            log.append(List.of(LabelsChange.add(q1, l1)));
+        }
+
+        // when
+        try (LabelsStoreFollower store = new LabelsStoreFollower(Labels.createLabelsStoreMem(), logFile,
+                                                                 Duration.ofHours(1))) {
+            long version = store.labelsVersion();
+            store.follower().poll();
+
+            // then
+            assertTrue(store.labelsVersion() > version);
+            assertEquals(l1, store.labelForQuad(q1));
+            assertThrows(LabelsException.class, () -> store.add(q2, l2));
+            assertThrows(LabelsException.class, () -> store.remove(q1));
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package io.telicent.jena.abac.labels.store.rocksdb;
+
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsException;
+import io.telicent.jena.abac.labels.StoreFmtByString;
+import io.telicent.jena.abac.labels.store.rocksdb.legacy.LegacyLabelsStoreRocksDB;
+import io.telicent.jena.abac.labels.store.rocksdb.legacy.RocksDBHelper;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestSharedRocksDBMemory {
+
+    private static SharedRocksDBMemory sharedMemory() {
+        SharedRocksDBMemory shared = SharedRocksDBMemory.get();
+        // Older RocksDB native libraries may not support a sized LRU cache, in which case stores fall back to their
+        // own block caches
+        Assumptions.assumeTrue(shared != null, "Shared RocksDB memory not supported by the native library");
+        return shared;
+    }
+
+    @Test
+    public void shared_memory_singleton() {
+        // given
+        SharedRocksDBMemory shared = sharedMemory();
+
+        // then
+        assertSame(shared, SharedRocksDBMemory.get());
+        assertNotNull(shared.blockCache());
+        assertNotNull(shared.writeBufferManager());
+        assertTrue(shared.budget() > 0);
+    }
+
+    @Test
+    public void shared_memory_configure_after_use_ignored() {
+        // given
+        SharedRocksDBMemory shared = sharedMemory();
+        long budget = shared.budget();
+
+        // when
+        SharedRocksDBMemory.configure(budget + 1);
+
+        // then
+        assertEquals(budget, SharedRocksDBMemory.get().budget());
+    }
+
+    @Test
+    public void shared_memory_configure_bad() {
+        assertThrows(LabelsException.class, () -> SharedRocksDBMemory.configure(0));
+    }
+
+    @Test
+    public void shared_memory_properties() {
+        SharedRocksDBMemory shared = sharedMemory();
+        Map<String, String> properties = shared.addProperties(new HashMap<>());
+        assertEquals(Long.toString(shared.budget()), properties.get("sharedMemoryBudget"));
+        assertTrue(properties.containsKey("sharedBlockCacheUsage"));
+    }
+
+    @Test
+    public void shared_memory_stores_report_usage() throws Exception {
+        // given
+        File dir1 = Files.createTempDirectory("shared-1").toFile();
+        File dir2 = Files.createTempDirectory("shared-2").toFile();
+        Quad quad = Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(:s :p :o)"));
+        try (LegacyLabelsStoreRocksDB store1 = new LegacyLabelsStoreRocksDB(new RocksDBHelper(), dir1,
+                                                                             new StoreFmtByString(), null);
+             LegacyLabelsStoreRocksDB store2 = new LegacyLabelsStoreRocksDB(new RocksDBHelper(), dir2,
+                                                                             new StoreFmtByString(), null)) {
+            // when
+            Txn.executeWrite(store1.getTransactional(), () -> store1.add(quad, Label.fromText("a")));
+            Map<String, String> properties1 = store1.getProperties();
+            Map<String, String> properties2 = store2.getProperties();
+
+            // then
+            assertTrue(properties1.containsKey("memTableUsage"));
+            assertTrue(properties2.containsKey("memTableUsage"));
+            assertEquals(properties1.get("sharedMemoryBudget"), properties2.get("sharedMemoryBudget"));
+        } finally {
+            FileUtils.deleteQuietly(dir1);
+            FileUtils.deleteQuietly(dir2);
+        }
+    }
+}
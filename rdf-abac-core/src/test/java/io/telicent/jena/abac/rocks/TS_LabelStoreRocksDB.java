@@ -19,9 +19,12 @@
 package io.telicent.jena.abac.rocks;
 
 import io.telicent.jena.abac.labels.store.rocksdb.modern.TestBufferToByteArray;
+import io.telicent.jena.abac.rocks.modern.TestGraphLabelsModern;
 import io.telicent.jena.abac.rocks.modern.TestLabelMatchModernRocksDBByHash;
 import io.telicent.jena.abac.rocks.modern.TestLabelStoreMigration;
 import io.telicent.jena.abac.rocks.modern.TestLargeLabelStoreMigration;
+import io.telicent.jena.abac.rocks.modern.TestQuadIndexModern;
+import io.telicent.jena.abac.rocks.modern.TestSecondaryLabelStore;
 import io.telicent.jena.abac.rocks.modern.TestTransactionalModern;
 import org.junit.platform.suite.api.SelectClasses;
 import org.junit.platform.suite.api.Suite;
@@ -43,6 +46,9 @@ import org.junit.platform.suite.api.Suite;
         , TestLabelStoreMigration.class
         , TestLargeLabelStoreMigration.class
         , TestTransactionalModern.class
+        , TestSecondaryLabelStore.class
+        , TestGraphLabelsModern.class
+        , TestQuadIndexModern.class
         , TestBufferToByteArray.class
 
         // Consistency checking.
@@ -0,0 +1,156 @@
+package io.telicent.jena.abac.rocks.modern;
+
+import io.telicent.jena.abac.labels.*;
+import io.telicent.jena.abac.labels.hashing.HasherUtil;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDB;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDBSecondary;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+public class TestGraphLabelsModern {
+
+    private static final Node g1 = NodeFactory.createURI("http://example/g1");
+    private static final Node g2 = NodeFactory.createURI("http://example/g2");
+
+    private static final Quad q1 = Quad.create(g1, SSE.parseTriple("(:s :p 1)"));
+    private static final Quad q2 = Quad.create(g1, SSE.parseTriple("(:s :p 2)"));
+    private static final Quad q3 = Quad.create(g2, SSE.parseTriple("(:s :p 3)"));
+
+    private static final Label l1 = Label.fromText("public");
+    private static final Label l2 = Label.fromText("admin && employee");
+
+    private final StoreFmt storeFmt = new StoreFmtByHash(HasherUtil.createXX128Hasher());
+    private File dir, secondaryDir;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("rocks-graph-labels").toFile();
+        secondaryDir = Files.createTempDirectory("rocks-graph-labels-secondary").toFile();
+    }
+
+    @AfterEach
+    public void teardown() {
+        FileUtils.deleteQuietly(dir);
+        FileUtils.deleteQuietly(secondaryDir);
+    }
+
+    private static Set<Label> graphLabels(LabelsStore store, Node graph) {
+        Collection<Label> labels = store.distinctLabels(graph, 10);
+        Assertions.assertNotNull(labels);
+        return Set.copyOf(labels);
+    }
+
+    @Test
+    public void givenNewStore_whenLabellingQuads_thenGraphLabelsTracked() throws Exception {
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            // When
+            Txn.executeWrite(store.getTransactional(), () -> {
+                store.add(q1, l1);
+                store.add(q2, l2);
+                store.add(q3, l1);
+            });
+
+            // Then
+            Assertions.assertEquals(Set.of(l1, l2), graphLabels(store, g1));
+            Assertions.assertEquals(Set.of(l1), graphLabels(store, g2));
+            Assertions.assertNull(store.distinctLabels(g1, 1));
+
+            // And When
+            Txn.executeWrite(store.getTransactional(), () -> {
+                store.add(q1, l2);
+                store.remove(q3);
+            });
+
+            // Then
+            Assertions.assertEquals(Set.of(l2), graphLabels(store, g1));
+            Assertions.assertEquals(Set.of(), graphLabels(store, g2));
+        }
+    }
+
+    @Test
+    public void givenNewStore_whenLabellingQuads_thenPredicateLabelCountsTracked() throws Exception {
+        Quad q4 = Quad.create(g2, SSE.parseTriple("(:s :q 4)"));
+        Node p = q1.getPredicate();
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            // When
+            Txn.executeWrite(store.getTransactional(), () -> {
+                store.add(q1, l1);
+                store.add(q2, l2);
+                store.add(q3, l1);
+                store.add(q4, l2);
+            });
+
+            // Then
+            Assertions.assertEquals(Map.of(l1, 2L, l2, 1L), store.labelCounts(p, 10));
+            Assertions.assertEquals(Map.of(l2, 1L), store.labelCounts(q4.getPredicate(), 10));
+            Assertions.assertEquals(Map.of(l1, 2L, l2, 2L), store.labelCounts(Node.ANY, 10));
+            Assertions.assertNull(store.labelCounts(p, 1));
+
+            // And When
+            Txn.executeWrite(store.getTransactional(), () -> {
+                store.add(q1, l2);
+                store.remove(q4);
+            });
+
+            // Then
+            Assertions.assertEquals(Map.of(l1, 1L, l2, 2L), store.labelCounts(p, 10));
+            Assertions.assertEquals(Map.of(), store.labelCounts(q4.getPredicate(), 10));
+            Assertions.assertEquals(Map.of(l1, 1L, l2, 2L), store.labelCounts(Node.ANY, 10));
+
+            // And When
+            try (DictionaryLabelStoreRocksDBSecondary secondary = new DictionaryLabelStoreRocksDBSecondary(
+                    dir, secondaryDir, storeFmt, LabelsCache.create(), Duration.ZERO)) {
+                // Then
+                Assertions.assertEquals(Map.of(l1, 1L, l2, 2L), secondary.labelCounts(p, 10));
+            }
+        }
+    }
+
+    @Test
+    public void givenStore_whenReopening_thenGraphLabelsRetained() throws Exception {
+        // Given
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            Txn.executeWrite(store.getTransactional(), () -> store.add(q1, l1));
+        }
+
+        // When
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            // Then
+            Assertions.assertEquals(Set.of(l1), graphLabels(store, g1));
+        }
+    }
+
+    @Test
+    public void givenPrimary_whenReadingFromSecondary_thenGraphLabelsVisible() throws Exception {
+        try (DictionaryLabelStoreRocksDB primary = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            // Given
+            Txn.executeWrite(primary.getTransactional(), () -> {
+                primary.add(q1, l1);
+                primary.add(q3, l2);
+            });
+
+            // When
+            try (DictionaryLabelStoreRocksDBSecondary secondary = new DictionaryLabelStoreRocksDBSecondary(
+                    dir, secondaryDir, storeFmt, LabelsCache.create(), Duration.ZERO)) {
+                // Then
+                Assertions.assertEquals(Set.of(l1), graphLabels(secondary, g1));
+                Assertions.assertEquals(Set.of(l2), graphLabels(secondary, g2));
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.telicent.jena.abac.rocks.modern;
+
+import io.telicent.jena.abac.labels.*;
+import io.telicent.jena.abac.labels.hashing.HasherUtil;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDB;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDBSecondary;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class TestQuadIndexModern {
+
+    private static final Node g1 = NodeFactory.createURI("http://example/g1");
+    private static final Node g2 = NodeFactory.createURI("http://example/g2");
+
+    private static final Quad q1 = Quad.create(g1, SSE.parseTriple("(:s :p 1)"));
+    private static final Quad q2 = Quad.create(g1, SSE.parseTriple("(:s :p 'two'@en)"));
+    private static final Quad q3 = Quad.create(g2, SSE.parseTriple("(:s :p 3)"));
+    private static final Quad q4 = Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(_:b :p :o)"));
+    private static final Quad q5 = Quad.create(g1, SSE.parseTriple("(:s2 :p \"multi\\nline\")"));
+
+    private static final Label l1 = Label.fromText("public");
+    private static final Label l2 = Label.fromText("admin && employee");
+
+    private final StoreFmt storeFmt = new StoreFmtByHash(HasherUtil.createXX128Hasher());
+    private File dir, secondaryDir;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("rocks-quad-index").toFile();
+        secondaryDir = Files.createTempDirectory("rocks-quad-index-secondary").toFile();
+    }
+
+    @AfterEach
+    public void teardown() {
+        FileUtils.deleteQuietly(dir);
+        FileUtils.deleteQuietly(secondaryDir);
+    }
+
+    private static void addAll(LabelsStore store) {
+        Txn.executeWrite(store.getTransactional(), () -> {
+            store.add(q1, l1);
+            store.add(q2, l2);
+            store.add(q3, l1);
+            store.add(q4, l2);
+            store.add(q5, l1);
+        });
+    }
+
+    private static Map<Quad, Label> allPages(LabelsStore store, Node graph, Node subject, int limit) {
+        Map<Quad, Label> labels = new LinkedHashMap<>();
+        String after = null;
+        do {
+            Map<Quad, Label> page = new LinkedHashMap<>();
+            after = store.forEachPage(graph, subject, after, limit, page::put);
+            Assertions.assertTrue(page.size() <= limit);
+            labels.putAll(page);
+        } while (after != null);
+        return labels;
+    }
+
+    @Test
+    public void givenStoreWithoutIndex_whenListing_thenUnsupported() throws Exception {
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            addAll(store);
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> store.forEach((q, l) -> {}));
+            Assertions.assertThrows(UnsupportedOperationException.class,
+                                    () -> store.forEachPage(null, null, null, 10, (q, l) -> {}));
+            Assertions.assertNull(store.asGraph());
+        }
+    }
+
+    @Test
+    public void givenStoreWithIndex_whenListing_thenOriginalQuadsReturned() throws Exception {
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt, LabelsCache.create(),
+                                                                                 true)) {
+            addAll(store);
+            Map<Quad, Label> expected = Map.of(q1, l1, q2, l2, q3, l1, q4, l2, q5, l1);
+            Map<Quad, Label> all = new LinkedHashMap<>();
+            store.forEach(all::put);
+            Assertions.assertEquals(expected, all);
+            for (int limit : new int[] { 1, 2, 5, 6 }) {
+                Assertions.assertEquals(expected, allPages(store, null, null, limit));
+            }
+            Assertions.assertFalse(store.asGraph().isEmpty());
+        }
+    }
+
+    @Test
+    public void givenStoreWithIndex_whenFiltering_thenOnlyMatchingQuadsReturned() throws Exception {
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt, LabelsCache.create(),
+                                                                                 true)) {
+            addAll(store);
+            Assertions.assertEquals(Map.of(q1, l1, q2, l2, q5, l1), allPages(store, g1, null, 1));
+            Assertions.assertEquals(Map.of(q1, l1, q2, l2), allPages(store, g1, q1.getSubject(), 1));
+            Assertions.assertEquals(Map.of(q1, l1, q2, l2, q3, l1), allPages(store, null, q1.getSubject(), 2));
+            Assertions.assertEquals(Map.of(q4, l2), allPages(store, Quad.defaultGraphNodeGenerated, null, 2));
+        }
+    }
+
+    @Test
+    public void givenStoreWithIndex_whenListingFiltered_thenOnlyMatchingQuadsReturned() throws Exception {
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt, LabelsCache.create(),
+                                                                                 true)) {
+            addAll(store);
+            Map<Quad, Label> graph = new LinkedHashMap<>();
+            store.forEach(g1, null, graph::put);
+            Assertions.assertEquals(Map.of(q1, l1, q2, l2, q5, l1), graph);
+            Map<Quad, Label> subject = new LinkedHashMap<>();
+            store.forEach(g1, q1.getSubject(), subject::put);
+            Assertions.assertEquals(Map.of(q1, l1, q2, l2), subject);
+            Map<Quad, Label> anyGraph = new LinkedHashMap<>();
+            store.forEach(null, q1.getSubject(), anyGraph::put);
+            Assertions.assertEquals(Map.of(q1, l1, q2, l2, q3, l1), anyGraph);
+        }
+    }
+
+    @Test
+    public void givenStoreWithIndex_whenRemovingAndReopening_thenIndexMaintained() throws Exception {
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt, LabelsCache.create(),
+                                                                                 true)) {
+            addAll(store);
+            Txn.executeWrite(store.getTransactional(), () -> store.remove(q2));
+        }
+        // Once a store has the index it's kept, even if not requested
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            Txn.executeWrite(store.getTransactional(), () -> store.add(q2, l1));
+            Map<Quad, Label> all = new LinkedHashMap<>();
+            store.forEach(all::put);
+            Assertions.assertEquals(Map.of(q1, l1, q2, l1, q3, l1, q4, l2, q5, l1), all);
+
+            try (DictionaryLabelStoreRocksDBSecondary secondary = new DictionaryLabelStoreRocksDBSecondary(
+                    dir, secondaryDir, storeFmt, LabelsCache.create(), Duration.ZERO)) {
+                Assertions.assertEquals(all, allPages(secondary, null, null, 2));
+            }
+        }
+    }
+
+    @Test
+    public void givenExistingStoreWithoutIndex_whenIndexRequested_thenNotEnabled() throws Exception {
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt)) {
+            addAll(store);
+        }
+        try (DictionaryLabelStoreRocksDB store = new DictionaryLabelStoreRocksDB(dir, storeFmt, LabelsCache.create(),
+                                                                                 true)) {
+            Assertions.assertThrows(UnsupportedOperationException.class, () -> store.forEach((q, l) -> {}));
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package io.telicent.jena.abac.rocks.modern;
+
+import io.telicent.jena.abac.labels.*;
+import io.telicent.jena.abac.labels.hashing.HasherUtil;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDB;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDBSecondary;
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Map;
+
+public class TestSecondaryLabelStore {
+
+    private static final Quad q1 = SSE.parseQuad("(:g :s :p 123)");
+    private static final Quad q2 = SSE.parseQuad("(:g :s :p 'test')");
+
+    private static final Label l1 = Label.fromText("public");
+    private static final Label l2 = Label.fromText("admin && employee");
+
+    private final StoreFmt storeFmt = new StoreFmtByHash(HasherUtil.createXX128Hasher());
+    private File primaryDir, secondaryDir;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        primaryDir = Files.createTempDirectory("rocks-primary").toFile();
+        secondaryDir = Files.createTempDirectory("rocks-secondary").toFile();
+    }
+
+    @AfterEach
+    public void teardown() {
+        FileUtils.deleteQuietly(primaryDir);
+        FileUtils.deleteQuietly(secondaryDir);
+    }
+
+    private DictionaryLabelStoreRocksDBSecondary secondary() throws Exception {
+        return new DictionaryLabelStoreRocksDBSecondary(primaryDir, secondaryDir, storeFmt, LabelsCache.create(),
+                                                        Duration.ZERO);
+    }
+
+    @Test
+    public void givenPrimary_whenReadingFromSecondary_thenLabelsVisible() throws Exception {
+        // Given
+        try (DictionaryLabelStoreRocksDB primary = new DictionaryLabelStoreRocksDB(primaryDir, storeFmt)) {
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(q1, l1));
+
+            // When
+            try (DictionaryLabelStoreRocksDBSecondary secondary = secondary()) {
+                // Then
+                Assertions.assertFalse(secondary.isEmpty());
+                Assertions.assertEquals(l1, secondary.labelForQuad(q1));
+                Assertions.assertNull(secondary.labelForQuad(q2));
+            }
+        }
+    }
+
+    @Test
+    public void givenSecondary_whenPrimaryWritesAndCatchingUp_thenNewLabelsVisible() throws Exception {
+        try (DictionaryLabelStoreRocksDB primary = new DictionaryLabelStoreRocksDB(primaryDir, storeFmt)) {
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(q1, l1));
+            try (DictionaryLabelStoreRocksDBSecondary secondary = secondary()) {
+                // Given
+                Assertions.assertNull(secondary.labelForQuad(q2));
+
+                // When
+                Txn.executeWrite(primary.getTransactional(), () -> {
+                    primary.add(q1, l2);
+                    primary.add(q2, l2);
+                });
+                boolean caughtUp = secondary.catchUp();
+
+                // Then
+                Assertions.assertTrue(caughtUp);
+                Assertions.assertEquals(l2, secondary.labelForQuad(q1));
+                Assertions.assertEquals(l2, secondary.labelForQuad(q2));
+                Assertions.assertFalse(secondary.catchUp());
+            }
+        }
+    }
+
+    @Test
+    public void givenSecondary_whenGettingProperties_thenStoreMemoryReported() throws Exception {
+        try (DictionaryLabelStoreRocksDB primary = new DictionaryLabelStoreRocksDB(primaryDir, storeFmt)) {
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(q1, l1));
+            Assertions.assertTrue(primary.getProperties().containsKey("memTableUsage"));
+            try (DictionaryLabelStoreRocksDBSecondary secondary = secondary()) {
+                Map<String, String> properties = secondary.getProperties();
+                Assertions.assertTrue(properties.containsKey("memTableUsage"));
+                Assertions.assertTrue(properties.containsKey("tableReadersUsage"));
+            }
+        }
+    }
+
+    @Test
+    public void givenSecondary_whenWriting_thenRejected() throws Exception {
+        try (DictionaryLabelStoreRocksDB primary = new DictionaryLabelStoreRocksDB(primaryDir, storeFmt)) {
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(q1, l1));
+            try (DictionaryLabelStoreRocksDBSecondary secondary = secondary()) {
+                Assertions.assertThrows(LabelsException.class, () -> secondary.add(q2, l2));
+                Assertions.assertThrows(LabelsException.class, () -> secondary.remove(q1));
+                Assertions.assertEquals(l1, secondary.labelForQuad(q1));
+            }
+        }
+    }
+
+    @Test
+    public void givenPrimary_whenOpeningSecondaryWithDifferentFormat_thenRejected() throws Exception {
+        try (DictionaryLabelStoreRocksDB primary = new DictionaryLabelStoreRocksDB(primaryDir, storeFmt)) {
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(q1, l1));
+            StoreFmt other = new StoreFmtByHash(HasherUtil.createMurmer128Hasher());
+            Assertions.assertThrows(IllegalStateException.class,
+                                    () -> new DictionaryLabelStoreRocksDBSecondary(primaryDir, secondaryDir, other,
+                                                                                   LabelsCache.create(),
+                                                                                   Duration.ZERO));
+        }
+    }
+}
@@ -1,12 +1,21 @@
 package io.telicent.jena.abac.rocks.modern;
 
+import io.telicent.jena.abac.labels.Label;
 import io.telicent.jena.abac.labels.LabelsStore;
 import io.telicent.jena.abac.labels.StoreFmtByHash;
 import io.telicent.jena.abac.labels.hashing.HasherUtil;
 import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDB;
 import io.telicent.jena.abac.AbstractionTransactionalTests;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 
 import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TestTransactionalModern extends AbstractionTransactionalTests {
 
@@ -25,4 +34,127 @@ public class TestTransactionalModern extends AbstractionTransactionalTests {
         // The modern store distinguishes read-only transactions and rejects writes made within them
         return true;
     }
+
+    @Test
+    public void givenReadTransaction_whenWriteCommittedConcurrently_thenReaderSeesItsSnapshot() throws Exception {
+        Quad quad = SSE.parseQuad("(:g :s :p :o)");
+        Label updated = Label.fromText("admin");
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try (LabelsStore store = create()) {
+            Txn.executeWrite(store.getTransactional(), () -> store.add(quad, LABEL));
+
+            // Given
+            reader.submit(() -> store.getTransactional().begin(TxnType.READ)).get();
+            Assertions.assertEquals(LABEL, reader.submit(() -> store.labelForQuad(quad)).get());
+
+            // When
+            Txn.executeWrite(store.getTransactional(), () -> store.add(quad, updated));
+
+            // Then
+            Assertions.assertEquals(LABEL, reader.submit(() -> store.labelForQuad(quad)).get());
+            reader.submit(() -> store.getTransactional().end()).get();
+            Assertions.assertEquals(updated, reader.submit(
+                    () -> Txn.calculateRead(store.getTransactional(), () -> store.labelForQuad(quad))).get());
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenReadTransaction_whenLabelRemovedConcurrently_thenReaderStillSeesLabel() throws Exception {
+        Quad quad = SSE.parseQuad("(:g :s :p :o)");
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try (LabelsStore store = create()) {
+            Txn.executeWrite(store.getTransactional(), () -> store.add(quad, LABEL));
+
+            // Given
+            reader.submit(() -> store.getTransactional().begin(TxnType.READ)).get();
+
+            // When
+            Txn.executeWrite(store.getTransactional(), () -> store.remove(quad));
+
+            // Then
+            Assertions.assertEquals(LABEL, reader.submit(() -> store.labelForQuad(quad)).get());
+            reader.submit(() -> store.getTransactional().end()).get();
+            Assertions.assertNull(reader.submit(
+                    () -> Txn.calculateRead(store.getTransactional(), () -> store.labelForQuad(quad))).get());
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenOverlappingWriters_whenOneCommitsFirst_thenOthersUncommittedLabelsAreNotVisible() throws Exception {
+        Quad added = SSE.parseQuad("(:g :s :p :o1)");
+        Quad removed = SSE.parseQuad("(:g :s :p :o2)");
+        Quad other = SSE.parseQuad("(:g :s :p :o3)");
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try (LabelsStore store = create()) {
+            Txn.executeWrite(store.getTransactional(), () -> store.add(removed, LABEL));
+
+            // Given
+            writer.submit(() -> {
+                store.getTransactional().begin(TxnType.WRITE);
+                store.add(added, LABEL);
+                store.remove(removed);
+            }).get();
+            Assertions.assertEquals(LABEL, writer.submit(() -> store.labelForQuad(added)).get());
+            Assertions.assertNull(writer.submit(() -> store.labelForQuad(removed)).get());
+
+            // When
+            Txn.executeWrite(store.getTransactional(), () -> store.add(other, LABEL));
+
+            // Then
+            Txn.executeRead(store.getTransactional(), () -> {
+                Assertions.assertNull(store.labelForQuad(added));
+                Assertions.assertEquals(LABEL, store.labelForQuad(removed));
+                Assertions.assertEquals(LABEL, store.labelForQuad(other));
+            });
+
+            // And When
+            writer.submit(() -> {
+                store.getTransactional().abort();
+                store.getTransactional().end();
+            }).get();
+
+            // Then
+            Txn.executeRead(store.getTransactional(), () -> {
+                Assertions.assertNull(store.labelForQuad(added));
+                Assertions.assertEquals(LABEL, store.labelForQuad(removed));
+            });
+        } finally {
+            writer.shutdownNow();
+        }
+    }
+
+    @Test
+    public void givenOverlappingWriters_whenBothCommit_thenLaterCommitIsCached() throws Exception {
+        Quad quad = SSE.parseQuad("(:g :s :p :o)");
+        Quad other = SSE.parseQuad("(:g :s :p :o2)");
+        Label updated = Label.fromText("admin");
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        try (LabelsStore store = create()) {
+            // Given
+            writer.submit(() -> {
+                store.getTransactional().begin(TxnType.WRITE);
+                store.add(other, LABEL);
+            }).get();
+            Txn.executeWrite(store.getTransactional(), () -> store.add(quad, LABEL));
+
+            // When
+            writer.submit(() -> {
+                store.add(quad, updated);
+                store.getTransactional().commit();
+                store.getTransactional().end();
+            }).get();
+
+            // Then
+            Txn.executeRead(store.getTransactional(), () -> {
+                Assertions.assertEquals(updated, store.labelForQuad(quad));
+                Assertions.assertEquals(LABEL, store.labelForQuad(other));
+            });
+        } finally {
+            writer.shutdownNow();
+        }
+    }
 }
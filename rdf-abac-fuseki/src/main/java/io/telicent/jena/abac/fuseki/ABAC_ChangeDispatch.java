@@ -18,6 +18,7 @@ package io.telicent.jena.abac.fuseki;
 
 import java.util.function.Consumer;
 
+import io.telicent.jena.abac.core.DatasetGraphABAC;
 import org.apache.jena.fuseki.servlets.PatchApply;
 import org.apache.jena.fuseki.server.Operation;
 import org.apache.jena.fuseki.servlets.ActionService;
@@ -29,6 +30,8 @@ import org.apache.jena.riot.WebContent;
  * Ingest point for ABAC changes (data loading, RDF Patch and SPARQL Update).
  * <p>
  * This replaces the processor for {@link Operation#Upload}) which is RDF data only.
+ * <p>
+ * RDF Patches to an ABAC dataset label the data they add, see {@link LabelledPatchApply}.
  */
 public class ABAC_ChangeDispatch extends ActionService implements ABAC_Processor {
 
@@ -59,7 +62,15 @@ public class ABAC_ChangeDispatch extends ActionService implements ABAC_Processor
 
     @Override
     public void execute(HttpAction action) {
-        redirectByContentType(action, updateHandler::execute, patchHandler::execute, dataLoader::execute);
+        redirectByContentType(action, updateHandler::execute, this::executePatch, dataLoader::execute);
+    }
+
+    private void executePatch(HttpAction action) {
+        if ( action.getDataset() instanceof DatasetGraphABAC ) {
+            LabelledPatchApply.execute(action);
+            return;
+        }
+        patchHandler.execute(action);
     }
 
     private void redirectByContentType(HttpAction httpAction,
@@ -34,6 +34,9 @@ import org.apache.jena.web.HttpSC;
  *  or as a TriG with graph {@code authz:labels}
  * which is {@code http://telicent.io/security#labels}
  * and constant {@link VocabAuthz#graphForLabels}).
+ * <p>
+ * RDF Thrift and RDF Protobuf uploads carry labels in the same way,
+ * as quads in the {@code authz:labels} graph.
  */
 public class ABAC_DataLoader extends ActionService implements ABAC_Processor {
 
@@ -57,7 +60,7 @@ public class ABAC_DataLoader extends ActionService implements ABAC_Processor {
             ServletOps.error(HttpSC.UNSUPPORTED_MEDIA_TYPE_415, "Bad Content-Type: "+ct);
         }
 
-        if ( Lang.TRIG.equals(lang) || Lang.NQUADS.equals(lang) ) {
+        if ( Lang.TRIG.equals(lang) || Lang.NQUADS.equals(lang) || LabelledDataLoader.isBinaryRDF(lang) ) {
             // OK
         } else if ( RDFLanguages.isTriples(lang) ) {
             // Must have security label.
@@ -18,23 +18,70 @@ package io.telicent.jena.abac.fuseki;
 
 import static java.lang.String.format;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import io.telicent.jena.abac.SysABAC;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.VocabAuthz;
+import io.telicent.jena.abac.labels.L;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.lib.NotImplemented;
+import org.apache.jena.atlas.web.AcceptList;
 import org.apache.jena.atlas.web.MediaType;
 import org.apache.jena.fuseki.servlets.ActionLib;
 import org.apache.jena.fuseki.servlets.ActionService;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.fuseki.servlets.ServletOps;
-import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFFormat;
 import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.riot.system.StreamRDFWriter;
 import org.apache.jena.shared.JenaException;
 import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.web.HttpSC;
 
 /**
- * A Fuseki action to get the labels graph for a {@link DatasetGraphABAC}.
+ * A Fuseki action to get the labels of a {@link DatasetGraphABAC}.
+ * <p>
+ * The labels are streamed from the labels store, as label descriptions, in N-Triples, or in N-Quads in the
+ * {@code authz:labels} graph so that they can be uploaded again.  Requests for Turtle or TriG are given the same.
+ * They may be restricted to the quads of a graph, with the {@code graph} parameter ({@code default} for the default
+ * graph), and of a subject, with the {@code subject} parameter.  With the {@code limit} parameter they are returned a
+ * page at a time, the {@code Labels-Continuation} response header giving the value of the {@code after} parameter for
+ * the next page, if there is one.
+ * </p>
  */
 public class ABAC_Labels extends ActionService implements ABAC_Processor {
 
+    /** Parameter restricting the labels to those of the quads in a graph */
+    public static final String paramGraph = "graph";
+    /** Parameter restricting the labels to those of the quads with a subject */
+    public static final String paramSubject = "subject";
+    /** Parameter giving the maximum number of labels in a page */
+    public static final String paramLimit = "limit";
+    /** Parameter giving the continuation token of the previous page */
+    public static final String paramAfter = "after";
+    /** Maximum number of labels in a page */
+    public static final int MAX_LIMIT = 100_000;
+
+    private static final AcceptList labelsOffer = AcceptList.create(WebContent.contentTypeNTriples,
+                                                                    WebContent.contentTypeNQuads,
+                                                                    WebContent.contentTypeTurtle,
+                                                                    WebContent.contentTypeTriG);
+    private static final MediaType acceptNTriples = MediaType.create(WebContent.contentTypeNTriples);
+
     public ABAC_Labels() {}
 
     @Override
@@ -69,28 +116,130 @@ public class ABAC_Labels extends ActionService implements ABAC_Processor {
         DatasetGraph dsg = action.getDataset();
         DatasetGraphABAC dsgz = (DatasetGraphABAC)dsg;
 
+        Node graph = graphParam(action.getRequestParameter(paramGraph));
+        Node subject = nodeParam(action.getRequestParameter(paramSubject));
+        Integer limit = limitParam(action.getRequestParameter(paramLimit));
+        String after = action.getRequestParameter(paramAfter);
+
+        // Labels are streamed as N-Triples or N-Quads, which are also Turtle and TriG
+        MediaType mediaType = ActionLib.contentNegotation(action, labelsOffer, acceptNTriples);
+        Lang lang = RDFLanguages.contentTypeToLang(mediaType.getContentTypeStr());
+        boolean quads = RDFLanguages.isQuads(lang);
+        if ( action.verbose )
+            action.log.info(format("[%d]   Labels: Content-Type=%s, Charset=%s => %s",
+                                   action.id, mediaType.getContentTypeStr(), mediaType.getCharset(), lang.getName()));
+
         action.beginRead();
         try {
             // Inside a read transaction on the dataset to protect reading the labels store.
-            Graph graph = dsgz.labelsStore().asGraph();
-
-            MediaType mediaType = ActionLib.contentNegotationRDF(action);
-            Lang lang = RDFLanguages.contentTypeToLang(mediaType.getContentTypeStr());
-            if ( lang == null )
-                lang = RDFLanguages.TURTLE;
-            if ( action.verbose )
-                action.log.info(format("[%d]   Labels: Content-Type=%s, Charset=%s => %s",
-                                       action.id, mediaType.getContentTypeStr(), mediaType.getCharset(), lang.getName()));
+            LabelsStore labelsStore = dsgz.labelsStore();
+            List<Map.Entry<Quad, Label>> page = null;
+            String next = null;
+            if ( limit != null ) {
+                // The continuation token is only known once the page has been read, so a page, unlike all the labels,
+                // is read before the response is written.
+                List<Map.Entry<Quad, Label>> entries = new ArrayList<>();
+                next = labelsStore.forEachPage(graph, subject, after, limit, (q, l) -> entries.add(Map.entry(q, l)));
+                page = entries;
+            }
             ActionLib.setCommonHeaders(action);
-            ActionLib.graphResponse(action, graph, lang);
-
-            // Use the preferred MIME type.
-            ActionLib.graphResponse(action, graph, lang);
+            action.setResponseStatus(HttpSC.OK_200);
+            action.setResponseContentType(mediaType.getContentTypeStr());
+            action.setResponseCharacterEncoding(WebContent.charsetUTF8);
+            if ( next != null )
+                action.setResponseHeader(SysABAC.hLabelsContinuation, next);
+            OutputStream out = action.getResponseOutputStream();
+            if ( page != null )
+                writeLabels(page, quads, out);
+            else
+                writeLabels(labelsStore, graph, subject, quads, out);
+            out.flush();
             ServletOps.success(action);
-        } catch (JenaException ex) {
+        } catch (IllegalArgumentException ex) {
+            ServletOps.errorBadRequest("Bad labels request: " + ex.getMessage());
+        } catch (UnsupportedOperationException | NotImplemented ex) {
+            ServletOps.error(HttpSC.NOT_IMPLEMENTED_501, "The labels store of this dataset can't list its labels");
+        } catch (JenaException | IOException ex) {
             ServletOps.errorOccurred(ex);
         } finally {
             action.endRead();
         }
     }
+
+    /**
+     * Writes the labels in a labels store, as label descriptions, as they are read
+     *
+     * @param labelsStore Labels store, within a read transaction
+     * @param graph       Graph of the quads whose labels are written, {@code null} for any graph
+     * @param subject     Subject of the quads whose labels are written, {@code null} for any subject
+     * @param quads       Whether to write N-Quads, in the {@code authz:labels} graph, rather than N-Triples
+     * @param out         Output stream
+     */
+    /*package*/ static void writeLabels(LabelsStore labelsStore, Node graph, Node subject, boolean quads,
+                                        OutputStream out) {
+        StreamRDF output = labelsStream(out, quads);
+        output.start();
+        try {
+            labelsStore.forEach(graph, subject, (quad, label) -> L.asRDF(quad, label, output));
+        } finally {
+            output.finish();
+        }
+    }
+
+    /**
+     * Writes a page of labels as label descriptions
+     *
+     * @param page  Labels
+     * @param quads Whether to write N-Quads, in the {@code authz:labels} graph, rather than N-Triples
+     * @param out   Output stream
+     */
+    /*package*/ static void writeLabels(List<Map.Entry<Quad, Label>> page, boolean quads, OutputStream out) {
+        StreamRDF output = labelsStream(out, quads);
+        output.start();
+        page.forEach(entry -> L.asRDF(entry.getKey(), entry.getValue(), output));
+        output.finish();
+    }
+
+    private static StreamRDF labelsStream(OutputStream out, boolean quads) {
+        StreamRDF stream = StreamRDFWriter.getWriterStream(out, quads ? RDFFormat.NQUADS : RDFFormat.NTRIPLES);
+        if ( ! quads )
+            return stream;
+        return new StreamRDFWrapper(stream) {
+            @Override
+            public void triple(Triple triple) {
+                other.quad(Quad.create(VocabAuthz.graphForLabels, triple));
+            }
+        };
+    }
+
+    private static Node graphParam(String value) {
+        if ( "default".equals(value) )
+            return Quad.defaultGraphIRI;
+        return nodeParam(value);
+    }
+
+    private static Node nodeParam(String value) {
+        if ( value == null || value.isEmpty() )
+            return null;
+        if ( value.startsWith("_:") )
+            return NodeFactory.createBlankNode(value.substring(2));
+        if ( value.startsWith("<") && value.endsWith(">") )
+            value = value.substring(1, value.length() - 1);
+        return NodeFactory.createURI(value);
+    }
+
+    private static Integer limitParam(String value) {
+        if ( value == null || value.isEmpty() )
+            return null;
+        try {
+            int limit = Integer.parseInt(value);
+            if ( limit < 1 )
+                ServletOps.errorBadRequest("Bad " + paramLimit + " parameter, must be at least 1: " + value);
+            // A page is held in memory, larger pages are cut short and continue on the next page
+            return Math.min(limit, MAX_LIMIT);
+        } catch (NumberFormatException ex) {
+            ServletOps.errorBadRequest("Bad " + paramLimit + " parameter: " + value);
+            return null;
+        }
+    }
 }
@@ -45,6 +45,19 @@ public class ABAC_Request {
      * </p>
      */
     public static DatasetGraph decideDataset(HttpAction action, DatasetGraph requestDSG, Function<HttpAction, String> getUser) {
+        CxtABAC cxt = requestContext(action, requestDSG, getUser);
+        DatasetGraph dsg = ABAC.filterDataset((DatasetGraphABAC)requestDSG, cxt);
+        return dsg;
+    }
+
+    /**
+     * Provide the ABAC context for this operation, see {@link #decideDataset}.
+     * <p>
+     * If this operation is not against an ABAC dataset, there is no user available, or the user is forbidden to access
+     * this dataset then a suitable error is thrown which should abort further processing of the request.
+     * </p>
+     */
+    public static CxtABAC requestContext(HttpAction action, DatasetGraph requestDSG, Function<HttpAction, String> getUser) {
         if ( ! ( requestDSG instanceof DatasetGraphABAC ) ) {
             String msg = String.format("%s : Wrong type of dataset for ABAC query: %s", action.getDatasetName(), requestDSG.getClass().getSimpleName());
             reject(action, HttpSC.BAD_REQUEST_400, msg);
@@ -72,9 +85,7 @@ public class ABAC_Request {
         AttributeExpr accessAttributes = dsgz.getAccessAttributes();
         if ( accessAttributes != null && ! accessAttributes.eval(cxt).getBoolean() )
             reject(action, HttpSC.FORBIDDEN_403, "Access for user = "+requestUser);
-
-        DatasetGraph dsg = ABAC.filterDataset(dsgz, cxt);
-        return dsg;
+        return cxt;
     }
 
     /**
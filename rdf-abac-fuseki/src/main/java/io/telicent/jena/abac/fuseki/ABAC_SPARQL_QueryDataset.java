@@ -19,13 +19,20 @@ package io.telicent.jena.abac.fuseki;
 import java.util.Objects;
 import java.util.function.Function;
 
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.VocabAuthz;
 import org.apache.jena.atlas.lib.Pair;
+import org.apache.jena.atlas.logging.FmtLog;
 import org.apache.jena.fuseki.servlets.ActionService;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.fuseki.servlets.SPARQL_QueryDataset;
 import org.apache.jena.query.Query;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.QueryExecResult;
+import org.apache.jena.sparql.util.Symbol;
 import org.apache.jena.web.HttpSC;
 
 /**
@@ -33,10 +40,31 @@ import org.apache.jena.web.HttpSC;
  */
 public class ABAC_SPARQL_QueryDataset extends SPARQL_QueryDataset implements ABAC_Processor {
 
+    // Shared by all query operations, the cache keys include the dataset
+    private static final QueryResultCache environmentCache = QueryResultCache.fromEnvironment();
+
+    private static final Symbol symResultKey = Symbol.create(VocabAuthz.getURI() + "queryResultKey");
+
     private final Function<HttpAction, String> getUser;
+    private final QueryResultCache resultCache;
 
+    /**
+     * Query operation, caching results if enabled by the {@value QueryResultCache#ENV_QUERY_RESULT_CACHE_SIZE}
+     * environment variable.
+     */
     public ABAC_SPARQL_QueryDataset(Function<HttpAction, String> getUser) {
+        this(getUser, environmentCache);
+    }
+
+    /**
+     * Query operation with a given results cache.
+     *
+     * @param getUser     Function to get the user for a request
+     * @param resultCache Results cache, {@code null} for no caching
+     */
+    public ABAC_SPARQL_QueryDataset(Function<HttpAction, String> getUser, QueryResultCache resultCache) {
         this.getUser = Objects.requireNonNull(getUser, "getUser is null");
+        this.resultCache = resultCache;
     }
 
     /**
@@ -49,7 +77,14 @@ public class ABAC_SPARQL_QueryDataset extends SPARQL_QueryDataset implements ABA
 
         // Provide the dataset suitable for this operation.
         DatasetGraph dsg0 = getDataset(action);
-        DatasetGraph dsg = ABAC_Request.decideDataset(action, dsg0, getUser);
+        CxtABAC cxt = ABAC_Request.requestContext(action, dsg0, getUser);
+        DatasetGraphABAC dsgz = (DatasetGraphABAC)dsg0;
+        if ( resultCache != null && action.getContext() != null ) {
+            QueryResultCache.Key key = resultCache.key(dsgz, query, cxt);
+            if ( key != null )
+                action.getContext().set(symResultKey, key);
+        }
+        DatasetGraph dsg = ABAC.filterDataset(dsgz, cxt);
         return Pair.create(dsg, query);
     }
 
@@ -57,4 +92,22 @@ public class ABAC_SPARQL_QueryDataset extends SPARQL_QueryDataset implements ABA
     protected QueryExec createQueryExec(HttpAction action, Query query, DatasetGraph dataset) {
         return super.createQueryExec(action, query, dataset);
     }
+
+    /**
+     * Execute the query, or reuse the cached results of an earlier execution for a request with the same attributes,
+     * data version and labels version.
+     */
+    @Override
+    protected QueryExecResult executeQuery(HttpAction action, QueryExec queryExec, Query query, String queryStringLog) {
+        QueryResultCache.Key key = action.getContext() == null ? null : action.getContext().get(symResultKey);
+        if ( key == null )
+            return super.executeQuery(action, queryExec, query, queryStringLog);
+        QueryExecResult cached = resultCache.get(key);
+        if ( cached != null ) {
+            FmtLog.debug(action.log, "[%d] Cached results", action.id);
+            return cached;
+        }
+        DatasetGraphABAC dsgz = (DatasetGraphABAC)getDataset(action);
+        return resultCache.put(dsgz, key, super.executeQuery(action, queryExec, query, queryStringLog));
+    }
 }
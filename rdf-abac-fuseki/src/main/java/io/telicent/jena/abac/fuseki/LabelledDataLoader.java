@@ -21,9 +21,15 @@ import io.telicent.jena.abac.SysABAC;
 import io.telicent.jena.abac.attributes.AttributeExpr;
 import io.telicent.jena.abac.core.DatasetGraphABAC;
 import io.telicent.jena.abac.core.StreamSplitter;
+import io.telicent.jena.abac.core.VocabAuthzLabels;
+import io.telicent.jena.abac.labels.L;
 import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsSpillBuffer;
 import io.telicent.jena.abac.labels.LabelsStore;
+import io.telicent.jena.abac.labels.LinesSpillBuffer;
 import io.telicent.jena.abac.labels.node.LabelToNodeGenerator;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorInputStream;
 import org.apache.jena.atlas.RuntimeIOException;
 import org.apache.jena.atlas.io.IO;
 import org.apache.jena.atlas.logging.FmtLog;
@@ -32,23 +38,36 @@ import org.apache.jena.fuseki.servlets.ActionLib;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.fuseki.servlets.ServletOps;
 import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.query.TxnType;
 import org.apache.jena.riot.*;
 import org.apache.jena.riot.lang.StreamRDFCounting;
 import org.apache.jena.riot.system.*;
+import org.apache.jena.riot.web.HttpNames;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.system.G;
+import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.web.HttpSC;
 import org.slf4j.Logger;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.CharacterCodingException;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 /**
  * The process of loading data with labels.
@@ -58,6 +77,38 @@ class LabelledDataLoader {
     // Restructure by splitting up the code
     //   Use with FKProcessorSCG
 
+    /**
+     * Environment variable that, when {@code true}, parses uploads on a separate thread from the one writing the data
+     * and labels, see {@link #parse(HttpAction, StreamRDF, Lang, String)}.
+     */
+    static final String ENV_INGEST_PIPELINE = "ABAC_INGEST_PIPELINE";
+
+    /**
+     * Reads {@value #ENV_INGEST_PIPELINE} from the environment. Can be overridden in tests.
+     */
+    static BooleanSupplier pipelineCheck = () -> Boolean.parseBoolean(System.getenv(ENV_INGEST_PIPELINE));
+
+    /**
+     * Environment variable giving the maximum number of triples of the labels graph of an upload held in memory, beyond
+     * which they are spilled to temporary files, see {@link LabelsSpillBuffer}.  Unset, or {@code 0}, holds them all in
+     * memory.  It also limits the records of quads already in the dataset held in memory when skipping unchanged quads,
+     * though those are always spilled beyond {@link LinesSpillBuffer#DEFAULT_MAX_IN_MEMORY}.
+     */
+    static final String ENV_INGEST_LABELS_MEMORY = "ABAC_INGEST_LABELS_MEMORY";
+
+    /**
+     * Reads {@value #ENV_INGEST_LABELS_MEMORY} from the environment. Can be overridden in tests.
+     */
+    static IntSupplier labelsMemoryLimit =
+            () -> Integer.parseInt(Optional.ofNullable(System.getenv(ENV_INGEST_LABELS_MEMORY)).orElse("0"));
+
+    // Parsed triples and quads are handed to the writing thread in chunks, with a bounded number of chunks pending
+    private static final int PIPELINE_CHUNK_SIZE = 10_000;
+    private static final int PIPELINE_QUEUE_SIZE = 10;
+
+    // Size of the buffer for reading compressed request bodies
+    private static final int DECOMPRESS_BUFFER_SIZE = 64 * 1024;
+
     private record LoaderRequest(String id, Logger log, DatasetGraphABAC dsgz, InputStream data, String contentTypeStr,
                                  String headerLabels) {
     }
@@ -97,6 +148,8 @@ class LabelledDataLoader {
             ServletOps.error(HttpSC.BAD_REQUEST_400, "This dataset does not support ABAC security labelling.");
             return;
         }
+        UploadCheckpoints checkpoints = UploadCheckpoints.fromRequest(action);
+        boolean skipUnchanged = UploadChanges.isRequested(action);
         action.begin(TxnType.WRITE);
         try {
             // long len = action.getRequestContentLengthLong();
@@ -110,20 +163,41 @@ class LabelledDataLoader {
                 // Dataset default will apply at use time.
                 FmtLog.info(action.log, "[%d] Dataset default label: %s", action.id, dsgDftLabel);
             }
-            UploadInfo x = ingestData(action, dsgz, hSecurityLabel);
+            UploadInfo x = ingestData(action, dsgz, hSecurityLabel, checkpoints, skipUnchanged);
             action.log.info("[{}] Body: {}", action.id, x.str());
             action.commit();
+            if (checkpoints != null) {
+                checkpoints.committed();
+                FmtLog.info(action.log, "[%d] Upload committed up to %,d after %,d intermediate commits", action.id,
+                            checkpoints.checkpoint(), checkpoints.commits());
+            }
+            setCheckpointHeader(action, checkpoints);
+            if (x.changes() != null) {
+                x.changes().setResponseHeaders(action);
+            }
             ServletOps.success(action);
             // ServletOps.uploadResponse(action, details);
         } catch (ActionErrorException ex) {
             action.abortSilent();
+            setCheckpointHeader(action, checkpoints);
             throw ex;
         } catch (Throwable ex) {
             action.abortSilent();
+            setCheckpointHeader(action, checkpoints);
             ServletOps.errorOccurred(ex);
         }
     }
 
+    /**
+     * Tells the client how much of a checkpointed upload has been committed, and so where to resume it from should it
+     * have failed.
+     */
+    private static void setCheckpointHeader(HttpAction action, UploadCheckpoints checkpoints) {
+        if (checkpoints != null) {
+            action.setResponseHeader(SysABAC.hUploadCheckpoint, Long.toString(checkpoints.checkpoint()));
+        }
+    }
+
     private static List<String> parseAttributeList(String securityLabelsList) {
         if (securityLabelsList == null) {
             return null;
@@ -139,12 +213,21 @@ class LabelledDataLoader {
         }
     }
 
+    /**
+     * Details of an upload. The counts are of the triples and quads written, and {@code changes}, if unchanged quads were
+     * skipped, counts those added, unchanged and relabelled.
+     */
     record UploadInfo(long tripleCount, long quadCount, long count, String contentType, long contentLength, Lang lang,
-                      String base) {
+                      String base, UploadChanges changes) {
         public String str() {
-            return String.format("Content-Length=%d, Content-Type=%s => %s : Count=%d Triples=%d Quads=%d",
-                                 contentLength, contentType, lang,
-                                 count, tripleCount, quadCount);
+            String str = String.format("Content-Length=%d, Content-Type=%s => %s : Count=%d Triples=%d Quads=%d",
+                                       contentLength, contentType, lang,
+                                       count, tripleCount, quadCount);
+            if (changes != null) {
+                str += String.format(" Added=%d Unchanged=%d Relabelled=%d",
+                                     changes.added(), changes.unchanged(), changes.relabelled());
+            }
+            return str;
         }
     }
 
@@ -161,26 +244,39 @@ class LabelledDataLoader {
      * {@code <http://telicent.io/security#labels>} graph.
      */
     /*package*/
-    static UploadInfo ingestData(HttpAction action, DatasetGraphABAC dsgz, String headerLabel) {
+    static UploadInfo ingestData(HttpAction action, DatasetGraphABAC dsgz, String headerLabel,
+                                 UploadCheckpoints checkpoints, boolean skipUnchanged) {
         String base = ActionLib.wholeRequestURL(action.getRequest());
-        return ingestData(action, base, dsgz, headerLabel);
+        return ingestData(action, base, dsgz, headerLabel, checkpoints, skipUnchanged);
     }
 
     /*package*/
     static UploadInfo ingestData(HttpAction action, String base, DatasetGraphABAC dsgz, String headerLabel) {
+        return ingestData(action, base, dsgz, headerLabel, null, false);
+    }
+
+    /**
+     * Ingest labelled data, committing at the given checkpoints, if any, and skipping the quads already in the dataset
+     * with the same label if {@code skipUnchanged} is true.
+     */
+    /*package*/
+    static UploadInfo ingestData(HttpAction action, String base, DatasetGraphABAC dsgz, String headerLabel,
+                                 UploadCheckpoints checkpoints, boolean skipUnchanged) {
         try {
             Label labelsToApply = determineLabelsToApply(dsgz.getDefaultLabel(), headerLabel);
             // Decide the label to apply when the data does not explicitly set the
             // labels on a triple.
             Lang lang = RDFLanguages.contentTypeToLang(action.getRequestContentType());
-            if (RDFLanguages.isTriples(lang)) {
+            if (RDFLanguages.isTriples(lang) && !isBinaryRDF(lang)) {
                 // Triples. We can stream process the data because we know the label
                 // to apply ahead of parsing.
-                return ingestTriples(action, lang, base, dsgz, labelsToApply);
+                return ingestTriples(action, lang, base, dsgz, labelsToApply, checkpoints, skipUnchanged);
             } else if (RDFLanguages.isQuads(lang)) {
                 // Quads. (Currently assumed to be the labels graph). This has to be
                 // buffered.
-                return ingestQuads(action, lang, base, dsgz, labelsToApply);
+                // The binary formats may carry triples or quads, so are handled as quads,
+                // with labels as quads in the labels graph as for TriG.
+                return ingestQuads(action, lang, base, dsgz, labelsToApply, checkpoints, skipUnchanged);
             } else {
                 ServletOps.errorOccurred("Lang not recognised for processing: " + lang);
             }
@@ -190,8 +286,17 @@ class LabelledDataLoader {
         return null;
     }
 
+    /**
+     * Whether the language is one of the binary RDF formats, RDF Thrift or RDF Protobuf.
+     */
+    /*package*/
+    static boolean isBinaryRDF(Lang lang) {
+        return Lang.RDFTHRIFT.equals(lang) || Lang.RDFPROTO.equals(lang);
+    }
+
     private static UploadInfo ingestTriples(HttpAction action, Lang lang, String base, DatasetGraphABAC dsgz,
-                                            Label headerLabel) {
+                                            Label headerLabel, UploadCheckpoints checkpoints,
+                                            boolean skipUnchanged) {
         StreamRDF baseDest = StreamRDFLib.dataset(dsgz.getData());
         LabelsStore labelsStore = dsgz.labelsStore();
         BiConsumer<Quad, Label> labelledTriplesCollector = labelsStore::add;
@@ -202,10 +307,18 @@ class LabelledDataLoader {
         }
 
         StreamRDFCounting countingDest = StreamRDFLib.count(dest);
-        parse(action, countingDest, lang, base);
+        StreamRDF stream = countingDest;
+        UploadChanges changes = null;
+        if (skipUnchanged) {
+            changes = new UploadChanges(dsgz.getData(), labelsStore, false, checkpoints != null,
+                                        LinesSpillBuffer.DEFAULT_MAX_IN_MEMORY);
+            stream = changes.wrap(stream, headerLabel);
+        }
+        parse(action, checkpoints != null ? checkpoints.wrap(stream) : stream, lang, base);
 
         return new UploadInfo(countingDest.countTriples(), countingDest.countQuads(), countingDest.count(),
-                              action.getRequestContentType(), action.getRequestContentLengthLong(), lang, base);
+                              action.getRequestContentType(), action.getRequestContentLengthLong(), lang, base,
+                              changes);
     }
 
     private static class StreamLabeler extends StreamRDFWrapper {
@@ -233,42 +346,137 @@ class LabelledDataLoader {
     }
 
     private static UploadInfo ingestQuads(HttpAction action, Lang lang, String base, DatasetGraphABAC dsgz,
-                                          Label labelsForData) {
+                                          Label labelsForData, UploadCheckpoints checkpoints,
+                                          boolean skipUnchanged) {
         // We could split the bulk data from the modifications using the fact we are
         // inside a transaction on the dataset. The transaction means we are
         // proceeding optimistically adding to the dataset by streaming to data
         // store, then add labels to the labels store, then commit, making the new
         // triples available in the dataset.
         StreamRDF rdfData = StreamRDFLib.dataset(dsgz.getData());
-        // Get all the labels - as they may come before or after the data,
+        // Get all the explicit labels - as they may come before or after the data,
         // we need to collect them together, then process them before the txn commit.
+        // Default labels for the data are added to the labels store as the data is parsed,
+        // and are overridden by any explicit labels when these are applied.
         Graph labelsGraph = GraphFactory.createDefaultGraph();
         StreamRDFCounting countingDest = StreamRDFLib.count(rdfData);
-        StreamRDF stream = new StreamSplitter(countingDest, labelsGraph, labelsForData);
-        // Contains: String base = ActionLib.wholeRequestURL(action.getRequest());
-        parse(action, stream, lang, base);
-        applyLabels(dsgz, labelsGraph);
+        LabelsStore labelsStore = dsgz.labelsStore();
+        BiConsumer<Quad, Label> dftLabelsHandler = labelsStore::add;
+        int labelsMemory = labelsMemoryLimit.getAsInt();
+        // Explicit labels of quads already in the dataset with that label are skipped along with the quads
+        UploadChanges changes = skipUnchanged
+                                ? new UploadChanges(dsgz.getData(), labelsStore, true, checkpoints != null,
+                                                    labelsMemory > 0 ? labelsMemory
+                                                                     : LinesSpillBuffer.DEFAULT_MAX_IN_MEMORY)
+                                : null;
+        BiConsumer<Quad, Label> explicitLabelsHandler = changes != null ? changes::explicitLabel : labelsStore::add;
+        if (checkpoints != null) {
+            // Explicit labels are applied at each intermediate commit, or were committed before the point a resumed
+            // upload starts from, so may already be stored for data later in the upload.  They can't be told apart
+            // from labels stored before the upload, so the default label only applies to quads without a label.
+            dftLabelsHandler = (quad, label) -> {
+                if (labelsStore.labelForQuad(quad) == null) {
+                    labelsStore.add(quad, label);
+                }
+            };
+            checkpoints.beforeCommit(() -> labelsComplete(labelsGraph), () -> {
+                L.graphToLabels(labelsGraph, explicitLabelsHandler);
+                labelsGraph.clear();
+                if (changes != null) {
+                    changes.flush();
+                }
+            });
+        }
+        // Beyond a limit, explicit labels are spilled to disk, unless they are applied at intermediate commits, which
+        // bounds the labels graph anyway.
+        LabelsSpillBuffer labelsBuffer = checkpoints == null && labelsMemory > 0
+                                         ? new LabelsSpillBuffer(labelsMemory)
+                                         : null;
+        StreamRDF stream = labelsBuffer != null
+                           ? new StreamSplitter(countingDest, labelsBuffer, labelsForData, dftLabelsHandler)
+                           : new StreamSplitter(countingDest, labelsGraph, labelsForData, dftLabelsHandler);
+        if (changes != null) {
+            stream = changes.wrap(stream, labelsForData);
+        }
+        try {
+            // Contains: String base = ActionLib.wholeRequestURL(action.getRequest());
+            parse(action, checkpoints != null ? checkpoints.wrap(stream) : stream, lang, base);
+            if (labelsBuffer != null) {
+                if (labelsBuffer.spills() > 0) {
+                    FmtLog.info(action.log, "[%d] Labels spilled to %d temporary files", action.id,
+                                labelsBuffer.spills());
+                }
+                labelsBuffer.forEachLabel(explicitLabelsHandler);
+            } else if (changes != null) {
+                L.graphToLabels(labelsGraph, changes::explicitLabel);
+            } else {
+                applyLabels(dsgz, labelsGraph);
+            }
+            if (changes != null) {
+                changes.flush();
+            }
+        } finally {
+            if (labelsBuffer != null) {
+                labelsBuffer.close();
+            }
+            if (changes != null) {
+                changes.close();
+            }
+        }
         // UploadDetails is a Fuseki class and has limited accessibility. Convert.
         return new UploadInfo(countingDest.countTriples(), countingDest.countQuads(), countingDest.count(),
-                              action.getRequestContentType(), action.getRequestContentLengthLong(), lang, base);
+                              action.getRequestContentType(), action.getRequestContentLengthLong(), lang, base,
+                              changes);
+    }
+
+    /**
+     * Whether every label description in the labels graph parsed so far has both its pattern and its label, so the
+     * labels can be applied at an intermediate commit.
+     */
+    private static boolean labelsComplete(Graph labelsGraph) {
+        return allHave(labelsGraph, VocabAuthzLabels.pPattern, VocabAuthzLabels.pLabel)
+               && allHave(labelsGraph, VocabAuthzLabels.pLabel, VocabAuthzLabels.pPattern);
+    }
+
+    private static boolean allHave(Graph graph, Node property, Node otherProperty) {
+        ExtendedIterator<Triple> iter = G.find(graph, null, property, null);
+        try {
+            while (iter.hasNext()) {
+                if (!graph.contains(iter.next().getSubject(), otherProperty, Node.ANY)) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            iter.close();
+        }
     }
 
     /**
      * Parse RDF content from given input stream. (replicates Jena's ActionLib.parse() method)
+     * <p>
+     * If {@value #ENV_INGEST_PIPELINE} is {@code true} the content is parsed on a separate thread, and the parsed
+     * triples and quads are passed to {@code dest} on the calling thread.  Writes to the dataset and labels store, made
+     * by {@code dest}, therefore stay within the calling thread's write transaction while parsing proceeds in parallel.
+     * </p>
      *
      * @throws RiotParseException
      */
     public static void parse(HttpAction action, StreamRDF dest, Lang lang, String base) {
         try {
-            InputStream input = action.getRequestInputStream();
+            InputStream input = requestInputStream(action);
             ErrorHandler errorHandler = ErrorHandlerFactory.errorHandlerStd(action.log);
-            RDFParser.create()
-                     .errorHandler(errorHandler)
-                     .labelToNode(LabelToNodeGenerator.generate())
-                     .source(input)
-                     .lang(lang)
-                     .base(base)
-                     .parse(dest);
+            RDFParserBuilder parser = RDFParser.create()
+                                               .errorHandler(errorHandler)
+                                               .labelToNode(LabelToNodeGenerator.generate())
+                                               .source(input)
+                                               .lang(lang)
+                                               .base(base);
+            if (pipelineCheck.getAsBoolean()) {
+                parsePipelined(parser, dest);
+            } else {
+                parser.parse(dest);
+            }
         } catch (RuntimeIOException ex) {
             if (ex.getCause() instanceof CharacterCodingException) {
                 throw new RiotException("Character Coding Error: " + ex.getMessage());
@@ -279,6 +487,62 @@ class LabelledDataLoader {
         }
     }
 
+    /**
+     * The request body, decompressed as it is read according to its {@code Content-Encoding} header.
+     * <p>
+     * Supports {@code gzip}, {@code deflate}, {@code zstd} and {@code lz4} (the LZ4 frame format), rather than just the
+     * {@code gzip} and {@code deflate} supported by Fuseki, so that large uploads can be compressed with the faster
+     * codecs.
+     * </p>
+     */
+    /*package*/
+    static InputStream requestInputStream(HttpAction action) throws IOException {
+        InputStream input = action.getRequest().getInputStream();
+        String encoding = action.getRequestHeader(HttpNames.hContentEncoding);
+        if (encoding == null || input == null) {
+            return input;
+        }
+        return switch (encoding.trim().toLowerCase(Locale.ROOT)) {
+            case "", "identity" -> input;
+            case "gzip", "x-gzip" -> new GZIPInputStream(input, DECOMPRESS_BUFFER_SIZE);
+            case "deflate" -> new InflaterInputStream(input, new Inflater(), DECOMPRESS_BUFFER_SIZE);
+            case "zstd" -> new ZstdCompressorInputStream(new BufferedInputStream(input, DECOMPRESS_BUFFER_SIZE));
+            case "lz4" -> new FramedLZ4CompressorInputStream(new BufferedInputStream(input, DECOMPRESS_BUFFER_SIZE),
+                                                             true);
+            default -> {
+                ServletOps.error(HttpSC.UNSUPPORTED_MEDIA_TYPE_415, "Unsupported Content-Encoding: " + encoding);
+                yield null;
+            }
+        };
+    }
+
+    /**
+     * Parse on a separate thread, sending the results to the destination on this thread.
+     */
+    private static void parsePipelined(RDFParserBuilder parser, StreamRDF dest) {
+        try (Stream<EltStreamRDF> elements = AsyncParser.of(parser)
+                                                        .setChunkSize(PIPELINE_CHUNK_SIZE)
+                                                        .setQueueSize(PIPELINE_QUEUE_SIZE)
+                                                        .streamElements()) {
+            dest.start();
+            elements.forEach(elt -> {
+                switch (elt.getType()) {
+                    case TRIPLE -> dest.triple(elt.triple());
+                    case QUAD -> dest.quad(elt.quad());
+                    case PREFIX -> dest.prefix(elt.prefix(), elt.iri());
+                    case BASE -> dest.base(elt.iri());
+                    case EXCEPTION -> {
+                        if (elt.exception() instanceof RuntimeException ex) {
+                            throw ex;
+                        }
+                        throw new RiotException(elt.exception());
+                    }
+                }
+            });
+            dest.finish();
+        }
+    }
+
     /**
      * Check the incoming labels to see if they match the existing default on the dataset. In which case, we do not need
      * to apply them. This means we save space in the Label Store and reduce the amount of processing required on the
@@ -290,7 +554,8 @@ class LabelledDataLoader {
      * @param providedHeaderLabel The default label provided in the upload call.
      * @return Labels to apply - or empty if not needed.
      */
-    private static Label determineLabelsToApply(Label datasetDefaultLabel, String providedHeaderLabel) {
+    /*package*/
+    static Label determineLabelsToApply(Label datasetDefaultLabel, String providedHeaderLabel) {
         if (providedHeaderLabel != null) {
             Label headerLabel = Label.fromText(providedHeaderLabel);
             // Special case - if the header provided label matches the dataset default label don't bother storing
@@ -0,0 +1,245 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import io.telicent.jena.abac.SysABAC;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.VocabAuthz;
+import io.telicent.jena.abac.labels.L;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.fuseki.servlets.ActionErrorException;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.rdfpatch.PatchProcessor;
+import org.apache.jena.rdfpatch.binary.RDFPatchReaderBinary;
+import org.apache.jena.rdfpatch.changes.PatchTxnAbortException;
+import org.apache.jena.rdfpatch.changes.RDFChangesApply;
+import org.apache.jena.rdfpatch.changes.RDFChangesExternalTxn;
+import org.apache.jena.rdfpatch.changes.RDFChangesWrapper;
+import org.apache.jena.rdfpatch.text.RDFPatchReaderText;
+import org.apache.jena.riot.WebContent;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.apache.jena.web.HttpSC;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Applies an RDF Patch to an ABAC dataset, labelling the quads it adds.
+ * <p>
+ * The default label for the quads added by the patch is given by a {@code Security-Label} patch header, or else by
+ * the {@code Security-Label} request header, as for data uploads.  Quads added to the {@code authz:labels} graph are
+ * label descriptions, as in a TriG upload, which take precedence over the default label, and are not added to the data.
+ * Deleting a quad also removes its label.
+ * </p>
+ * <p>
+ * The patch, its data and its labels, are applied in one transaction, whatever transactions the patch itself contains,
+ * and is aborted as a whole if the patch aborts.  Default labels are written to the labels store in batches as the
+ * patch is applied, so that the labels of quads added and then deleted by the same patch are never written, and the
+ * explicit labels once the whole patch has been read.
+ * </p>
+ */
+class LabelledPatchApply extends RDFChangesWrapper {
+
+    /**
+     * Number of default labels collected before they are written to the labels store
+     */
+    static final int LABELS_BATCH_SIZE = 10_000;
+
+    private final LabelsStore labelsStore;
+    private final Label datasetDefaultLabel;
+    private final int batchSize;
+    private final Graph labelsGraph = GraphFactory.createDefaultGraph();
+    private final Map<Quad, Label> batch = new LinkedHashMap<>();
+    private Label defaultLabel;
+    // The patch readers turn any exception into an abort of the patch, so a bad request is reported once the patch
+    // has been read
+    private String badRequest = null;
+
+    private long added = 0;
+    private long deleted = 0;
+
+    /**
+     * Creates a patch processor for an ABAC dataset
+     *
+     * @param dsgz        Dataset to apply the patch to, within a write transaction
+     * @param headerLabel Default label given by the request, {@code null} for none
+     * @param batchSize   Number of default labels collected before they are written to the labels store
+     */
+    LabelledPatchApply(DatasetGraphABAC dsgz, String headerLabel, int batchSize) {
+        super(new RDFChangesExternalTxn(new RDFChangesApply(dsgz.getData())));
+        this.labelsStore = dsgz.labelsStore();
+        this.datasetDefaultLabel = dsgz.getDefaultLabel();
+        this.batchSize = batchSize;
+        this.defaultLabel = LabelledDataLoader.determineLabelsToApply(datasetDefaultLabel, headerLabel);
+    }
+
+    // Called by ABAC_ChangeDispatch for ABAC datasets
+    /*package*/
+    static void execute(HttpAction action) {
+        DatasetGraph dsg = action.getDataset();
+        if (!(dsg instanceof DatasetGraphABAC dsgz)) {
+            FmtLog.error(action.log, "[%d] This dataset does not support ABAC security labelling.", action.id);
+            ServletOps.error(HttpSC.BAD_REQUEST_400, "This dataset does not support ABAC security labelling.");
+            return;
+        }
+        String hSecurityLabel = action.getRequestHeader(SysABAC.hSecurityLabel);
+        action.begin(TxnType.WRITE);
+        try {
+            LabelledPatchApply changes = new LabelledPatchApply(dsgz, hSecurityLabel, LABELS_BATCH_SIZE);
+            patchProcessor(action).apply(changes);
+            changes.applyLabels();
+            action.commit();
+            FmtLog.info(action.log, "[%d] RDF Patch: A=%d, D=%d", action.id, changes.added(), changes.deleted());
+            ServletOps.success(action);
+        } catch (PatchTxnAbortException ex) {
+            action.abortSilent();
+            FmtLog.info(action.log, "[%d] RDF Patch: abort in patch", action.id);
+            ServletOps.success(action);
+        } catch (ActionErrorException ex) {
+            action.abortSilent();
+            throw ex;
+        } catch (Throwable ex) {
+            action.abortSilent();
+            ServletOps.errorOccurred(ex);
+        }
+    }
+
+    private static PatchProcessor patchProcessor(HttpAction action) throws IOException {
+        InputStream input = LabelledDataLoader.requestInputStream(action);
+        if (WebContent.contentTypePatchThrift.equalsIgnoreCase(action.getRequestContentType())) {
+            return RDFPatchReaderBinary.create(input);
+        }
+        return new RDFPatchReaderText(input);
+    }
+
+    @Override
+    public void header(String field, Node value) {
+        if (SysABAC.hSecurityLabel.equalsIgnoreCase(field)) {
+            if (!value.isLiteral()) {
+                reject("Bad " + SysABAC.hSecurityLabel + " patch header: " + value);
+                return;
+            }
+            // The patch's own label takes precedence over the request's
+            defaultLabel = LabelledDataLoader.determineLabelsToApply(datasetDefaultLabel,
+                                                                     value.getLiteralLexicalForm());
+        }
+        super.header(field, value);
+    }
+
+    @Override
+    public void add(Node g, Node s, Node p, Node o) {
+        if (badRequest != null) {
+            return;
+        }
+        if (VocabAuthz.graphForLabels.equals(g)) {
+            labelsGraph.add(Triple.create(s, p, o));
+            return;
+        }
+        super.add(g, s, p, o);
+        added++;
+        if (defaultLabel != null) {
+            batch.put(quad(g, s, p, o), defaultLabel);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+    }
+
+    @Override
+    public void delete(Node g, Node s, Node p, Node o) {
+        if (badRequest != null) {
+            return;
+        }
+        if (VocabAuthz.graphForLabels.equals(g)) {
+            reject("Deleting from the labels graph is not supported by RDF Patch");
+            return;
+        }
+        super.delete(g, s, p, o);
+        deleted++;
+        Quad quad = quad(g, s, p, o);
+        batch.remove(quad);
+        labelsStore.remove(quad);
+    }
+
+    @Override
+    public void addPrefix(Node gn, String prefix, String uriStr) {
+        super.addPrefix(gn, prefix, uriStr);
+        // Patterns in the labels graph may use the patch's prefixes
+        labelsGraph.getPrefixMapping().setNsPrefix(prefix, uriStr);
+    }
+
+    /**
+     * Records that the patch is a bad request, ignoring the rest of it
+     */
+    private void reject(String message) {
+        if (badRequest == null) {
+            badRequest = message;
+        }
+    }
+
+    // Quads as they are labelled by data uploads
+    private static Quad quad(Node g, Node s, Node p, Node o) {
+        Node graph = g == null || Quad.isDefaultGraph(g) ? Quad.defaultGraphIRI : g;
+        return Quad.create(graph, s, p, o);
+    }
+
+    private void flush() {
+        batch.forEach(labelsStore::add);
+        batch.clear();
+    }
+
+    /**
+     * Writes the remaining default labels, then the explicit labels, once the whole patch has been applied
+     *
+     * @throws ActionErrorException if the patch was a bad request, in which case the transaction must be aborted
+     */
+    void applyLabels() {
+        if (badRequest != null) {
+            ServletOps.error(HttpSC.BAD_REQUEST_400, badRequest);
+        }
+        flush();
+        if (!labelsGraph.isEmpty()) {
+            L.graphToLabels(labelsGraph, labelsStore::add);
+            labelsGraph.clear();
+        }
+    }
+
+    /**
+     * Number of quads added to the data
+     */
+    long added() {
+        return added;
+    }
+
+    /**
+     * Number of quads deleted from the data
+     */
+    long deleted() {
+        return deleted;
+    }
+}
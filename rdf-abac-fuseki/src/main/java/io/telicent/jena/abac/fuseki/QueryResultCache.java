@@ -0,0 +1,346 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.telicent.jena.abac.AttributeValueSet;
+import io.telicent.jena.abac.Hierarchy;
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.atlas.iterator.IteratorCloseable;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.query.Query;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.exec.QueryExecResult;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.exec.RowSetStream;
+
+/**
+ * A cache of SPARQL query results, shared by requests with identical attributes.
+ * <p>
+ * Results are keyed by the normalised query text, the request attributes, the hierarchies of those attributes, the
+ * data version of the {@link DatasetGraphABAC} seen by the request's read transaction, and the
+ * {@link DatasetGraphABAC#labelsVersion() labels version}.  Any write transaction committed through the
+ * {@link DatasetGraphABAC}, to the data or the labels, changes the data version, and labels changed by a secondary or
+ * follower labels store catching up with its primary change the labels version, so results cached before either change
+ * are never returned afterwards, and are discarded once a request sees the new versions.
+ * </p>
+ * <p>
+ * The cache is bounded both by the number of results and by their estimated memory use.  Results are streamed to the
+ * request as they are evaluated, and recorded as they go, and only cached once they have all been sent.  Results larger
+ * than the memory limit are no longer recorded once they exceed it, and are not cached.  Queries that may give different results each time they
+ * are evaluated, such as those using {@code NOW()}, {@code RAND()} or {@code SERVICE}, are never cached.
+ * </p>
+ */
+public class QueryResultCache {
+
+    /**
+     * Environment variable giving the maximum number of cached results, zero or less (the default) disables the cache.
+     */
+    public static final String ENV_QUERY_RESULT_CACHE_SIZE = "ABAC_QUERY_RESULT_CACHE_SIZE";
+
+    /**
+     * Environment variable giving the maximum estimated memory use, in bytes, of the cached results.
+     */
+    public static final String ENV_QUERY_RESULT_CACHE_MEMORY = "ABAC_QUERY_RESULT_CACHE_MEMORY";
+
+    /** Default maximum estimated memory use of the cached results */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // Rough estimate of the memory used by an RDF term held in a result, including its share of a binding or triple
+    private static final long BYTES_PER_TERM = 64;
+    private static final long BYTES_PER_RESULT = 256;
+
+    private static final Pattern NON_DETERMINISTIC =
+            Pattern.compile("\\b(NOW|RAND|UUID|STRUUID|BNODE)\\s*\\(|\\bSERVICE\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * Creates a cache configured by the {@value #ENV_QUERY_RESULT_CACHE_SIZE} and
+     * {@value #ENV_QUERY_RESULT_CACHE_MEMORY} environment variables.
+     *
+     * @return Cache, or {@code null} if disabled
+     */
+    public static QueryResultCache fromEnvironment() {
+        int maxResults = Integer.parseInt(Optional.ofNullable(System.getenv(ENV_QUERY_RESULT_CACHE_SIZE)).orElse("0"));
+        if (maxResults <= 0) {
+            return null;
+        }
+        long maxBytes = Optional.ofNullable(System.getenv(ENV_QUERY_RESULT_CACHE_MEMORY))
+                                .map(Long::parseLong)
+                                .orElse(DEFAULT_MAX_BYTES);
+        return new QueryResultCache(maxResults, maxBytes);
+    }
+
+    /**
+     * Key for a cached result.  The dataset is identified by an id, rather than held, so that cached results don't keep
+     * a dataset that is no longer in use from being garbage collected.
+     */
+    record Key(long dataset, long version, long labelsVersion, String query, AttributeValueSet attributes,
+               List<Hierarchy> hierarchies) {}
+
+    /**
+     * The data and labels versions of a dataset
+     */
+    private record Versions(long data, long labels) {
+        boolean isLaterThan(Versions other) {
+            return data > other.data || labels > other.labels;
+        }
+    }
+
+    /**
+     * A cached result, with its estimated memory use, providing a fresh view of the result for each request
+     */
+    private record CachedResult(long bytes, Supplier<QueryExecResult> view) {
+        QueryExecResult result() {
+            return view.get();
+        }
+    }
+
+    private final long maxBytes;
+    private final long minWeight;
+    private final Cache<Key, CachedResult> results;
+    // Ids given to datasets, and the latest versions seen for each, weakly keyed by identity
+    private final Cache<DatasetGraphABAC, Long> ids = Caffeine.newBuilder().weakKeys().build();
+    private final AtomicLong nextId = new AtomicLong();
+    private final Cache<DatasetGraphABAC, Versions> versions = Caffeine.newBuilder().weakKeys().build();
+
+    /**
+     * Creates a new cache
+     *
+     * @param maxResults Maximum number of cached results
+     * @param maxBytes   Maximum estimated memory use, in bytes, of the cached results
+     */
+    public QueryResultCache(int maxResults, long maxBytes) {
+        if (maxResults <= 0) {
+            throw new IllegalArgumentException("Maximum results must be positive: " + maxResults);
+        }
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Maximum memory must be positive: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        // Every result weighs at least this much, so there are never more than maxResults of them
+        this.minWeight = Math.max(1, maxBytes / maxResults);
+        this.results = Caffeine.newBuilder()
+                               .maximumWeight(maxBytes)
+                               .weigher((Key key, CachedResult result) -> weight(result.bytes()))
+                               .build();
+    }
+
+    private int weight(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(minWeight, bytes));
+    }
+
+    /**
+     * The key for a query's results for a request, if they may be cached.  Must be called within the read transaction
+     * in which the query will be evaluated.
+     *
+     * @param dsgz  Dataset being queried
+     * @param query Query
+     * @param cxt   Request context
+     * @return Key, or {@code null} if the results can't be cached
+     */
+    Key key(DatasetGraphABAC dsgz, Query query, CxtABAC cxt) {
+        long version = dsgz.transactionDataVersion();
+        // Not in a read transaction, or a write was committing when the transaction began
+        if (version < 0 || (version & 1) != 0) {
+            return null;
+        }
+        if (cxt.debug()) {
+            return null;
+        }
+        String queryString = query.toString();
+        if (NON_DETERMINISTIC.matcher(queryString).find()) {
+            return null;
+        }
+        AttributeValueSet attributes = cxt.requestAttributes();
+        List<Hierarchy> hierarchies = new ArrayList<>();
+        attributes.attributes().forEach(attribute -> {
+            Hierarchy hierarchy = cxt.getHierarchy(attribute);
+            if (hierarchy != null) {
+                hierarchies.add(hierarchy);
+            }
+        });
+        long id = ids.get(dsgz, d -> nextId.incrementAndGet());
+        Versions current = new Versions(version, dsgz.labelsVersion());
+        Versions previous = versions.getIfPresent(dsgz);
+        if (previous != null && previous.isLaterThan(current)) {
+            // A later write has already been seen, so this request's results would soon be stale
+            return null;
+        }
+        if (!current.equals(previous)) {
+            versions.put(dsgz, current);
+            if (previous != null) {
+                // Discard results from before the write
+                results.asMap().keySet().removeIf(k -> k.dataset() == id
+                        && current.isLaterThan(new Versions(k.version(), k.labelsVersion())));
+            }
+        }
+        return new Key(id, version, current.labels(), queryString, attributes, List.copyOf(hierarchies));
+    }
+
+    /**
+     * The cached results for a key.  The results are a fresh view and may be consumed by the caller.
+     *
+     * @param key Key
+     * @return Results, or {@code null} if not cached
+     */
+    QueryExecResult get(Key key) {
+        CachedResult cached = results.getIfPresent(key);
+        return cached == null ? null : cached.result();
+    }
+
+    /**
+     * Cache a query's results, if they fit within the memory limit.  Rows are passed on as they are evaluated, and only
+     * cached once all of them have been read, so the caller must use the returned results in place of those given.
+     *
+     * @param dsgz   Dataset queried, that the key was given for
+     * @param key    Key
+     * @param result Results
+     * @return Results equivalent to those given
+     */
+    QueryExecResult put(DatasetGraphABAC dsgz, Key key, QueryExecResult result) {
+        if (result.isBoolean()) {
+            boolean b = result.booleanResult();
+            cache(dsgz, key, BYTES_PER_RESULT, () -> new QueryExecResult(b));
+            return result;
+        }
+        if (result.isRowSet()) {
+            RowSet rowSet = result.rowSet();
+            List<Var> vars = rowSet.getResultVars();
+            Iterator<Binding> rows = new Recording<>(dsgz, key, rowSet, row -> BYTES_PER_TERM * (row.size() + 1),
+                                                     cached -> () -> new QueryExecResult(
+                                                             RowSetStream.create(vars, cached.iterator())));
+            return new QueryExecResult(RowSetStream.create(vars, rows));
+        }
+        if (result.isGraph()) {
+            // Graph results are already held in memory, and are only read when sent
+            Graph graph = result.graph();
+            long bytes = BYTES_PER_RESULT + 3 * BYTES_PER_TERM * graph.size();
+            if (bytes <= maxBytes) {
+                cache(dsgz, key, bytes, () -> new QueryExecResult(graph));
+            }
+            return result;
+        }
+        if (result.isDataset()) {
+            DatasetGraph dsg = result.dataset();
+            long bytes = BYTES_PER_RESULT + 4 * BYTES_PER_TERM * Iter.count(dsg.find());
+            if (bytes <= maxBytes) {
+                cache(dsgz, key, bytes, () -> new QueryExecResult(dsg));
+            }
+            return result;
+        }
+        if (result.isJson()) {
+            return new QueryExecResult(new Recording<>(dsgz, key, result.jsonItems(),
+                                                       object -> BYTES_PER_TERM * (object.keys().size() + 1),
+                                                       cached -> () -> new QueryExecResult(cached.iterator())));
+        }
+        return result;
+    }
+
+    private void cache(DatasetGraphABAC dsgz, Key key, long bytes, Supplier<QueryExecResult> view) {
+        // Labels may have changed while the results were evaluated
+        if (dsgz.labelsVersion() == key.labelsVersion()) {
+            results.put(key, new CachedResult(bytes, view));
+        }
+    }
+
+    /**
+     * Passes on the items of a result as they are read, recording them so that they can be cached once all have been
+     * read.  Items stop being recorded once they exceed the memory limit, or if the result is closed early, in which case
+     * the underlying items are closed too.
+     */
+    private class Recording<T> implements IteratorCloseable<T> {
+        private final DatasetGraphABAC dsgz;
+        private final Key key;
+        private final Iterator<T> items;
+        private final ToLongFunction<T> itemBytes;
+        private final Function<List<T>, Supplier<QueryExecResult>> view;
+        private List<T> recorded = new ArrayList<>();
+        private long bytes = BYTES_PER_RESULT;
+
+        Recording(DatasetGraphABAC dsgz, Key key, Iterator<T> items, ToLongFunction<T> itemBytes,
+                  Function<List<T>, Supplier<QueryExecResult>> view) {
+            this.dsgz = dsgz;
+            this.key = key;
+            this.items = items;
+            this.itemBytes = itemBytes;
+            this.view = view;
+        }
+
+        @Override
+        public boolean hasNext() {
+            boolean hasNext = items.hasNext();
+            if (!hasNext && recorded != null) {
+                List<T> cached = List.copyOf(recorded);
+                recorded = null;
+                cache(dsgz, key, bytes, view.apply(cached));
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            T item = items.next();
+            if (recorded != null) {
+                bytes += itemBytes.applyAsLong(item);
+                if (bytes > maxBytes) {
+                    // Too large to cache, carry on streaming the items
+                    recorded = null;
+                } else {
+                    recorded.add(item);
+                }
+            }
+            return item;
+        }
+
+        @Override
+        public void close() {
+            recorded = null;
+            Iter.close(items);
+        }
+    }
+
+    /**
+     * The number of cached results
+     */
+    long size() {
+        results.cleanUp();
+        return results.estimatedSize();
+    }
+
+    /**
+     * Discards all cached results
+     */
+    public void clear() {
+        results.invalidateAll();
+    }
+}
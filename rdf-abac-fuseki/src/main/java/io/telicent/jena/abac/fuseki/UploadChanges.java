@@ -0,0 +1,299 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import io.telicent.jena.abac.SysABAC;
+import io.telicent.jena.abac.core.VocabAuthz;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsStore;
+import io.telicent.jena.abac.labels.LinesSpillBuffer;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+
+/**
+ * Skips the writes for the parts of an upload that are already in the dataset with the same label, so that re-sending
+ * data that has already been loaded doesn't rewrite it, and counts the quads of the upload that were added, unchanged
+ * or relabelled.
+ * <p>
+ * A quad already in the dataset isn't written again, and its label is only written if it differs from the label the
+ * upload gives it.  Where explicit labels may follow the data, as for TriG, what is to be done for each quad already in
+ * the dataset, and each explicit label applied, is recorded until the explicit labels are known, and then the records
+ * of the same quad are brought together to decide whether it takes the default label and how it is counted.  The
+ * records are held in a {@link LinesSpillBuffer}, so memory use is bounded however much of the upload is already in the
+ * dataset.
+ * </p>
+ * <p>
+ * When the upload is checkpointed, and so explicit labels may have been committed before their data, the default label
+ * doesn't replace the label of a quad that already has one.
+ * </p>
+ */
+class UploadChanges implements AutoCloseable {
+
+    // Records, following the quad, of a quad already in the dataset that takes the default label, or keeps its label,
+    // unless it's labelled explicitly, and of an explicit label that changed the label of a quad, or left it the same
+    private static final char DEFAULT = 'D';
+    private static final char KEEP = 'K';
+    private static final char RELABELLED = 'R';
+    private static final char SAME = 'S';
+
+    private final DatasetGraph data;
+    private final LabelsStore labelsStore;
+    private final boolean keepLabels;
+    private final LinesSpillBuffer records;
+    private Label defaultLabel;
+
+    private long added = 0;
+    private long unchanged = 0;
+    private long relabelled = 0;
+
+    /**
+     * Creates a new tracker of the changes made by an upload
+     *
+     * @param data           Dataset the upload is written to
+     * @param labelsStore    Labels store the upload's labels are written to
+     * @param explicitLabels Whether explicit labels may follow the data, applied via {@link #explicitLabel(Quad, Label)}
+     * @param checkpointed   Whether the upload is committed in chunks
+     * @param maxInMemory    Maximum number of records of quads held in memory when explicit labels may follow the data
+     */
+    UploadChanges(DatasetGraph data, LabelsStore labelsStore, boolean explicitLabels, boolean checkpointed,
+                  int maxInMemory) {
+        this.data = data;
+        this.labelsStore = labelsStore;
+        this.keepLabels = explicitLabels && checkpointed;
+        this.records = explicitLabels ? new LinesSpillBuffer(maxInMemory) : null;
+    }
+
+    /**
+     * Whether the {@value SysABAC#hUploadSkipUnchanged} header of an upload requests that unchanged quads are skipped
+     *
+     * @param action Upload action
+     * @return True if unchanged quads are to be skipped
+     */
+    static boolean isRequested(HttpAction action) {
+        return Boolean.parseBoolean(action.getRequestHeader(SysABAC.hUploadSkipUnchanged));
+    }
+
+    /**
+     * Wraps the destination that writes the data and its default label, passing on only the quads not already in the
+     * dataset.  Quads in the labels graph are passed on as they are.
+     *
+     * @param dest         Destination writing the data and default labels
+     * @param defaultLabel Default label for the data, {@code null} if the upload doesn't label the data by default
+     */
+    StreamRDF wrap(StreamRDF dest, Label defaultLabel) {
+        this.defaultLabel = defaultLabel;
+        return new StreamRDFWrapper(dest) {
+            @Override
+            public void triple(Triple triple) {
+                if (isNew(Quad.create(Quad.defaultGraphIRI, triple))) {
+                    super.triple(triple);
+                }
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                if (VocabAuthz.graphForLabels.equals(quad.getGraph())) {
+                    super.quad(quad);
+                    return;
+                }
+                Quad labelled = Quad.isDefaultGraph(quad.getGraph())
+                                ? Quad.create(Quad.defaultGraphIRI, quad.asTriple())
+                                : quad;
+                if (isNew(labelled)) {
+                    super.quad(quad);
+                }
+            }
+        };
+    }
+
+    private boolean isNew(Quad quad) {
+        if (!data.contains(quad)) {
+            added++;
+            return true;
+        }
+        Label label = defaultLabel == null ? null : labelsStore.labelForQuad(quad);
+        boolean relabel = defaultLabel != null && !defaultLabel.equals(label) && (label == null || !keepLabels);
+        if (records == null) {
+            if (relabel) {
+                labelsStore.add(quad, defaultLabel);
+                relabelled++;
+            } else {
+                unchanged++;
+            }
+            return false;
+        }
+        records.add(record(quad, relabel ? DEFAULT : KEEP));
+        return false;
+    }
+
+    /**
+     * Applies an explicit label, unless the quad already has that label
+     */
+    void explicitLabel(Quad quad, Label label) {
+        boolean same = label.equals(labelsStore.labelForQuad(quad));
+        if (!same) {
+            labelsStore.add(quad, label);
+        }
+        records.add(record(quad, same ? SAME : RELABELLED));
+    }
+
+    /**
+     * Writes the default labels of the quads already in the dataset that weren't labelled explicitly, and counts the
+     * quads already in the dataset recorded so far
+     */
+    void flush() {
+        if (records == null) {
+            return;
+        }
+        Decision decision = new Decision();
+        records.forEachDistinct(line -> {
+            int i = line.length() - 2;
+            String key = line.substring(0, i);
+            if (!key.equals(decision.key)) {
+                decide(decision);
+                decision.reset(key);
+            }
+            decision.record(line.charAt(i + 1));
+        });
+        decide(decision);
+    }
+
+    private void decide(Decision decision) {
+        if (decision.key == null || !decision.existing) {
+            // Explicit labels of quads added by the upload are counted as added
+            return;
+        }
+        if (decision.explicit == RELABELLED) {
+            relabelled++;
+        } else if (decision.explicit == SAME) {
+            unchanged++;
+        } else if (decision.takesDefault) {
+            labelsStore.add(quad(decision.key), defaultLabel);
+            relabelled++;
+        } else {
+            unchanged++;
+        }
+    }
+
+    /**
+     * The records of one quad
+     */
+    private static class Decision {
+        private String key;
+        private boolean existing;
+        private boolean takesDefault;
+        private char explicit;
+
+        void reset(String key) {
+            this.key = key;
+            existing = false;
+            takesDefault = false;
+            explicit = 0;
+        }
+
+        void record(char type) {
+            switch (type) {
+                case DEFAULT -> {
+                    existing = true;
+                    takesDefault = true;
+                }
+                case KEEP -> existing = true;
+                case RELABELLED -> explicit = RELABELLED;
+                case SAME -> {
+                    if (explicit != RELABELLED) {
+                        explicit = SAME;
+                    }
+                }
+                default -> throw new IllegalStateException("Unknown record: " + type);
+            }
+        }
+    }
+
+    // A record is the quad's nodes in N-Triples syntax, which doesn't contain tabs or newlines, then its type
+
+    private static String record(Quad quad, char type) {
+        return str(quad.getGraph()) + '\t' + str(quad.getSubject()) + '\t' + str(quad.getPredicate()) + '\t'
+               + str(quad.getObject()) + '\t' + type;
+    }
+
+    private static String str(Node node) {
+        if (node.isBlank()) {
+            return "_:" + node.getBlankNodeLabel();
+        }
+        return NodeFmtLib.strNT(node);
+    }
+
+    private static Quad quad(String key) {
+        String[] nodes = key.split("\t");
+        return Quad.create(node(nodes[0]), node(nodes[1]), node(nodes[2]), node(nodes[3]));
+    }
+
+    private static Node node(String str) {
+        if (str.startsWith("_:")) {
+            return NodeFactory.createBlankNode(str.substring(2));
+        }
+        return NodeFactoryExtra.parseNode(str);
+    }
+
+    /**
+     * Number of quads of the upload not already in the dataset
+     */
+    long added() {
+        return added;
+    }
+
+    /**
+     * Number of quads of the upload already in the dataset with the same label
+     */
+    long unchanged() {
+        return unchanged;
+    }
+
+    /**
+     * Number of quads of the upload already in the dataset with a different label
+     */
+    long relabelled() {
+        return relabelled;
+    }
+
+    /**
+     * Sets the response headers reporting the counts
+     */
+    void setResponseHeaders(HttpAction action) {
+        action.setResponseHeader(SysABAC.hUploadAdded, Long.toString(added()));
+        action.setResponseHeader(SysABAC.hUploadUnchanged, Long.toString(unchanged()));
+        action.setResponseHeader(SysABAC.hUploadRelabelled, Long.toString(relabelled()));
+    }
+
+    /**
+     * Discards the records not yet flushed, deleting any temporary files
+     */
+    @Override
+    public void close() {
+        if (records != null) {
+            records.close();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import io.telicent.jena.abac.SysABAC;
+import io.telicent.jena.abac.core.VocabAuthz;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.fuseki.servlets.HttpAction;
+import org.apache.jena.fuseki.servlets.ServletOps;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.web.HttpSC;
+
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+
+/**
+ * Commits an upload in chunks, rather than in one transaction, and skips the part of an upload already committed by an
+ * earlier attempt.
+ * <p>
+ * Positions within an upload count the triples and quads parsed from it, including those of the labels graph.  The
+ * checkpoint is the position up to which the upload has been committed, and is the position to resume a failed upload
+ * from.
+ * </p>
+ * <p>
+ * Blank nodes in the data are rejected, as the blank nodes of an upload get new identities each time it is parsed, so
+ * those of a resumed upload wouldn't be the same as those committed by the earlier attempt.  The blank nodes of the
+ * labels graph, which only describe labels, are allowed.  An upload is rejected at its first blank node, so any part of
+ * it before that may already have been committed.
+ * </p>
+ */
+class UploadCheckpoints {
+
+    private final long interval;
+    private final long resumeFrom;
+    private final LongConsumer commit;
+    private BooleanSupplier readyToCommit = () -> true;
+    private Runnable beforeCommit = () -> {};
+
+    private long position = 0;
+    private long sinceCommit = 0;
+    private long checkpoint;
+    private long commits = 0;
+
+    /**
+     * Creates checkpoints for an upload
+     *
+     * @param interval   Number of triples and quads between commits, {@code 0} to commit only at the end
+     * @param resumeFrom Number of triples and quads at the start of the upload to skip
+     * @param commit     Commits the current transaction, given the position committed up to, and begins another
+     */
+    UploadCheckpoints(long interval, long resumeFrom, LongConsumer commit) {
+        this.interval = interval;
+        this.resumeFrom = resumeFrom;
+        this.commit = commit;
+        this.checkpoint = resumeFrom;
+    }
+
+    /**
+     * Checkpoints requested by the {@value SysABAC#hUploadCommitInterval} and {@value SysABAC#hUploadResumeFrom}
+     * headers of an upload, committing the action's write transaction.
+     *
+     * @param action Upload action
+     * @return Checkpoints, or {@code null} if neither header is present
+     */
+    static UploadCheckpoints fromRequest(HttpAction action) {
+        long interval = header(action, SysABAC.hUploadCommitInterval);
+        long resumeFrom = header(action, SysABAC.hUploadResumeFrom);
+        if (interval == 0 && resumeFrom == 0) {
+            return null;
+        }
+        UploadCheckpoints checkpoints = new UploadCheckpoints(interval, resumeFrom, position -> {
+            action.commit();
+            FmtLog.info(action.log, "[%d] Upload committed up to %,d", action.id, position);
+            action.begin(TxnType.WRITE);
+        });
+        FmtLog.info(action.log, "[%d] Upload committed every %,d, resuming from %,d", action.id, interval, resumeFrom);
+        return checkpoints;
+    }
+
+    private static long header(HttpAction action, String header) {
+        String value = action.getRequestHeader(header);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            long x = Long.parseLong(value.trim());
+            if (x >= 0) {
+                return x;
+            }
+        } catch (NumberFormatException ex) { /* Drop through */ }
+        ServletOps.error(HttpSC.BAD_REQUEST_400, "Bad " + header + " header: " + value);
+        return 0;
+    }
+
+    /**
+     * Sets the conditions for an intermediate commit, such as no labels being part parsed, and what must be done
+     * before it, such as applying the labels parsed so far.  The conditions are checked once an interval has passed
+     * since the last commit, and then once each further interval until they are met.
+     *
+     * @param readyToCommit Whether an intermediate commit can be made at the current position
+     * @param beforeCommit  Called before each intermediate commit
+     */
+    void beforeCommit(BooleanSupplier readyToCommit, Runnable beforeCommit) {
+        this.readyToCommit = readyToCommit;
+        this.beforeCommit = beforeCommit;
+    }
+
+    /**
+     * Wraps the destination for the parsed upload, skipping the triples and quads before the resume position and
+     * committing at intervals after it.
+     */
+    StreamRDF wrap(StreamRDF dest) {
+        return new StreamRDFWrapper(dest) {
+            @Override
+            public void triple(Triple triple) {
+                checkNoBlankNodes(triple.getSubject(), triple.getObject());
+                if (position++ < resumeFrom) {
+                    return;
+                }
+                super.triple(triple);
+                next();
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                if (!VocabAuthz.graphForLabels.equals(quad.getGraph())) {
+                    checkNoBlankNodes(quad.getGraph(), quad.getSubject(), quad.getObject());
+                }
+                if (position++ < resumeFrom) {
+                    return;
+                }
+                super.quad(quad);
+                next();
+            }
+        };
+    }
+
+    private static void checkNoBlankNodes(Node... nodes) {
+        for (Node node : nodes) {
+            if (node.isBlank()) {
+                ServletOps.error(HttpSC.BAD_REQUEST_400,
+                                 "Blank nodes can't be used in the data of an upload committed in chunks or resumed");
+            }
+        }
+    }
+
+    private void next() {
+        if (interval > 0 && ++sinceCommit >= interval) {
+            // Checking readiness may be costly, so it isn't checked again until another interval has passed
+            if (!readyToCommit.getAsBoolean()) {
+                sinceCommit = 0;
+                return;
+            }
+            beforeCommit.run();
+            commit.accept(position);
+            checkpoint = position;
+            sinceCommit = 0;
+            commits++;
+        }
+    }
+
+    /**
+     * Records that the rest of the upload has been committed
+     */
+    void committed() {
+        checkpoint = Math.max(position, resumeFrom);
+    }
+
+    /**
+     * Position up to which the upload has been committed
+     */
+    long checkpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Number of intermediate commits made
+     */
+    long commits() {
+        return commits;
+    }
+}
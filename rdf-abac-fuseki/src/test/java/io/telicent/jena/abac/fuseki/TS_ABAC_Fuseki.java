@@ -28,6 +28,9 @@ import org.junit.platform.suite.api.Suite;
     , TestShaclABAC.class
     , TestAttributesStoreRemote.class
     , TestLabelledDataLoader.class
+    , TestQueryResultCache.class
+    , TestLabelledPatchApply.class
+    , TestABACLabels.class
     , UserInfoEnrichmentFilterTest.class
 })
 
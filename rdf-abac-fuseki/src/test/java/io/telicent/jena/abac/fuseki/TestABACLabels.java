@@ -0,0 +1,123 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import io.telicent.jena.abac.core.VocabAuthz;
+import io.telicent.jena.abac.labels.L;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestABACLabels {
+
+    private static final Node G = NodeFactory.createURI("http://example/g");
+    private static final Quad QUAD1 = Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(:s :p 1)"));
+    private static final Quad QUAD2 = Quad.create(G, SSE.parseTriple("(:s :p 2)"));
+    private static final Quad QUAD3 = Quad.create(G, SSE.parseTriple("(:s2 :p 3)"));
+
+    private static LabelsStore labelsStore() {
+        LabelsStore store = Labels.createLabelsStoreMem();
+        Txn.executeWrite(store.getTransactional(), () -> {
+            store.add(QUAD1, Label.fromText("one"));
+            store.add(QUAD2, Label.fromText("two"));
+            store.add(QUAD3, Label.fromText("three"));
+        });
+        return store;
+    }
+
+    private static Map<Quad, Label> readLabels(String output, Lang lang) {
+        Graph labelsGraph;
+        if (lang == Lang.NQUADS) {
+            DatasetGraph dsg = RDFParser.fromString(output, lang).toDatasetGraph();
+            assertTrue(dsg.getDefaultGraph().isEmpty());
+            labelsGraph = dsg.getGraph(VocabAuthz.graphForLabels);
+        } else {
+            labelsGraph = RDFParser.fromString(output, lang).toGraph();
+        }
+        Map<Quad, Label> labels = new HashMap<>();
+        L.graphToLabels(labelsGraph, labels::put);
+        return labels;
+    }
+
+    private static String write(LabelsStore store, Node graph, Node subject, boolean quads) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ABAC_Labels.writeLabels(store, graph, subject, quads, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void writeLabels_ntriples() {
+        Map<Quad, Label> labels = readLabels(write(labelsStore(), null, null, false), Lang.NTRIPLES);
+        assertEquals(Map.of(QUAD1, Label.fromText("one"), QUAD2, Label.fromText("two"), QUAD3,
+                            Label.fromText("three")), labels);
+    }
+
+    @Test
+    public void writeLabels_nquads() {
+        Map<Quad, Label> labels = readLabels(write(labelsStore(), null, null, true), Lang.NQUADS);
+        assertEquals(3, labels.size());
+        assertEquals(Label.fromText("two"), labels.get(QUAD2));
+    }
+
+    @Test
+    public void writeLabels_filtered() {
+        LabelsStore store = labelsStore();
+        assertEquals(Map.of(QUAD2, Label.fromText("two"), QUAD3, Label.fromText("three")),
+                     readLabels(write(store, G, null, false), Lang.NTRIPLES));
+        assertEquals(Map.of(QUAD2, Label.fromText("two")),
+                     readLabels(write(store, G, QUAD2.getSubject(), false), Lang.NTRIPLES));
+        assertEquals(Map.of(QUAD1, Label.fromText("one")),
+                     readLabels(write(store, Quad.defaultGraphIRI, null, false), Lang.NTRIPLES));
+    }
+
+    @Test
+    public void writeLabels_pages() {
+        LabelsStore store = labelsStore();
+        Map<Quad, Label> labels = new HashMap<>();
+        String after = null;
+        int pages = 0;
+        do {
+            List<Map.Entry<Quad, Label>> page = new ArrayList<>();
+            after = store.forEachPage(null, null, after, 2, (q, l) -> page.add(Map.entry(q, l)));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ABAC_Labels.writeLabels(page, true, out);
+            labels.putAll(readLabels(out.toString(StandardCharsets.UTF_8), Lang.NQUADS));
+            pages++;
+        } while (after != null);
+        assertEquals(2, pages);
+        assertEquals(3, labels.size());
+    }
+}
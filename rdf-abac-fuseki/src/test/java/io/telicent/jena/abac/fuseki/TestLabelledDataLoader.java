@@ -10,16 +10,28 @@ import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.compressors.zstandard.ZstdCompressorOutputStream;
+import org.apache.jena.datatypes.xsd.XSDDatatype;
 import org.apache.jena.fuseki.main.FusekiServer;
 import org.apache.jena.fuseki.servlets.ActionErrorException;
 import org.apache.jena.fuseki.servlets.HttpAction;
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.Lang;
 import org.apache.jena.riot.RDFLanguages;
+import org.apache.jena.riot.RDFParser;
 import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.system.StreamRDFWriter;
+import org.apache.jena.riot.web.HttpNames;
 import org.apache.jena.sparql.core.DatasetGraph;
 import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
 import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.system.Txn;
+import org.apache.jena.web.HttpSC;
 import org.eclipse.jetty.ee11.servlet.ServletContextHandler;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -27,10 +39,19 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static io.telicent.jena.abac.fuseki.LabelledDataLoader.ingestData;
 import static io.telicent.jena.abac.fuseki.TestServerABAC.server;
@@ -55,6 +76,8 @@ public class TestLabelledDataLoader {
     private static final String TTL_FORMAT = RDFLanguages.TURTLE.getContentType().getContentTypeStr();
     private static final String NQ_FORMAT = RDFLanguages.NQUADS.getContentType().getContentTypeStr();
     private static final String TRIG_FORMAT = RDFLanguages.TRIG.getContentType().getContentTypeStr();
+    private static final String THRIFT_FORMAT = RDFLanguages.RDFTHRIFT.getContentType().getContentTypeStr();
+    private static final String PROTOBUF_FORMAT = RDFLanguages.RDFPROTO.getContentType().getContentTypeStr();
 
     private static final String TTL_UNLABELED_DATA = """
             PREFIX : <http://example/>
@@ -127,6 +150,21 @@ public class TestLabelledDataLoader {
             """;
 
 
+    private static final String TRIG_LABELS_BEFORE_DATA = """
+            PREFIX authz:   <http://telicent.io/security#>
+            PREFIX ex:      <http://example/>
+            
+            GRAPH authz:labels {
+              [] authz:pattern 'ex:g1 ex:s ex:p2 "123"' ; authz:label "g1" .
+            }
+            GRAPH ex:g1 {
+              ex:s ex:p2 "123"
+            }
+            GRAPH ex:g2 {
+              ex:s ex:p2 "123"
+            }
+            """;
+
     @BeforeEach
     public void setupTest() {
         when(MOCK_REQUEST.getServletContext()).thenReturn(SERVLET_CONTEXT);
@@ -173,6 +211,55 @@ public class TestLabelledDataLoader {
                                                 int expectedTripleCount, int expectedQuadCount,
                                                 int expectedGraphIncrease, int expectedLabelStoreIncrease,
                                                 Consumer<LabelsStore> additionalVerification) {
+        test_ingestData_implementation(dataToIngest, dataToIngestFormat, defaultLabel, expectedTripleCount,
+                                       expectedQuadCount, expectedGraphIncrease, expectedLabelStoreIncrease,
+                                       additionalVerification, null);
+    }
+
+    /**
+     * Refactoring of test code - starts server (which loads 2 triples each with label "default").
+     *
+     * @param dataToIngest               representation of the data to ingest
+     * @param dataToIngestFormat         format of data i.e. turtle or n-quad
+     * @param defaultLabel               incoming default security labels to apply to data
+     * @param expectedTripleCount        the number of triples to be processed from the data
+     * @param expectedQuadCount          the number of quads to be processed from the data
+     * @param expectedGraphIncrease      the number of additional entries in the underlying graph afterward
+     * @param expectedLabelStoreIncrease the number of additional entries in the label store afterward
+     * @param additionalVerification     a consumer that applies additional verification assertions to the built labels
+     *                                   store
+     * @param checkpoints                checkpoints to commit the upload at, {@code null} for none
+     */
+    private void test_ingestData_implementation(String dataToIngest, String dataToIngestFormat, String defaultLabel,
+                                                int expectedTripleCount, int expectedQuadCount,
+                                                int expectedGraphIncrease, int expectedLabelStoreIncrease,
+                                                Consumer<LabelsStore> additionalVerification,
+                                                UploadCheckpoints checkpoints) {
+        test_ingestData_implementation(dataToIngest, dataToIngestFormat, defaultLabel, expectedTripleCount,
+                                       expectedQuadCount, expectedGraphIncrease, expectedLabelStoreIncrease,
+                                       additionalVerification, checkpoints, null);
+    }
+
+    /**
+     * Refactoring of test code - starts server (which loads 2 triples each with label "default").
+     *
+     * @param dataToIngest               representation of the data to ingest, as TriG for the binary formats
+     * @param dataToIngestFormat         format of data i.e. turtle or n-quad
+     * @param defaultLabel               incoming default security labels to apply to data
+     * @param expectedTripleCount        the number of triples to be processed from the data
+     * @param expectedQuadCount          the number of quads to be processed from the data
+     * @param expectedGraphIncrease      the number of additional entries in the underlying graph afterward
+     * @param expectedLabelStoreIncrease the number of additional entries in the label store afterward
+     * @param additionalVerification     a consumer that applies additional verification assertions to the built labels
+     *                                   store
+     * @param checkpoints                checkpoints to commit the upload at, {@code null} for none
+     * @param contentEncoding            content encoding to compress the data with, {@code null} for none
+     */
+    private void test_ingestData_implementation(String dataToIngest, String dataToIngestFormat, String defaultLabel,
+                                                int expectedTripleCount, int expectedQuadCount,
+                                                int expectedGraphIncrease, int expectedLabelStoreIncrease,
+                                                Consumer<LabelsStore> additionalVerification,
+                                                UploadCheckpoints checkpoints, String contentEncoding) {
         // given
         FusekiServer server = server("server-labels/config-labels.ttl");
         DatasetGraph dsg = server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
@@ -180,8 +267,10 @@ public class TestLabelledDataLoader {
         try (LabelsStore labelsStore = datasetGraphABAC.labelsStore()) {
 
             when(MOCK_REQUEST.getContentType()).thenReturn(dataToIngestFormat);
+            when(MOCK_REQUEST.getHeader(HttpNames.hContentEncoding)).thenReturn(contentEncoding);
             TestServletInputStream inputStream =
-                    new TestServletInputStream(new ByteArrayInputStream(dataToIngest.getBytes()));
+                    new TestServletInputStream(new ByteArrayInputStream(
+                            encode(body(dataToIngest, dataToIngestFormat), contentEncoding)));
             when(MOCK_REQUEST.getInputStream()).thenReturn(inputStream);
 
             ServletOutputStream outputStream = mock(ServletOutputStream.class);
@@ -192,7 +281,8 @@ public class TestLabelledDataLoader {
             // Label Store (x 2 in size) when converted to Graph
             assertEquals(INITIAL_LABEL_SIZE, labelsStore.asGraph().size() / 2);
             // when
-            LabelledDataLoader.UploadInfo results = ingestData(getHttpAction(), "base", datasetGraphABAC, defaultLabel);
+            LabelledDataLoader.UploadInfo results =
+                    ingestData(getHttpAction(), "base", datasetGraphABAC, defaultLabel, checkpoints, false);
             // then
             assertNotNull(results);
             assertEquals(expectedTripleCount, results.tripleCount(), "triple count does not match");
@@ -507,6 +597,39 @@ public class TestLabelledDataLoader {
                                        additional);
     }
 
+    @Test
+    public void test_ingestData_pipelined_labelledQuadsWithSeparateLabels() {
+        BooleanSupplier pipeline = LabelledDataLoader.pipelineCheck;
+        try {
+            LabelledDataLoader.pipelineCheck = () -> true;
+            test_ingestData_labelledQuadsWithSeparateLabels();
+        } finally {
+            LabelledDataLoader.pipelineCheck = pipeline;
+        }
+    }
+
+    @Test
+    public void test_ingestData_pipelined_unlabelledTriples_differentDefaultLabel() {
+        BooleanSupplier pipeline = LabelledDataLoader.pipelineCheck;
+        try {
+            LabelledDataLoader.pipelineCheck = () -> true;
+            test_ingestData_unlabelledTriples_differentDefaultLabel();
+        } finally {
+            LabelledDataLoader.pipelineCheck = pipeline;
+        }
+    }
+
+    @Test
+    public void test_ingestData_pipelined_quads_inputStreamNull() throws IOException {
+        BooleanSupplier pipeline = LabelledDataLoader.pipelineCheck;
+        try {
+            LabelledDataLoader.pipelineCheck = () -> true;
+            test_ingestData_quads_inputStreamNull();
+        } finally {
+            LabelledDataLoader.pipelineCheck = pipeline;
+        }
+    }
+
     /**
      * Null testing for coverage's sake
      */
@@ -554,6 +677,407 @@ public class TestLabelledDataLoader {
     }
 
 
+    private static Label labelFor(LabelsStore store, String graph) {
+        Node g = NodeFactory.createURI(graph);
+        Node s = NodeFactory.createURI("http://example/s");
+        Node p = NodeFactory.createURI("http://example/p2");
+        Node o = NodeFactory.createLiteralString("123");
+        return store.labelForQuad(Quad.create(g, s, p, o));
+    }
+
+    @Test
+    public void test_ingestData_checkpoints_unlabelledTriples() {
+        List<Long> commits = new ArrayList<>();
+        UploadCheckpoints checkpoints = new UploadCheckpoints(1, 0, commits::add);
+        test_ingestData_implementation(TTL_UNLABELED_DATA, TTL_FORMAT, "different", 2, 0, 2, 2, store -> {},
+                                       checkpoints);
+        assertEquals(List.of(1L, 2L), commits);
+        checkpoints.committed();
+        assertEquals(2, checkpoints.checkpoint());
+        assertEquals(2, checkpoints.commits());
+    }
+
+    @Test
+    public void test_ingestData_checkpoints_resume() {
+        List<Long> commits = new ArrayList<>();
+        UploadCheckpoints checkpoints = new UploadCheckpoints(0, 1, commits::add);
+        // The first triple is skipped as already loaded
+        test_ingestData_implementation(TTL_UNLABELED_DATA, TTL_FORMAT, "different", 1, 0, 1, 1, store -> {},
+                                       checkpoints);
+        assertTrue(commits.isEmpty());
+        assertEquals(1, checkpoints.checkpoint());
+        checkpoints.committed();
+        assertEquals(2, checkpoints.checkpoint());
+    }
+
+    @Test
+    public void test_ingestData_checkpoints_labelsNotSplitAcrossCommits() {
+        List<Long> commits = new ArrayList<>();
+        UploadCheckpoints checkpoints = new UploadCheckpoints(1, 0, commits::add);
+        Consumer<LabelsStore> additional = store -> {
+            assertEquals(Label.fromText("g1"), labelFor(store, "http://example/g1"));
+            assertEquals(Label.fromText("g2"), labelFor(store, "http://example/g2"));
+        };
+        test_ingestData_implementation(TRIG_LABELLED_DATA, TRIG_FORMAT, "default", 0, 2, 0, 2, additional,
+                                       checkpoints);
+        // Two data quads, then two label descriptions each of a pattern and a label
+        assertEquals(List.of(1L, 2L, 4L, 6L), commits);
+    }
+
+    @Test
+    public void test_ingestData_checkpoints_explicitLabelsBeforeData() {
+        List<Long> commits = new ArrayList<>();
+        UploadCheckpoints checkpoints = new UploadCheckpoints(1, 0, commits::add);
+        Consumer<LabelsStore> additional = store -> {
+            // Explicit label committed before the data isn't overridden by the default label
+            assertEquals(Label.fromText("g1"), labelFor(store, "http://example/g1"));
+            assertEquals(Label.fromText("default-2"), labelFor(store, "http://example/g2"));
+        };
+        test_ingestData_implementation(TRIG_LABELS_BEFORE_DATA, TRIG_FORMAT, "default-2", 0, 2, 0, 2, additional,
+                                       checkpoints);
+        assertEquals(List.of(2L, 3L, 4L), commits);
+    }
+
+    @Test
+    public void test_ingestData_checkpoints_resumeKeepsExplicitLabels() throws IOException {
+        // given
+        FusekiServer server = server("server-labels/config-labels.ttl");
+        DatasetGraphABAC datasetGraphABAC =
+                (DatasetGraphABAC) server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        LabelsStore labelsStore = datasetGraphABAC.labelsStore();
+        // The failed upload committed the label description, but none of the data after it
+        Quad g1 = Quad.create(NodeFactory.createURI("http://example/g1"), NodeFactory.createURI("http://example/s"),
+                              NodeFactory.createURI("http://example/p2"), NodeFactory.createLiteralString("123"));
+        Txn.executeWrite(labelsStore.getTransactional(), () -> labelsStore.add(g1, Label.fromText("g1")));
+        UploadCheckpoints checkpoints = new UploadCheckpoints(1, 2, position -> {});
+        // when
+        ingestWithCheckpoints(datasetGraphABAC, TRIG_LABELS_BEFORE_DATA, TRIG_FORMAT, "default-2", checkpoints);
+        // then
+        assertEquals(Label.fromText("g1"), labelFor(labelsStore, "http://example/g1"));
+        assertEquals(Label.fromText("default-2"), labelFor(labelsStore, "http://example/g2"));
+    }
+
+    @Test
+    public void test_ingestData_checkpoints_reuploadKeepsLabels() throws IOException {
+        // given
+        FusekiServer server = server("server-labels/config-labels.ttl");
+        DatasetGraphABAC datasetGraphABAC =
+                (DatasetGraphABAC) server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        LabelsStore labelsStore = datasetGraphABAC.labelsStore();
+        ingestWithCheckpoints(datasetGraphABAC, TRIG_LABELS_BEFORE_DATA, TRIG_FORMAT, "a",
+                              new UploadCheckpoints(1, 0, position -> {}));
+        // when
+        ingestWithCheckpoints(datasetGraphABAC, TRIG_LABELS_BEFORE_DATA, TRIG_FORMAT, "b",
+                              new UploadCheckpoints(1, 0, position -> {}));
+        // then
+        // The explicit label committed before the data isn't overridden, nor is the stored label relabelled by default
+        assertEquals(Label.fromText("g1"), labelFor(labelsStore, "http://example/g1"));
+        assertEquals(Label.fromText("a"), labelFor(labelsStore, "http://example/g2"));
+    }
+
+    @Test
+    public void test_ingestData_checkpoints_blankNodesRejected() {
+        // given
+        FusekiServer server = server("server-labels/config-labels.ttl");
+        DatasetGraphABAC datasetGraphABAC =
+                (DatasetGraphABAC) server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        UploadCheckpoints checkpoints = new UploadCheckpoints(1, 0, position -> {});
+        // when
+        // then
+        ActionErrorException ex = assertThrows(ActionErrorException.class,
+                                               () -> ingestWithCheckpoints(datasetGraphABAC,
+                                                                           TTL_UNLABELLED_BLANK_NODE_DATA, TTL_FORMAT,
+                                                                           "default", checkpoints));
+        assertEquals(HttpSC.BAD_REQUEST_400, ex.getRC());
+        assertEquals(INITIAL_GRAPH_SIZE, datasetGraphABAC.getDefaultGraph().size());
+    }
+
+    @Test
+    public void test_checkpoints_readinessCheckedOncePerInterval() {
+        // given
+        List<Long> commits = new ArrayList<>();
+        UploadCheckpoints checkpoints = new UploadCheckpoints(2, 0, commits::add);
+        int[] checks = { 0 };
+        checkpoints.beforeCommit(() -> ++checks[0] == 3, () -> {});
+        StreamRDF stream = checkpoints.wrap(StreamRDFLib.sinkNull());
+        // when
+        for (int i = 0; i < 7; i++) {
+            stream.triple(SSE.parseTriple("(:s :p " + i + ")"));
+        }
+        // then
+        assertEquals(3, checks[0]);
+        assertEquals(List.of(6L), commits);
+    }
+
+    @Test
+    public void test_ingestData_labelsSpilled() {
+        IntSupplier original = LabelledDataLoader.labelsMemoryLimit;
+        try {
+            // Every label triple is spilled to its own temporary file
+            LabelledDataLoader.labelsMemoryLimit = () -> 1;
+            Consumer<LabelsStore> additional = store -> {
+                assertEquals(Label.fromText("g1"), labelFor(store, "http://example/g1"));
+                assertEquals(Label.fromText("g2"), labelFor(store, "http://example/g2"));
+            };
+            test_ingestData_implementation(TRIG_LABELLED_DATA, TRIG_FORMAT, "default", 0, 2, 0, 2, additional, null);
+        } finally {
+            LabelledDataLoader.labelsMemoryLimit = original;
+        }
+    }
+
+    /**
+     * The data to upload in the given format, converting it from TriG for the binary formats
+     */
+    private static byte[] body(String data, String format) {
+        Lang lang = RDFLanguages.contentTypeToLang(format);
+        if (!RDFLanguages.RDFTHRIFT.equals(lang) && !RDFLanguages.RDFPROTO.equals(lang)) {
+            return data.getBytes();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StreamRDF writer = StreamRDFWriter.getWriterStream(bytes, lang);
+        RDFParser.fromString(data, Lang.TRIG).parse(writer);
+        return bytes.toByteArray();
+    }
+
+    private LabelledDataLoader.UploadInfo ingestSkippingUnchanged(DatasetGraphABAC datasetGraphABAC, String data,
+                                                                  String format, String defaultLabel)
+            throws IOException {
+        when(MOCK_REQUEST.getContentType()).thenReturn(format);
+        when(MOCK_REQUEST.getInputStream()).thenReturn(
+                new TestServletInputStream(new ByteArrayInputStream(data.getBytes())));
+        return ingestData(getHttpAction(), "base", datasetGraphABAC, defaultLabel, null, true);
+    }
+
+    private void ingestWithCheckpoints(DatasetGraphABAC datasetGraphABAC, String data, String format,
+                                       String defaultLabel, UploadCheckpoints checkpoints) throws IOException {
+        when(MOCK_REQUEST.getContentType()).thenReturn(format);
+        when(MOCK_REQUEST.getInputStream()).thenReturn(
+                new TestServletInputStream(new ByteArrayInputStream(data.getBytes())));
+        ingestData(getHttpAction(), "base", datasetGraphABAC, defaultLabel, checkpoints, false);
+    }
+
+    private static void assertChanges(LabelledDataLoader.UploadInfo results, long added, long unchanged,
+                                      long relabelled) {
+        assertNotNull(results.changes());
+        assertEquals(added, results.changes().added());
+        assertEquals(unchanged, results.changes().unchanged());
+        assertEquals(relabelled, results.changes().relabelled());
+    }
+
+    @Test
+    public void test_ingestData_skipUnchanged_triples() throws IOException {
+        // given
+        FusekiServer server = server("server-labels/config-labels.ttl");
+        DatasetGraphABAC datasetGraphABAC =
+                (DatasetGraphABAC) server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        LabelsStore labelsStore = datasetGraphABAC.labelsStore();
+        Quad quad = Quad.create(Quad.defaultGraphIRI, NodeFactory.createURI("http://example/s"),
+                                NodeFactory.createURI("http://example/p2"),
+                                NodeFactory.createLiteralDT("123", XSDDatatype.XSDinteger));
+        // when
+        LabelledDataLoader.UploadInfo first =
+                ingestSkippingUnchanged(datasetGraphABAC, TTL_UNLABELED_DATA, TTL_FORMAT, "different");
+        LabelledDataLoader.UploadInfo second =
+                ingestSkippingUnchanged(datasetGraphABAC, TTL_UNLABELED_DATA, TTL_FORMAT, "different");
+        LabelledDataLoader.UploadInfo third =
+                ingestSkippingUnchanged(datasetGraphABAC, TTL_UNLABELED_DATA, TTL_FORMAT, "other");
+        // then
+        assertChanges(first, 2, 0, 0);
+        assertEquals(2, first.tripleCount());
+        assertChanges(second, 0, 2, 0);
+        assertEquals(0, second.tripleCount());
+        assertChanges(third, 0, 0, 2);
+        assertEquals(Label.fromText("other"), labelsStore.labelForQuad(quad));
+        assertEquals(INITIAL_GRAPH_SIZE + 2, datasetGraphABAC.getDefaultGraph().size());
+    }
+
+    @Test
+    public void test_ingestData_skipUnchanged_explicitLabels() throws IOException {
+        // given
+        FusekiServer server = server("server-labels/config-labels.ttl");
+        DatasetGraphABAC datasetGraphABAC =
+                (DatasetGraphABAC) server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        LabelsStore labelsStore = datasetGraphABAC.labelsStore();
+        // when
+        LabelledDataLoader.UploadInfo first =
+                ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELLED_DATA, TRIG_FORMAT, "default");
+        LabelledDataLoader.UploadInfo second =
+                ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELLED_DATA, TRIG_FORMAT, "default");
+        LabelledDataLoader.UploadInfo third =
+                ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELLED_DATA.replace("authz:label \"g2\"",
+                                                                                     "authz:label \"g2-new\""),
+                                        TRIG_FORMAT, "default");
+        // then
+        assertChanges(first, 2, 0, 0);
+        // The explicit labels, rather than the default label, are compared with the existing labels
+        assertChanges(second, 0, 2, 0);
+        assertEquals(0, second.quadCount());
+        assertChanges(third, 0, 1, 1);
+        assertEquals(Label.fromText("g1"), labelFor(labelsStore, "http://example/g1"));
+        assertEquals(Label.fromText("g2-new"), labelFor(labelsStore, "http://example/g2"));
+    }
+
+    @Test
+    public void test_ingestData_skipUnchanged_quadsDefaultLabel() throws IOException {
+        // given
+        FusekiServer server = server("server-labels/config-labels.ttl");
+        DatasetGraphABAC datasetGraphABAC =
+                (DatasetGraphABAC) server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        LabelsStore labelsStore = datasetGraphABAC.labelsStore();
+        // when
+        LabelledDataLoader.UploadInfo first =
+                ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELS_BEFORE_DATA, TRIG_FORMAT, "a");
+        LabelledDataLoader.UploadInfo second =
+                ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELS_BEFORE_DATA, TRIG_FORMAT, "b");
+        // then
+        assertChanges(first, 2, 0, 0);
+        // Only the quad with the default label is relabelled
+        assertChanges(second, 0, 1, 1);
+        assertEquals(Label.fromText("g1"), labelFor(labelsStore, "http://example/g1"));
+        assertEquals(Label.fromText("b"), labelFor(labelsStore, "http://example/g2"));
+    }
+
+    @Test
+    public void test_ingestData_skipUnchanged_recordsSpilled() throws IOException {
+        IntSupplier original = LabelledDataLoader.labelsMemoryLimit;
+        try {
+            // given
+            // Every record of a quad already in the dataset, and every label triple, is spilled to its own file
+            LabelledDataLoader.labelsMemoryLimit = () -> 1;
+            FusekiServer server = server("server-labels/config-labels.ttl");
+            DatasetGraphABAC datasetGraphABAC =
+                    (DatasetGraphABAC) server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+            LabelsStore labelsStore = datasetGraphABAC.labelsStore();
+            // when
+            LabelledDataLoader.UploadInfo first =
+                    ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELLED_DATA, TRIG_FORMAT, "a");
+            LabelledDataLoader.UploadInfo second =
+                    ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELLED_DATA.replace("authz:label \"g2\"",
+                                                                                         "authz:label \"g2-new\""),
+                                            TRIG_FORMAT, "b");
+            LabelledDataLoader.UploadInfo third =
+                    ingestSkippingUnchanged(datasetGraphABAC, TRIG_LABELS_BEFORE_DATA, TRIG_FORMAT, "c");
+            // then
+            assertChanges(first, 2, 0, 0);
+            assertChanges(second, 0, 1, 1);
+            assertChanges(third, 0, 1, 1);
+            assertEquals(Label.fromText("g1"), labelFor(labelsStore, "http://example/g1"));
+            assertEquals(Label.fromText("c"), labelFor(labelsStore, "http://example/g2"));
+        } finally {
+            LabelledDataLoader.labelsMemoryLimit = original;
+        }
+    }
+
+    private static byte[] encode(byte[] data, String contentEncoding) {
+        if (contentEncoding == null) {
+            return data;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = switch (contentEncoding) {
+            case "gzip" -> new GZIPOutputStream(bytes);
+            case "deflate" -> new DeflaterOutputStream(bytes);
+            case "zstd" -> new ZstdCompressorOutputStream(bytes);
+            case "lz4" -> new FramedLZ4CompressorOutputStream(bytes);
+            default -> bytes;
+        }) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void test_ingestData_gzip_unlabelledTriples() {
+        test_ingestData_implementation(TTL_UNLABELED_DATA, TTL_FORMAT, "different", 2, 0, 2, 2, store -> {}, null,
+                                       "gzip");
+    }
+
+    @Test
+    public void test_ingestData_deflate_unlabelledTriples() {
+        test_ingestData_implementation(TTL_UNLABELED_DATA, TTL_FORMAT, "different", 2, 0, 2, 2, store -> {}, null,
+                                       "deflate");
+    }
+
+    @Test
+    public void test_ingestData_lz4_labelledQuads() {
+        Consumer<LabelsStore> additional = store -> {
+            assertEquals(Label.fromText("g1"), labelFor(store, "http://example/g1"));
+            assertEquals(Label.fromText("g2"), labelFor(store, "http://example/g2"));
+        };
+        test_ingestData_implementation(TRIG_LABELLED_DATA, TRIG_FORMAT, "default", 0, 2, 0, 2, additional, null,
+                                       "lz4");
+    }
+
+    @Test
+    public void test_ingestData_zstd_unlabelledQuads() {
+        test_ingestData_implementation(NQ_NAMED_GRAPH_DATA, NQ_FORMAT, "different", 0, 2, 0, 2, store -> {}, null,
+                                       "zstd");
+    }
+
+    @Test
+    public void test_ingestData_pipelined_gzip_unlabelledTriples() {
+        BooleanSupplier pipeline = LabelledDataLoader.pipelineCheck;
+        try {
+            LabelledDataLoader.pipelineCheck = () -> true;
+            test_ingestData_gzip_unlabelledTriples();
+        } finally {
+            LabelledDataLoader.pipelineCheck = pipeline;
+        }
+    }
+
+    @Test
+    public void test_ingestData_thrift_labelledQuads() {
+        Consumer<LabelsStore> additional = store -> {
+            assertEquals(Label.fromText("g1"), labelFor(store, "http://example/g1"));
+            assertEquals(Label.fromText("g2"), labelFor(store, "http://example/g2"));
+        };
+        test_ingestData_implementation(TRIG_LABELLED_DATA, THRIFT_FORMAT, "default", 0, 2, 0, 2, additional);
+    }
+
+    @Test
+    public void test_ingestData_protobuf_labelledQuads() {
+        Consumer<LabelsStore> additional = store -> {
+            assertEquals(Label.fromText("g1"), labelFor(store, "http://example/g1"));
+            assertEquals(Label.fromText("g2"), labelFor(store, "http://example/g2"));
+        };
+        test_ingestData_implementation(TRIG_LABELLED_DATA, PROTOBUF_FORMAT, "default", 0, 2, 0, 2, additional);
+    }
+
+    @Test
+    public void test_ingestData_thrift_unlabelledTriples() {
+        test_ingestData_implementation(TTL_UNLABELED_DATA, THRIFT_FORMAT, "different", 2, 0, 2, 2);
+    }
+
+    @Test
+    public void test_ingestData_protobuf_defaultLabel() {
+        Consumer<LabelsStore> additional = store -> {
+            assertEquals(Label.fromText("different"), labelFor(store, "http://example/g1"));
+            assertEquals(Label.fromText("different"), labelFor(store, "http://example/g2"));
+        };
+        test_ingestData_implementation(TRIG_LABELLED_DATA.replace("GRAPH authz:labels", "GRAPH ex:other"),
+                                       PROTOBUF_FORMAT, "different", 0, 6, 0, 6, additional);
+    }
+
+    @Test
+    public void test_ingestData_unsupportedContentEncoding() throws IOException {
+        // given
+        FusekiServer server = server("server-labels/config-labels.ttl");
+        DatasetGraph dsg = server.getDataAccessPointRegistry().get("/ds").getDataService().getDataset();
+        DatasetGraphABAC datasetGraphABAC = (DatasetGraphABAC) dsg;
+
+        when(MOCK_REQUEST.getContentType()).thenReturn("text/turtle");
+        when(MOCK_REQUEST.getHeader(HttpNames.hContentEncoding)).thenReturn("br");
+        when(MOCK_REQUEST.getInputStream()).thenReturn(
+                new TestServletInputStream(new ByteArrayInputStream(TTL_UNLABELED_DATA.getBytes())));
+        // when
+        ActionErrorException ex = assertThrows(ActionErrorException.class,
+                                               () -> ingestData(getHttpAction(), "base", datasetGraphABAC, null));
+        // then
+        assertEquals(HttpSC.UNSUPPORTED_MEDIA_TYPE_415, ex.getRC());
+        assertEquals(INITIAL_GRAPH_SIZE, datasetGraphABAC.getDefaultGraph().size());
+    }
+
     private HttpAction getHttpAction() {
         return new HttpAction(1L, LOGGER, ACTION, MOCK_REQUEST, MOCK_RESPONSE);
     }
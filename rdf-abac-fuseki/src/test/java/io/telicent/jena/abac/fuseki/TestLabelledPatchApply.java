@@ -0,0 +1,212 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.core.AttributesStoreLocal;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.core.VocabAuthz;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.fuseki.servlets.ActionErrorException;
+import org.apache.jena.rdfpatch.changes.PatchTxnAbortException;
+import org.apache.jena.rdfpatch.text.RDFPatchReaderText;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLabelledPatchApply {
+
+    private static final Quad QUAD1 = Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(:s :p 1)"));
+    private static final Quad QUAD2 = SSE.parseQuad("(:g :s :p 2)");
+
+    private static final String PREFIXES = """
+            PA "" <http://example/> .
+            PA "authz" <http://telicent.io/security#> .
+            """;
+
+    private static DatasetGraphABAC dataset() {
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        return ABAC.authzDataset(DatasetGraphFactory.createTxnMem(), labels, Label.fromText("public"),
+                                 new AttributesStoreLocal());
+    }
+
+    private static LabelledPatchApply apply(DatasetGraphABAC dsgz, String headerLabel, int batchSize, String patch) {
+        LabelledPatchApply changes = new LabelledPatchApply(dsgz, headerLabel, batchSize);
+        Txn.executeWrite(dsgz, () -> {
+            new RDFPatchReaderText(new ByteArrayInputStream(patch.getBytes(StandardCharsets.UTF_8))).apply(changes);
+            changes.applyLabels();
+        });
+        return changes;
+    }
+
+    private static Label labelFor(DatasetGraphABAC dsgz, Quad quad) {
+        return Txn.calculateRead(dsgz, () -> dsgz.labelsStore().labelForQuad(quad));
+    }
+
+    private static boolean contains(DatasetGraphABAC dsgz, Quad quad) {
+        return Txn.calculateRead(dsgz, () -> dsgz.getData().contains(quad));
+    }
+
+    @Test
+    public void patchHeaderLabel() {
+        DatasetGraphABAC dsgz = dataset();
+        String patch = """
+                H Security-Label "secret" .
+                TX .
+                A <http://example/s> <http://example/p> 1 .
+                A <http://example/s> <http://example/p> 2 <http://example/g> .
+                TC .
+                """;
+        LabelledPatchApply changes = apply(dsgz, null, LabelledPatchApply.LABELS_BATCH_SIZE, patch);
+        assertEquals(2, changes.added());
+        assertTrue(contains(dsgz, QUAD1));
+        assertTrue(contains(dsgz, QUAD2));
+        assertEquals(Label.fromText("secret"), labelFor(dsgz, QUAD1));
+        assertEquals(Label.fromText("secret"), labelFor(dsgz, QUAD2));
+    }
+
+    @Test
+    public void requestHeaderLabel() {
+        DatasetGraphABAC dsgz = dataset();
+        String patch = """
+                A <http://example/s> <http://example/p> 1 .
+                """;
+        apply(dsgz, "secret", LabelledPatchApply.LABELS_BATCH_SIZE, patch);
+        assertEquals(Label.fromText("secret"), labelFor(dsgz, QUAD1));
+    }
+
+    @Test
+    public void patchHeaderLabel_overridesRequestHeader() {
+        DatasetGraphABAC dsgz = dataset();
+        String patch = """
+                H Security-Label "patch" .
+                A <http://example/s> <http://example/p> 1 .
+                """;
+        apply(dsgz, "request", LabelledPatchApply.LABELS_BATCH_SIZE, patch);
+        assertEquals(Label.fromText("patch"), labelFor(dsgz, QUAD1));
+    }
+
+    @Test
+    public void datasetDefaultLabel_notStored() {
+        DatasetGraphABAC dsgz = dataset();
+        String patch = """
+                H Security-Label "public" .
+                A <http://example/s> <http://example/p> 1 .
+                """;
+        apply(dsgz, null, LabelledPatchApply.LABELS_BATCH_SIZE, patch);
+        assertTrue(contains(dsgz, QUAD1));
+        assertTrue(Txn.calculateRead(dsgz, () -> dsgz.labelsStore().isEmpty()));
+    }
+
+    @Test
+    public void labelsGraph() {
+        DatasetGraphABAC dsgz = dataset();
+        // Explicit label, using the patch's prefixes, before and after the data
+        String patch = PREFIXES + """
+                H Security-Label "secret" .
+                A _:b <http://telicent.io/security#pattern> ":g :s :p 2" <http://telicent.io/security#labels> .
+                A <http://example/s> <http://example/p> 1 .
+                A <http://example/s> <http://example/p> 2 <http://example/g> .
+                A _:b <http://telicent.io/security#label> "g-only" <http://telicent.io/security#labels> .
+                """;
+        LabelledPatchApply changes = apply(dsgz, null, LabelledPatchApply.LABELS_BATCH_SIZE, patch);
+        assertEquals(2, changes.added());
+        assertEquals(Label.fromText("secret"), labelFor(dsgz, QUAD1));
+        assertEquals(Label.fromText("g-only"), labelFor(dsgz, QUAD2));
+        // The labels graph is not data
+        assertFalse(Txn.calculateRead(dsgz, () -> dsgz.getData().containsGraph(VocabAuthz.graphForLabels)));
+    }
+
+    @Test
+    public void delete_removesLabel() {
+        DatasetGraphABAC dsgz = dataset();
+        apply(dsgz, "secret", LabelledPatchApply.LABELS_BATCH_SIZE, """
+                A <http://example/s> <http://example/p> 1 .
+                A <http://example/s> <http://example/p> 2 <http://example/g> .
+                """);
+        LabelledPatchApply changes = apply(dsgz, null, LabelledPatchApply.LABELS_BATCH_SIZE, """
+                D <http://example/s> <http://example/p> 1 .
+                """);
+        assertEquals(1, changes.deleted());
+        assertFalse(contains(dsgz, QUAD1));
+        assertNull(labelFor(dsgz, QUAD1));
+        assertEquals(Label.fromText("secret"), labelFor(dsgz, QUAD2));
+    }
+
+    @Test
+    public void addThenDelete_noLabel() {
+        DatasetGraphABAC dsgz = dataset();
+        apply(dsgz, "secret", LabelledPatchApply.LABELS_BATCH_SIZE, """
+                A <http://example/s> <http://example/p> 1 .
+                A <http://example/s> <http://example/p> 2 <http://example/g> .
+                D <http://example/s> <http://example/p> 1 .
+                """);
+        assertFalse(contains(dsgz, QUAD1));
+        assertNull(labelFor(dsgz, QUAD1));
+        assertEquals(Label.fromText("secret"), labelFor(dsgz, QUAD2));
+    }
+
+    @Test
+    public void smallBatches() {
+        DatasetGraphABAC dsgz = dataset();
+        StringBuilder patch = new StringBuilder(PREFIXES);
+        patch.append("H Security-Label \"secret\" .\n");
+        for (int i = 0; i < 10; i++) {
+            patch.append("A <http://example/s> <http://example/p> ").append(i).append(" .\n");
+        }
+        patch.append("A _:b <http://telicent.io/security#pattern> \":s :p 5\" <http://telicent.io/security#labels> .\n");
+        patch.append("A _:b <http://telicent.io/security#label> \"five\" <http://telicent.io/security#labels> .\n");
+        apply(dsgz, null, 3, patch.toString());
+        for (int i = 0; i < 10; i++) {
+            Quad quad = Quad.create(Quad.defaultGraphIRI, SSE.parseTriple("(:s :p " + i + ")"));
+            assertEquals(Label.fromText(i == 5 ? "five" : "secret"), labelFor(dsgz, quad));
+        }
+    }
+
+    @Test
+    public void deleteFromLabelsGraph_rejected() {
+        DatasetGraphABAC dsgz = dataset();
+        String patch = """
+                D _:b <http://telicent.io/security#label> "secret" <http://telicent.io/security#labels> .
+                """;
+        assertThrows(ActionErrorException.class,
+                     () -> apply(dsgz, null, LabelledPatchApply.LABELS_BATCH_SIZE, patch));
+    }
+
+    @Test
+    public void abortInPatch() {
+        DatasetGraphABAC dsgz = dataset();
+        String patch = """
+                TX .
+                A <http://example/s> <http://example/p> 1 .
+                TA .
+                """;
+        assertThrows(PatchTxnAbortException.class,
+                     () -> apply(dsgz, "secret", LabelledPatchApply.LABELS_BATCH_SIZE, patch));
+        assertFalse(contains(dsgz, QUAD1));
+        assertNull(labelFor(dsgz, QUAD1));
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.fuseki;
+
+import io.telicent.jena.abac.ABAC;
+import io.telicent.jena.abac.AttributeValueSet;
+import io.telicent.jena.abac.core.AttributesStore;
+import io.telicent.jena.abac.core.AttributesStoreLocal;
+import io.telicent.jena.abac.core.CxtABAC;
+import io.telicent.jena.abac.core.DatasetGraphABAC;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import io.telicent.jena.abac.labels.changes.LabelsChangeLog;
+import io.telicent.jena.abac.labels.changes.LabelsStoreFollower;
+import io.telicent.jena.abac.labels.changes.LabelsStoreWithChangeLog;
+import org.apache.jena.atlas.iterator.Iter;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.DatasetGraphFactory;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.exec.QueryExec;
+import org.apache.jena.sparql.exec.QueryExecResult;
+import org.apache.jena.sparql.exec.RowSet;
+import org.apache.jena.sparql.exec.RowSetOps;
+import org.apache.jena.sparql.exec.RowSetStream;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.lang.ref.WeakReference;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestQueryResultCache {
+
+    private static final Query QUERY = QueryFactory.create("SELECT * { GRAPH ?g { ?s ?p ?o } }");
+
+    private static DatasetGraphABAC dataset(int size) {
+        DatasetGraph dsgBase = DatasetGraphFactory.createTxnMem();
+        LabelsStore labels = Labels.createLabelsStoreMem();
+        AttributesStore attributes = new AttributesStoreLocal();
+        DatasetGraphABAC dsgz = ABAC.authzDataset(dsgBase, labels, Label.fromText("public"), attributes);
+        Txn.executeWrite(dsgz, () -> {
+            for (int i = 0; i < size; i++) {
+                Quad quad = SSE.parseQuad("(:g :s :p " + i + ")");
+                dsgz.add(quad);
+                labels.add(quad, Label.fromText(i % 2 == 0 ? "public" : "secret"));
+            }
+        });
+        return dsgz;
+    }
+
+    private static CxtABAC context(DatasetGraphABAC dsgz, String attributes) {
+        return CxtABAC.context(AttributeValueSet.of(attributes), dsgz.attributesStore()::getHierarchy, dsgz);
+    }
+
+    private static QueryExecResult execute(DatasetGraphABAC dsgz, CxtABAC cxt, Query query) {
+        DatasetGraph dsg = ABAC.filterDataset(dsgz, cxt);
+        QueryExec qExec = QueryExec.dataset(dsg).query(query).build();
+        return new QueryExecResult(qExec.select().materialize());
+    }
+
+    @Test
+    public void givenSameAttributes_whenQuerying_thenResultsShared() {
+        // given
+        DatasetGraphABAC dsgz = dataset(10);
+        QueryResultCache cache = new QueryResultCache(10, 1024 * 1024);
+
+        Txn.executeRead(dsgz, () -> {
+            // when
+            CxtABAC cxt1 = context(dsgz, "public");
+            QueryResultCache.Key key1 = cache.key(dsgz, QUERY, cxt1);
+            long count = RowSetOps.count(cache.put(dsgz, key1, execute(dsgz, cxt1, QUERY)).rowSet());
+            QueryResultCache.Key key2 = cache.key(dsgz, QUERY, context(dsgz, "public"));
+            QueryResultCache.Key other = cache.key(dsgz, QUERY, context(dsgz, "secret"));
+
+            // then
+            assertEquals(5, count);
+            assertEquals(key1, key2);
+            assertNotEquals(key1, other);
+            assertEquals(5, RowSetOps.count(cache.get(key2).rowSet()));
+            assertEquals(5, RowSetOps.count(cache.get(key2).rowSet()));
+            assertNull(cache.get(other));
+        });
+    }
+
+    @Test
+    public void givenCachedResults_whenWriteCommits_thenResultsDiscarded() {
+        // given
+        DatasetGraphABAC dsgz = dataset(10);
+        QueryResultCache cache = new QueryResultCache(10, 1024 * 1024);
+        QueryResultCache.Key before = Txn.calculateRead(dsgz, () -> {
+            CxtABAC cxt = context(dsgz, "public");
+            QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+            cache.put(dsgz, key, execute(dsgz, cxt, QUERY));
+            return key;
+        });
+
+        // when
+        Txn.executeWrite(dsgz, () -> dsgz.add(SSE.parseQuad("(:g :s :p 100)")));
+        long count = Txn.calculateRead(dsgz, () -> {
+            CxtABAC cxt = context(dsgz, "public");
+            QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+            assertNotEquals(before, key);
+            assertNull(cache.get(key));
+            return RowSetOps.count(cache.put(dsgz, key, execute(dsgz, cxt, QUERY)).rowSet());
+        });
+
+        // then
+        assertEquals(6, count);
+        assertNull(cache.get(before));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void givenLargeResults_whenCaching_thenStreamedWithoutCaching() {
+        // given
+        DatasetGraphABAC dsgz = dataset(1000);
+        QueryResultCache cache = new QueryResultCache(10, 4096);
+
+        Txn.executeRead(dsgz, () -> {
+            // when
+            CxtABAC cxt = context(dsgz, "public");
+            QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+            long count = RowSetOps.count(cache.put(dsgz, key, execute(dsgz, cxt, QUERY)).rowSet());
+
+            // then
+            assertEquals(500, count);
+            assertNull(cache.get(key));
+        });
+    }
+
+    @Test
+    public void givenResults_whenPartlyRead_thenNotCached() {
+        // given
+        DatasetGraphABAC dsgz = dataset(10);
+        QueryResultCache cache = new QueryResultCache(10, 1024 * 1024);
+
+        Txn.executeRead(dsgz, () -> {
+            CxtABAC cxt = context(dsgz, "public");
+            QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+
+            // when
+            RowSet rowSet = cache.put(dsgz, key, execute(dsgz, cxt, QUERY)).rowSet();
+            rowSet.next();
+            assertNull(cache.get(key));
+            rowSet.close();
+
+            // then
+            assertNull(cache.get(key));
+        });
+    }
+
+    @Test
+    public void givenResults_whenClosedEarly_thenUnderlyingRowsClosed() {
+        // given
+        DatasetGraphABAC dsgz = dataset(10);
+        QueryResultCache cache = new QueryResultCache(10, 1024 * 1024);
+        AtomicBoolean closed = new AtomicBoolean(false);
+
+        Txn.executeRead(dsgz, () -> {
+            CxtABAC cxt = context(dsgz, "public");
+            QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+            RowSet rows = execute(dsgz, cxt, QUERY).rowSet();
+            RowSet tracked = RowSetStream.create(rows.getResultVars(), Iter.onClose(rows, () -> closed.set(true)));
+
+            // when
+            RowSet rowSet = cache.put(dsgz, key, new QueryExecResult(tracked)).rowSet();
+            rowSet.next();
+            rowSet.close();
+
+            // then
+            assertTrue(closed.get());
+            assertNull(cache.get(key));
+        });
+    }
+
+    @Test
+    public void givenCachedResults_whenDatasetUnused_thenDatasetCollected() throws Exception {
+        // given
+        QueryResultCache cache = new QueryResultCache(10, 1024 * 1024);
+        List<QueryResultCache.Key> keys = new ArrayList<>();
+        WeakReference<DatasetGraphABAC> ref = cacheResults(cache, dataset(10), keys);
+
+        // when
+        for (int i = 0; i < 50 && ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+
+        // then
+        assertNull(ref.get());
+        assertNotNull(cache.get(keys.get(0)));
+        assertEquals(keys.get(0).dataset(), keys.get(1).dataset());
+    }
+
+    private static WeakReference<DatasetGraphABAC> cacheResults(QueryResultCache cache, DatasetGraphABAC dsgz,
+                                                                List<QueryResultCache.Key> keys) {
+        Txn.executeRead(dsgz, () -> {
+            for (String attributes : List.of("public", "secret")) {
+                CxtABAC cxt = context(dsgz, attributes);
+                QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+                RowSetOps.count(cache.put(dsgz, key, execute(dsgz, cxt, QUERY)).rowSet());
+                keys.add(key);
+            }
+        });
+        return new WeakReference<>(dsgz);
+    }
+
+    @Test
+    public void givenCachedResults_whenFollowerLabelsChange_thenResultsDiscarded(@TempDir Path dir) throws Exception {
+        // given
+        Path logFile = dir.resolve("changes.log");
+        QueryResultCache cache = new QueryResultCache(10, 1024 * 1024);
+        Quad quad = SSE.parseQuad("(:g :s :p 1)");
+        try (LabelsStore primary = new LabelsStoreWithChangeLog(Labels.createLabelsStoreMem(),
+                                                                new LabelsChangeLog(logFile));
+             LabelsStoreFollower follower = new LabelsStoreFollower(Labels.createLabelsStoreMem(), logFile,
+                                                                    Duration.ofHours(1))) {
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(quad, Label.fromText("secret")));
+            follower.follower().poll();
+            DatasetGraphABAC dsgz = ABAC.authzDataset(DatasetGraphFactory.createTxnMem(), follower,
+                                                      Label.fromText("public"), new AttributesStoreLocal());
+            Txn.executeWrite(dsgz, () -> dsgz.add(quad));
+            QueryResultCache.Key before = Txn.calculateRead(dsgz, () -> {
+                CxtABAC cxt = context(dsgz, "public");
+                QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+                assertEquals(0, RowSetOps.count(cache.put(dsgz, key, execute(dsgz, cxt, QUERY)).rowSet()));
+                return key;
+            });
+            assertNotNull(cache.get(before));
+
+            // when
+            Txn.executeWrite(primary.getTransactional(), () -> primary.add(quad, Label.fromText("public")));
+            follower.follower().poll();
+            long count = Txn.calculateRead(dsgz, () -> {
+                CxtABAC cxt = context(dsgz, "public");
+                QueryResultCache.Key key = cache.key(dsgz, QUERY, cxt);
+                assertNotEquals(before, key);
+                assertNull(cache.get(key));
+                return RowSetOps.count(cache.put(dsgz, key, execute(dsgz, cxt, QUERY)).rowSet());
+            });
+
+            // then
+            assertEquals(1, count);
+            assertNull(cache.get(before));
+        }
+    }
+
+    @Test
+    public void givenNonDeterministicQuery_whenKeying_thenNotCached() {
+        // given
+        DatasetGraphABAC dsgz = dataset(10);
+        QueryResultCache cache = new QueryResultCache(10, 1024 * 1024);
+        Query query = QueryFactory.create("SELECT * { ?s ?p ?o BIND(NOW() AS ?now) }");
+
+        // when
+        QueryResultCache.Key key = Txn.calculateRead(dsgz, () -> cache.key(dsgz, query, context(dsgz, "public")));
+        QueryResultCache.Key outsideTxn = cache.key(dsgz, QUERY, context(dsgz, "public"));
+
+        // then
+        assertNull(key);
+        assertNull(outsideTxn);
+    }
+
+    @Test
+    public void givenMaxResults_whenCaching_thenBounded() {
+        // given
+        DatasetGraphABAC dsgz = dataset(2);
+        QueryResultCache cache = new QueryResultCache(2, 1024 * 1024);
+
+        Txn.executeRead(dsgz, () -> {
+            // when
+            for (int i = 0; i < 10; i++) {
+                Query query = QueryFactory.create("SELECT * { ?s ?p " + i + " }");
+                CxtABAC cxt = context(dsgz, "public");
+                RowSetOps.count(cache.put(dsgz, cache.key(dsgz, query, cxt), execute(dsgz, cxt, query)).rowSet());
+            }
+
+            // then
+            assertTrue(cache.size() <= 2);
+        });
+    }
+}
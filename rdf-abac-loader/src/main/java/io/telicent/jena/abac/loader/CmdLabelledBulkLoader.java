@@ -0,0 +1,158 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.loader;
+
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsCache;
+import io.telicent.jena.abac.labels.LabelsStore;
+import io.telicent.jena.abac.labels.StoreFmtByHash;
+import io.telicent.jena.abac.labels.hashing.HasherUtil;
+import io.telicent.jena.abac.labels.store.rocksdb.modern.DictionaryLabelStoreRocksDB;
+import org.apache.jena.atlas.logging.LogCtl;
+import org.apache.jena.cmd.ArgDecl;
+import org.apache.jena.cmd.CmdException;
+import org.apache.jena.cmd.CmdMain;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sys.JenaSystem;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.loader.base.LoaderOps;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line bulk loader for labelled data, building a TDB2 database and a dictionary RocksDB labels store together.
+ * <pre>
+ *   abac-loader --loc DB --labels LABELS_DIR [--label LABEL] [--hash FUNCTION] [--batch N] [--quad-index]
+ *               FILE[=LABEL] ...
+ * </pre>
+ * Each file has the default label given after its name, if any, else the one given by {@code --label}, if any.
+ *
+ * @see LabelledBulkLoader
+ */
+public class CmdLabelledBulkLoader extends CmdMain {
+
+    static { JenaSystem.init(); }
+
+    public static void main(String... args) {
+        new CmdLabelledBulkLoader(args).mainRun();
+    }
+
+    private static final ArgDecl argLocation = new ArgDecl(ArgDecl.HasValue, "loc", "location");
+    private static final ArgDecl argLabels   = new ArgDecl(ArgDecl.HasValue, "labels");
+    private static final ArgDecl argLabel    = new ArgDecl(ArgDecl.HasValue, "label");
+    private static final ArgDecl argHash     = new ArgDecl(ArgDecl.HasValue, "hash");
+    private static final ArgDecl argBatch    = new ArgDecl(ArgDecl.HasValue, "batch");
+    private static final ArgDecl argQuadIndex = new ArgDecl(ArgDecl.NoValue, "quad-index", "quadIndex");
+
+    private String location = null;
+    private String labelsLocation = null;
+    private String hashFunction = null;
+    private int batchSize = LabelledBulkLoader.DEFAULT_BATCH_SIZE;
+    private boolean quadIndex = false;
+    private final List<LabelledBulkLoader.Source> sources = new ArrayList<>();
+
+    protected CmdLabelledBulkLoader(String[] argv) {
+        super(argv);
+        add(argLocation, "--loc",    "TDB2 database directory");
+        add(argLabels,   "--labels", "Dictionary RocksDB labels store directory");
+        add(argLabel,    "--label",  "Default label for files not given their own");
+        add(argHash,     "--hash",   "Hash function of the labels store, as for authz:labelsStoreByHashFunction");
+        add(argBatch,    "--batch",  "Number of labels written in each labels store transaction");
+        add(argQuadIndex, "--quad-index", "Keep an index of the labelled quads, as for authz:labelsStoreQuadIndex");
+    }
+
+    @Override
+    protected String getSummary() {
+        return getCommandName()
+                + " --loc DB --labels DIR [--label LABEL] [--hash FUNCTION] [--batch N] [--quad-index]"
+                + " FILE[=LABEL] ...";
+    }
+
+    @Override
+    protected String getCommandName() {
+        return "abac-loader";
+    }
+
+    @Override
+    protected void processModulesAndArgs() {
+        super.processModulesAndArgs();
+        location = getValue(argLocation);
+        labelsLocation = getValue(argLabels);
+        if ( location == null || labelsLocation == null )
+            throw new CmdException("Required: --loc and --labels");
+        hashFunction = getValue(argHash);
+        quadIndex = contains(argQuadIndex);
+        if ( contains(argBatch) ) {
+            try {
+                batchSize = Integer.parseInt(getValue(argBatch));
+            } catch (NumberFormatException ex) {
+                throw new CmdException(argBatch.getKeyName() + " : bad batch size: '" + getValue(argBatch) + "'");
+            }
+            if ( batchSize < 1 )
+                throw new CmdException(argBatch.getKeyName() + " : batch size must be at least 1");
+        }
+        if ( ! hasPositional() )
+            throw new CmdException("Required: at least one file to load");
+        Label dftLabel = contains(argLabel) ? Label.fromText(getValue(argLabel)) : null;
+        for ( String arg : getPositional() )
+            sources.add(source(arg, dftLabel));
+    }
+
+    /**
+     * A file argument, {@code FILE} or {@code FILE=LABEL}.  File names may not contain {@code =}, labels may.
+     */
+    private static LabelledBulkLoader.Source source(String arg, Label dftLabel) {
+        int idx = arg.indexOf('=');
+        if ( idx < 0 )
+            return new LabelledBulkLoader.Source(arg, dftLabel);
+        String filename = arg.substring(0, idx);
+        String label = arg.substring(idx + 1);
+        if ( filename.isEmpty() || label.isEmpty() )
+            throw new CmdException("Bad file argument, expected FILE or FILE=LABEL: '" + arg + "'");
+        return new LabelledBulkLoader.Source(filename, Label.fromText(label));
+    }
+
+    @Override
+    protected void exec() {
+        LogCtl.setLogging();
+        for ( LabelledBulkLoader.Source source : sources ) {
+            if ( ! new File(source.filename()).isFile() )
+                throw new CmdException("No such file: " + source.filename());
+        }
+        File labelsDirectory = new File(labelsLocation);
+        labelsDirectory.mkdirs();
+        DatasetGraph dsg = DatabaseMgr.connectDatasetGraph(location);
+        LabelsStore labelsStore = null;
+        try {
+            // Nothing reads the labels whilst loading so only the minimum label cache is needed
+            StoreFmtByHash storeFmt = new StoreFmtByHash(HasherUtil.obtainHasherFromConfig(hashFunction));
+            labelsStore = new DictionaryLabelStoreRocksDB(labelsDirectory, storeFmt,
+                                                          new LabelsCache(LabelsCache.MIN_CACHE_SIZE), quadIndex);
+            new LabelledBulkLoader(dsg, labelsStore, batchSize, LoaderOps.outputToLog()).load(sources);
+        } catch (CmdException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new CmdException("Failed to load: " + ex.getMessage(), ex);
+        } finally {
+            Labels.closeLabelsStoreRocksDB(labelsStore);
+            dsg.close();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.loader;
+
+import io.telicent.jena.abac.core.StreamSplitter;
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.LabelsSpillBuffer;
+import io.telicent.jena.abac.labels.LabelsStore;
+import io.telicent.jena.abac.labels.node.LabelToNodeGenerator;
+import org.apache.jena.atlas.logging.FmtLog;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFWrapper;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.core.Transactional;
+import org.apache.jena.system.progress.MonitorOutput;
+import org.apache.jena.tdb2.loader.DataLoader;
+import org.apache.jena.tdb2.loader.LoaderFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Loads labelled RDF files into a TDB2 database and a labels store in a single pass, for the initial provisioning of a
+ * dataset offline rather than through the Fuseki upload endpoint.
+ * <p>
+ * The data is passed to the TDB2 parallel bulk loader, which builds the node table and indexes itself, while the
+ * labels are written to the labels store in transactions of up to {@link #DEFAULT_BATCH_SIZE} labels, rather than one
+ * transaction per upload.  The explicit labels of a file are collected in a {@link LabelsSpillBuffer}, so files with
+ * more explicit labels than fit in memory can be loaded.  As for uploads, each file may have a default label for its
+ * data quads, and explicit labels in the labels graph of a file take precedence over its default label.
+ * </p>
+ */
+public class LabelledBulkLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LabelledBulkLoader.class);
+
+    /**
+     * Default number of labels written to the labels store in each transaction
+     */
+    public static final int DEFAULT_BATCH_SIZE = 100_000;
+
+    /**
+     * A file to load
+     *
+     * @param filename     File name, the syntax is determined from its extension
+     * @param defaultLabel Label for the data quads in the file, {@code null} to leave them to the dataset default label
+     */
+    public record Source(String filename, Label defaultLabel) {
+        public Source {
+            Objects.requireNonNull(filename, "Filename cannot be null");
+        }
+    }
+
+    private final DatasetGraph dsg;
+    private final LabelsStore labelsStore;
+    private final int batchSize;
+    private final MonitorOutput output;
+
+    private long labels = 0;
+
+    /**
+     * Creates a new loader
+     *
+     * @param dsg         TDB2 dataset to load the data into, usually empty
+     * @param labelsStore Labels store to load the labels into
+     * @param batchSize   Maximum number of labels written to the labels store in each transaction
+     * @param output      Destination for progress messages
+     */
+    public LabelledBulkLoader(DatasetGraph dsg, LabelsStore labelsStore, int batchSize, MonitorOutput output) {
+        this.dsg = Objects.requireNonNull(dsg, "Dataset cannot be null");
+        this.labelsStore = Objects.requireNonNull(labelsStore, "Labels store cannot be null");
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchSize = batchSize;
+        this.output = Objects.requireNonNull(output, "Output cannot be null");
+    }
+
+    /**
+     * Loads the given files, in order.  If loading fails, labels already committed remain in the labels store, and the
+     * state of the TDB2 database is as left by the TDB2 bulk loader, so both should be discarded and the load rerun.
+     * The TDB2 bulk loader doesn't stop its worker threads when loading fails, so the JVM should then exit.
+     *
+     * @param sources Files to load
+     */
+    public void load(List<Source> sources) {
+        DataLoader loader = LoaderFactory.parallelLoader(dsg, output);
+        LabelsBatch batch = new LabelsBatch(labelsStore.getTransactional());
+        loader.startBulk();
+        try {
+            StreamRDF data = loader.streamRDF();
+            data.start();
+            for (Source source : sources) {
+                load(source, new StreamRDFNoStartFinish(data), batch);
+            }
+            data.finish();
+            batch.commit();
+        } catch (RuntimeException e) {
+            batch.abort();
+            loader.finishException(e);
+            throw e;
+        }
+        loader.finishBulk();
+        FmtLog.info(LOG, "Loaded %,d quads and %,d default labels", loader.countTriples() + loader.countQuads(),
+                    labels);
+    }
+
+    private void load(Source source, StreamRDF data, LabelsBatch batch) {
+        FmtLog.info(LOG, "Loading %s%s", source.filename(),
+                    source.defaultLabel() != null ? " with default label " + source.defaultLabel() : "");
+        try (LabelsSpillBuffer labelsBuffer = new LabelsSpillBuffer(LabelsSpillBuffer.DEFAULT_MAX_IN_MEMORY)) {
+            StreamRDF dest = new StreamSplitter(data, labelsBuffer, source.defaultLabel(), batch::addDefault);
+            // Blank nodes keep their labels, as for uploads, so that labels graph patterns can refer to them
+            RDFParser.source(source.filename()).labelToNode(LabelToNodeGenerator.generate()).parse(dest);
+            // Applied after the default labels so that explicit labels take precedence
+            labelsBuffer.forEachLabel(batch::add);
+            batch.commit();
+        }
+    }
+
+    /**
+     * Number of default labels loaded so far
+     *
+     * @return Count of default labels
+     */
+    public long defaultLabelCount() {
+        return labels;
+    }
+
+    /**
+     * Groups label writes into transactions of up to the batch size
+     */
+    private class LabelsBatch {
+        private final Transactional transactional;
+        private int pending = 0;
+
+        LabelsBatch(Transactional transactional) {
+            this.transactional = transactional;
+        }
+
+        void addDefault(Quad quad, Label label) {
+            add(quad, label);
+            labels++;
+        }
+
+        void add(Quad quad, Label label) {
+            begin();
+            labelsStore.add(quad, label);
+            if (++pending >= batchSize) {
+                commit();
+            }
+        }
+
+        void begin() {
+            if (!transactional.isInTransaction()) {
+                transactional.begin(TxnType.WRITE);
+            }
+        }
+
+        void commit() {
+            if (transactional.isInTransaction()) {
+                transactional.commit();
+                transactional.end();
+            }
+            pending = 0;
+        }
+
+        void abort() {
+            if (transactional.isInTransaction()) {
+                transactional.abort();
+                transactional.end();
+            }
+            pending = 0;
+        }
+    }
+
+    /**
+     * The TDB2 bulk loader stream is started and finished once for all the files, rather than by the parser for each
+     * file
+     */
+    private static class StreamRDFNoStartFinish extends StreamRDFWrapper {
+        StreamRDFNoStartFinish(StreamRDF other) {
+            super(other);
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void finish() {}
+    }
+}
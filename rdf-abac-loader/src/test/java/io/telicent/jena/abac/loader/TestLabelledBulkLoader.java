@@ -0,0 +1,173 @@
+/*
+ *  Copyright (c) Telicent Ltd.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.telicent.jena.abac.loader;
+
+import io.telicent.jena.abac.labels.Label;
+import io.telicent.jena.abac.labels.Labels;
+import io.telicent.jena.abac.labels.LabelsStore;
+import org.apache.jena.atlas.lib.FileOps;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.DatasetGraph;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.sse.SSE;
+import org.apache.jena.system.Txn;
+import org.apache.jena.system.progress.MonitorOutput;
+import org.apache.jena.tdb2.DatabaseMgr;
+import org.apache.jena.tdb2.sys.TDBInternal;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLabelledBulkLoader {
+
+    private static final MonitorOutput QUIET = (fmt, args) -> {};
+
+    private static final String DATA = """
+            PREFIX : <http://example/>
+            PREFIX authz: <http://telicent.io/security#>
+            :s :p 1 .
+            :g { :s :q 2 . :s :r 3 . }
+            authz:labels {
+                [ authz:pattern ':g :s :r 3' ; authz:label "secret" ] .
+            }
+            """;
+
+    private Path dir;
+    private DatasetGraph dsg;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("abac-loader");
+        dsg = DatabaseMgr.connectDatasetGraph(dir.resolve("db").toString());
+    }
+
+    @AfterEach
+    public void teardown() {
+        TDBInternal.expel(dsg);
+        FileOps.clearAll(dir.toFile());
+        FileOps.delete(dir.toString());
+    }
+
+    private String file(String name, String content) throws IOException {
+        Path path = dir.resolve(name);
+        Files.writeString(path, content);
+        return path.toString();
+    }
+
+    private static Label label(LabelsStore labels, String quad) {
+        Quad q = SSE.parseQuad(quad);
+        return Txn.calculateRead(labels.getTransactional(), () -> labels.labelForQuad(q));
+    }
+
+    @Test
+    public void givenFileWithDefaultLabel_whenLoading_thenDataAndLabelsLoaded() throws IOException {
+        // Given
+        String filename = file("data.trig", DATA);
+        LabelsStore labels = Labels.createLabelsStoreMem();
+
+        // When
+        LabelledBulkLoader loader = new LabelledBulkLoader(dsg, labels, 2, QUIET);
+        loader.load(List.of(new LabelledBulkLoader.Source(filename, Label.fromText("public"))));
+
+        // Then
+        assertEquals(3, loader.defaultLabelCount());
+        Txn.executeRead(dsg, () -> {
+            assertEquals(3, dsg.stream().count());
+            assertFalse(dsg.containsGraph(SSE.parseNode("<http://telicent.io/security#labels>")));
+        });
+        assertEquals(Label.fromText("public"), label(labels, "(<urn:x-arq:DefaultGraph> :s :p 1)"));
+        assertEquals(Label.fromText("public"), label(labels, "(:g :s :q 2)"));
+        // Explicit labels take precedence over the default label
+        assertEquals(Label.fromText("secret"), label(labels, "(:g :s :r 3)"));
+    }
+
+    @Test
+    public void givenFileWithoutDefaultLabel_whenLoading_thenOnlyExplicitLabelsLoaded() throws IOException {
+        // Given
+        String filename = file("data.trig", DATA);
+        LabelsStore labels = Labels.createLabelsStoreMem();
+
+        // When
+        LabelledBulkLoader loader = new LabelledBulkLoader(dsg, labels, 10, QUIET);
+        loader.load(List.of(new LabelledBulkLoader.Source(filename, null)));
+
+        // Then
+        assertEquals(0, loader.defaultLabelCount());
+        assertNull(label(labels, "(:g :s :q 2)"));
+        assertEquals(Label.fromText("secret"), label(labels, "(:g :s :r 3)"));
+    }
+
+    @Test
+    public void givenSeveralFiles_whenLoading_thenEachHasItsOwnDefaultLabel() throws IOException {
+        // Given
+        String first = file("first.nq", "<http://example/s> <http://example/p> \"a\" <http://example/g1> .\n");
+        String second = file("second.nt", "<http://example/s> <http://example/p> \"b\" .\n");
+        LabelsStore labels = Labels.createLabelsStoreMem();
+
+        // When
+        new LabelledBulkLoader(dsg, labels, 1, QUIET).load(
+                List.of(new LabelledBulkLoader.Source(first, Label.fromText("first")),
+                        new LabelledBulkLoader.Source(second, Label.fromText("second"))));
+
+        // Then
+        Txn.executeRead(dsg, () -> assertEquals(2, dsg.stream().count()));
+        assertEquals(Label.fromText("first"), label(labels, "(:g1 :s :p 'a')"));
+        assertEquals(Label.fromText("second"), label(labels, "(<urn:x-arq:DefaultGraph> :s :p 'b')"));
+    }
+
+    @Test
+    public void givenBlankNodes_whenLoading_thenLabelsPatternsMatchThem() throws IOException {
+        // Given
+        String filename = file("blank.trig", """
+                PREFIX : <http://example/>
+                PREFIX authz: <http://telicent.io/security#>
+                :g { _:b1 :q 2 . _:b2 :q 3 . }
+                authz:labels {
+                    [ authz:pattern ':g _:b1 :q 2' ; authz:label "secret" ] .
+                }
+                """);
+        LabelsStore labels = Labels.createLabelsStoreMem();
+
+        // When
+        new LabelledBulkLoader(dsg, labels, 10, QUIET).load(
+                List.of(new LabelledBulkLoader.Source(filename, Label.fromText("public"))));
+
+        // Then
+        Quad labelled = blankNodeQuad("b1", 2);
+        Quad unlabelled = blankNodeQuad("b2", 3);
+        Txn.executeRead(dsg, () -> {
+            assertTrue(dsg.contains(labelled));
+            assertTrue(dsg.contains(unlabelled));
+        });
+        Txn.executeRead(labels.getTransactional(), () -> {
+            assertEquals(Label.fromText("secret"), labels.labelForQuad(labelled));
+            assertEquals(Label.fromText("public"), labels.labelForQuad(unlabelled));
+        });
+    }
+
+    private static Quad blankNodeQuad(String blankNodeLabel, int value) {
+        return Quad.create(SSE.parseNode(":g"), NodeFactory.createBlankNode(blankNodeLabel), SSE.parseNode(":q"),
+                           SSE.parseNode(Integer.toString(value)));
+    }
+}